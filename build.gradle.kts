@@ -1,6 +1,7 @@
 plugins {
     id("java")
     id("application")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.github.sibmaks"
@@ -14,6 +15,7 @@ dependencies {
     implementation("org.apache.poi:poi:5.4.1")
     implementation("org.apache.poi:poi-ooxml:5.4.1")
     implementation("info.picocli:picocli:4.7.7")
+    implementation("com.github.luben:zstd-jni:1.5.6-3")
 
     implementation("org.slf4j:slf4j-api:2.0.17")
     implementation("ch.qos.logback:logback-classic:1.5.18")
@@ -28,4 +30,11 @@ application {
 
 tasks.test {
     useJUnitPlatform()
+}
+
+jmh {
+    warmupIterations = 2
+    iterations = 5
+    fork = 1
+    resultFormat = "JSON"
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+package com.github.sibmaks.benchmark;
+
+import com.github.sibmaks.bus.InMemoryEventBus;
+import com.github.sibmaks.bus.TypedEventBus;
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.RequestKind;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.sibmaks.service.LogParser.REQUEST_TOPIC;
+import static com.github.sibmaks.service.LogParser.RQ_TOPIC;
+
+/**
+ * Cost of a single event fan-out depending on subscribers amount, for untyped and typed batched buses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventBusBenchmark {
+    @Param({"1", "2", "5", "10"})
+    private int subscribers;
+    @Param({"1", "256"})
+    private int batchSize;
+
+    private InMemoryEventBus bus;
+    private TypedEventBus typedBus;
+    private Request request;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        bus = new InMemoryEventBus();
+        for (var i = 0; i < subscribers; i++) {
+            bus.subscribe(RQ_TOPIC, blackhole::consume);
+        }
+        typedBus = new TypedEventBus(batchSize);
+        for (var i = 0; i < subscribers; i++) {
+            typedBus.subscribe(REQUEST_TOPIC, batch -> {
+                for (var rq : batch) {
+                    blackhole.consume(rq);
+                }
+            });
+        }
+        request = new Request(1, new RequestKey("GET", new RequestKind("DYNAMIC")), 1_000_000, 1_700_000_000_000L, "http://localhost/api/items/1");
+    }
+
+    @Benchmark
+    public void publish() {
+        bus.publish(RQ_TOPIC, request);
+    }
+
+    @Benchmark
+    public void publishTyped() {
+        typedBus.publish(RQ_TOPIC, request);
+    }
+}
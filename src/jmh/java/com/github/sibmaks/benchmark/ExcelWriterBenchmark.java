@@ -0,0 +1,72 @@
+package com.github.sibmaks.benchmark;
+
+import com.github.sibmaks.RequestStats;
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.report.ReportSnapshot;
+import com.github.sibmaks.service.ExcelWriter;
+import com.github.sibmaks.stats.Timeline;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Excel export time for different amounts of statistic rows, in memory and streaming.
+ * Run with {@code -prof gc} to get allocation and heap figures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class ExcelWriterBenchmark {
+    private static final int REQUESTS_PER_ROW = 10;
+    private static final double[] PERCENTILES = {90, 95, 99};
+
+    @Param({"100", "10000", "100000"})
+    private int rows;
+    @Param({"-1", "100"})
+    private int rowWindow;
+
+    private ReportSnapshot snapshot;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        var random = new SplittableRandom(42);
+        var requestKey = new RequestKey("GET", new RequestKind("DYNAMIC"));
+        var stats = new LinkedHashMap<RequestKey, RequestStats>();
+        var timeline = new Timeline(60_000);
+        for (var i = 0; i < rows; i++) {
+            var requestStats = new RequestStats();
+            for (var j = 0; j < REQUESTS_PER_ROW; j++) {
+                var timestamp = 1_700_000_000_000L + i * 1000L + j;
+                var time = random.nextLong(1, 1_000_000_000);
+                requestStats.addRequest(new Request(i * REQUESTS_PER_ROW + j, requestKey, time, timestamp, "http://localhost/api/items/" + i));
+                timeline.record(1_700_000_000_000L + i * 60_000L, time);
+            }
+            stats.put(new RequestKey("ALL_%d".formatted(i), RequestKind.ALL), requestStats);
+        }
+        snapshot = ReportSnapshot.compute(stats, Map.of(), Map.of(), timeline, null, PERCENTILES,
+                ForkJoinPool.commonPool());
+        file = Files.createTempFile("loadgen", ".xlsx");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        new ExcelWriter(PERCENTILES, rowWindow).write(snapshot, file.toString());
+    }
+}
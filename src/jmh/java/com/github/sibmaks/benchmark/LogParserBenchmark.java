@@ -0,0 +1,58 @@
+package com.github.sibmaks.benchmark;
+
+import com.github.sibmaks.bus.EventPublisher;
+import com.github.sibmaks.service.LogParser;
+import com.github.sibmaks.service.MappedLogParser;
+import com.github.sibmaks.service.ParallelLogParser;
+import com.github.sibmaks.service.ParseOptions;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing throughput in lines per second on a synthetic log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(LogParserBenchmark.LINES)
+public class LogParserBenchmark {
+    static final int LINES = 200_000;
+
+    private Path file;
+    private String fileName;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = SyntheticLogGenerator.generate(Files.createTempFile("loadgen", ".log"), LINES, 42);
+        fileName = file.toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void regex(Blackhole blackhole) throws IOException {
+        EventPublisher publisher = (topic, event) -> blackhole.consume(event);
+        new LogParser(publisher, ParseOptions.defaults()).parse(fileName, -1);
+    }
+
+    @Benchmark
+    public void mapped(Blackhole blackhole) throws IOException {
+        EventPublisher publisher = (topic, event) -> blackhole.consume(event);
+        new MappedLogParser(publisher, ParseOptions.defaults()).parse(fileName, -1);
+    }
+
+    @Benchmark
+    public void parallelMapped(Blackhole blackhole) throws IOException {
+        EventPublisher publisher = (topic, event) -> blackhole.consume(event);
+        var threads = Runtime.getRuntime().availableProcessors();
+        new ParallelLogParser(threads, true, ParseOptions.defaults()).parse(fileName, -1, () -> publisher);
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.sibmaks.benchmark;
+
+import com.github.sibmaks.RequestStats;
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.stats.PercentileEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording requests and of percentile queries for different sample amounts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestStatsBenchmark {
+    private static final RequestKey KEY = new RequestKey("GET", new RequestKind("DYNAMIC"));
+    private static final double ACCURACY = 0.01;
+
+    @Param({"1000", "1000000", "10000000"})
+    private int samples;
+    @Param({"EXACT", "SKETCH"})
+    private PercentileEngine engine;
+
+    private Request[] requests;
+    private RequestStats filled;
+    private RequestStats recording;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var random = new SplittableRandom(42);
+        requests = new Request[1 << 16];
+        for (var i = 0; i < requests.length; i++) {
+            var latency = (long) (Math.exp(random.nextDouble() * 8) * 1_000_000);
+            requests[i] = new Request(i + 1, KEY, latency, 1_700_000_000_000L + i, "http://localhost/api/items/" + i);
+        }
+        filled = new RequestStats(engine.createRecorder(ACCURACY));
+        for (var i = 0; i < samples; i++) {
+            filled.addRequest(requests[i % requests.length]);
+        }
+        filled.getPercentile99();
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        recording = new RequestStats(engine.createRecorder(ACCURACY));
+        next = 0;
+    }
+
+    @Benchmark
+    public void addRequest() {
+        recording.addRequest(requests[next++ & (requests.length - 1)]);
+    }
+
+    @Benchmark
+    public BigDecimal percentile() {
+        return filled.getPercentile(0.999);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BigDecimal firstPercentileAfterRecording() {
+        var stats = new RequestStats(engine.createRecorder(ACCURACY));
+        for (var i = 0; i < samples; i++) {
+            stats.addRequest(requests[i % requests.length]);
+        }
+        return stats.getPercentile99();
+    }
+}
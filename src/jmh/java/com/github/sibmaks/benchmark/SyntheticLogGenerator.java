@@ -0,0 +1,77 @@
+package com.github.sibmaks.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic generator of loadgen logs in the format accepted by the parsers.
+ * The same seed and lines amount always produce the same file.
+ */
+public final class SyntheticLogGenerator {
+    private static final long START_TIMESTAMP = 1_700_000_000_000L;
+    private static final String[] METHODS = {"GET", "GET", "GET", "POST", "PUT", "DELETE"};
+    private static final String[] STATIC_PATHS = {"/img/logo.png", "/cmsstatic/site.css", "/js/app.js"};
+    private static final String[] DYNAMIC_PATHS = {"/api/products/%d", "/api/cart/%d/items", "/checkout?order=%d"};
+    private static final int SKIPPED_LINE_RATE = 50;
+
+    private SyntheticLogGenerator() {
+    }
+
+    /**
+     * Generate log file.
+     *
+     * @param file  target file
+     * @param lines amount of request lines, every 50th line is followed by a non-request line
+     * @param seed  random seed
+     * @return target file
+     * @throws IOException on write error
+     */
+    public static Path generate(Path file, int lines, long seed) throws IOException {
+        var random = new SplittableRandom(seed);
+        var timestamp = START_TIMESTAMP;
+        try (var writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (var i = 0; i < lines; i++) {
+                timestamp += random.nextInt(20);
+                writeRequest(writer, random, timestamp, i);
+                if (i % SKIPPED_LINE_RATE == 0) {
+                    writer.write(String.format(Locale.ROOT, "[%d] INFO virtual user %d started iteration\n", timestamp, i));
+                }
+            }
+        }
+        return file;
+    }
+
+    private static void writeRequest(BufferedWriter writer,
+                                     SplittableRandom random,
+                                     long timestamp,
+                                     int index) throws IOException {
+        var method = METHODS[random.nextInt(METHODS.length)];
+        // log-normal like latency: mostly fast responses with a long tail
+        var latency = Math.exp(random.nextDouble() * 3 + random.nextDouble() * random.nextDouble() * 5);
+        var millis = (long) latency;
+        var fraction = random.nextInt(1000);
+        var separator = random.nextBoolean() ? ',' : '.';
+        String path;
+        if (random.nextInt(3) == 0) {
+            path = STATIC_PATHS[random.nextInt(STATIC_PATHS.length)];
+        } else {
+            path = DYNAMIC_PATHS[random.nextInt(DYNAMIC_PATHS.length)].formatted(index % 1000);
+        }
+        writer.write(String.format(Locale.ROOT, "[%d][%s] response received at %d%c%03dms from http://localhost:8080%s\n",
+                timestamp, method, millis, separator, fraction, path));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SyntheticLogGenerator <file> <lines> [seed]");
+            return;
+        }
+        var seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+        generate(Path.of(args[0]), Integer.parseInt(args[1]), seed);
+    }
+}
@@ -1,188 +1,702 @@
 package com.github.sibmaks;
 
-import com.github.sibmaks.bus.InMemoryEventBus;
-import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.bus.AsyncEventBus;
+import com.github.sibmaks.bus.EventPublisher;
+import com.github.sibmaks.bus.TypedEventBus;
+import com.github.sibmaks.bus.WaitStrategy;
 import com.github.sibmaks.dto.RequestKey;
 import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.dto.TimeRange;
+import com.github.sibmaks.metrics.ParseMetrics;
+import com.github.sibmaks.metrics.PhaseMetrics;
+import com.github.sibmaks.metrics.SubscriberTimes;
+import com.github.sibmaks.report.ReportSnapshot;
+import com.github.sibmaks.report.SummaryFile;
+import com.github.sibmaks.service.AggregateFile;
+import com.github.sibmaks.service.Compression;
 import com.github.sibmaks.service.ConsoleReportPrinter;
+import com.github.sibmaks.service.EndpointNormalizer;
 import com.github.sibmaks.service.ExcelWriter;
+import com.github.sibmaks.service.LogFollower;
+import com.github.sibmaks.service.LineSampler;
+import com.github.sibmaks.service.LogInput;
 import com.github.sibmaks.service.LogParser;
+import com.github.sibmaks.service.MappedLogParser;
+import com.github.sibmaks.service.ParallelLogParser;
+import com.github.sibmaks.service.ParseOptions;
+import com.github.sibmaks.service.RequestCache;
+import com.github.sibmaks.service.RequestCacheWriter;
+import com.github.sibmaks.service.RequestClassifier;
+import com.github.sibmaks.service.TimeIndex;
+import com.github.sibmaks.stats.CoordinatedOmissionRecorder;
+import com.github.sibmaks.stats.Latency;
+import com.github.sibmaks.stats.LatencyRecorder;
+import com.github.sibmaks.stats.PercentileEngine;
+import com.github.sibmaks.stats.ReservoirLatencyRecorder;
+import com.github.sibmaks.stats.SpillStore;
+import com.github.sibmaks.stats.SpillingLatencyRecorder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Consumer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
-import static com.github.sibmaks.service.LogParser.RQ_TOPIC;
-
-public class Application implements Runnable {
+@CommandLine.Command(name = "loadgenparser", subcommands = CompareCommand.class)
+public class Application implements Callable<Integer> {
 
     private static final Logger log = LoggerFactory.getLogger(Application.class);
+    private static final Duration FOLLOW_POLL_INTERVAL = Duration.ofMillis(500);
+    private static final String REQUEST_CACHE_SUFFIX = ".rqcache";
 
-    @CommandLine.Option(names = {"-f", "--file"}, description = "Input log file", required = true)
-    private String file;
+    @CommandLine.Option(names = {"-f", "--file"}, description = "Input log or aggregate file, repeat option or use glob pattern to merge many files")
+    private List<String> files;
+    @CommandLine.Option(names = {"-so", "--summary-output"}, description = "Write summary of request statistics to file, summaries of two runs are compared by compare command")
+    private String summaryOutput;
+    @CommandLine.Option(names = {"-fj", "--file-threads"}, description = "Amount of input files read concurrently, -1 for amount of processors", defaultValue = "-1")
+    private int fileThreads;
+    @CommandLine.Option(names = {"-ao", "--aggregate-output"}, description = "Write statistics of every input to aggregate file, aggregate files are merged when passed as input")
+    private String aggregateOutput;
+    @CommandLine.Option(names = {"-nn", "--node-name"}, description = "Node name of the single input log in report and aggregate file, input path by default")
+    private String nodeName;
     @CommandLine.Option(names = {"-t", "--to"}, description = "Amount of request to read", defaultValue = "-1")
     private int lastRequestIndex;
+    @CommandLine.Option(names = {"-ft", "--from-time"}, description = "Read requests with timestamp at or after this time: epoch milliseconds, ISO instant or local date-time, e.g. 2024-04-05T20:07:00")
+    private String fromTime;
+    @CommandLine.Option(names = {"-tt", "--to-time"}, description = "Read requests with timestamp before this time: epoch milliseconds, ISO instant or local date-time")
+    private String toTime;
+    @CommandLine.Option(names = {"-ti", "--time-index-step"}, description = "Distance in MB between offsets of sparse time index saved next to uncompressed log, used to seek to --from-time", defaultValue = "4")
+    private int timeIndexStep;
     @CommandLine.Option(names = {"-s", "--step"}, description = "Step to collect statistic", defaultValue = "-1")
     private int step;
     @CommandLine.Option(names = {"-e", "--save-excel"}, description = "Save stats to excel file", defaultValue = "false")
     private boolean saveExcel;
+    @CommandLine.Option(names = {"-es", "--excel-streaming"}, description = "Stream excel rows to disk instead of building workbook in memory", defaultValue = "false")
+    private boolean excelStreaming;
+    @CommandLine.Option(names = {"-ew", "--excel-row-window"}, description = "Amount of rows kept in memory by streaming excel export", defaultValue = "100")
+    private int excelRowWindow;
     @CommandLine.Option(names = {"-ca", "--collect-all"}, description = "Collect all statistic", defaultValue = "true")
     private boolean collectAll;
-    @CommandLine.Option(names = {"-cs", "--collect-static"}, description = "Collect static statistic", defaultValue = "false")
+    @CommandLine.Option(names = {"-cs", "--collect-static"}, description = "Collect STATIC class statistic", defaultValue = "false")
     private boolean collectStatic;
-    @CommandLine.Option(names = {"-cd", "--collect-dynamic"}, description = "Collect dynamic statistic", defaultValue = "false")
+    @CommandLine.Option(names = {"-cd", "--collect-dynamic"}, description = "Collect DYNAMIC class statistic", defaultValue = "false")
     private boolean collectDynamic;
+    @CommandLine.Option(names = {"-cc", "--collect-classes"}, description = "Collect statistic of every configured request class", defaultValue = "false")
+    private boolean collectClasses;
+    @CommandLine.Option(names = {"-cr", "--classification-rules"}, description = "Request classification rule file with '<class> prefix|suffix|contains|exact <path>' lines and optional 'scope uri' line to match whole URIs, built-in rules split STATIC and DYNAMIC requests")
+    private String classificationRules;
+    @CommandLine.Option(names = {"-pe", "--percentile-engine"}, description = "Percentile engine: ${COMPLETION-CANDIDATES}", defaultValue = "EXACT")
+    private PercentileEngine percentileEngine;
+    @CommandLine.Option(names = {"-pa", "--percentile-accuracy"}, description = "Relative error bound of sketch percentile engine", defaultValue = "0.01")
+    private double percentileAccuracy;
+    @CommandLine.Option(names = {"-sb", "--spill-budget"}, description = "Heap budget in MB of exact percentile samples, samples over it are spilled to sorted temporary files, 0 to keep all samples in heap", defaultValue = "0")
+    private int spillBudget;
+    @CommandLine.Option(names = {"-sd", "--spill-dir"}, description = "Directory of spilled samples, system temporary directory by default")
+    private String spillDirectory;
+    @CommandLine.Option(names = {"-rs", "--reservoir-size"}, description = "Keep a uniform sample of this amount of latencies per statistic, percentiles are estimated from it with confidence intervals, 0 to use percentile engine", defaultValue = "0")
+    private int reservoirSize;
+    @CommandLine.Option(names = {"-sr", "--sample-rate"}, description = "Fraction of log lines parsed for a quick look, other lines are skipped before matching, totals and RPS are estimated from the sample", defaultValue = "1")
+    private double sampleRate;
+    @CommandLine.Option(names = {"-ei", "--expected-interval"}, description = "Expected interval in milliseconds between requests of fixed rate load, or 'auto' to use mean interval between request timestamps of every input node, percentiles corrected for coordinated omission are reported next to raw ones. 'auto' assumes every node log is written by a single fixed rate stream, set interval of one stream explicitly if a log merges several load generator threads")
+    private String expectedInterval;
+    @CommandLine.Option(names = {"-p", "--percentiles"}, description = "Percentiles to report", split = ",", defaultValue = "90,95,99")
+    private double[] percentiles;
+    @CommandLine.Option(names = {"-j", "--threads"}, description = "Amount of parsing threads, file is split into chunks if greater than 1, compressed log blocks are decompressed in parallel", defaultValue = "1")
+    private int threads;
+    @CommandLine.Option(names = {"-m", "--mapped"}, description = "Parse memory-mapped file with byte level parser", defaultValue = "false")
+    private boolean mapped;
+    @CommandLine.Option(names = {"-bb", "--bus-batch-size"}, description = "Amount of requests delivered to statistic collectors at once", defaultValue = "256")
+    private int busBatchSize;
+    @CommandLine.Option(names = {"-a", "--async"}, description = "Collect statistics on separate threads, one per statistic", defaultValue = "false")
+    private boolean async;
+    @CommandLine.Option(names = {"-ac", "--async-capacity"}, description = "Ring buffer capacity per statistic thread", defaultValue = "65536")
+    private int asyncCapacity;
+    @CommandLine.Option(names = {"-apw", "--async-producer-wait"}, description = "Parser wait strategy when ring buffer is full: ${COMPLETION-CANDIDATES}", defaultValue = "YIELD")
+    private WaitStrategy asyncProducerWait;
+    @CommandLine.Option(names = {"-acw", "--async-consumer-wait"}, description = "Statistic thread wait strategy when ring buffer is empty: ${COMPLETION-CANDIDATES}", defaultValue = "PARK")
+    private WaitStrategy asyncConsumerWait;
+    @CommandLine.Option(names = {"-F", "--follow"}, description = "Follow growing log file and refresh console report", defaultValue = "false")
+    private boolean follow;
+    @CommandLine.Option(names = {"-ri", "--refresh-interval"}, description = "Console report refresh interval in seconds in follow mode", defaultValue = "5")
+    private int refreshInterval;
+    @CommandLine.Option(names = {"-fi", "--follow-idle-timeout"}, description = "Stop following after this amount of seconds without new lines, -1 to follow until interrupted", defaultValue = "-1")
+    private int followIdleTimeout;
+    @CommandLine.Option(names = {"-ce", "--collect-endpoints"}, description = "Collect statistic by method and normalized URI path", defaultValue = "false")
+    private boolean collectEndpoints;
+    @CommandLine.Option(names = {"-el", "--endpoint-limit"}, description = "Amount of reported endpoints, less requested endpoints are reported as OTHER", defaultValue = "1000")
+    private int endpointLimit;
+    @CommandLine.Option(names = {"-er", "--endpoint-rule"}, description = "Path segment rule in regex=placeholder format, checked before built-in id, uuid and hex rules")
+    private List<String> endpointRules = new ArrayList<>();
+    @CommandLine.Option(names = {"-tr", "--timeline-resolution"}, description = "Throughput timeline bucket duration in seconds, e.g. 1, 10 or 60", defaultValue = "60")
+    private int timelineResolution;
+    @CommandLine.Option(names = {"-pt", "--print-timeline"}, description = "Print throughput timeline to console, it is always saved to excel file", defaultValue = "false")
+    private boolean printTimeline;
+    @CommandLine.Option(names = {"-wl", "--window-length"}, description = "Time window length in seconds, statistic of all requests over time windows is saved to excel file, 0 to disable", defaultValue = "0")
+    private int windowLength;
+    @CommandLine.Option(names = {"-ws", "--window-slide"}, description = "Time window slide in seconds, window length should be divisible by it, 0 for tumbling windows", defaultValue = "0")
+    private int windowSlide;
+    @CommandLine.Option(names = {"-rc", "--request-cache"}, description = "Store parsed requests in a binary cache next to the log and reuse it while log is unchanged", defaultValue = "false")
+    private boolean requestCache;
+    @CommandLine.Option(names = {"-mr", "--metrics-report"}, description = "Print instrumentation report: read lines, reading rates, subscriber times, phase durations and allocations", defaultValue = "false")
+    private boolean metricsReport;
+    @CommandLine.Option(names = {"-mi", "--metrics-interval"}, description = "Log reading progress every this amount of seconds and print instrumentation report, 0 to disable", defaultValue = "0")
+    private int metricsInterval;
+    @CommandLine.Option(names = {"-rj", "--report-threads"}, description = "Amount of threads computing report statistics and rendering reports, -1 for amount of processors", defaultValue = "-1")
+    private int reportThreads;
+
+    private EndpointNormalizer endpointNormalizer;
+    private RequestClassifier classifier;
+    private ParseMetrics parseMetrics = ParseMetrics.disabled();
+    private SubscriberTimes subscriberTimes;
+    private TimeRange timeRange = TimeRange.ALL;
+    private LineSampler sampler = LineSampler.ALL;
 
     public static void main(String[] args) {
-        var commandLine = new CommandLine(new Application());
-        commandLine.execute(args);
+        System.exit(commandLine().execute(args));
     }
 
-    private static void collectRPS(InMemoryEventBus bus, Map<Long, Integer> rpsStats) {
-        bus.subscribe(RQ_TOPIC, it -> {
-            var rq = (Request) it;
-            var minute = (rq.timestamp() / 1000 / 60) * 60;
-            rpsStats.put(minute, rpsStats.getOrDefault(minute, 0) + 1);
-        });
+    /**
+     * Command line of the application and its subcommands. Unexpected exceptions exit with
+     * {@link CompareCommand#FAILED}, instead of picocli default 1, which is the regression exit code.
+     *
+     * @return command line
+     */
+    static CommandLine commandLine() {
+        return new CommandLine(new Application())
+                .setCaseInsensitiveEnumValuesAllowed(true)
+                .setExecutionExceptionHandler((e, commandLine, parseResult) -> {
+                    log.error("Command failed", e);
+                    return CompareCommand.FAILED;
+                });
     }
 
-    private static void collectAll(Map<RequestKey, RequestStats> stats, InMemoryEventBus bus) {
-        var genericKey = new RequestKey("ALL", RequestKind.ALL);
-        var genericRequestStats = stats.computeIfAbsent(genericKey, it -> new RequestStats());
-        bus.subscribe(RQ_TOPIC, it -> {
-            var rq = (Request) it;
-            genericRequestStats.addRequest(rq);
-        });
+    private void parse(String file,
+                       EventPublisher publisher,
+                       Compression compression,
+                       RequestCache cache) throws IOException {
+        if (cache != null) {
+            cache.replay(lastRequestIndex, 1, () -> publisher, parseMetrics);
+        } else if (compression != Compression.NONE) {
+            log.info("Reading {} compressed log {} with {} decompression threads", compression, file, threads);
+            var parser = new LogParser(publisher, getParseOptions());
+            parser.parse(LogInput.open(Path.of(file), threads), lastRequestIndex);
+        } else if (mapped) {
+            var span = findSpan(file);
+            var parser = new MappedLogParser(publisher, getParseOptions());
+            parser.parse(file, span.start(), span.end(), lastRequestIndex);
+        } else {
+            var span = findSpan(file);
+            var parser = new LogParser(publisher, getParseOptions());
+            parser.parse(file, span.start(), span.end(), lastRequestIndex);
+        }
     }
 
-    private static void collectSpecificType(String requestKey,
-                                            RequestKind dynamic,
-                                            Map<RequestKey, RequestStats> stats,
-                                            InMemoryEventBus bus) {
-        var dynamicKey = new RequestKey(requestKey, dynamic);
-        var dynamicRequestStats = stats.computeIfAbsent(dynamicKey, it -> new RequestStats());
-        bus.subscribe(RQ_TOPIC, it -> {
-            var rq = (Request) it;
-            if (rq.key().requestKind() != dynamic) {
-                return;
-            }
-            dynamicRequestStats.addRequest(rq);
-        });
+    private ParseOptions getParseOptions() {
+        return new ParseOptions(classifier, parseMetrics, timeRange, sampler, collectEndpoints, step > 0);
     }
 
-    @Override
-    public void run() {
-        log.info("Starting request stats collector");
-        var stats = new LinkedHashMap<RequestKey, RequestStats>();
-        var rpsStats = new LinkedHashMap<Long, Integer>();
+    /**
+     * Find part of uncompressed log containing requests of the time range, whole file if range is not set.
+     */
+    private TimeIndex.Span findSpan(String file) throws IOException {
+        if (timeRange.isAll()) {
+            return new TimeIndex.Span(0, Long.MAX_VALUE);
+        }
+        var index = TimeIndex.load(Path.of(file), timeIndexStep * 1024L * 1024L);
+        var span = index.find(timeRange);
+        log.info("Reading bytes {}-{} of {} by time index of {} entries", span.start(), span.end(), file, index.size());
+        return span;
+    }
+
+    private RequestCache loadRequestCache(String file, Compression compression) throws IOException {
+        var logFile = Path.of(file);
+        var cacheFile = Path.of(file + REQUEST_CACHE_SUFFIX);
+        var key = RequestCache.Key.of(logFile);
+        var cache = RequestCache.open(cacheFile, key, classifier);
+        if (cache != null) {
+            log.info("Using request cache {} with {} requests", cacheFile, cache.getRequests());
+            return cache;
+        }
+        log.info("Building request cache {}", cacheFile);
+        // cache rows are written in file order and indexed on replay, so parsed request indexes are not needed
+        var options = new ParseOptions(classifier, ParseMetrics.disabled(), TimeRange.ALL, LineSampler.ALL, true, false);
+        try (var writer = new RequestCacheWriter(cacheFile, key)) {
+            if (compression != Compression.NONE) {
+                var parser = new LogParser(writer.segment(), options);
+                parser.parse(LogInput.open(logFile, threads), -1);
+            } else if (threads > 1) {
+                var parser = new ParallelLogParser(threads, mapped, options);
+                parser.parse(file, -1, writer::segment);
+            } else if (mapped) {
+                var parser = new MappedLogParser(writer.segment(), options);
+                parser.parse(file, -1);
+            } else {
+                var parser = new LogParser(writer.segment(), options);
+                parser.parse(file, -1);
+            }
+            writer.commit();
+        }
+        cache = RequestCache.open(cacheFile, key, classifier);
+        if (cache == null) {
+            throw new IOException("Can not read request cache " + cacheFile);
+        }
+        return cache;
+    }
 
-        var bus = new InMemoryEventBus();
+    /**
+     * Collect statistics of chunks published concurrently and merge them in chunk order.
+     */
+    private RequestStatsCollector collectChunks(Supplier<LatencyRecorder> recorders, ChunkSource source) throws IOException {
+        var collector = setUpCollector(() -> new TypedEventBus(busBatchSize), recorders);
+        var chunkCollectors = new ArrayList<RequestStatsCollector>();
+        source.publish(() -> {
+            var chunkBus = new TypedEventBus(busBatchSize);
+            chunkCollectors.add(setUpCollector(() -> chunkBus, recorders));
+            return chunkBus;
+        });
+        for (var chunkCollector : chunkCollectors) {
+            collector.merge(chunkCollector);
+        }
+        return collector;
+    }
 
-        collectRPS(bus, rpsStats);
-        if (collectAll) {
-            collectAll(stats, bus);
+    private RequestStatsCollector setUpCollector(Supplier<TypedEventBus> buses, Supplier<LatencyRecorder> recorders) {
+        var collector = new RequestStatsCollector(buses, recorders);
+        if (subscriberTimes != null) {
+            collector.timeSubscribers(subscriberTimes);
         }
-        if (collectStatic) {
-            collectSpecificType("STATIC", RequestKind.STATIC, stats, bus);
+        collector.collectTimeline(timelineResolution * 1000L);
+        if (windowLength > 0) {
+            var slide = windowSlide > 0 ? windowSlide : windowLength;
+            collector.collectTimeWindows(windowLength * 1000L, slide * 1000L);
         }
-        if (collectDynamic) {
-            collectSpecificType("DYNAMIC", RequestKind.DYNAMIC, stats, bus);
+        if (collectEndpoints) {
+            collector.collectEndpoints(endpointNormalizer, endpointLimit);
+        }
+        if (collectAll) {
+            collector.collectAll();
+        }
+        var requestKinds = getCollectedKinds();
+        for (var requestKind : requestKinds) {
+            collector.collectSpecificType(requestKind.name(), requestKind);
         }
 
         if (step > 0) {
-            setUpStepStatistic(stats, bus);
+            if (collectAll) {
+                collector.collectSteps("ALL_%d", RequestKind.ALL, step, lastRequestIndex);
+            }
+            for (var requestKind : requestKinds) {
+                var keyFormat = requestKind.name().replace("%", "%%") + "_%d";
+                collector.collectSteps(keyFormat, requestKind, step, lastRequestIndex);
+            }
         }
+        return collector;
+    }
 
+    private List<RequestKind> getCollectedKinds() {
+        return classifier.getKinds().stream()
+                .filter(it -> collectClasses
+                        || collectStatic && "STATIC".equals(it.name())
+                        || collectDynamic && "DYNAMIC".equals(it.name()))
+                .toList();
+    }
+
+    /**
+     * Collect statistics of a single log file.
+     */
+    private RequestStatsCollector collectFile(String file, Supplier<LatencyRecorder> recorders) throws IOException {
+        var compression = Compression.detect(Path.of(file));
+        var cache = requestCache ? loadRequestCache(file, compression) : null;
+        RequestStatsCollector collector;
+        if (threads > 1 && cache != null) {
+            collector = collectChunks(recorders, publishers -> cache.replay(lastRequestIndex, threads, publishers, parseMetrics));
+        } else if (threads > 1 && compression == Compression.NONE) {
+            var span = findSpan(file);
+            var parser = new ParallelLogParser(threads, mapped, getParseOptions());
+            collector = collectChunks(recorders, publishers -> parser.parse(file, span.start(), span.end(), lastRequestIndex, publishers));
+        } else if (async) {
+            try (var bus = new AsyncEventBus(asyncCapacity, busBatchSize, asyncProducerWait, asyncConsumerWait)) {
+                collector = setUpCollector(bus::group, recorders);
+                parse(file, bus, compression, cache);
+            }
+        } else {
+            var bus = new TypedEventBus(busBatchSize);
+            collector = setUpCollector(() -> bus, recorders);
+            parse(file, bus, compression, cache);
+        }
+        return collector;
+    }
+
+    /**
+     * Collect statistics of every input concurrently, logs are parsed and aggregate files are read.
+     *
+     * @return statistics by node name in input order
+     */
+    private Map<String, RequestStatsCollector> collectNodes(List<Path> inputs,
+                                                            Supplier<LatencyRecorder> recorders) throws IOException {
+        var workers = fileThreads > 0 ? fileThreads : Runtime.getRuntime().availableProcessors();
+        var executor = Executors.newFixedThreadPool(Math.min(workers, inputs.size()));
         try {
-            var parser = new LogParser(bus);
-            parser.parse(file, lastRequestIndex);
-            log.info("Request stats collected");
+            var tasks = new ArrayList<Future<Map<String, RequestStatsCollector>>>(inputs.size());
+            for (var input : inputs) {
+                tasks.add(executor.submit(() -> {
+                    if (AggregateFile.isAggregate(input)) {
+                        log.info("Reading aggregate file {}", input);
+                        return AggregateFile.read(input, recorders);
+                    }
+                    log.info("Parsing log {}", input);
+                    var name = nodeName != null && inputs.size() == 1 ? nodeName : input.toString();
+                    return Map.of(name, collectFile(input.toString(), recorders));
+                }));
+            }
+            var nodes = new LinkedHashMap<String, RequestStatsCollector>();
+            for (var task : tasks) {
+                for (var node : await(task).entrySet()) {
+                    var name = node.getKey();
+                    for (var i = 2; nodes.containsKey(name); i++) {
+                        name = node.getKey() + " #" + i;
+                    }
+                    nodes.put(name, node.getValue());
+                }
+            }
+            return nodes;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-            var consoleReportPrinter = new ConsoleReportPrinter();
-            consoleReportPrinter.printRequestStats(stats);
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Reading interrupted", e);
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(cause);
+        }
+    }
 
-            if (saveExcel) {
-                var writer = new ExcelWriter();
-                writer.write(stats, rpsStats, "output-%d.xlsx".formatted(System.currentTimeMillis()));
-                log.info("Request stats saved");
+    /**
+     * Expand glob patterns into sorted file lists, request cache files are skipped.
+     */
+    private static List<Path> expandInputs(List<String> patterns) throws IOException {
+        var inputs = new ArrayList<Path>();
+        for (var pattern : patterns) {
+            var globStart = indexOfGlob(pattern);
+            if (globStart < 0) {
+                inputs.add(Path.of(pattern));
+                continue;
+            }
+            var separator = pattern.lastIndexOf('/', globStart);
+            var base = Path.of(separator < 0 ? "" : pattern.substring(0, separator + 1));
+            var matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            var depth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.substring(separator + 1).split("/").length;
+            try (var paths = Files.walk(separator < 0 ? Path.of(".") : base, depth)) {
+                var matched = paths
+                        .map(it -> separator < 0 ? Path.of(".").relativize(it) : it)
+                        .filter(matcher::matches)
+                        .filter(Files::isRegularFile)
+                        .filter(it -> !it.getFileName().toString().endsWith(REQUEST_CACHE_SUFFIX))
+                        .filter(it -> !it.getFileName().toString().endsWith(TimeIndex.SUFFIX))
+                        .sorted()
+                        .toList();
+                if (matched.isEmpty()) {
+                    throw new IllegalArgumentException("No files match " + pattern);
+                }
+                inputs.addAll(matched);
             }
-        } catch (Exception e) {
-            System.err.println(e.getMessage());
         }
+        return inputs;
     }
 
-    private void setUpStepStatistic(Map<RequestKey, RequestStats> stats, InMemoryEventBus bus) {
-        bus.subscribe(RQ_TOPIC, new Consumer<>() {
-            final Map<Integer, RequestStats> allStats = new LinkedHashMap<>();
-            final Map<Integer, RequestStats> staticStats = new LinkedHashMap<>();
-            final Map<Integer, RequestStats> dynamicStats = new LinkedHashMap<>();
-            final int currentStep = step;
-            final int lastIndex = lastRequestIndex;
+    private static int indexOfGlob(String pattern) {
+        for (var i = 0; i < pattern.length(); i++) {
+            if ("*?[{".indexOf(pattern.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-            @Override
-            public void accept(Object it) {
-                var rq = (Request) it;
-                var index = rq.requestIndex() - 1;
-                if (lastIndex != -1 && index > lastIndex) return;
+    /**
+     * Follow mode parses a single growing file sequentially on the calling thread,
+     * so options of other reading modes are rejected instead of being silently ignored.
+     */
+    private void checkFollowOptions() {
+        if (follow && (requestCache || mapped || threads > 1 || async)) {
+            throw new IllegalArgumentException("Request cache, mapped parsing, parsing threads and async collection are not supported in follow mode");
+        }
+    }
 
-                var batch = index / currentStep;
-                var threshold = (batch + 1) * currentStep;
+    private TimeRange parseTimeRange() {
+        if (fromTime == null && toTime == null) {
+            return TimeRange.ALL;
+        }
+        if (follow || requestCache) {
+            throw new IllegalArgumentException("Time range is not supported in follow mode and with request cache");
+        }
+        return new TimeRange(
+                fromTime == null ? Long.MIN_VALUE : parseTime(fromTime),
+                toTime == null ? Long.MAX_VALUE : parseTime(toTime)
+        );
+    }
 
-                if (collectAll) {
-                    var allStats = this.allStats.computeIfAbsent(
-                            batch,
-                            b -> getRequestStats("ALL_%d", threshold, b, stats, RequestKind.ALL)
-                    );
-                    allStats.addRequest(rq);
-                }
+    /**
+     * @return expected interval in fixed-point units, 0 to derive it from request timestamps, -1 if not set
+     */
+    private long parseExpectedInterval() {
+        if (expectedInterval == null) {
+            return -1;
+        }
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("Expected interval is not supported with sample rate");
+        }
+        if ("auto".equalsIgnoreCase(expectedInterval)) {
+            return 0;
+        }
+        var interval = Latency.fromMillis(new BigDecimal(expectedInterval));
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Expected interval should be positive, got: " + expectedInterval);
+        }
+        return interval;
+    }
 
-                if (collectStatic && rq.key().requestKind() == RequestKind.STATIC) {
-                    var requestStats = staticStats.computeIfAbsent(
-                            batch,
-                            b -> getRequestStats("STATIC_%d", threshold, b, stats, RequestKind.STATIC)
-                    );
-                    requestStats.addRequest(rq);
+    private LineSampler parseSampler() {
+        var lineSampler = LineSampler.of(sampleRate);
+        if (!lineSampler.isAll() && (follow || requestCache || aggregateOutput != null || summaryOutput != null)) {
+            throw new IllegalArgumentException("Sample rate is not supported in follow mode, with request cache, aggregate and summary output");
+        }
+        return lineSampler;
+    }
+
+    /**
+     * Parse epoch milliseconds, ISO instant or ISO local date-time in system time zone.
+     */
+    private static long parseTime(String time) {
+        if (time.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(time);
+        }
+        try {
+            return Instant.parse(time).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.parse(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+    }
+
+    /**
+     * Log reading progress periodically.
+     *
+     * @return progress logging executor, should be shut down after parsing
+     */
+    private ScheduledExecutorService logProgress() {
+        var executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "metrics-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> {
+            var seconds = Math.max(1, parseMetrics.getElapsedNanos()) / 1_000_000_000.0;
+            var lines = parseMetrics.getLinesRead();
+            var megabytes = parseMetrics.getBytesRead() / (1024.0 * 1024.0);
+            log.info("Read {} lines, {} requests, {} skipped, {} MB: {} lines/sec, {} MB/sec",
+                    lines, parseMetrics.getLinesMatched(), parseMetrics.getLinesSkipped(),
+                    "%.2f".formatted(megabytes), "%.0f".formatted(lines / seconds), "%.2f".formatted(megabytes / seconds));
+        }, metricsInterval, metricsInterval, TimeUnit.SECONDS);
+        return executor;
+    }
+
+    @Override
+    public Integer call() {
+        log.info("Starting request stats collector");
+        var metricsEnabled = metricsReport || metricsInterval > 0;
+        var phases = new PhaseMetrics(metricsEnabled);
+        ScheduledExecutorService progress = null;
+        ExecutorService reportExecutor = null;
+        SpillStore spillStore = null;
+
+        try {
+            if (files == null || files.isEmpty()) {
+                throw new IllegalArgumentException("Missing required option: --file");
+            }
+            checkFollowOptions();
+            Supplier<LatencyRecorder> recorders = () -> percentileEngine.createRecorder(percentileAccuracy);
+            if (spillBudget > 0) {
+                if (percentileEngine != PercentileEngine.EXACT) {
+                    throw new IllegalArgumentException("Spill budget is supported by EXACT percentile engine only");
+                }
+                var directory = Path.of(spillDirectory == null ? System.getProperty("java.io.tmpdir") : spillDirectory);
+                var store = new SpillStore(directory, spillBudget * 1024L * 1024L);
+                spillStore = store;
+                recorders = () -> new SpillingLatencyRecorder(store);
+            }
+            if (reservoirSize > 0) {
+                if (spillBudget > 0) {
+                    throw new IllegalArgumentException("Reservoir size is not supported with spill budget");
                 }
+                recorders = () -> new ReservoirLatencyRecorder(reservoirSize);
+            }
+            var correctionInterval = parseExpectedInterval();
+            if (correctionInterval >= 0) {
+                var delegates = recorders;
+                recorders = () -> new CoordinatedOmissionRecorder(delegates.get(), percentileAccuracy);
+            }
+            endpointNormalizer = new EndpointNormalizer(endpointRules);
+            classifier = classificationRules == null
+                    ? RequestClassifier.defaults()
+                    : RequestClassifier.load(Path.of(classificationRules));
+            var inputs = expandInputs(files);
+            timeRange = parseTimeRange();
+            sampler = parseSampler();
+            if (metricsEnabled) {
+                parseMetrics = new ParseMetrics();
+                subscriberTimes = new SubscriberTimes();
+            }
+            if (metricsInterval > 0) {
+                progress = logProgress();
+            }
+            phases.begin("parse");
+            RequestStatsCollector collector;
+            Map<String, RequestStatsCollector> nodes;
+            if (follow) {
+                if (inputs.size() != 1) {
+                    throw new IllegalArgumentException("Follow mode supports a single log file");
+                }
+                var file = inputs.get(0).toString();
+                if (Compression.detect(Path.of(file)) != Compression.NONE) {
+                    throw new IllegalArgumentException("Follow mode does not support compressed log");
+                }
+                var bus = new TypedEventBus(busBatchSize);
+                collector = setUpCollector(() -> bus, recorders);
+                var idleTimeout = followIdleTimeout < 0 ? null : Duration.ofSeconds(followIdleTimeout);
+                var follower = new LogFollower(bus, FOLLOW_POLL_INTERVAL, idleTimeout, getParseOptions());
+                var printer = new ConsoleReportPrinter(percentiles);
+                follower.follow(file, lastRequestIndex, Duration.ofSeconds(refreshInterval),
+                        () -> printer.refreshRequestStats(collector.getStats()));
+                nodes = Map.of(nodeName == null ? file : nodeName, collector);
+                phases.begin("aggregate");
+            } else {
+                nodes = collectNodes(inputs, recorders);
+                phases.begin("aggregate");
+                if (nodes.size() == 1) {
+                    collector = nodes.values().iterator().next();
+                } else {
+                    collector = setUpCollector(() -> new TypedEventBus(busBatchSize), recorders);
+                    for (var node : nodes.values()) {
+                        collector.merge(node);
+                    }
+                }
+            }
+            if (progress != null) {
+                progress.shutdownNow();
+            }
+            log.info("Request stats collected");
+            if (aggregateOutput != null) {
+                AggregateFile.write(Path.of(aggregateOutput), nodes);
+                log.info("Aggregate of {} nodes saved to {}", nodes.size(), aggregateOutput);
+            }
+            var stats = collector.getStats();
+            var timeline = collector.getTimeline();
+            if (timeline != null && timeline.getSkipped() > 0) {
+                log.warn("{} requests are out of timeline span of {} buckets and are not in timeline",
+                        timeline.getSkipped(), timeline.size());
+            }
+            var nodeStats = new LinkedHashMap<String, Map<RequestKey, RequestStats>>();
+            if (nodes.size() > 1) {
+                nodes.forEach((node, nodeCollector) -> nodeStats.put(node, nodeCollector.getStats()));
+            }
 
-                if (collectDynamic && rq.key().requestKind() == RequestKind.DYNAMIC) {
-                    var requestStats = dynamicStats.computeIfAbsent(
-                            batch,
-                            b -> getRequestStats("DYNAMIC_%d", threshold, b, stats, RequestKind.DYNAMIC)
-                    );
-                    requestStats.addRequest(rq);
+            var endpointStats = collector.getEndpointStats();
+            phases.begin("report snapshot");
+            reportExecutor = Executors.newWorkStealingPool(
+                    reportThreads > 0 ? reportThreads : Runtime.getRuntime().availableProcessors()
+            );
+            var snapshot = ReportSnapshot.compute(stats, endpointStats, nodeStats, timeline,
+                    collector.getTimeWindows(), percentiles, sampler.getRate(), correctionInterval, reportExecutor);
+            if (summaryOutput != null) {
+                SummaryFile.write(Path.of(summaryOutput), snapshot);
+                log.info("Request stats summary saved to {}", summaryOutput);
+            }
+
+            phases.begin("render");
+            Future<?> excel = null;
+            if (saveExcel) {
+                var writer = new ExcelWriter(percentiles, excelStreaming ? excelRowWindow : -1);
+                var filename = "output-%d.xlsx".formatted(System.currentTimeMillis());
+                excel = reportExecutor.submit(() -> {
+                    writer.write(snapshot, filename);
+                    return null;
+                });
+            }
+            var consoleReportPrinter = new ConsoleReportPrinter(percentiles);
+            consoleReportPrinter.printReport(snapshot);
+            if (printTimeline && snapshot.getTimeline() != null) {
+                consoleReportPrinter.printTimeline(snapshot.getTimeline());
+            }
+            if (excel != null) {
+                await(excel);
+                log.info("Request stats saved");
+            }
+            phases.end();
+            if (metricsEnabled) {
+                var parseNanos = phases.getPhases().get(0).wallNanos();
+                consoleReportPrinter.printMetrics(parseMetrics, parseNanos, subscriberTimes, phases.getPhases());
+            }
+            return CompareCommand.OK;
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            return CompareCommand.FAILED;
+        } finally {
+            if (progress != null) {
+                progress.shutdownNow();
+            }
+            if (reportExecutor != null) {
+                reportExecutor.shutdownNow();
+            }
+            if (spillStore != null) {
+                try {
+                    spillStore.close();
+                } catch (IOException e) {
+                    log.warn("Can not delete spilled samples", e);
                 }
             }
-        });
+        }
     }
 
-    private RequestStats getRequestStats(
-            String keyFormat,
-            int threshold,
-            Integer batch,
-            Map<RequestKey, RequestStats> stats,
-            RequestKind requestKind
-    ) {
-        var key = new RequestKey(keyFormat.formatted(threshold), requestKind);
-        var requestStats = createRequestStats(keyFormat, threshold, batch, stats, requestKind);
-        stats.put(key, requestStats);
-        return requestStats;
-    }
-
-    private RequestStats createRequestStats(
-            String keyFormat,
-            int threshold,
-            Integer batch,
-            Map<RequestKey, RequestStats> stats,
-            RequestKind requestKind
-    ) {
-        if (batch == 0) {
-            return new RequestStats();
-        }
-        var parentKey = new RequestKey(keyFormat.formatted(threshold - step), requestKind);
-        var parentStats = stats.get(parentKey);
-        return parentStats.copy();
+    @FunctionalInterface
+    private interface ChunkSource {
+        /**
+         * Publish requests by chunks.
+         *
+         * @param publishers chunk publisher factory, called sequentially in chunk order
+         * @throws IOException on reading error
+         */
+        void publish(Supplier<? extends EventPublisher> publishers) throws IOException;
     }
 }
@@ -0,0 +1,50 @@
+package com.github.sibmaks;
+
+import com.github.sibmaks.report.RunComparison;
+import com.github.sibmaks.report.SummaryFile;
+import com.github.sibmaks.service.ConsoleReportPrinter;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+/**
+ * Compare request statistic summaries of a candidate run with a baseline run.
+ * Exit code is {@value #OK} without regressions, {@value #REGRESSED} with regressions
+ * and {@value #FAILED} if summaries can not be read or the command fails.
+ */
+@CommandLine.Command(name = "compare", description = "Compare summaries written by --summary-output, exit code is 1 on regression, 2 on error")
+public class CompareCommand implements Callable<Integer> {
+    static final int OK = 0;
+    static final int REGRESSED = 1;
+    static final int FAILED = 2;
+
+    @CommandLine.Parameters(index = "0", description = "Baseline summary file")
+    private Path baseline;
+    @CommandLine.Parameters(index = "1", description = "Candidate summary file")
+    private Path candidate;
+    @CommandLine.Option(names = {"-at", "--average-threshold"}, description = "Allowed growth of average latency in percents, negative to skip", defaultValue = "5")
+    private double averageThreshold;
+    @CommandLine.Option(names = {"-pt", "--percentile-threshold"}, description = "Allowed growth of every percentile in percents, negative to skip", defaultValue = "5")
+    private double percentileThreshold;
+    @CommandLine.Option(names = {"-mt", "--max-threshold"}, description = "Allowed growth of max latency in percents, negative to skip", defaultValue = "-1")
+    private double maxThreshold;
+    @CommandLine.Option(names = {"-rt", "--rps-threshold"}, description = "Allowed drop of requests per second in percents, negative to skip", defaultValue = "-1")
+    private double rpsThreshold;
+
+    @Override
+    public Integer call() {
+        try {
+            var base = SummaryFile.read(baseline);
+            var other = SummaryFile.read(candidate);
+            var thresholds = new RunComparison.Thresholds(averageThreshold, percentileThreshold, maxThreshold, rpsThreshold);
+            var deltas = RunComparison.compare(base, other, thresholds);
+            new ConsoleReportPrinter(other.getPercentiles()).printComparison(deltas);
+            return RunComparison.hasRegressions(deltas) ? REGRESSED : OK;
+        } catch (IOException e) {
+            System.err.println("Can not read summary: " + e.getMessage());
+            return FAILED;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.github.sibmaks;
+
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.service.EndpointNormalizer;
+import com.github.sibmaks.stats.LatencyRecorder;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Request statistic by endpoint: request method and normalized path template.
+ * <p>
+ * Endpoint names are interned into a dictionary of integer ids, statistics are stored in an array indexed by id.
+ * Amount of tracked endpoints is bounded: when it reaches twice the limit (at least limit plus {@value #MIN_SLACK}),
+ * only the most requested half is kept and the rest are merged into {@link #OTHER} statistic,
+ * ids of evicted endpoints are reused. Only the limit of the most requested endpoints is reported.
+ * Evicted endpoint which appears again is tracked from scratch, so counts of rare endpoints are lower bounds.
+ * Not thread-safe.
+ */
+public final class EndpointStats {
+    public static final String OTHER = "OTHER";
+    private static final int MAX_CACHED_TEMPLATES = 1 << 16;
+    private static final int MIN_SLACK = 4096;
+
+    private final EndpointNormalizer normalizer;
+    private final Supplier<LatencyRecorder> recorders;
+    private final int limit;
+    private final Map<String, String> templates = new HashMap<>();
+    private final Map<String, Map<String, Integer>> ids = new HashMap<>();
+    private String[] methods;
+    private String[] paths;
+    private RequestStats[] stats;
+    private int[] freeIds;
+    private int freeSize;
+    private int nextId;
+    private int size;
+    private RequestStats other;
+
+    /**
+     * @param normalizer URI normalizer
+     * @param recorders  latency recorder factory
+     * @param limit      amount of reported endpoints
+     */
+    public EndpointStats(EndpointNormalizer normalizer, Supplier<LatencyRecorder> recorders, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Endpoint limit should be positive, got: " + limit);
+        }
+        this.normalizer = normalizer;
+        this.recorders = recorders;
+        this.limit = limit;
+        var capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(2L * limit, (long) limit + MIN_SLACK));
+        this.methods = new String[capacity];
+        this.paths = new String[capacity];
+        this.stats = new RequestStats[capacity];
+        this.freeIds = new int[capacity];
+    }
+
+    public void addRequest(Request rq) {
+        var template = templates.get(rq.uri());
+        if (template == null) {
+            if (templates.size() >= MAX_CACHED_TEMPLATES) {
+                templates.clear();
+            }
+            template = normalizer.normalize(rq.uri());
+            templates.put(rq.uri(), template);
+        }
+        stats[id(rq.key().kind(), template)].addRequest(rq);
+    }
+
+    /**
+     * Add endpoints of other statistic, other statistic should not be used afterward.
+     *
+     * @param other statistic collected with the same normalizer
+     */
+    public void merge(EndpointStats other) {
+        for (var i = 0; i < other.nextId; i++) {
+            if (other.stats[i] != null) {
+                stats[id(other.methods[i], other.paths[i])].merge(other.stats[i]);
+            }
+        }
+        if (other.other != null) {
+            getOther().merge(other.other);
+        }
+    }
+
+    /**
+     * Create empty statistic with the same normalizer and limit.
+     *
+     * @return empty statistic
+     */
+    EndpointStats emptyCopy() {
+        return new EndpointStats(normalizer, recorders, limit);
+    }
+
+    /**
+     * Write tracked endpoints.
+     *
+     * @param output target output
+     * @throws IOException on writing error
+     */
+    public void write(DataOutput output) throws IOException {
+        output.writeInt(limit);
+        var live = liveIds();
+        output.writeInt(live.size());
+        for (var id : live) {
+            output.writeUTF(methods[id]);
+            output.writeUTF(paths[id]);
+            stats[id].write(output);
+        }
+        output.writeBoolean(other != null);
+        if (other != null) {
+            other.write(output);
+        }
+    }
+
+    /**
+     * Read statistic written by {@link #write(DataOutput)}. Read statistic has no normalizer,
+     * it can be merged and reported, but requests can not be added to it.
+     *
+     * @param input     source input
+     * @param recorders latency recorder factory of the same type and configuration as the written one
+     * @return read statistic
+     * @throws IOException on reading error
+     */
+    public static EndpointStats read(DataInput input, Supplier<LatencyRecorder> recorders) throws IOException {
+        var limit = input.readInt();
+        if (limit < 1) {
+            throw new IOException("Invalid endpoint limit: " + limit);
+        }
+        var endpointStats = new EndpointStats(null, recorders, limit);
+        var endpoints = input.readInt();
+        for (var i = 0; i < endpoints; i++) {
+            var method = input.readUTF();
+            var path = input.readUTF();
+            // written endpoints are distinct, so every id is a new one
+            endpointStats.stats[endpointStats.id(method, path)] = RequestStats.read(input, recorders.get());
+        }
+        if (input.readBoolean()) {
+            endpointStats.other = RequestStats.read(input, recorders.get());
+        }
+        return endpointStats;
+    }
+
+    /**
+     * Get statistics of the most requested endpoints, other endpoints are reported as {@link #OTHER}.
+     *
+     * @return statistics by endpoint name sorted by requests amount
+     */
+    public Map<String, RequestStats> getStats() {
+        compact(limit);
+        var result = new LinkedHashMap<String, RequestStats>();
+        for (var id : liveIds()) {
+            result.put(methods[id] + " " + paths[id], stats[id]);
+        }
+        if (other != null) {
+            result.put(OTHER, other);
+        }
+        return result;
+    }
+
+    private int id(String method, String path) {
+        var methodIds = ids.computeIfAbsent(method, it -> new HashMap<>());
+        var id = methodIds.get(path);
+        if (id != null) {
+            return id;
+        }
+        if (size == stats.length) {
+            compact(stats.length / 2);
+            // method map could be removed by compaction
+            methodIds = ids.computeIfAbsent(method, it -> new HashMap<>());
+        }
+        id = freeSize > 0 ? freeIds[--freeSize] : nextId++;
+        methods[id] = method;
+        paths[id] = path;
+        stats[id] = new RequestStats(recorders.get());
+        methodIds.put(path, id);
+        size++;
+        return id;
+    }
+
+    /**
+     * Keep only the most requested endpoints, the rest are merged into other statistic.
+     */
+    private void compact(int keep) {
+        var live = liveIds();
+        for (var i = keep; i < live.size(); i++) {
+            var id = live.get(i);
+            getOther().merge(stats[id]);
+            var methodIds = ids.get(methods[id]);
+            methodIds.remove(paths[id]);
+            if (methodIds.isEmpty()) {
+                ids.remove(methods[id]);
+            }
+            methods[id] = null;
+            paths[id] = null;
+            stats[id] = null;
+            freeIds[freeSize++] = id;
+            size--;
+        }
+    }
+
+    /**
+     * @return ids of tracked endpoints sorted by requests amount descending
+     */
+    private List<Integer> liveIds() {
+        var live = new ArrayList<Integer>(size);
+        for (var i = 0; i < nextId; i++) {
+            if (stats[i] != null) {
+                live.add(i);
+            }
+        }
+        live.sort(Comparator.comparingLong((Integer id) -> stats[id].getCount()).reversed()
+                .thenComparing(id -> methods[id])
+                .thenComparing(id -> paths[id]));
+        return live;
+    }
+
+    private RequestStats getOther() {
+        if (other == null) {
+            other = new RequestStats(recorders.get());
+        }
+        return other;
+    }
+}
@@ -1,67 +1,222 @@
 package com.github.sibmaks;
 
 import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.stats.CoordinatedOmissionRecorder;
+import com.github.sibmaks.stats.ExactLatencyRecorder;
+import com.github.sibmaks.stats.Latency;
+import com.github.sibmaks.stats.LatencyMoments;
+import com.github.sibmaks.stats.LatencyRecorder;
+import com.github.sibmaks.stats.SketchLatencyRecorder;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Request statistic.
+ * <p>
+ * Statistic may be cumulative: in that case it stores only requests added to itself and
+ * reports values over own requests and all requests of the previous statistic.
+ * Moments of the previous statistics are captured when linked, so all getters except percentiles are O(1).
+ */
 public class RequestStats implements Cloneable {
-    private final List<BigDecimal> values;
+    private static final double SQUARED_UNITS_PER_MILLI = (double) Latency.UNITS_PER_MILLI * Latency.UNITS_PER_MILLI;
+    /**
+     * Standard normal quantile of 95% two-sided confidence level.
+     */
+    private static final double CONFIDENCE_Z = 1.959964;
 
-    private BigDecimal totalTime = BigDecimal.ZERO;
+    private final LatencyRecorder recorder;
+    private RequestStats previous;
+    private LatencyMoments previousMoments;
+    private long previousMinTimestamp = Long.MAX_VALUE;
+    private long previousMaxTimestamp = Long.MIN_VALUE;
+    /**
+     * Own and previous moments, null if not computed yet or changed since computation.
+     */
+    private LatencyMoments cumulativeMoments;
+    /**
+     * Own recorder followed by recorders of previous statistics, linked once in {@link #setPrevious(RequestStats)}.
+     */
+    private LatencyRecorder[] chain;
+    /**
+     * Values found by rank over the chain, null if not created yet or changed since creation.
+     */
+    private Map<Long, Long> cumulativeRanks;
+
+    private LatencyMoments moments = new LatencyMoments();
     private long minTimestamp = Long.MAX_VALUE;
     private long maxTimestamp = Long.MIN_VALUE;
 
     public RequestStats() {
-        this.values = new ArrayList<>();
+        this(new ExactLatencyRecorder());
+    }
+
+    public RequestStats(LatencyRecorder recorder) {
+        this.recorder = recorder;
+        this.chain = new LatencyRecorder[]{recorder};
     }
 
-    private RequestStats(List<BigDecimal> values) {
-        this.values = new ArrayList<>(values);
+    /**
+     * Make statistic cumulative: reported values include all requests of previous statistic.
+     * Moments of the previous statistic are captured, so it should be linked again after it was changed.
+     *
+     * @param previous previous statistic, may be null
+     */
+    void setPrevious(RequestStats previous) {
+        this.previous = previous;
+        this.cumulativeMoments = null;
+        this.cumulativeRanks = null;
+        if (previous == null) {
+            chain = new LatencyRecorder[]{recorder};
+            previousMoments = null;
+            previousMinTimestamp = Long.MAX_VALUE;
+            previousMaxTimestamp = Long.MIN_VALUE;
+            return;
+        }
+        // previous statistic is linked before, so its chain already covers all earlier steps
+        chain = new LatencyRecorder[previous.chain.length + 1];
+        chain[0] = recorder;
+        System.arraycopy(previous.chain, 0, chain, 1, previous.chain.length);
+        previousMoments = previous.getMoments().copy();
+        previousMinTimestamp = Math.min(previous.previousMinTimestamp, previous.minTimestamp);
+        previousMaxTimestamp = Math.max(previous.previousMaxTimestamp, previous.maxTimestamp);
     }
 
     public void addRequest(Request rq) {
-        var time = rq.time().setScale(12, RoundingMode.HALF_UP);
-        totalTime = totalTime.add(time);
-        values.add(time);
+        var time = rq.time();
+        moments.add(time);
+        recorder.record(time);
+        cumulativeMoments = null;
+        cumulativeRanks = null;
 
         minTimestamp = Math.min(minTimestamp, rq.timestamp());
         maxTimestamp = Math.max(maxTimestamp, rq.timestamp());
     }
 
-    public int getCount() {
-        return values.size();
+    /**
+     * Add requests stored by other statistic itself, requests of its previous statistics are ignored.
+     *
+     * @param other statistic with the same latency recorder type
+     */
+    public void merge(RequestStats other) {
+        moments.merge(other.moments);
+        recorder.merge(other.recorder);
+        cumulativeMoments = null;
+        cumulativeRanks = null;
+
+        minTimestamp = Math.min(minTimestamp, other.minTimestamp);
+        maxTimestamp = Math.max(maxTimestamp, other.maxTimestamp);
+    }
+
+    /**
+     * Write requests stored by statistic itself, requests of its previous statistics are not written.
+     *
+     * @param output target output
+     * @throws IOException on writing error
+     */
+    public void write(DataOutput output) throws IOException {
+        output.writeLong(moments.getCount());
+        output.writeLong(moments.getTotal());
+        output.writeDouble(moments.getM2());
+        output.writeLong(moments.getMin());
+        output.writeLong(moments.getMax());
+        output.writeLong(minTimestamp);
+        output.writeLong(maxTimestamp);
+        recorder.write(output);
+    }
+
+    /**
+     * Read statistic written by {@link #write(DataOutput)}.
+     *
+     * @param input    source input
+     * @param recorder empty recorder of the same type and configuration as the written one
+     * @return read statistic
+     * @throws IOException on reading error
+     */
+    public static RequestStats read(DataInput input, LatencyRecorder recorder) throws IOException {
+        var stats = new RequestStats(recorder);
+        var count = input.readLong();
+        var total = input.readLong();
+        var m2 = input.readDouble();
+        var min = input.readLong();
+        var max = input.readLong();
+        stats.moments = LatencyMoments.of(count, total, m2, min, max);
+        stats.minTimestamp = input.readLong();
+        stats.maxTimestamp = input.readLong();
+        recorder.read(input);
+        return stats;
+    }
+
+    /**
+     * Prepare own recorder and cached values for concurrent reading.
+     * Queries of prepared statistic do not modify it until the next added request or relinking,
+     * so prepared statistics of a chain can be read by many threads.
+     */
+    public void prepareQueries() {
+        recorder.prepareQueries();
+        getMoments();
+        if (previous != null && cumulativeRanks == null) {
+            cumulativeRanks = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * @return moments of own requests and requests of previous statistics
+     */
+    private LatencyMoments getMoments() {
+        if (previousMoments == null) {
+            return moments;
+        }
+        var cumulative = cumulativeMoments;
+        if (cumulative == null) {
+            cumulative = previousMoments.copy().merge(moments);
+            cumulativeMoments = cumulative;
+        }
+        return cumulative;
+    }
+
+    public long getCount() {
+        return getMoments().getCount();
     }
 
     public BigDecimal getTotalTime() {
-        return totalTime;
+        return Latency.toMillis(getTotal());
     }
 
-    public BigDecimal getAverageTime() {
-        var n = values.size();
-        if (n < 2) return BigDecimal.ZERO;
+    /**
+     * @return latency sum in fixed-point units
+     */
+    long getTotal() {
+        return getMoments().getTotal();
+    }
 
-        return totalTime.divide(BigDecimal.valueOf(n), RoundingMode.HALF_DOWN);
+    /**
+     * @return recorder of own requests
+     */
+    LatencyRecorder getRecorder() {
+        return recorder;
     }
 
-    public BigDecimal getVariance() {
-        var n = values.size();
+    public BigDecimal getAverageTime() {
+        var n = getCount();
         if (n < 2) return BigDecimal.ZERO;
 
-        var sum = BigDecimal.ZERO;
-        var sumSq = BigDecimal.ZERO;
+        return getTotalTime().divide(BigDecimal.valueOf(n), RoundingMode.HALF_DOWN);
+    }
 
-        for (var x : values) {
-            sum = sum.add(x);
-            sumSq = sumSq.add(x.pow(2));
-        }
+    /**
+     * @return population variance of latency in squared milliseconds
+     */
+    public BigDecimal getVariance() {
+        var moments = getMoments();
+        if (moments.getCount() < 2) return BigDecimal.ZERO;
 
-        var mean = sum.divide(BigDecimal.valueOf(n), RoundingMode.HALF_DOWN);
-        return sumSq.divide(BigDecimal.valueOf(n), RoundingMode.HALF_DOWN)
-                .subtract(mean.pow(2));
+        return BigDecimal.valueOf(moments.getVariance() / SQUARED_UNITS_PER_MILLI);
     }
 
     public BigDecimal getPercentile90() {
@@ -76,53 +231,210 @@ public class RequestStats implements Cloneable {
         return getPercentile(0.99);
     }
 
-    private BigDecimal getPercentile(double x) {
-        var n = values.size();
+    /**
+     * Get latency percentile.
+     *
+     * @param x percentile as a fraction, e.g. 0.999 for P99.9
+     * @return latency in milliseconds
+     */
+    public BigDecimal getPercentile(double x) {
+        var n = getCount();
         if (n == 0) {
             return BigDecimal.ZERO;
         }
 
-        var sorted = new ArrayList<>(values);
-        Collections.sort(sorted);
-        var index = (int) Math.ceil(x * n) - 1;
-        index = Math.min(index, n - 1);
+        return Latency.toMillis(getValueAtIndex(getPercentileIndex(x, n)));
+    }
 
-        return sorted.get(index);
+    /**
+     * Get zero based rank of percentile value: {@code ceil(x * n) - 1} computed in double arithmetic,
+     * as percentiles were always reported, e.g. P7 of 100 values is the 8th value as {@code 0.07 * 100 > 7}.
+     *
+     * @param x percentile as a fraction, e.g. 0.999 for P99.9
+     * @param n amount of values, positive
+     * @return rank in range {@code [0, n)}
+     */
+    public static long getPercentileIndex(double x, long n) {
+        return Math.max(0, Math.min((long) Math.ceil(x * n) - 1, n - 1));
+    }
+
+    /**
+     * Get lower bound of 95% confidence interval of latency percentile, recorded requests are treated
+     * as a uniform sample of all requests.
+     *
+     * @param x percentile as a fraction, e.g. 0.999 for P99.9
+     * @return latency in milliseconds
+     * @see #getPercentileUpperBound(double)
+     */
+    public BigDecimal getPercentileLowerBound(double x) {
+        return getPercentileBound(x, -CONFIDENCE_Z);
+    }
+
+    /**
+     * Get upper bound of 95% confidence interval of latency percentile, recorded requests are treated
+     * as a uniform sample of all requests.
+     * <p>
+     * Interval is distribution-free: bounds are order statistics of the sample with ranks
+     * {@code m * x -+ z * sqrt(m * x * (1 - x))}, where {@code m} is amount of kept latencies,
+     * see {@link #getSampleSize()}.
+     *
+     * @param x percentile as a fraction, e.g. 0.999 for P99.9
+     * @return latency in milliseconds
+     */
+    public BigDecimal getPercentileUpperBound(double x) {
+        return getPercentileBound(x, CONFIDENCE_Z);
+    }
+
+    private BigDecimal getPercentileBound(double x, double z) {
+        var n = getCount();
+        var m = getSampleSize();
+        if (n == 0 || m == 0) {
+            return BigDecimal.ZERO;
+        }
+        var sampleRank = (long) Math.ceil(m * x + z * Math.sqrt(m * x * (1 - x)));
+        sampleRank = Math.max(1, Math.min(m, sampleRank));
+        // rank of the sample value over all recorded values
+        var index = (long) Math.ceil((double) sampleRank * n / m) - 1;
+        return Latency.toMillis(getValueAtIndex(Math.max(0, Math.min(index, n - 1))));
+    }
+
+    private long getValueAtIndex(long index) {
+        if (previous == null) {
+            return recorder.getValueAtRank(index);
+        }
+        return getCumulativeValueAtRank(index);
+    }
+
+    /**
+     * @return amount of kept latencies of own requests and requests of previous statistics
+     */
+    public long getSampleSize() {
+        var size = 0L;
+        for (var it : chain) {
+            size += it.getSampleSize();
+        }
+        return size;
+    }
+
+    /**
+     * Find value with passed rank over all statistics in the chain without merging recorders:
+     * binary search of the smallest value having more than {@code index} values at or below it.
+     * Found values are kept until the statistic is changed, as reports query the same ranks repeatedly.
+     */
+    private long getCumulativeValueAtRank(long index) {
+        var ranks = cumulativeRanks;
+        if (ranks == null) {
+            ranks = new ConcurrentHashMap<>();
+            cumulativeRanks = ranks;
+        }
+        var cached = ranks.get(index);
+        if (cached != null) {
+            return cached;
+        }
+        var value = findCumulativeValueAtRank(index);
+        ranks.put(index, value);
+        return value;
+    }
+
+    private long findCumulativeValueAtRank(long index) {
+        var min = getMinTime();
+        var max = getMaxTime();
+        var low = min;
+        var high = max;
+        while (low < high) {
+            var mid = low + (high - low) / 2;
+            var count = 0L;
+            for (var it : chain) {
+                count += it.countAtOrBelow(mid);
+            }
+            if (count > index) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return Math.max(min, Math.min(max, recorder.getEquivalentValue(low)));
+    }
+
+    /**
+     * @return min latency in fixed-point units, {@link Long#MAX_VALUE} if there are no requests
+     */
+    long getMinTime() {
+        return getMoments().getMin();
+    }
+
+    /**
+     * @return max latency in fixed-point units, {@link Long#MIN_VALUE} if there are no requests
+     */
+    long getMaxTime() {
+        return getMoments().getMax();
     }
 
     public BigDecimal getMin() {
-        var n = values.size();
+        var n = getCount();
         if (n == 0) {
             return BigDecimal.ZERO;
         }
-        return values.stream()
-                .min(BigDecimal::compareTo)
-                .orElse(BigDecimal.ZERO);
+        return Latency.toMillis(getMinTime());
     }
 
     public BigDecimal getMax() {
-        var n = values.size();
+        var n = getCount();
         if (n == 0) {
             return BigDecimal.ZERO;
         }
-        return values.stream()
-                .max(BigDecimal::compareTo)
-                .orElse(BigDecimal.ZERO);
+        return Latency.toMillis(getMaxTime());
     }
 
     public long getRPS() {
-        var n = values.size();
+        var n = getCount();
         if (n == 0) {
             return 0;
         }
-        return 1000L * n / (maxTimestamp - minTimestamp);
+        return 1000L * n / getDurationMillis();
+    }
+
+    /**
+     * @return mean interval between request timestamps in fixed-point units, 0 if there are less than 2 requests
+     */
+    public long getObservedInterval() {
+        var n = getCount();
+        if (n < 2) {
+            return 0;
+        }
+        return getDurationMillis() * Latency.UNITS_PER_MILLI / (n - 1);
+    }
+
+    /**
+     * Build latency histogram of own and previous requests corrected for coordinated omission.
+     *
+     * @param expectedInterval expected interval between requests in fixed-point units
+     * @return corrected histogram, null if any recorder of the chain does not keep histogram for correction
+     * @see CoordinatedOmissionRecorder
+     */
+    public LatencyRecorder getCorrectedRecorder(long expectedInterval) {
+        SketchLatencyRecorder corrected = null;
+        for (var it : chain) {
+            if (!(it instanceof CoordinatedOmissionRecorder omissionRecorder)) {
+                return null;
+            }
+            var own = omissionRecorder.getCorrected(expectedInterval);
+            if (corrected == null) {
+                corrected = own;
+            } else {
+                corrected.merge(own);
+            }
+        }
+        return corrected;
     }
 
-    public RequestStats copy() {
-        var copy = new RequestStats(values);
-        copy.totalTime = totalTime;
-        copy.minTimestamp = minTimestamp;
-        copy.maxTimestamp = maxTimestamp;
-        return copy;
+    /**
+     * @return milliseconds between the first and the last request timestamps, at least 1
+     */
+    public long getDurationMillis() {
+        var from = Math.min(previousMinTimestamp, minTimestamp);
+        var to = Math.max(previousMaxTimestamp, maxTimestamp);
+        // all requests may share the same millisecond
+        return Math.max(1, to - from);
     }
 }
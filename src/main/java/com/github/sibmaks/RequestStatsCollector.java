@@ -0,0 +1,370 @@
+package com.github.sibmaks;
+
+import com.github.sibmaks.bus.BatchConsumer;
+import com.github.sibmaks.bus.TypedEventBus;
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.metrics.SubscriberTimes;
+import com.github.sibmaks.service.EndpointNormalizer;
+import com.github.sibmaks.stats.LatencyRecorder;
+import com.github.sibmaks.stats.Timeline;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import static com.github.sibmaks.service.LogParser.REQUEST_TOPIC;
+
+/**
+ * Collects request statistics from the event bus.
+ * <p>
+ * Every statistic subscribes to the bus returned by bus factory, so statistics may be served by different threads.
+ * <p>
+ * Collectors filled from different parts of the same log can be merged, parts should be merged in log order.
+ * Collectors of different logs, e.g. written by different load generator nodes, can be merged too:
+ * statistics with the same key are combined, step statistics are combined step by step.
+ * Collected statistics can be written to a stream and read back on another machine to be merged there.
+ */
+public class RequestStatsCollector {
+    private final Supplier<TypedEventBus> buses;
+    private final Supplier<LatencyRecorder> recorders;
+    private final Map<RequestKey, RequestStats> stats = new LinkedHashMap<>();
+    private Timeline timeline;
+    private EndpointStats endpointStats;
+    private TimeWindows timeWindows;
+    private final List<StepStatistic> stepStatistics = new ArrayList<>();
+    private SubscriberTimes subscriberTimes;
+
+    /**
+     * @param buses     bus factory, called once per collected statistic
+     * @param recorders latency recorder factory
+     */
+    public RequestStatsCollector(Supplier<TypedEventBus> buses, Supplier<LatencyRecorder> recorders) {
+        this.buses = buses;
+        this.recorders = recorders;
+    }
+
+    /**
+     * Measure delivery time of statistics collected after this call.
+     *
+     * @param subscriberTimes subscriber times, may be shared by many collectors
+     */
+    public void timeSubscribers(SubscriberTimes subscriberTimes) {
+        this.subscriberTimes = subscriberTimes;
+    }
+
+    private void subscribe(String name, BatchConsumer<Request> subscriber) {
+        buses.get().subscribe(REQUEST_TOPIC, subscriberTimes == null ? subscriber : subscriberTimes.time(name, subscriber));
+    }
+
+    /**
+     * Collect request throughput timeline.
+     *
+     * @param resolution timeline bucket duration in milliseconds
+     */
+    public void collectTimeline(long resolution) {
+        var collectedTimeline = new Timeline(resolution);
+        timeline = collectedTimeline;
+        subscribe("timeline", batch -> {
+            for (var rq : batch) {
+                collectedTimeline.record(rq.timestamp(), rq.time());
+            }
+        });
+    }
+
+    /**
+     * Collect statistic by endpoint.
+     *
+     * @param normalizer URI normalizer
+     * @param limit      amount of reported endpoints
+     */
+    public void collectEndpoints(EndpointNormalizer normalizer, int limit) {
+        var collectedStats = new EndpointStats(normalizer, recorders, limit);
+        endpointStats = collectedStats;
+        subscribe("endpoints", batch -> {
+            for (var rq : batch) {
+                collectedStats.addRequest(rq);
+            }
+        });
+    }
+
+    /**
+     * Collect statistic of all requests over time windows.
+     *
+     * @param length window length in milliseconds
+     * @param slide  window slide in milliseconds, equal to length for tumbling windows
+     */
+    public void collectTimeWindows(long length, long slide) {
+        var collectedWindows = new TimeWindows(length, slide, recorders);
+        timeWindows = collectedWindows;
+        subscribe("time windows", batch -> {
+            for (var rq : batch) {
+                collectedWindows.addRequest(rq);
+            }
+        });
+    }
+
+    public void collectAll() {
+        var genericKey = new RequestKey("ALL", RequestKind.ALL);
+        var genericRequestStats = stats.computeIfAbsent(genericKey, it -> new RequestStats(recorders.get()));
+        subscribe(genericKey.kind(), batch -> {
+            for (var rq : batch) {
+                genericRequestStats.addRequest(rq);
+            }
+        });
+    }
+
+    public void collectSpecificType(String requestKey, RequestKind requestKind) {
+        var specificKey = new RequestKey(requestKey, requestKind);
+        var specificRequestStats = stats.computeIfAbsent(specificKey, it -> new RequestStats(recorders.get()));
+        subscribe(requestKey, batch -> {
+            for (var rq : batch) {
+                if (!requestKind.equals(rq.key().requestKind())) {
+                    continue;
+                }
+                specificRequestStats.addRequest(rq);
+            }
+        });
+    }
+
+    /**
+     * Collect cumulative statistic split by request index steps.
+     *
+     * @param keyFormat        step key format, formatted with step's last request index
+     * @param requestKind      kind of collected requests, {@link RequestKind#ALL} for all requests
+     * @param step             amount of requests in a step
+     * @param lastRequestIndex last collected request index, -1 for all requests
+     */
+    public void collectSteps(String keyFormat, RequestKind requestKind, int step, int lastRequestIndex) {
+        var stepStatistic = new StepStatistic(keyFormat, requestKind, step);
+        stepStatistics.add(stepStatistic);
+        subscribe(requestKind.name() + " steps", batch -> {
+            for (var rq : batch) {
+                var index = rq.requestIndex() - 1;
+                if (lastRequestIndex != -1 && index > lastRequestIndex) continue;
+                if (requestKind != RequestKind.ALL && !requestKind.equals(rq.key().requestKind())) continue;
+
+                stepStatistic.addRequest(index / step, rq);
+            }
+        });
+    }
+
+    /**
+     * Merge statistic collected from the following part of the log or from another log.
+     * Statistics collected by other collector only are added, other collector is not changed.
+     * Both collectors should use latency recorders of the same type and configuration.
+     *
+     * @param other collector of the following log part or another log
+     */
+    public void merge(RequestStatsCollector other) {
+        for (var entry : other.stats.entrySet()) {
+            stats.computeIfAbsent(entry.getKey(), it -> new RequestStats(recorders.get()))
+                    .merge(entry.getValue());
+        }
+        if (other.timeline != null) {
+            if (timeline == null) {
+                timeline = new Timeline(other.timeline.getResolution());
+            }
+            timeline.merge(other.timeline);
+        }
+        if (other.endpointStats != null) {
+            if (endpointStats == null) {
+                endpointStats = other.endpointStats.emptyCopy();
+            }
+            endpointStats.merge(other.endpointStats);
+        }
+        if (other.timeWindows != null) {
+            if (timeWindows == null) {
+                timeWindows = other.timeWindows.emptyCopy();
+            }
+            timeWindows.merge(other.timeWindows);
+        }
+        for (var otherStepStatistic : other.stepStatistics) {
+            getStepStatistic(otherStepStatistic.keyFormat, otherStepStatistic.requestKind, otherStepStatistic.step)
+                    .merge(otherStepStatistic);
+        }
+    }
+
+    private StepStatistic getStepStatistic(String keyFormat, RequestKind requestKind, int step) {
+        for (var stepStatistic : stepStatistics) {
+            if (stepStatistic.keyFormat.equals(keyFormat)
+                    && stepStatistic.requestKind.equals(requestKind)
+                    && stepStatistic.step == step) {
+                return stepStatistic;
+            }
+        }
+        var stepStatistic = new StepStatistic(keyFormat, requestKind, step);
+        stepStatistics.add(stepStatistic);
+        return stepStatistic;
+    }
+
+    /**
+     * Write collected statistics.
+     *
+     * @param output target output
+     * @throws IOException on writing error
+     */
+    public void write(DataOutput output) throws IOException {
+        output.writeInt(stats.size());
+        for (var entry : stats.entrySet()) {
+            output.writeUTF(entry.getKey().kind());
+            output.writeUTF(entry.getKey().requestKind().name());
+            entry.getValue().write(output);
+        }
+        output.writeInt(stepStatistics.size());
+        for (var stepStatistic : stepStatistics) {
+            output.writeUTF(stepStatistic.keyFormat);
+            output.writeUTF(stepStatistic.requestKind.name());
+            output.writeInt(stepStatistic.step);
+            output.writeInt(stepStatistic.steps.size());
+            for (var entry : stepStatistic.steps.entrySet()) {
+                output.writeInt(entry.getKey());
+                entry.getValue().write(output);
+            }
+        }
+        output.writeBoolean(timeline != null);
+        if (timeline != null) {
+            timeline.write(output);
+        }
+        output.writeBoolean(endpointStats != null);
+        if (endpointStats != null) {
+            endpointStats.write(output);
+        }
+        output.writeBoolean(timeWindows != null);
+        if (timeWindows != null) {
+            timeWindows.write(output);
+        }
+    }
+
+    /**
+     * Read statistics written by {@link #write(DataOutput)}.
+     * Read collector does not collect requests, it can be merged and reported only.
+     *
+     * @param input     source input
+     * @param recorders latency recorder factory of the same type and configuration as the written one
+     * @return read collector
+     * @throws IOException on reading error
+     */
+    public static RequestStatsCollector read(DataInput input, Supplier<LatencyRecorder> recorders) throws IOException {
+        var collector = new RequestStatsCollector(null, recorders);
+        var statsSize = input.readInt();
+        for (var i = 0; i < statsSize; i++) {
+            var key = new RequestKey(input.readUTF(), new RequestKind(input.readUTF()));
+            collector.stats.put(key, RequestStats.read(input, recorders.get()));
+        }
+        var stepStatisticsSize = input.readInt();
+        for (var i = 0; i < stepStatisticsSize; i++) {
+            var keyFormat = input.readUTF();
+            var requestKind = new RequestKind(input.readUTF());
+            var step = input.readInt();
+            if (step <= 0) {
+                throw new IOException("Invalid statistic step: " + step);
+            }
+            var stepStatistic = collector.getStepStatistic(keyFormat, requestKind, step);
+            var steps = input.readInt();
+            for (var j = 0; j < steps; j++) {
+                stepStatistic.steps.put(input.readInt(), RequestStats.read(input, recorders.get()));
+            }
+        }
+        if (input.readBoolean()) {
+            collector.timeline = Timeline.read(input);
+        }
+        if (input.readBoolean()) {
+            collector.endpointStats = EndpointStats.read(input, recorders);
+        }
+        if (input.readBoolean()) {
+            collector.timeWindows = TimeWindows.read(input, recorders);
+        }
+        return collector;
+    }
+
+    /**
+     * Get collected statistics, step statistics are linked into cumulative ones.
+     *
+     * @return statistics by request key
+     */
+    public Map<RequestKey, RequestStats> getStats() {
+        var result = new LinkedHashMap<>(stats);
+        for (var stepStatistic : stepStatistics) {
+            stepStatistic.publish(result);
+        }
+        return result;
+    }
+
+    /**
+     * @return statistics of the most requested endpoints, empty if they are not collected
+     */
+    public Map<String, RequestStats> getEndpointStats() {
+        return endpointStats == null ? Map.of() : endpointStats.getStats();
+    }
+
+    /**
+     * @return request throughput timeline or null if it is not collected
+     */
+    public Timeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * @return statistic over time windows or null if it is not collected
+     */
+    public TimeWindows getTimeWindows() {
+        return timeWindows;
+    }
+
+    /**
+     * Statistic split by request index steps.
+     * Each step stores only own requests and is linked to the previous step on publishing,
+     * so memory does not depend on steps amount.
+     */
+    private final class StepStatistic {
+        private final Map<Integer, RequestStats> steps = new TreeMap<>();
+        private final String keyFormat;
+        private final RequestKind requestKind;
+        private final int step;
+        private int currentBatch = -1;
+        private RequestStats current;
+
+        private StepStatistic(String keyFormat, RequestKind requestKind, int step) {
+            this.keyFormat = keyFormat;
+            this.requestKind = requestKind;
+            this.step = step;
+        }
+
+        private void addRequest(int batch, Request rq) {
+            if (batch != currentBatch) {
+                current = steps.computeIfAbsent(batch, it -> new RequestStats(recorders.get()));
+                currentBatch = batch;
+            }
+            current.addRequest(rq);
+        }
+
+        private void merge(StepStatistic other) {
+            for (var entry : other.steps.entrySet()) {
+                steps.computeIfAbsent(entry.getKey(), it -> new RequestStats(recorders.get()))
+                        .merge(entry.getValue());
+            }
+            currentBatch = -1;
+            current = null;
+        }
+
+        private void publish(Map<RequestKey, RequestStats> target) {
+            RequestStats previous = null;
+            for (var entry : steps.entrySet()) {
+                var threshold = (entry.getKey() + 1) * step;
+                var key = new RequestKey(keyFormat.formatted(threshold), requestKind);
+                var requestStats = entry.getValue();
+                requestStats.setPrevious(previous);
+                target.put(key, requestStats);
+                previous = requestStats;
+            }
+        }
+    }
+}
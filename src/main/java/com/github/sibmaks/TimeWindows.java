@@ -0,0 +1,324 @@
+package com.github.sibmaks;
+
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.stats.LatencyRecorder;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Request statistic over time windows of fixed length moving by fixed slide.
+ * <p>
+ * Requests are recorded into slots of slide duration aligned to epoch, every slot holds a mergeable latency recorder.
+ * Windows are evaluated with a ring of the last {@code length / slide} slots: slot entering the ring replaces
+ * the expired one in O(1), window percentiles are found by rank search over slot recorders without merging or
+ * sorting their values. Windows with equal length and slide are tumbling, others are sliding.
+ */
+public final class TimeWindows {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_SLOTS = 1 << 20;
+
+    private final long length;
+    private final long slide;
+    private final Supplier<LatencyRecorder> recorders;
+    private long firstSlot;
+    private int size;
+    private RequestStats[] slots = new RequestStats[0];
+
+    /**
+     * @param length    window length in milliseconds
+     * @param slide     window slide in milliseconds, length should be divisible by slide
+     * @param recorders latency recorder factory
+     */
+    public TimeWindows(long length, long slide, Supplier<LatencyRecorder> recorders) {
+        if (slide <= 0 || length < slide || length % slide != 0) {
+            throw new IllegalArgumentException(
+                    "Window length should be a positive multiple of positive slide, got length %d ms and slide %d ms"
+                            .formatted(length, slide));
+        }
+        this.length = length;
+        this.slide = slide;
+        this.recorders = recorders;
+    }
+
+    /**
+     * @return empty windows with the same configuration
+     */
+    TimeWindows emptyCopy() {
+        return new TimeWindows(length, slide, recorders);
+    }
+
+    public void addRequest(Request rq) {
+        var index = index(Math.floorDiv(rq.timestamp(), slide));
+        var slot = slots[index];
+        if (slot == null) {
+            slot = new RequestStats(recorders.get());
+            slots[index] = slot;
+        }
+        slot.addRequest(rq);
+    }
+
+    /**
+     * Add requests of other windows.
+     *
+     * @param other windows with the same length, slide and latency recorder type
+     */
+    public void merge(TimeWindows other) {
+        if (other.length != length || other.slide != slide) {
+            throw new IllegalArgumentException("Can not merge time windows with different length or slide");
+        }
+        if (other.size == 0) {
+            return;
+        }
+        index(other.firstSlot);
+        index(other.firstSlot + other.size - 1);
+        for (var i = 0; i < other.size; i++) {
+            var otherSlot = other.slots[i];
+            if (otherSlot == null) {
+                continue;
+            }
+            var index = (int) (other.firstSlot + i - firstSlot);
+            if (slots[index] == null) {
+                slots[index] = new RequestStats(recorders.get());
+            }
+            slots[index].merge(otherSlot);
+        }
+    }
+
+    /**
+     * Write recorded slots.
+     *
+     * @param output target output
+     * @throws IOException on writing error
+     */
+    public void write(DataOutput output) throws IOException {
+        output.writeLong(length);
+        output.writeLong(slide);
+        output.writeLong(firstSlot);
+        output.writeInt(size);
+        for (var i = 0; i < size; i++) {
+            output.writeBoolean(slots[i] != null);
+            if (slots[i] != null) {
+                slots[i].write(output);
+            }
+        }
+    }
+
+    /**
+     * Read windows written by {@link #write(DataOutput)}.
+     *
+     * @param input     source input
+     * @param recorders latency recorder factory of the same type and configuration as the written one
+     * @return read windows
+     * @throws IOException on reading error
+     */
+    public static TimeWindows read(DataInput input, Supplier<LatencyRecorder> recorders) throws IOException {
+        var length = input.readLong();
+        var slide = input.readLong();
+        if (slide <= 0 || length < slide || length % slide != 0) {
+            throw new IOException("Invalid time window length %d ms or slide %d ms".formatted(length, slide));
+        }
+        var windows = new TimeWindows(length, slide, recorders);
+        var firstSlot = input.readLong();
+        var size = input.readInt();
+        if (size < 0 || size > MAX_SLOTS) {
+            throw new IOException("Invalid time windows size: " + size);
+        }
+        if (size > 0) {
+            windows.index(firstSlot);
+            windows.index(firstSlot + size - 1);
+        }
+        for (var i = 0; i < size; i++) {
+            if (input.readBoolean()) {
+                windows.slots[i] = RequestStats.read(input, recorders.get());
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * Get array index of the slot, array is extended to contain it.
+     */
+    private int index(long slot) {
+        if (size == 0) {
+            ensureCapacity(INITIAL_CAPACITY, 0);
+            firstSlot = slot;
+            size = 1;
+            return 0;
+        }
+        if (slot < firstSlot) {
+            var shift = firstSlot - slot;
+            checkSpan(size + shift);
+            ensureCapacity((int) (size + shift), (int) shift);
+            firstSlot = slot;
+            size += (int) shift;
+            return 0;
+        }
+        var offset = slot - firstSlot;
+        if (offset >= size) {
+            checkSpan(offset + 1);
+            ensureCapacity((int) (offset + 1), 0);
+            size = (int) (offset + 1);
+        }
+        return (int) offset;
+    }
+
+    private void checkSpan(long slots) {
+        if (slots > MAX_SLOTS) {
+            throw new IllegalStateException(
+                    "Time windows span exceeds %d slots of %d ms, use longer slide".formatted(MAX_SLOTS, slide)
+            );
+        }
+    }
+
+    /**
+     * Ensure array can hold required amount of slots and move existing slots by shift positions.
+     */
+    private void ensureCapacity(int required, int shift) {
+        if (required <= slots.length && shift == 0) {
+            return;
+        }
+        var capacity = slots.length;
+        if (required > capacity) {
+            capacity = Math.max(required, Math.max(INITIAL_CAPACITY, (int) Math.min(MAX_SLOTS, capacity * 2L)));
+        }
+        var resized = new RequestStats[capacity];
+        System.arraycopy(slots, 0, resized, shift, size);
+        slots = resized;
+    }
+
+    /**
+     * @return window length in milliseconds
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return window slide in milliseconds
+     */
+    public long getSlide() {
+        return slide;
+    }
+
+    /**
+     * Evaluate windows ending at every slot end from the first to the last recorded slot.
+     * Leading windows cover only slots since the first recorded one.
+     *
+     * @param fractions percentiles as fractions, e.g. 0.999 for P99.9
+     * @return windows in time order
+     */
+    public List<Window> getWindows(double[] fractions) {
+        var ringSize = (int) (length / slide);
+        var ring = new RequestStats[ringSize];
+        var count = 0L;
+        var totalLatency = 0L;
+        var windows = new ArrayList<Window>(size);
+        for (var i = 0; i < size; i++) {
+            var position = i % ringSize;
+            var expired = ring[position];
+            if (expired != null) {
+                count -= expired.getCount();
+                totalLatency -= expired.getTotal();
+            }
+            var entered = slots[i];
+            ring[position] = entered;
+            if (entered != null) {
+                count += entered.getCount();
+                totalLatency += entered.getTotal();
+            }
+            var start = (firstSlot + Math.max(0, i - ringSize + 1)) * slide;
+            var end = (firstSlot + i + 1) * slide;
+            windows.add(evaluate(ring, start, end, count, totalLatency, fractions));
+        }
+        return windows;
+    }
+
+    private static Window evaluate(RequestStats[] ring,
+                                   long start,
+                                   long end,
+                                   long count,
+                                   long totalLatency,
+                                   double[] fractions) {
+        var percentiles = new long[fractions.length];
+        if (count == 0) {
+            return new Window(start, end, 0, 0, 0, 0, percentiles);
+        }
+        var min = Long.MAX_VALUE;
+        var max = Long.MIN_VALUE;
+        LatencyRecorder anyRecorder = null;
+        for (var slot : ring) {
+            if (slot != null && slot.getCount() > 0) {
+                min = Math.min(min, slot.getMinTime());
+                max = Math.max(max, slot.getMaxTime());
+                anyRecorder = slot.getRecorder();
+            }
+        }
+        for (var i = 0; i < fractions.length; i++) {
+            var index = RequestStats.getPercentileIndex(fractions[i], count);
+            percentiles[i] = getValueAtRank(ring, index, min, max, anyRecorder);
+        }
+        return new Window(start, end, count, totalLatency, min, max, percentiles);
+    }
+
+    /**
+     * Binary search of the smallest value having more than {@code index} values of ring slots at or below it.
+     */
+    private static long getValueAtRank(RequestStats[] ring, long index, long min, long max, LatencyRecorder recorder) {
+        var low = min;
+        var high = max;
+        while (low < high) {
+            var mid = low + (high - low) / 2;
+            var count = 0L;
+            for (var slot : ring) {
+                if (slot != null) {
+                    count += slot.getRecorder().countAtOrBelow(mid);
+                }
+            }
+            if (count > index) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return Math.max(min, Math.min(max, recorder.getEquivalentValue(low)));
+    }
+
+    /**
+     * Time window statistic, latencies are in fixed-point units of {@link com.github.sibmaks.stats.Latency}.
+     *
+     * @param start        window start timestamp in milliseconds, inclusive
+     * @param end          window end timestamp in milliseconds, exclusive
+     * @param count        amount of requests
+     * @param totalLatency latency sum
+     * @param minLatency   min latency, 0 for empty window
+     * @param maxLatency   max latency, 0 for empty window
+     * @param percentiles  latency percentiles in requested order, 0 for empty window
+     */
+    public record Window(long start,
+                         long end,
+                         long count,
+                         long totalLatency,
+                         long minLatency,
+                         long maxLatency,
+                         long[] percentiles) {
+
+        /**
+         * @return requests per second in the window
+         */
+        public double getRate() {
+            return count * 1000.0 / (end - start);
+        }
+
+        /**
+         * @return average latency, 0 for empty window
+         */
+        public long getAverageLatency() {
+            return count == 0 ? 0 : totalLatency / count;
+        }
+    }
+}
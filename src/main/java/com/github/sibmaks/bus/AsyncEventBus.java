@@ -0,0 +1,196 @@
+package com.github.sibmaks.bus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Event publisher which hands events over to consumer threads through bounded lock-free ring buffers.
+ * <p>
+ * Subscribers are registered on group buses, each group is served by own thread and own single producer,
+ * single consumer ring buffer, so publishing thread only copies event references. Events are published
+ * from a single thread; {@link #close()} waits until every group drains its buffer.
+ */
+public class AsyncEventBus implements EventPublisher, AutoCloseable {
+    private final int capacity;
+    private final int batchSize;
+    private final WaitStrategy producerWait;
+    private final WaitStrategy consumerWait;
+    private final List<Group> groups = new ArrayList<>();
+    private Group[] started;
+
+    /**
+     * @param capacity     ring buffer capacity per group, rounded up to a power of two
+     * @param batchSize    batch size of group buses
+     * @param producerWait wait strategy of publisher when a ring buffer is full
+     * @param consumerWait wait strategy of group threads when a ring buffer is empty
+     */
+    public AsyncEventBus(int capacity, int batchSize, WaitStrategy producerWait, WaitStrategy consumerWait) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity should be positive, got: " + capacity);
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.batchSize = batchSize;
+        this.producerWait = producerWait;
+        this.consumerWait = consumerWait;
+    }
+
+    /**
+     * Create subscriber group served by own thread. Groups should be created before publishing.
+     *
+     * @return bus to subscribe group members on
+     */
+    public TypedEventBus group() {
+        if (started != null) {
+            throw new IllegalStateException("Bus is already started");
+        }
+        var group = new Group(groups.size(), capacity, new TypedEventBus(batchSize));
+        groups.add(group);
+        return group.bus;
+    }
+
+    private Group[] start() {
+        started = groups.toArray(Group[]::new);
+        for (var group : started) {
+            group.thread.start();
+        }
+        return started;
+    }
+
+    @Override
+    public void publish(String topic, Object event) {
+        var groups = started == null ? start() : started;
+        for (var group : groups) {
+            group.offer(topic, event, producerWait);
+        }
+    }
+
+    /**
+     * Wait until all groups drain their buffers.
+     *
+     * @throws IllegalStateException if any subscriber failed
+     */
+    @Override
+    public void close() {
+        var groups = started == null ? start() : started;
+        for (var group : groups) {
+            group.closed = true;
+        }
+        RuntimeException failure = null;
+        for (var group : groups) {
+            try {
+                group.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while draining event bus", e);
+            }
+            if (group.failure != null) {
+                if (failure == null) {
+                    failure = new IllegalStateException("Event subscriber failed", group.failure);
+                } else {
+                    failure.addSuppressed(group.failure);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Subscriber group: single producer, single consumer ring buffer and a thread delivering events to group bus.
+     */
+    private final class Group implements Runnable {
+        private final TypedEventBus bus;
+        private final Thread thread;
+        private final String[] topics;
+        private final Object[] events;
+        private final int mask;
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+        private volatile boolean closed;
+        private volatile Throwable failure;
+        // producer side cache of consumer position
+        private long cachedHead;
+
+        private Group(int index, int capacity, TypedEventBus bus) {
+            this.bus = bus;
+            this.topics = new String[capacity];
+            this.events = new Object[capacity];
+            this.mask = capacity - 1;
+            this.thread = new Thread(this, "event-bus-group-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        private void offer(String topic, Object event, WaitStrategy waitStrategy) {
+            var position = tail.get();
+            var attempt = 0;
+            while (position - cachedHead >= events.length) {
+                cachedHead = head.get();
+                if (position - cachedHead >= events.length) {
+                    waitStrategy.idle(attempt++);
+                }
+            }
+            var index = (int) position & mask;
+            topics[index] = topic;
+            events[index] = event;
+            tail.lazySet(position + 1);
+        }
+
+        @Override
+        public void run() {
+            var position = head.get();
+            var attempt = 0;
+            while (true) {
+                var done = closed;
+                var available = tail.get();
+                if (position == available) {
+                    if (done) {
+                        break;
+                    }
+                    if (attempt == 0) {
+                        flush();
+                    }
+                    consumerWait.idle(attempt++);
+                    continue;
+                }
+                attempt = 0;
+                for (; position < available; position++) {
+                    var index = (int) position & mask;
+                    var topic = topics[index];
+                    var event = events[index];
+                    topics[index] = null;
+                    events[index] = null;
+                    publish(topic, event);
+                }
+                head.lazySet(position);
+            }
+            flush();
+        }
+
+        /*
+         * After the first subscriber failure events are only drained, so publisher is never blocked.
+         */
+        private void publish(String topic, Object event) {
+            if (failure != null) {
+                return;
+            }
+            try {
+                bus.publish(topic, event);
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+
+        private void flush() {
+            if (failure != null) {
+                return;
+            }
+            try {
+                bus.flush();
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+    }
+}
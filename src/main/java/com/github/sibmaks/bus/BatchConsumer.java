@@ -0,0 +1,21 @@
+package com.github.sibmaks.bus;
+
+import java.util.List;
+
+/**
+ * Consumer of event batches.
+ *
+ * @param <T> event type
+ */
+@FunctionalInterface
+public interface BatchConsumer<T> {
+
+    /**
+     * Consume batch of events in publishing order.
+     * Batch is reused by the bus after the call and should not be retained.
+     *
+     * @param events events batch
+     */
+    void accept(List<? extends T> events);
+
+}
@@ -4,4 +4,10 @@ public interface EventPublisher {
 
     void publish(String topic, Object event);
 
+    /**
+     * Deliver events buffered by publisher, called by producer after the last event.
+     */
+    default void flush() {
+    }
+
 }
@@ -0,0 +1,12 @@
+package com.github.sibmaks.bus;
+
+/**
+ * Typed event topic.
+ *
+ * @param name topic name
+ * @param type type of events published to the topic
+ * @param <T>  event type
+ */
+public record Topic<T>(String name, Class<T> type) {
+
+}
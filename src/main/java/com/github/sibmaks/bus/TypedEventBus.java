@@ -0,0 +1,119 @@
+package com.github.sibmaks.bus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Event bus with typed topics and batched delivery.
+ * <p>
+ * Topics are resolved once on subscription, published events are buffered per topic and delivered
+ * to subscribers as batches of configured size. Bus is not thread-safe, subscriptions should be done
+ * before publishing.
+ */
+public class TypedEventBus implements EventPublisher {
+    private final Map<String, Channel<?>> channels = new HashMap<>();
+    private final int batchSize;
+    private String lastTopic;
+    private Channel<?> lastChannel;
+
+    /**
+     * @param batchSize amount of events delivered to subscribers at once
+     */
+    public TypedEventBus(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size should be positive, got: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Get topic channel, publishing through the channel skips topic resolution.
+     *
+     * @param topic topic
+     * @param <T>   event type
+     * @return topic channel
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Channel<T> channel(Topic<T> topic) {
+        var channel = channels.computeIfAbsent(topic.name(), it -> new Channel<>(topic, batchSize));
+        if (channel.topic.type() != topic.type()) {
+            throw new IllegalArgumentException("Topic %s already registered with type %s"
+                    .formatted(topic.name(), channel.topic.type().getName()));
+        }
+        return (Channel<T>) channel;
+    }
+
+    public <T> void subscribe(Topic<T> topic, BatchConsumer<? super T> handler) {
+        channel(topic).subscribe(handler);
+    }
+
+    @Override
+    public void publish(String topic, Object event) {
+        // producers publish to the same constant topic, so identity check avoids map lookup
+        var channel = lastChannel;
+        if (topic != lastTopic) {
+            channel = channels.get(topic);
+            if (channel == null) {
+                return;
+            }
+            lastTopic = topic;
+            lastChannel = channel;
+        }
+        channel.publishObject(event);
+    }
+
+    @Override
+    public void flush() {
+        for (var channel : channels.values()) {
+            channel.flush();
+        }
+    }
+
+    /**
+     * Topic channel, buffers events and delivers them to subscribers.
+     *
+     * @param <T> event type
+     */
+    public static final class Channel<T> {
+        private final Topic<T> topic;
+        private final int batchSize;
+        private final List<T> buffer;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private BatchConsumer<? super T>[] consumers = new BatchConsumer[0];
+
+        private Channel(Topic<T> topic, int batchSize) {
+            this.topic = topic;
+            this.batchSize = batchSize;
+            this.buffer = new ArrayList<>(batchSize);
+        }
+
+        private void subscribe(BatchConsumer<? super T> handler) {
+            consumers = Arrays.copyOf(consumers, consumers.length + 1);
+            consumers[consumers.length - 1] = handler;
+        }
+
+        private void publishObject(Object event) {
+            publish(topic.type().cast(event));
+        }
+
+        public void publish(T event) {
+            buffer.add(event);
+            if (buffer.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        public void flush() {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            for (var consumer : consumers) {
+                consumer.accept(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
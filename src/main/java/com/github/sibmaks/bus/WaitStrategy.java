@@ -0,0 +1,57 @@
+package com.github.sibmaks.bus;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Strategy of waiting for ring buffer space or events.
+ */
+public enum WaitStrategy {
+    /**
+     * Spin on CPU, lowest latency and full core usage.
+     */
+    BUSY_SPIN {
+        @Override
+        public void idle(int attempt) {
+            Thread.onSpinWait();
+        }
+    },
+    /**
+     * Spin shortly, then yield the core to other threads.
+     */
+    YIELD {
+        @Override
+        public void idle(int attempt) {
+            if (attempt < SPIN_ATTEMPTS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    },
+    /**
+     * Spin and yield shortly, then park, close to zero CPU usage while idle.
+     */
+    PARK {
+        @Override
+        public void idle(int attempt) {
+            if (attempt < SPIN_ATTEMPTS) {
+                Thread.onSpinWait();
+            } else if (attempt < SPIN_ATTEMPTS + YIELD_ATTEMPTS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    };
+
+    private static final int SPIN_ATTEMPTS = 100;
+    private static final int YIELD_ATTEMPTS = 100;
+    private static final long PARK_NANOS = 100_000;
+
+    /**
+     * Wait once.
+     *
+     * @param attempt amount of sequential unsuccessful attempts
+     */
+    public abstract void idle(int attempt);
+}
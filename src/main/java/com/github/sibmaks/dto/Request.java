@@ -1,7 +1,14 @@
 package com.github.sibmaks.dto;
 
-import java.math.BigDecimal;
+/**
+ * Parsed request log entry.
+ *
+ * @param requestIndex one based index of request in the log
+ * @param key          request key
+ * @param time         request latency in fixed-point nanoseconds, see {@link com.github.sibmaks.stats.Latency}
+ * @param timestamp    request timestamp in epoch milliseconds
+ * @param uri          requested URI as written in the log, null if parser was not asked to keep URIs
+ */
+public record Request(int requestIndex, RequestKey key, long time, long timestamp, String uri) {
 
-public record Request(int requestIndex, RequestKey key, BigDecimal time, long timestamp) {
-
-}
\ No newline at end of file
+}
@@ -1,7 +1,13 @@
 package com.github.sibmaks.dto;
 
-public enum RequestKind {
-    STATIC,
-    DYNAMIC,
-    ALL
+/**
+ * Named class of requests, classes are configured by {@link com.github.sibmaks.service.RequestClassifier} rules.
+ *
+ * @param name class name
+ */
+public record RequestKind(String name) {
+    /**
+     * Pseudo class of statistics collected for requests of any class.
+     */
+    public static final RequestKind ALL = new RequestKind("ALL");
 }
@@ -0,0 +1,31 @@
+package com.github.sibmaks.dto;
+
+/**
+ * Range of request timestamps in milliseconds, requests outside of it are not parsed.
+ *
+ * @param from range start, inclusive
+ * @param to   range end, exclusive
+ */
+public record TimeRange(long from, long to) {
+    /**
+     * Range of any timestamp.
+     */
+    public static final TimeRange ALL = new TimeRange(Long.MIN_VALUE, Long.MAX_VALUE);
+
+    public TimeRange {
+        if (from >= to) {
+            throw new IllegalArgumentException("Time range start %d should be less than end %d".formatted(from, to));
+        }
+    }
+
+    public boolean contains(long timestamp) {
+        return timestamp >= from && timestamp < to;
+    }
+
+    /**
+     * @return true if range contains any timestamp
+     */
+    public boolean isAll() {
+        return from == Long.MIN_VALUE && to == Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.sibmaks.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log reading counters shared by parsing threads.
+ * <p>
+ * Parsers count lines in a thread-confined {@link Counter} which adds its values to shared counters
+ * every {@value #FLUSH_LINES} lines and when parsing is finished, so counting costs a few increments per line.
+ * Counters of disabled metrics are never added.
+ */
+public final class ParseMetrics {
+    private static final int FLUSH_LINES = 1 << 16;
+    private static final ParseMetrics DISABLED = new ParseMetrics(false);
+
+    private final boolean enabled;
+    private final long started = System.nanoTime();
+    private final LongAdder linesRead = new LongAdder();
+    private final LongAdder linesMatched = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+
+    public ParseMetrics() {
+        this(true);
+    }
+
+    private ParseMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return metrics which do not count anything
+     */
+    public static ParseMetrics disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Create counter of a single parsing thread, counter should be flushed after parsing.
+     *
+     * @return new counter
+     */
+    public Counter counter() {
+        return new Counter(this);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return nanoseconds since metrics creation
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - started;
+    }
+
+    public long getLinesRead() {
+        return linesRead.sum();
+    }
+
+    public long getLinesMatched() {
+        return linesMatched.sum();
+    }
+
+    /**
+     * @return lines which are not request log lines
+     */
+    public long getLinesSkipped() {
+        return Math.max(0, getLinesRead() - getLinesMatched());
+    }
+
+    /**
+     * @return read bytes, decompressed bytes for compressed logs and cache row bytes for request cache
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * Thread-confined counter of a parsing thread.
+     */
+    public static final class Counter {
+        private final ParseMetrics metrics;
+        private long lines;
+        private long matched;
+        private long bytes;
+
+        private Counter(ParseMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        /**
+         * Count read line.
+         *
+         * @param lineBytes line length in bytes with terminator, 0 if bytes are counted by {@link #bytes(long)}
+         */
+        public void line(long lineBytes) {
+            bytes += lineBytes;
+            if (++lines >= FLUSH_LINES) {
+                flush();
+            }
+        }
+
+        /**
+         * Count request line, line itself is counted by {@link #line(long)}.
+         */
+        public void matched() {
+            matched++;
+        }
+
+        /**
+         * Count read bytes.
+         *
+         * @param read amount of read bytes
+         */
+        public void bytes(long read) {
+            bytes += read;
+        }
+
+        /**
+         * Add counted values to shared counters.
+         */
+        public void flush() {
+            if (metrics.enabled) {
+                metrics.linesRead.add(lines);
+                metrics.linesMatched.add(matched);
+                metrics.bytesRead.add(bytes);
+            }
+            lines = 0;
+            matched = 0;
+            bytes = 0;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.sibmaks.metrics;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Wall-clock time and heap allocation of sequential run phases.
+ * <p>
+ * Allocation is counted for all threads as heap usage growth plus heap freed by garbage collections,
+ * collections are reported asynchronously, so allocation of short phases is approximate.
+ */
+public final class PhaseMetrics {
+    private final boolean enabled;
+    private final List<Phase> phases = new ArrayList<>();
+    private final AtomicLong collected = new AtomicLong();
+    private final Set<String> heapPools;
+    private String current;
+    private long currentStart;
+    private long currentAllocated;
+
+    /**
+     * @param enabled false to skip measurement
+     */
+    public PhaseMetrics(boolean enabled) {
+        this.enabled = enabled;
+        this.heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(it -> it.getType() == MemoryType.HEAP)
+                .map(it -> it.getName())
+                .collect(Collectors.toSet());
+        if (enabled) {
+            for (var collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector instanceof NotificationEmitter emitter) {
+                    emitter.addNotificationListener((notification, handback) -> onCollection(notification), null, null);
+                }
+            }
+        }
+    }
+
+    private void onCollection(Notification notification) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        var info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()).getGcInfo();
+        collected.addAndGet(getHeapUsed(info.getMemoryUsageBeforeGc()) - getHeapUsed(info.getMemoryUsageAfterGc()));
+    }
+
+    private long getHeapUsed(Map<String, MemoryUsage> usages) {
+        var used = 0L;
+        for (var usage : usages.entrySet()) {
+            if (heapPools.contains(usage.getKey())) {
+                used += usage.getValue().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private long getAllocated() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() + collected.get();
+    }
+
+    /**
+     * Finish current phase and start the next one.
+     *
+     * @param name phase name
+     */
+    public void begin(String name) {
+        if (!enabled) {
+            return;
+        }
+        end();
+        current = name;
+        currentStart = System.nanoTime();
+        currentAllocated = getAllocated();
+    }
+
+    /**
+     * Finish current phase, nothing is done if there is no started phase.
+     */
+    public void end() {
+        if (current == null) {
+            return;
+        }
+        var allocated = Math.max(0, getAllocated() - currentAllocated);
+        phases.add(new Phase(current, System.nanoTime() - currentStart, allocated));
+        current = null;
+    }
+
+    /**
+     * @return finished phases in start order
+     */
+    public List<Phase> getPhases() {
+        return List.copyOf(phases);
+    }
+
+    /**
+     * Finished phase.
+     *
+     * @param name           phase name
+     * @param wallNanos      phase duration in nanoseconds
+     * @param allocatedBytes bytes allocated on heap by all threads during the phase
+     */
+    public record Phase(String name, long wallNanos, long allocatedBytes) {
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.sibmaks.metrics;
+
+import com.github.sibmaks.bus.BatchConsumer;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cumulative time spent by bus subscribers in batch delivery.
+ * <p>
+ * Subscribers with the same name, e.g. the same statistic of different log chunks or nodes, share the time.
+ * Time is measured once per batch, so its overhead is shared by all events of the batch.
+ */
+public final class SubscriberTimes {
+    private final Map<String, LongAdder> times = new ConcurrentHashMap<>();
+
+    /**
+     * Wrap subscriber to measure its time.
+     *
+     * @param name       subscriber name
+     * @param subscriber measured subscriber
+     * @param <T>        event type
+     * @return subscriber adding own delivery time to the subscriber name
+     */
+    public <T> BatchConsumer<T> time(String name, BatchConsumer<T> subscriber) {
+        var time = times.computeIfAbsent(name, it -> new LongAdder());
+        return events -> {
+            var start = System.nanoTime();
+            try {
+                subscriber.accept(events);
+            } finally {
+                time.add(System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * @return cumulative time in nanoseconds by subscriber name, from the slowest subscriber
+     */
+    public Map<String, Long> getTimes() {
+        var result = new LinkedHashMap<String, Long>();
+        times.entrySet().stream()
+                .map(it -> Map.entry(it.getKey(), it.getValue().sum()))
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                .forEach(it -> result.put(it.getKey(), it.getValue()));
+        return result;
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.sibmaks.report;
+
+import com.github.sibmaks.RequestStats;
+import com.github.sibmaks.stats.Latency;
+import com.github.sibmaks.stats.LatencyRecorder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Latency percentiles of a request statistic corrected for coordinated omission.
+ * Latencies are in milliseconds.
+ *
+ * @param expectedInterval expected interval between requests, mean over node streams if derived for every node
+ * @param synthetic        amount of back-filled latencies
+ * @param percentiles      corrected latency percentiles in report order
+ */
+public record CorrectedPercentiles(BigDecimal expectedInterval,
+                                   long synthetic,
+                                   List<BigDecimal> percentiles) {
+
+    public CorrectedPercentiles {
+        percentiles = List.copyOf(percentiles);
+    }
+
+    /**
+     * Compute corrected percentiles.
+     *
+     * @param stats            request statistic keeping histogram for correction
+     * @param fractions        percentiles as fractions, e.g. 0.999 for P99.9
+     * @param expectedInterval expected interval between requests in fixed-point units,
+     *                         0 to use mean interval between request timestamps
+     * @return corrected percentiles, null if statistic can not be corrected
+     */
+    public static CorrectedPercentiles of(RequestStats stats, double[] fractions, long expectedInterval) {
+        return of(stats, List.of(stats), fractions, expectedInterval);
+    }
+
+    /**
+     * Compute corrected percentiles of statistic merged from request streams of several nodes.
+     * <p>
+     * Mean interval between timestamps of merged streams is about {@code 1 / streams} of the interval of every
+     * stream, so derived interval is computed for every stream and its histogram is corrected separately.
+     *
+     * @param stats            merged request statistic keeping histogram for correction
+     * @param streams          statistics of every node merged into {@code stats}
+     * @param fractions        percentiles as fractions, e.g. 0.999 for P99.9
+     * @param expectedInterval expected interval between requests in fixed-point units,
+     *                         0 to use mean interval between request timestamps of every stream
+     * @return corrected percentiles, null if statistic can not be corrected
+     */
+    public static CorrectedPercentiles of(RequestStats stats,
+                                          List<RequestStats> streams,
+                                          double[] fractions,
+                                          long expectedInterval) {
+        long interval;
+        LatencyRecorder recorder;
+        if (expectedInterval > 0) {
+            interval = expectedInterval;
+            recorder = stats.getCorrectedRecorder(interval);
+        } else {
+            var intervals = 0L;
+            var derived = 0;
+            recorder = null;
+            for (var stream : streams) {
+                var streamInterval = stream.getObservedInterval();
+                if (streamInterval > 0) {
+                    intervals += streamInterval;
+                    derived++;
+                }
+                // stream of a single request has nothing to back-fill
+                var corrected = stream.getCorrectedRecorder(streamInterval > 0 ? streamInterval : Long.MAX_VALUE);
+                if (corrected == null) {
+                    return null;
+                }
+                if (recorder == null) {
+                    recorder = corrected;
+                } else {
+                    recorder.merge(corrected);
+                }
+            }
+            if (derived == 0) {
+                return null;
+            }
+            interval = intervals / derived;
+        }
+        if (recorder == null) {
+            return null;
+        }
+        var n = recorder.getCount();
+        var percentiles = new ArrayList<BigDecimal>(fractions.length);
+        for (var fraction : fractions) {
+            if (n == 0) {
+                percentiles.add(BigDecimal.ZERO);
+                continue;
+            }
+            percentiles.add(Latency.toMillis(recorder.getValueAtRank(RequestStats.getPercentileIndex(fraction, n))));
+        }
+        return new CorrectedPercentiles(Latency.toMillis(interval), n - stats.getCount(), percentiles);
+    }
+}
@@ -0,0 +1,294 @@
+package com.github.sibmaks.report;
+
+import com.github.sibmaks.RequestStats;
+import com.github.sibmaks.TimeWindows;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.stats.Timeline;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Immutable report data: finalized statistic values computed once and rendered by console and excel reports.
+ * <p>
+ * Statistics are computed in parallel: recorders are prepared for concurrent queries first, then every
+ * distinct statistic is summarized by own task, so statistics shared by several maps are computed once.
+ */
+public final class ReportSnapshot {
+    private static final RequestKey ALL_KEY = new RequestKey("ALL", RequestKind.ALL);
+
+    private final double[] percentiles;
+    private final Map<RequestKey, StatsSummary> stats;
+    private final Map<String, StatsSummary> endpointStats;
+    private final Map<String, Map<RequestKey, StatsSummary>> nodeStats;
+    private final Timeline timeline;
+    private final List<TimeWindows.Window> timeWindows;
+    private final Map<RequestKey, SampleEstimate> estimates;
+    private final Map<RequestKey, CorrectedPercentiles> corrected;
+
+    ReportSnapshot(double[] percentiles,
+                   Map<RequestKey, StatsSummary> stats,
+                   Map<String, StatsSummary> endpointStats,
+                   Map<String, Map<RequestKey, StatsSummary>> nodeStats,
+                   Timeline timeline,
+                   List<TimeWindows.Window> timeWindows,
+                   Map<RequestKey, SampleEstimate> estimates,
+                   Map<RequestKey, CorrectedPercentiles> corrected) {
+        this.percentiles = percentiles.clone();
+        this.stats = Collections.unmodifiableMap(stats);
+        this.endpointStats = Collections.unmodifiableMap(endpointStats);
+        this.nodeStats = Collections.unmodifiableMap(nodeStats);
+        this.timeline = timeline;
+        this.timeWindows = timeWindows;
+        this.estimates = Collections.unmodifiableMap(estimates);
+        this.corrected = Collections.unmodifiableMap(corrected);
+    }
+
+    /**
+     * Compute report data, statistics should not be modified during computation.
+     *
+     * @param stats         statistics by request key
+     * @param endpointStats statistics by endpoint name
+     * @param nodeStats     statistics by request key of every node
+     * @param timeline      request throughput timeline, copied, may be null
+     * @param timeWindows   statistic over time windows, null if not collected
+     * @param percentiles   reported percentiles, e.g. 99.9 for P99.9
+     * @param executor      executor of computing tasks
+     * @return computed snapshot
+     * @throws InterruptedException if computation is interrupted
+     */
+    public static ReportSnapshot compute(Map<RequestKey, RequestStats> stats,
+                                         Map<String, RequestStats> endpointStats,
+                                         Map<String, Map<RequestKey, RequestStats>> nodeStats,
+                                         Timeline timeline,
+                                         TimeWindows timeWindows,
+                                         double[] percentiles,
+                                         ExecutorService executor) throws InterruptedException {
+        return compute(stats, endpointStats, nodeStats, timeline, timeWindows, percentiles, 1.0, -1, executor);
+    }
+
+    /**
+     * Compute report data, statistics should not be modified during computation.
+     * Values of all requests are estimated by request key if log lines were sampled or any statistic keeps
+     * a sample of latencies. Percentiles are corrected by request key if statistics keep histograms for correction.
+     *
+     * @param stats            statistics by request key
+     * @param endpointStats    statistics by endpoint name
+     * @param nodeStats        statistics by request key of every node
+     * @param timeline         request throughput timeline, copied, may be null
+     * @param timeWindows      statistic over time windows, null if not collected
+     * @param percentiles      reported percentiles, e.g. 99.9 for P99.9
+     * @param sampleRate       fraction of parsed log lines
+     * @param expectedInterval expected interval between requests in fixed-point units used to correct percentiles
+     *                         for coordinated omission, 0 to use mean interval between request timestamps
+     *                         of every node, negative to skip correction
+     * @param executor         executor of computing tasks
+     * @return computed snapshot
+     * @throws InterruptedException if computation is interrupted
+     */
+    public static ReportSnapshot compute(Map<RequestKey, RequestStats> stats,
+                                         Map<String, RequestStats> endpointStats,
+                                         Map<String, Map<RequestKey, RequestStats>> nodeStats,
+                                         Timeline timeline,
+                                         TimeWindows timeWindows,
+                                         double[] percentiles,
+                                         double sampleRate,
+                                         long expectedInterval,
+                                         ExecutorService executor) throws InterruptedException {
+        var fractions = StatsSummary.toFractions(percentiles);
+        var distinct = Collections.newSetFromMap(new IdentityHashMap<RequestStats, Boolean>());
+        distinct.addAll(stats.values());
+        distinct.addAll(endpointStats.values());
+        for (var node : nodeStats.values()) {
+            distinct.addAll(node.values());
+        }
+
+        var preparations = new ArrayList<Callable<Void>>(distinct.size());
+        for (var requestStats : distinct) {
+            preparations.add(() -> {
+                requestStats.prepareQueries();
+                return null;
+            });
+        }
+        await(executor.invokeAll(preparations));
+
+        var summaries = new IdentityHashMap<RequestStats, Future<StatsSummary>>(distinct.size());
+        for (var requestStats : distinct) {
+            summaries.put(requestStats, executor.submit(() -> StatsSummary.of(requestStats, fractions)));
+        }
+        var windows = timeWindows == null ? null : executor.submit(() -> timeWindows.getWindows(fractions));
+        var sampled = sampleRate < 1 || stats.values().stream().anyMatch(it -> it.getSampleSize() < it.getCount());
+        var estimates = new LinkedHashMap<RequestKey, Future<SampleEstimate>>();
+        if (sampled) {
+            stats.forEach((key, value) -> estimates.put(key, executor.submit(() -> SampleEstimate.of(value, fractions, sampleRate))));
+        }
+        var corrections = new LinkedHashMap<RequestKey, Future<CorrectedPercentiles>>();
+        if (expectedInterval >= 0) {
+            stats.forEach((key, value) -> {
+                var streams = nodeStats.values().stream()
+                        .map(it -> it.get(key))
+                        .filter(Objects::nonNull)
+                        .toList();
+                corrections.put(key, executor.submit(() -> CorrectedPercentiles.of(
+                        value, streams.isEmpty() ? List.of(value) : streams, fractions, expectedInterval)));
+            });
+        }
+        Timeline timelineCopy = null;
+        if (timeline != null) {
+            timelineCopy = new Timeline(timeline.getResolution());
+            timelineCopy.merge(timeline);
+        }
+
+        var nodeSummaries = new LinkedHashMap<String, Map<RequestKey, StatsSummary>>();
+        for (var node : nodeStats.entrySet()) {
+            nodeSummaries.put(node.getKey(), Collections.unmodifiableMap(summarize(node.getValue(), summaries)));
+        }
+        return new ReportSnapshot(
+                percentiles,
+                summarize(stats, summaries),
+                summarize(endpointStats, summaries),
+                nodeSummaries,
+                timelineCopy,
+                windows == null ? null : List.copyOf(await(windows)),
+                summarize(estimates),
+                summarize(corrections)
+        );
+    }
+
+    /**
+     * Compute report data of request statistics on the calling thread.
+     *
+     * @param stats       statistics by request key
+     * @param percentiles reported percentiles, e.g. 99.9 for P99.9
+     * @return snapshot without endpoints, nodes, timeline and time windows
+     */
+    public static ReportSnapshot of(Map<RequestKey, RequestStats> stats, double[] percentiles) {
+        var fractions = StatsSummary.toFractions(percentiles);
+        var summaries = new LinkedHashMap<RequestKey, StatsSummary>();
+        stats.forEach((key, value) -> summaries.put(key, StatsSummary.of(value, fractions)));
+        return new ReportSnapshot(percentiles, summaries, Map.of(), Map.of(), null, null, Map.of(), Map.of());
+    }
+
+    private static <K, V> Map<K, V> summarize(Map<K, Future<V>> tasks) throws InterruptedException {
+        var result = new LinkedHashMap<K, V>();
+        for (var entry : tasks.entrySet()) {
+            var value = await(entry.getValue());
+            if (value != null) {
+                result.put(entry.getKey(), value);
+            }
+        }
+        return result;
+    }
+
+    private static <K> Map<K, StatsSummary> summarize(Map<K, RequestStats> stats,
+                                                      Map<RequestStats, Future<StatsSummary>> summaries)
+            throws InterruptedException {
+        var result = new LinkedHashMap<K, StatsSummary>();
+        for (var entry : stats.entrySet()) {
+            result.put(entry.getKey(), await(summaries.get(entry.getValue())));
+        }
+        return result;
+    }
+
+    private static void await(Collection<? extends Future<?>> futures) throws InterruptedException {
+        for (var future : futures) {
+            await(future);
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * @return reported percentiles, e.g. 99.9 for P99.9
+     */
+    public double[] getPercentiles() {
+        return percentiles.clone();
+    }
+
+    /**
+     * @return summaries by request key
+     */
+    public Map<RequestKey, StatsSummary> getStats() {
+        return stats;
+    }
+
+    /**
+     * @return summaries by endpoint name
+     */
+    public Map<String, StatsSummary> getEndpointStats() {
+        return endpointStats;
+    }
+
+    /**
+     * @return summaries by request key of every node, empty for a single node
+     */
+    public Map<String, Map<RequestKey, StatsSummary>> getNodeStats() {
+        return nodeStats;
+    }
+
+    /**
+     * @return summary of all requests by node name, nodes without it are skipped
+     */
+    public Map<String, StatsSummary> getNodeTotals() {
+        var totals = new LinkedHashMap<String, StatsSummary>();
+        nodeStats.forEach((node, stats) -> {
+            var total = stats.get(ALL_KEY);
+            if (total != null) {
+                totals.put(node, total);
+            }
+        });
+        return totals;
+    }
+
+    /**
+     * @return request throughput timeline, null if snapshot has no timeline
+     */
+    public Timeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * @return windows in time order, null if time windows are not collected
+     */
+    public List<TimeWindows.Window> getTimeWindows() {
+        return timeWindows;
+    }
+
+    /**
+     * @return estimated values of all requests by request key, empty if values were not sampled
+     */
+    public Map<RequestKey, SampleEstimate> getEstimates() {
+        return estimates;
+    }
+
+    /**
+     * @return percentiles corrected for coordinated omission by request key, empty if correction is disabled
+     */
+    public Map<RequestKey, CorrectedPercentiles> getCorrected() {
+        return corrected;
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.sibmaks.report;
+
+import com.github.sibmaks.dto.RequestKey;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Comparison of a candidate run with a baseline run by request key.
+ * <p>
+ * Latencies regress when they grow by more than the threshold, throughput regresses when it drops
+ * by more than the threshold. Request key or baseline percentile missing in the candidate is a regression,
+ * keys and percentiles of the candidate only are skipped.
+ */
+public final class RunComparison {
+    private static final double PERCENTS = 100.0;
+
+    private RunComparison() {
+    }
+
+    /**
+     * Compare request statistics of runs.
+     *
+     * @param baseline   baseline run
+     * @param candidate  candidate run
+     * @param thresholds allowed changes
+     * @return compared values in baseline key order
+     */
+    public static List<Delta> compare(ReportSnapshot baseline, ReportSnapshot candidate, Thresholds thresholds) {
+        var basePercentiles = baseline.getPercentiles();
+        var candidatePercentiles = candidate.getPercentiles();
+        var deltas = new ArrayList<Delta>();
+        for (var entry : baseline.getStats().entrySet()) {
+            var key = entry.getKey();
+            var base = entry.getValue();
+            var other = candidate.getStats().get(key);
+            if (other == null) {
+                deltas.add(new Delta(key, "Total", base.count(), 0, true));
+                continue;
+            }
+            deltas.add(latency(key, "Avg Time", base.averageTime().doubleValue(), other.averageTime().doubleValue(), thresholds.average()));
+            for (var i = 0; i < basePercentiles.length; i++) {
+                var j = indexOf(candidatePercentiles, basePercentiles[i]);
+                var metric = "P" + BigDecimal.valueOf(basePercentiles[i]).stripTrailingZeros().toPlainString();
+                if (j < 0) {
+                    deltas.add(new Delta(key, metric, base.percentiles().get(i).doubleValue(), Double.NaN, true));
+                    continue;
+                }
+                deltas.add(latency(key, metric, base.percentiles().get(i).doubleValue(), other.percentiles().get(j).doubleValue(), thresholds.percentile()));
+            }
+            deltas.add(latency(key, "Max", base.max().doubleValue(), other.max().doubleValue(), thresholds.max()));
+            var rpsDrop = -change(base.rps(), other.rps()) * PERCENTS;
+            deltas.add(new Delta(key, "RPS", base.rps(), other.rps(), thresholds.rps() >= 0 && rpsDrop > thresholds.rps()));
+        }
+        return deltas;
+    }
+
+    private static Delta latency(RequestKey key, String metric, double base, double candidate, double threshold) {
+        var growth = change(base, candidate) * PERCENTS;
+        return new Delta(key, metric, base, candidate, threshold >= 0 && growth > threshold);
+    }
+
+    private static int indexOf(double[] values, double value) {
+        for (var i = 0; i < values.length; i++) {
+            if (Double.compare(values[i], value) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return relative change, infinite if baseline is zero and candidate is not, NaN if candidate is missing
+     */
+    private static double change(double base, double candidate) {
+        if (Double.isNaN(candidate)) {
+            return Double.NaN;
+        }
+        if (base == candidate) {
+            return 0;
+        }
+        if (base == 0) {
+            return candidate > 0 ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        }
+        return (candidate - base) / Math.abs(base);
+    }
+
+    /**
+     * @param deltas compared values
+     * @return true if any value regressed
+     */
+    public static boolean hasRegressions(List<Delta> deltas) {
+        return deltas.stream().anyMatch(Delta::regression);
+    }
+
+    /**
+     * Allowed changes in percents, negative threshold disables the check.
+     *
+     * @param average    allowed growth of average latency
+     * @param percentile allowed growth of every percentile
+     * @param max        allowed growth of max latency
+     * @param rps        allowed drop of requests per second
+     */
+    public record Thresholds(double average, double percentile, double max, double rps) {
+    }
+
+    /**
+     * Compared value of a request key.
+     *
+     * @param key        request key
+     * @param metric     compared value name
+     * @param baseline   baseline value
+     * @param candidate  candidate value, NaN if the candidate run does not report it
+     * @param regression true if change exceeds threshold
+     */
+    public record Delta(RequestKey key, String metric, double baseline, double candidate, boolean regression) {
+
+        /**
+         * @return change relative to baseline in percents, infinite if baseline is zero, NaN if candidate is missing
+         */
+        public double getChange() {
+            return change(baseline, candidate) * PERCENTS;
+        }
+    }
+}
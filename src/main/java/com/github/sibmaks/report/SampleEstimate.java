@@ -0,0 +1,58 @@
+package com.github.sibmaks.report;
+
+import com.github.sibmaks.RequestStats;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Values of all requests estimated from a request statistic of sampled log lines.
+ * Latencies are in milliseconds.
+ *
+ * @param sampled            amount of kept latencies percentiles are computed from
+ * @param estimatedCount     amount of requests scaled by sample rate
+ * @param estimatedTotalTime latency sum scaled by sample rate
+ * @param estimatedRps       requests per second scaled by sample rate
+ * @param lowerBounds        lower bounds of 95% confidence intervals of percentiles in report order
+ * @param upperBounds        upper bounds of 95% confidence intervals of percentiles in report order
+ */
+public record SampleEstimate(long sampled,
+                             long estimatedCount,
+                             BigDecimal estimatedTotalTime,
+                             long estimatedRps,
+                             List<BigDecimal> lowerBounds,
+                             List<BigDecimal> upperBounds) {
+
+    public SampleEstimate {
+        lowerBounds = List.copyOf(lowerBounds);
+        upperBounds = List.copyOf(upperBounds);
+    }
+
+    /**
+     * Estimate values of all requests.
+     *
+     * @param stats      statistic of sampled lines
+     * @param fractions  percentiles as fractions, e.g. 0.999 for P99.9
+     * @param sampleRate fraction of parsed log lines
+     * @return estimated values
+     */
+    public static SampleEstimate of(RequestStats stats, double[] fractions, double sampleRate) {
+        var lowerBounds = new ArrayList<BigDecimal>(fractions.length);
+        var upperBounds = new ArrayList<BigDecimal>(fractions.length);
+        for (var fraction : fractions) {
+            lowerBounds.add(stats.getPercentileLowerBound(fraction));
+            upperBounds.add(stats.getPercentileUpperBound(fraction));
+        }
+        var count = stats.getCount() / sampleRate;
+        return new SampleEstimate(
+                stats.getSampleSize(),
+                Math.round(count),
+                stats.getTotalTime().divide(BigDecimal.valueOf(sampleRate), 3, RoundingMode.HALF_UP),
+                stats.getCount() == 0 ? 0 : (long) (1000 * count / stats.getDurationMillis()),
+                lowerBounds,
+                upperBounds
+        );
+    }
+}
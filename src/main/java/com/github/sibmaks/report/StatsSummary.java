@@ -0,0 +1,80 @@
+package com.github.sibmaks.report;
+
+import com.github.sibmaks.RequestStats;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finalized values of a request statistic, computed once and rendered by every report.
+ * Latencies are in milliseconds.
+ *
+ * @param count       amount of requests
+ * @param totalTime   latency sum
+ * @param averageTime average latency
+ * @param variance    latency variance in squared milliseconds
+ * @param percentiles latency percentiles in report order
+ * @param min         min latency
+ * @param max         max latency
+ * @param rps         requests per second
+ */
+public record StatsSummary(long count,
+                           BigDecimal totalTime,
+                           BigDecimal averageTime,
+                           BigDecimal variance,
+                           List<BigDecimal> percentiles,
+                           BigDecimal min,
+                           BigDecimal max,
+                           long rps) {
+
+    public StatsSummary {
+        percentiles = List.copyOf(percentiles);
+    }
+
+    /**
+     * Compute summary of statistic.
+     *
+     * @param stats     request statistic
+     * @param fractions percentiles as fractions, e.g. 0.999 for P99.9
+     * @return computed summary
+     */
+    public static StatsSummary of(RequestStats stats, double[] fractions) {
+        var percentiles = new ArrayList<BigDecimal>(fractions.length);
+        for (var fraction : fractions) {
+            percentiles.add(stats.getPercentile(fraction));
+        }
+        return new StatsSummary(
+                stats.getCount(),
+                stats.getTotalTime(),
+                stats.getAverageTime(),
+                stats.getVariance(),
+                percentiles,
+                stats.getMin(),
+                stats.getMax(),
+                stats.getRPS()
+        );
+    }
+
+    /**
+     * Convert percentile to fraction without binary rounding artifacts.
+     *
+     * @param percentile percentile, e.g. 99.9 for P99.9
+     * @return fraction, e.g. 0.999
+     */
+    public static double toFraction(double percentile) {
+        return BigDecimal.valueOf(percentile).movePointLeft(2).doubleValue();
+    }
+
+    /**
+     * @param percentiles percentiles, e.g. 99.9 for P99.9
+     * @return fractions in the same order
+     */
+    public static double[] toFractions(double[] percentiles) {
+        var fractions = new double[percentiles.length];
+        for (var i = 0; i < percentiles.length; i++) {
+            fractions[i] = toFraction(percentiles[i]);
+        }
+        return fractions;
+    }
+}
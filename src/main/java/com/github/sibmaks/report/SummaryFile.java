@@ -0,0 +1,125 @@
+package com.github.sibmaks.report;
+
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.RequestKind;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compact machine-readable summary of a run: finalized statistic values by request key without latency samples,
+ * used to compare runs without parsing logs again.
+ * <p>
+ * File layout, numbers are big-endian, latencies are milliseconds:
+ * <pre>
+ * int magic, int version, int percentiles, double[percentiles] percentiles, int keys,
+ * keys as (UTF kind, UTF request class, long count, double total time, double average time, double variance,
+ * double[percentiles] percentile values, double min, double max, long rps)
+ * </pre>
+ */
+public final class SummaryFile {
+    static final int MAGIC = 0x4C475355;
+    static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 64 << 10;
+
+    private SummaryFile() {
+    }
+
+    /**
+     * Write statistic summaries of the snapshot, file is replaced atomically.
+     *
+     * @param file     target file
+     * @param snapshot report data
+     * @throws IOException on file writing error
+     */
+    public static void write(Path file, ReportSnapshot snapshot) throws IOException {
+        var target = file.toAbsolutePath();
+        var temp = Files.createTempFile(target.getParent(), ".summary", ".tmp");
+        try {
+            try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                var percentiles = snapshot.getPercentiles();
+                output.writeInt(percentiles.length);
+                for (var percentile : percentiles) {
+                    output.writeDouble(percentile);
+                }
+                var stats = snapshot.getStats();
+                output.writeInt(stats.size());
+                for (var entry : stats.entrySet()) {
+                    var key = entry.getKey();
+                    var stat = entry.getValue();
+                    output.writeUTF(key.kind());
+                    output.writeUTF(key.requestKind().name());
+                    output.writeLong(stat.count());
+                    output.writeDouble(stat.totalTime().doubleValue());
+                    output.writeDouble(stat.averageTime().doubleValue());
+                    output.writeDouble(stat.variance().doubleValue());
+                    for (var value : stat.percentiles()) {
+                        output.writeDouble(value.doubleValue());
+                    }
+                    output.writeDouble(stat.min().doubleValue());
+                    output.writeDouble(stat.max().doubleValue());
+                    output.writeLong(stat.rps());
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Read statistic summaries.
+     *
+     * @param file summary file
+     * @return snapshot with request statistics only
+     * @throws IOException on file reading error or if file is not a supported summary file
+     */
+    public static ReportSnapshot read(Path file) throws IOException {
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("File %s is not a summary file".formatted(file));
+            }
+            var version = input.readInt();
+            if (version != VERSION) {
+                throw new IOException("Summary file %s has unsupported version %d".formatted(file, version));
+            }
+            var percentiles = new double[input.readInt()];
+            for (var i = 0; i < percentiles.length; i++) {
+                percentiles[i] = input.readDouble();
+            }
+            var size = input.readInt();
+            var stats = new LinkedHashMap<RequestKey, StatsSummary>();
+            for (var i = 0; i < size; i++) {
+                var key = new RequestKey(input.readUTF(), new RequestKind(input.readUTF()));
+                var count = input.readLong();
+                var totalTime = BigDecimal.valueOf(input.readDouble());
+                var averageTime = BigDecimal.valueOf(input.readDouble());
+                var variance = BigDecimal.valueOf(input.readDouble());
+                var values = new ArrayList<BigDecimal>(percentiles.length);
+                for (var j = 0; j < percentiles.length; j++) {
+                    values.add(BigDecimal.valueOf(input.readDouble()));
+                }
+                var min = BigDecimal.valueOf(input.readDouble());
+                var max = BigDecimal.valueOf(input.readDouble());
+                var rps = input.readLong();
+                stats.put(key, new StatsSummary(count, totalTime, averageTime, variance, values, min, max, rps));
+            }
+            return new ReportSnapshot(percentiles, stats, Map.of(), Map.of(), null, null, Map.of(), Map.of());
+        } catch (EOFException e) {
+            throw new IOException("Summary file %s is truncated".formatted(file), e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.RequestStatsCollector;
+import com.github.sibmaks.stats.LatencyRecorder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Partial aggregate file: statistics collected by one or more load generator nodes without raw requests.
+ * <p>
+ * File layout, numbers are big-endian:
+ * <pre>
+ * int magic, int version, GZIP stream of: int nodes, nodes as (UTF name, collected statistics)
+ * </pre>
+ * Aggregates are written on every node and merged later on one machine, so logs do not have to be copied.
+ */
+public final class AggregateFile {
+    static final int MAGIC = 0x4C474147;
+    static final int VERSION = 4;
+    private static final int BUFFER_SIZE = 64 << 10;
+
+    private AggregateFile() {
+    }
+
+    /**
+     * Check file header.
+     *
+     * @param file checked file
+     * @return true if file is a partial aggregate file
+     * @throws IOException on file reading error
+     */
+    public static boolean isAggregate(Path file) throws IOException {
+        try (var input = new DataInputStream(Files.newInputStream(file))) {
+            return input.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Write statistics of nodes, file is replaced atomically.
+     *
+     * @param file  target file
+     * @param nodes collected statistics by node name
+     * @throws IOException on file writing error
+     */
+    public static void write(Path file, Map<String, RequestStatsCollector> nodes) throws IOException {
+        var target = file.toAbsolutePath();
+        var temp = Files.createTempFile(target.getParent(), ".aggregate", ".tmp");
+        try {
+            try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.flush();
+                var body = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(output, BUFFER_SIZE), BUFFER_SIZE));
+                body.writeInt(nodes.size());
+                for (var node : nodes.entrySet()) {
+                    body.writeUTF(node.getKey());
+                    node.getValue().write(body);
+                }
+                body.close();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Read statistics of nodes.
+     *
+     * @param file      aggregate file
+     * @param recorders latency recorder factory of the same type and configuration as the written one
+     * @return statistics by node name in written order
+     * @throws IOException on file reading error or if file is not a supported aggregate file
+     */
+    public static Map<String, RequestStatsCollector> read(Path file,
+                                                          Supplier<LatencyRecorder> recorders) throws IOException {
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("File %s is not an aggregate file".formatted(file));
+            }
+            var version = input.readInt();
+            if (version != VERSION) {
+                throw new IOException("Aggregate file %s has unsupported version %d".formatted(file, version));
+            }
+            var body = new DataInputStream(new BufferedInputStream(new GZIPInputStream(input, BUFFER_SIZE), BUFFER_SIZE));
+            var size = body.readInt();
+            var nodes = new LinkedHashMap<String, RequestStatsCollector>();
+            for (var i = 0; i < size; i++) {
+                var name = body.readUTF();
+                try {
+                    nodes.put(name, RequestStatsCollector.read(body, recorders));
+                } catch (IOException e) {
+                    throw new IOException("Can not read node %s of aggregate file %s: %s".formatted(name, file, e.getMessage()), e);
+                }
+            }
+            return nodes;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.sibmaks.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decoder of a compressed file split into blocks which can be decompressed independently.
+ * <p>
+ * Block boundaries may be speculative: decoded block reports the compressed range it actually covers,
+ * so the reader can check that consecutive blocks are adjacent and fall back to sequential stream otherwise.
+ */
+interface BlockDecoder {
+
+    /**
+     * @return amount of blocks
+     */
+    int blocks();
+
+    /**
+     * Decompress block, may be called concurrently.
+     *
+     * @param block block index
+     * @return decoded block or null if block can not be decoded independently
+     * @throws IOException on file reading error
+     */
+    DecodedBlock decode(int block) throws IOException;
+
+    /**
+     * @param block block index
+     * @return compressed end of the block range
+     */
+    long blockEnd(int block);
+
+    /**
+     * @return compressed position where decoded data ends
+     */
+    long end();
+
+    /**
+     * Open sequential decompressing stream.
+     *
+     * @param position compressed position to start from
+     * @return decompressed data stream
+     * @throws IOException on file reading error
+     */
+    InputStream open(long position) throws IOException;
+
+    /**
+     * Decompressed data of the compressed range.
+     *
+     * @param start compressed range start, negative if block contains no data
+     * @param end   compressed range end
+     * @param data  decompressed data
+     */
+    record DecodedBlock(long start, long end, byte[] data) {
+        static final DecodedBlock EMPTY = new DecodedBlock(-1, -1, new byte[0]);
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.sibmaks.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Log file compression format, detected by magic bytes instead of file extension.
+ */
+public enum Compression {
+    NONE,
+    GZIP,
+    ZSTD;
+
+    private static final int GZIP_MAGIC = 0x8B1F;
+    private static final int ZSTD_MAGIC = 0xFD2FB528;
+    private static final int ZSTD_SKIPPABLE_MAGIC = 0x184D2A50;
+    private static final int ZSTD_SKIPPABLE_MAGIC_MASK = 0xFFFFFFF0;
+
+    /**
+     * Detect compression format of the file.
+     *
+     * @param file log file
+     * @return compression format, {@link #NONE} for plain text
+     * @throws IOException on file reading error
+     */
+    public static Compression detect(Path file) throws IOException {
+        var buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+        }
+        if (buffer.position() >= 2 && (buffer.getShort(0) & 0xFFFF) == GZIP_MAGIC) {
+            return GZIP;
+        }
+        if (buffer.position() == 4) {
+            var magic = buffer.getInt(0);
+            if (magic == ZSTD_MAGIC || (magic & ZSTD_SKIPPABLE_MAGIC_MASK) == ZSTD_SKIPPABLE_MAGIC) {
+                return ZSTD;
+            }
+        }
+        return NONE;
+    }
+}
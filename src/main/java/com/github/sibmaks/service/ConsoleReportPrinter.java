@@ -2,57 +2,327 @@ package com.github.sibmaks.service;
 
 import com.github.sibmaks.RequestStats;
 import com.github.sibmaks.dto.RequestKey;
-import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.metrics.ParseMetrics;
+import com.github.sibmaks.metrics.PhaseMetrics;
+import com.github.sibmaks.metrics.SubscriberTimes;
+import com.github.sibmaks.report.CorrectedPercentiles;
+import com.github.sibmaks.report.ReportSnapshot;
+import com.github.sibmaks.report.RunComparison;
+import com.github.sibmaks.report.SampleEstimate;
+import com.github.sibmaks.report.StatsSummary;
+import com.github.sibmaks.stats.Latency;
+import com.github.sibmaks.stats.Timeline;
 
+import java.math.BigDecimal;
 import java.time.Instant;
+import java.time.LocalTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public class ConsoleReportPrinter {
+    private static final String TIMELINE_HEADER_FORMAT = "%-20s %-15s %-15s %-16s %-16s %-16s%n";
+    private static final String TIMELINE_ROW_FORMAT = "%-20s %-15d %-15.2f %-16.2f %-16.2f %-16.2f%n";
+    private static final String COMPARISON_HEADER_FORMAT = "%-15s %-15s %-12s %-16s %-16s %-12s %-10s%n";
+    private static final String COMPARISON_ROW_FORMAT = "%-15s %-15s %-12s %-16.2f %-16.2f %-12s %-10s%n";
+    private static final String METRICS_HEADER_FORMAT = "%-30s %-16s %-16s%n";
+    private static final String METRICS_ROW_FORMAT = "%-30s %-16.2f %-16.2f%n";
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
 
-    private static final String[] HEADERS = {
-            "Kind", "Total", "Total Time", "Avg Time", "Variance",
-            "P90", "P95", "P99", "Min", "Max", "RPS"
-    };
+    private final double[] percentiles;
+    private final String headerFormat;
+    private final String rowFormat;
+    private final String labelHeaderFormat;
+    private final String labelRowFormat;
+    private final String[] headers;
+    private final String estimateFormat;
+    private final String correctedFormat;
 
-    public void printRequestStats(Map<RequestKey, RequestStats> stats) {
-        printHeader("REQUEST STATISTICS: ALL");
-        stats.entrySet().stream()
-                .filter(e -> e.getKey().requestKind() == RequestKind.ALL)
-                .forEach(e -> printRow(e.getKey(), e.getValue()));
+    /**
+     * @param percentiles reported percentiles, e.g. 99.9 for P99.9
+     */
+    public ConsoleReportPrinter(double[] percentiles) {
+        this.percentiles = percentiles.clone();
+        var headers = new ArrayList<String>();
+        headers.add("Kind");
+        headers.add("Total");
+        headers.add("Total Time");
+        headers.add("Avg Time");
+        headers.add("Variance");
+        for (var percentile : percentiles) {
+            headers.add("P" + formatPercentile(percentile));
+        }
+        headers.add("Min");
+        headers.add("Max");
+        headers.add("RPS");
+        this.headers = headers.toArray(String[]::new);
+        var valuesHeaderFormat = "%-15s %-20s %-20s %-20s " + "%-16s ".repeat(percentiles.length) + "%-16s %-16s %-10s%n";
+        var valuesRowFormat = "%-15d %-20.2f %-20.2f %-20.2f " + "%-16.2f ".repeat(percentiles.length) + "%-16.2f %-16.2f %-10d%n";
+        this.headerFormat = "%-15s " + valuesHeaderFormat;
+        this.rowFormat = "%-15s " + valuesRowFormat;
+        this.labelHeaderFormat = "%-50s " + valuesHeaderFormat;
+        this.labelRowFormat = "%-50s " + valuesRowFormat;
+        this.estimateFormat = "%-15s %-15s %-12s %-15s %-20s %-10s " + "%-24s ".repeat(percentiles.length) + "%n";
+        this.correctedFormat = "%-15s %-15s %-14s %-15s " + "%-16s %-16s ".repeat(percentiles.length) + "%n";
+    }
+
+    static String formatPercentile(double percentile) {
+        return BigDecimal.valueOf(percentile).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Print request, node and endpoint statistics of the snapshot.
+     * Timeline may have a row per second of a long run, so it is printed only on request by {@link #printTimeline(Timeline)}.
+     *
+     * @param snapshot report data computed with the same percentiles
+     */
+    public void printReport(ReportSnapshot snapshot) {
+        printRequestStats(snapshot.getStats());
+        printEstimates(snapshot.getEstimates());
+        printCorrected(snapshot.getStats(), snapshot.getCorrected());
+        printNodeStats(snapshot.getNodeTotals());
+        printEndpointStats(snapshot.getEndpointStats());
+    }
+
+    /**
+     * Print statistics, one table per request class in order of the first statistic of the class.
+     *
+     * @param stats statistic summaries by request key
+     */
+    public void printRequestStats(Map<RequestKey, StatsSummary> stats) {
+        var requestKinds = stats.keySet().stream()
+                .map(RequestKey::requestKind)
+                .distinct()
+                .toList();
+        for (var requestKind : requestKinds) {
+            printHeader("REQUEST STATISTICS: " + requestKind.name(), headerFormat);
+            stats.entrySet().stream()
+                    .filter(e -> e.getKey().requestKind().equals(requestKind))
+                    .forEach(e -> printRow(e.getKey().kind(), e.getValue(), rowFormat));
+        }
+    }
+
+    /**
+     * Print values of all requests estimated from sampled values with confidence intervals of percentiles.
+     *
+     * @param estimates estimated values by request key, nothing is printed if empty
+     */
+    public void printEstimates(Map<RequestKey, SampleEstimate> estimates) {
+        if (estimates.isEmpty()) {
+            return;
+        }
+        System.out.println("\n\u001B[1;34mSAMPLED ESTIMATES\u001B[0m");
+        var header = new ArrayList<>(List.of("Class", "Kind", "Sampled", "Est. Total", "Est. Total Time", "Est. RPS"));
+        for (var percentile : percentiles) {
+            header.add("P" + formatPercentile(percentile) + " 95% CI");
+        }
+        System.out.printf(estimateFormat, header.toArray());
+        System.out.println("-----------------------------------------------------------------------------------------------");
+        estimates.forEach((key, estimate) -> {
+            var values = new ArrayList<>();
+            values.add(key.requestKind().name());
+            values.add(key.kind());
+            values.add(estimate.sampled());
+            values.add(estimate.estimatedCount());
+            values.add("%.2f".formatted(estimate.estimatedTotalTime().doubleValue()));
+            values.add(estimate.estimatedRps());
+            for (var i = 0; i < percentiles.length; i++) {
+                values.add("[%.2f, %.2f]".formatted(
+                        estimate.lowerBounds().get(i).doubleValue(),
+                        estimate.upperBounds().get(i).doubleValue()
+                ));
+            }
+            System.out.printf(estimateFormat, values.toArray());
+        });
+    }
+
+    /**
+     * Print raw and coordinated omission corrected percentiles side by side.
+     *
+     * @param stats     statistic summaries by request key
+     * @param corrected corrected percentiles by request key, nothing is printed if empty
+     */
+    public void printCorrected(Map<RequestKey, StatsSummary> stats, Map<RequestKey, CorrectedPercentiles> corrected) {
+        if (corrected.isEmpty()) {
+            return;
+        }
+        System.out.println("\n\u001B[1;34mCOORDINATED OMISSION CORRECTION\u001B[0m");
+        var header = new ArrayList<>(List.of("Class", "Kind", "Interval (ms)", "Synthetic"));
+        for (var percentile : percentiles) {
+            header.add("P" + formatPercentile(percentile) + " Raw");
+            header.add("P" + formatPercentile(percentile) + " Corrected");
+        }
+        System.out.printf(correctedFormat, header.toArray());
+        System.out.println("-----------------------------------------------------------------------------------------------");
+        corrected.forEach((key, correction) -> {
+            var values = new ArrayList<>();
+            values.add(key.requestKind().name());
+            values.add(key.kind());
+            values.add("%.3f".formatted(correction.expectedInterval().doubleValue()));
+            values.add(correction.synthetic());
+            var raw = stats.get(key).percentiles();
+            for (var i = 0; i < percentiles.length; i++) {
+                values.add("%.2f".formatted(raw.get(i).doubleValue()));
+                values.add("%.2f".formatted(correction.percentiles().get(i).doubleValue()));
+            }
+            System.out.printf(correctedFormat, values.toArray());
+        });
+    }
+
+    /**
+     * Print statistic of all requests by node.
+     *
+     * @param stats statistic summaries by node name, nothing is printed if empty
+     */
+    public void printNodeStats(Map<String, StatsSummary> stats) {
+        if (stats.isEmpty()) {
+            return;
+        }
+        printHeader("NODE STATISTICS", labelHeaderFormat);
+        stats.forEach((node, stat) -> printRow(node, stat, labelRowFormat));
+    }
+
+    /**
+     * Print statistics by endpoint.
+     *
+     * @param stats statistic summaries by endpoint name, nothing is printed if empty
+     */
+    public void printEndpointStats(Map<String, StatsSummary> stats) {
+        if (stats.isEmpty()) {
+            return;
+        }
+        printHeader("ENDPOINT STATISTICS", labelHeaderFormat);
+        stats.forEach((endpoint, stat) -> printRow(endpoint, stat, labelRowFormat));
+    }
+
+    /**
+     * Print request throughput timeline.
+     *
+     * @param timeline request throughput timeline
+     */
+    public void printTimeline(Timeline timeline) {
+        var formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+                .withZone(ZoneId.systemDefault());
+        System.out.println("\n\u001B[1;34mTHROUGHPUT TIMELINE: " + timeline.getResolution() / 1000.0 + "s\u001B[0m");
+        System.out.printf(TIMELINE_HEADER_FORMAT, "Time", "Requests", "RPS", "Avg Time", "Min", "Max");
+        System.out.println("-----------------------------------------------------------------------------------------------");
+        for (var bucket = 0; bucket < timeline.size(); bucket++) {
+            System.out.printf(
+                    TIMELINE_ROW_FORMAT,
+                    formatter.format(Instant.ofEpochMilli(timeline.getStart(bucket))),
+                    timeline.getCount(bucket),
+                    timeline.getRate(bucket),
+                    Latency.toMillisDouble(timeline.getAverageLatency(bucket)),
+                    Latency.toMillisDouble(timeline.getMinLatency(bucket)),
+                    Latency.toMillisDouble(timeline.getMaxLatency(bucket))
+            );
+        }
+    }
+
+    /**
+     * Print instrumentation report: read lines, reading rates, subscriber times and run phases.
+     *
+     * @param parseMetrics    read lines counters
+     * @param parseNanos      parsing duration in nanoseconds, used to compute rates
+     * @param subscriberTimes cumulative delivery time by subscriber
+     * @param phases          finished run phases
+     */
+    public void printMetrics(ParseMetrics parseMetrics,
+                             long parseNanos,
+                             SubscriberTimes subscriberTimes,
+                             List<PhaseMetrics.Phase> phases) {
+        var seconds = Math.max(1, parseNanos) / NANOS_PER_SECOND;
+        System.out.println("\n\u001B[1;34mINSTRUMENTATION\u001B[0m");
+        System.out.printf("%-30s %d%n", "Lines read", parseMetrics.getLinesRead());
+        System.out.printf("%-30s %d%n", "Lines matched", parseMetrics.getLinesMatched());
+        System.out.printf("%-30s %d%n", "Lines skipped", parseMetrics.getLinesSkipped());
+        System.out.printf("%-30s %.2f%n", "MB read", parseMetrics.getBytesRead() / BYTES_PER_MB);
+        System.out.printf("%-30s %.2f%n", "Lines/sec", parseMetrics.getLinesRead() / seconds);
+        System.out.printf("%-30s %.2f%n", "MB/sec", parseMetrics.getBytesRead() / BYTES_PER_MB / seconds);
 
-        printHeader("REQUEST STATISTICS: STATIC");
-        stats.entrySet().stream()
-                .filter(e -> e.getKey().requestKind() == RequestKind.STATIC)
-                .forEach(e -> printRow(e.getKey(), e.getValue()));
+        System.out.println("\n\u001B[1;34mSUBSCRIBER TIME\u001B[0m");
+        System.out.printf(METRICS_HEADER_FORMAT, "Subscriber", "Time (ms)", "Parse share (%)");
+        System.out.println("-----------------------------------------------------------------------------------------------");
+        subscriberTimes.getTimes().forEach((name, nanos) -> System.out.printf(
+                METRICS_ROW_FORMAT,
+                name,
+                nanos / NANOS_PER_MILLI,
+                100.0 * nanos / Math.max(1, parseNanos)
+        ));
+
+        System.out.println("\n\u001B[1;34mPHASES\u001B[0m");
+        System.out.printf(METRICS_HEADER_FORMAT, "Phase", "Wall time (ms)", "Allocated (MB)");
+        System.out.println("-----------------------------------------------------------------------------------------------");
+        for (var phase : phases) {
+            System.out.printf(
+                    METRICS_ROW_FORMAT,
+                    phase.name(),
+                    phase.wallNanos() / NANOS_PER_MILLI,
+                    phase.allocatedBytes() / BYTES_PER_MB
+            );
+        }
+    }
+
+    /**
+     * Print comparison of a candidate run with a baseline run.
+     *
+     * @param deltas compared values
+     */
+    public void printComparison(List<RunComparison.Delta> deltas) {
+        System.out.println("\n\u001B[1;34mRUN COMPARISON\u001B[0m");
+        System.out.printf(COMPARISON_HEADER_FORMAT, "Class", "Kind", "Metric", "Baseline", "Candidate", "Change (%)", "Status");
+        System.out.println("-----------------------------------------------------------------------------------------------");
+        for (var delta : deltas) {
+            var change = delta.getChange();
+            System.out.printf(
+                    COMPARISON_ROW_FORMAT,
+                    delta.key().requestKind().name(),
+                    delta.key().kind(),
+                    delta.metric(),
+                    delta.baseline(),
+                    delta.candidate(),
+                    Double.isNaN(change) ? "missing" : Double.isInfinite(change) ? (change > 0 ? "+inf" : "-inf") : "%+.2f".formatted(change),
+                    delta.regression() ? "REGRESSED" : "OK"
+            );
+        }
+    }
 
-        printHeader("REQUEST STATISTICS: DYNAMIC");
-        stats.entrySet().stream()
-                .filter(e -> e.getKey().requestKind() == RequestKind.DYNAMIC)
-                .forEach(e -> printRow(e.getKey(), e.getValue()));
+    /**
+     * Clear terminal and print statistics, used to refresh report while log is still written.
+     *
+     * @param stats statistics by request key
+     */
+    public void refreshRequestStats(Map<RequestKey, RequestStats> stats) {
+        System.out.print("\u001B[H\u001B[2J");
+        System.out.println("Updated at " + LocalTime.now().truncatedTo(ChronoUnit.SECONDS));
+        printRequestStats(ReportSnapshot.of(stats, percentiles).getStats());
+        System.out.flush();
     }
 
-    private void printHeader(String title) {
+    private void printHeader(String title, String format) {
         System.out.println("\n\u001B[1;34m" + title + "\u001B[0m");
-        System.out.printf("%-15s %-15s %-20s %-20s %-20s %-16s %-16s %-16s %-16s %-16s %-10s%n",
-                (Object[]) HEADERS);
+        System.out.printf(format, (Object[]) headers);
         System.out.println("-----------------------------------------------------------------------------------------------");
     }
 
-    private void printRow(RequestKey key, RequestStats stat) {
-        System.out.printf("%-15s %-15d %-20.2f %-20.2f %-20.2f %-16.2f %-16.2f %-16.2f %-16.2f %-16.2f %-10d%n",
-                key.kind(),
-                stat.getCount(),
-                stat.getTotalTime().doubleValue(),
-                stat.getAverageTime().doubleValue(),
-                stat.getVariance().doubleValue(),
-                stat.getPercentile90().doubleValue(),
-                stat.getPercentile95().doubleValue(),
-                stat.getPercentile99().doubleValue(),
-                stat.getMin().doubleValue(),
-                stat.getMax().doubleValue(),
-                stat.getRPS()
-        );
+    private void printRow(String label, StatsSummary stat, String format) {
+        var values = new ArrayList<>();
+        values.add(label);
+        values.add(stat.count());
+        values.add(stat.totalTime().doubleValue());
+        values.add(stat.averageTime().doubleValue());
+        values.add(stat.variance().doubleValue());
+        for (var percentile : stat.percentiles()) {
+            values.add(percentile.doubleValue());
+        }
+        values.add(stat.min().doubleValue());
+        values.add(stat.max().doubleValue());
+        values.add(stat.rps());
+        System.out.printf(format, values.toArray());
     }
 }
@@ -0,0 +1,44 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.metrics.ParseMetrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream counting read bytes with a parse metrics counter of the reading thread.
+ */
+final class CountingInputStream extends FilterInputStream {
+    private final ParseMetrics.Counter counter;
+
+    CountingInputStream(InputStream in, ParseMetrics.Counter counter) {
+        super(in);
+        this.counter = counter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        var b = in.read();
+        if (b >= 0) {
+            counter.bytes(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        var read = in.read(b, off, len);
+        if (read > 0) {
+            counter.bytes(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        var skipped = in.skip(n);
+        counter.bytes(skipped);
+        return skipped;
+    }
+}
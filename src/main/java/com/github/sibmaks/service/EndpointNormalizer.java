@@ -0,0 +1,122 @@
+package com.github.sibmaks.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Converts request URI into endpoint path template.
+ * <p>
+ * Scheme, authority, query string and fragment are dropped. Every path segment is checked by configured rules first,
+ * then by built-in rules which collapse numbers into {@code {id}}, UUIDs into {@code {uuid}}
+ * and long hexadecimal strings into {@code {hex}}. Normalizer is immutable and thread-safe.
+ */
+public final class EndpointNormalizer {
+    private static final int MIN_HEX_LENGTH = 16;
+
+    private final List<Rule> rules;
+
+    /**
+     * @param rules segment rules in {@code regex=placeholder} format, regex should match the whole path segment
+     */
+    public EndpointNormalizer(List<String> rules) {
+        var compiled = new ArrayList<Rule>(rules.size());
+        for (var rule : rules) {
+            var separator = rule.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Endpoint rule should be in regex=placeholder format, got: " + rule);
+            }
+            compiled.add(new Rule(Pattern.compile(rule.substring(0, separator)), rule.substring(separator + 1)));
+        }
+        this.rules = List.copyOf(compiled);
+    }
+
+    /**
+     * Normalize URI into path template.
+     *
+     * @param uri request URI
+     * @return path template starting with {@code /}
+     */
+    public String normalize(String uri) {
+        var start = 0;
+        var schemeEnd = uri.indexOf("://");
+        if (schemeEnd >= 0) {
+            start = uri.indexOf('/', schemeEnd + 3);
+            if (start < 0) {
+                return "/";
+            }
+        }
+        var end = uri.length();
+        for (var i = start; i < end; i++) {
+            var c = uri.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        var template = new StringBuilder(end - start + 1);
+        var segmentStart = start;
+        while (segmentStart < end) {
+            var segmentEnd = uri.indexOf('/', segmentStart);
+            if (segmentEnd < 0 || segmentEnd > end) {
+                segmentEnd = end;
+            }
+            if (segmentEnd > segmentStart) {
+                template.append('/').append(normalizeSegment(uri.substring(segmentStart, segmentEnd)));
+            }
+            segmentStart = segmentEnd + 1;
+        }
+        if (template.isEmpty() || end > start && uri.charAt(end - 1) == '/') {
+            template.append('/');
+        }
+        return template.toString();
+    }
+
+    private String normalizeSegment(String segment) {
+        for (var rule : rules) {
+            if (rule.pattern().matcher(segment).matches()) {
+                return rule.placeholder();
+            }
+        }
+        if (isNumber(segment)) {
+            return "{id}";
+        }
+        if (isUuid(segment)) {
+            return "{uuid}";
+        }
+        if (segment.length() >= MIN_HEX_LENGTH && isHex(segment, 0, segment.length())) {
+            return "{hex}";
+        }
+        return segment;
+    }
+
+    private static boolean isNumber(String segment) {
+        for (var i = 0; i < segment.length(); i++) {
+            var c = segment.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUuid(String segment) {
+        return segment.length() == 36
+                && segment.charAt(8) == '-' && segment.charAt(13) == '-'
+                && segment.charAt(18) == '-' && segment.charAt(23) == '-'
+                && isHex(segment, 0, 8) && isHex(segment, 9, 13) && isHex(segment, 14, 18)
+                && isHex(segment, 19, 23) && isHex(segment, 24, 36);
+    }
+
+    private static boolean isHex(String segment, int start, int end) {
+        for (var i = start; i < end; i++) {
+            if (Character.digit(segment.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record Rule(Pattern pattern, String placeholder) {
+    }
+}
@@ -1,11 +1,15 @@
 package com.github.sibmaks.service;
 
-import com.github.sibmaks.RequestStats;
+import com.github.sibmaks.TimeWindows;
 import com.github.sibmaks.dto.RequestKey;
 import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.report.ReportSnapshot;
+import com.github.sibmaks.report.StatsSummary;
+import com.github.sibmaks.stats.Latency;
+import com.github.sibmaks.stats.Timeline;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFRow;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.FileOutputStream;
@@ -13,97 +17,247 @@ import java.io.IOException;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 public class ExcelWriter {
+    /**
+     * Max amount of characters shown by Excel for a number in General format.
+     */
+    private static final int NUMBER_WIDTH = 11;
+    private static final int WIDTH_PADDING = 2;
+    private static final int MAX_WIDTH = 255;
+    private static final int MAX_SHEET_TITLE_LENGTH = 31;
 
-    private static void addRequestStatisticsSheet(
-            Map<RequestKey, RequestStats> stats,
-            XSSFWorkbook workbook
+    private final double[] percentiles;
+    private final int rowWindow;
+
+    /**
+     * @param percentiles reported percentiles, e.g. 99.9 for P99.9
+     */
+    public ExcelWriter(double[] percentiles) {
+        this(percentiles, -1);
+    }
+
+    /**
+     * @param percentiles reported percentiles, e.g. 99.9 for P99.9
+     * @param rowWindow   amount of rows kept in memory by streaming export, non-positive value builds whole workbook in memory
+     */
+    public ExcelWriter(double[] percentiles, int rowWindow) {
+        this.percentiles = percentiles.clone();
+        this.rowWindow = rowWindow;
+    }
+
+    private boolean isStreaming() {
+        return rowWindow > 0;
+    }
+
+    private void addRequestStatisticsSheet(
+            Map<RequestKey, StatsSummary> stats,
+            Workbook workbook,
+            Set<String> titles
     ) {
-        addSheet(stats, workbook, "Request Statistics", RequestKind.ALL);
-        addSheet(stats, workbook, "Request Statistics Static", RequestKind.STATIC);
-        addSheet(stats, workbook, "Request Statistics Dynamic", RequestKind.DYNAMIC);
+        var requestKinds = stats.keySet().stream()
+                .map(RequestKey::requestKind)
+                .distinct()
+                .toList();
+        for (var requestKind : requestKinds) {
+            addSheet(stats, workbook, getSheetTitle(requestKind, titles), requestKind);
+        }
     }
 
-    private static void addSheet(Map<RequestKey, RequestStats> stats,
-                                 XSSFWorkbook workbook,
-                                 String title,
-                                 RequestKind requestKind) {
-        var sheet = workbook.createSheet(title);
+    /**
+     * Add sheet per node with all statistics of the node.
+     */
+    private void addNodeSheets(
+            Map<String, Map<RequestKey, StatsSummary>> nodeStats,
+            Workbook workbook,
+            Set<String> titles
+    ) {
+        for (var node : nodeStats.entrySet()) {
+            var rows = new ArrayList<Map.Entry<String, StatsSummary>>();
+            for (var entry : node.getValue().entrySet()) {
+                rows.add(Map.entry(entry.getKey().kind(), entry.getValue()));
+            }
+            var title = getUniqueTitle(WorkbookUtil.createSafeSheetName("Node " + node.getKey()), titles);
+            addSheet(rows, workbook, title, "Kind");
+        }
+    }
 
-        var headerStyle = createHeaderStyle(workbook);
+    /**
+     * Sheet title of request class, class names are cut to the sheet name limit and made unique.
+     */
+    private static String getSheetTitle(RequestKind requestKind, Set<String> titles) {
+        var title = "Request Statistics";
+        if (!requestKind.equals(RequestKind.ALL)) {
+            var name = requestKind.name();
+            title = WorkbookUtil.createSafeSheetName(title + " " + name.substring(0, 1).toUpperCase(Locale.ROOT)
+                    + name.substring(1).toLowerCase(Locale.ROOT));
+        }
+        return getUniqueTitle(title, titles);
+    }
 
-        var headers = createHeaders(sheet, headerStyle);
+    private static String getUniqueTitle(String title, Set<String> titles) {
+        var uniqueTitle = title;
+        for (var i = 2; !titles.add(uniqueTitle.toLowerCase(Locale.ROOT)); i++) {
+            var suffix = " " + i;
+            uniqueTitle = title.substring(0, Math.min(title.length(), MAX_SHEET_TITLE_LENGTH - suffix.length())) + suffix;
+        }
+        return uniqueTitle;
+    }
 
-        var rowNum = 1;
+    private void addSheet(Map<RequestKey, StatsSummary> stats,
+                          Workbook workbook,
+                          String title,
+                          RequestKind requestKind) {
+        var rows = new ArrayList<Map.Entry<String, StatsSummary>>();
         for (var entry : stats.entrySet()) {
             var key = entry.getKey();
-            if(key.requestKind() != requestKind) {
-                continue;
+            if (key.requestKind().equals(requestKind)) {
+                rows.add(Map.entry(key.kind(), entry.getValue()));
             }
-            var row = sheet.createRow(rowNum++);
-            var stat = entry.getValue();
+        }
+        addSheet(rows, workbook, title, "Kind");
+    }
+
+    private void addSheet(List<Map.Entry<String, StatsSummary>> rows,
+                          Workbook workbook,
+                          String title,
+                          String labelHeader) {
+        var sheet = workbook.createSheet(title);
 
-            addRow(row, key, stat);
+        var headerStyle = createHeaderStyle(workbook);
+
+        var headers = createHeaders(sheet, headerStyle, labelHeader);
+
+        var rowNum = 1;
+        var kindWidth = headers[0].length();
+        for (var entry : rows) {
+            var row = sheet.createRow(rowNum++);
+            addRow(row, entry.getKey(), entry.getValue());
+            kindWidth = Math.max(kindWidth, entry.getKey().length());
         }
 
-        for (var i = 0; i < headers.length; i++) {
-            sheet.autoSizeColumn(i);
+        if (isStreaming()) {
+            // streamed rows are flushed, so widths are computed from known header and number format widths
+            sheet.setColumnWidth(0, toColumnWidth(kindWidth));
+            for (var i = 1; i < headers.length; i++) {
+                sheet.setColumnWidth(i, toColumnWidth(Math.max(headers[i].length(), NUMBER_WIDTH)));
+            }
+        } else {
+            for (var i = 0; i < headers.length; i++) {
+                sheet.autoSizeColumn(i);
+            }
         }
     }
 
+    private static int toColumnWidth(int characters) {
+        return Math.min(characters + WIDTH_PADDING, MAX_WIDTH) * 256;
+    }
+
     private static void addRPSSheet(
-            Map<Long, Integer> rpsStats,
-            XSSFWorkbook workbook
+            Timeline timeline,
+            Workbook workbook
     ) {
         var sheet = workbook.createSheet("RPS Report");
-        var formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+        var formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
                 .withZone(ZoneId.systemDefault());
 
         var headerRow = sheet.createRow(0);
-        headerRow.createCell(0).setCellValue("Minute");
+        headerRow.createCell(0).setCellValue("Time");
         headerRow.createCell(1).setCellValue("Requests");
+        headerRow.createCell(2).setCellValue("RPS");
+        headerRow.createCell(3).setCellValue("Avg Time (ms)");
+        headerRow.createCell(4).setCellValue("Min (ms)");
+        headerRow.createCell(5).setCellValue("Max (ms)");
+
+        for (var bucket = 0; bucket < timeline.size(); bucket++) {
+            var row = sheet.createRow(bucket + 1);
+            var instant = Instant.ofEpochMilli(timeline.getStart(bucket));
+            row.createCell(0).setCellValue(formatter.format(instant));
+            row.createCell(1).setCellValue(timeline.getCount(bucket));
+            row.createCell(2).setCellValue(timeline.getRate(bucket));
+            row.createCell(3).setCellValue(Latency.toMillisDouble(timeline.getAverageLatency(bucket)));
+            row.createCell(4).setCellValue(Latency.toMillisDouble(timeline.getMinLatency(bucket)));
+            row.createCell(5).setCellValue(Latency.toMillisDouble(timeline.getMaxLatency(bucket)));
+        }
+    }
+
+    /**
+     * Add time series of window statistics, window end is reported as window time.
+     */
+    private void addTimeWindowsSheet(
+            List<TimeWindows.Window> timeWindows,
+            Workbook workbook
+    ) {
+        var sheet = workbook.createSheet("Time Windows");
+        var formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+                .withZone(ZoneId.systemDefault());
+
+        var headerRow = sheet.createRow(0);
+        var column = 0;
+        headerRow.createCell(column++).setCellValue("Window Start");
+        headerRow.createCell(column++).setCellValue("Window End");
+        headerRow.createCell(column++).setCellValue("Requests");
+        headerRow.createCell(column++).setCellValue("RPS");
+        headerRow.createCell(column++).setCellValue("Avg Time (ms)");
+        for (var percentile : percentiles) {
+            headerRow.createCell(column++).setCellValue(ConsoleReportPrinter.formatPercentile(percentile) + "% (ms)");
+        }
+        headerRow.createCell(column++).setCellValue("Min (ms)");
+        headerRow.createCell(column).setCellValue("Max (ms)");
 
-        int rowNum = 1;
-        for (var entry : rpsStats.entrySet()) {
+        var rowNum = 1;
+        for (var window : timeWindows) {
             var row = sheet.createRow(rowNum++);
-            var instant = Instant.ofEpochSecond(entry.getKey());
-            var minute = formatter.format(instant);
-            row.createCell(0).setCellValue(minute);
-            row.createCell(1).setCellValue(entry.getValue());
+            column = 0;
+            row.createCell(column++).setCellValue(formatter.format(Instant.ofEpochMilli(window.start())));
+            row.createCell(column++).setCellValue(formatter.format(Instant.ofEpochMilli(window.end())));
+            row.createCell(column++).setCellValue(window.count());
+            row.createCell(column++).setCellValue(window.getRate());
+            row.createCell(column++).setCellValue(Latency.toMillisDouble(window.getAverageLatency()));
+            for (var value : window.percentiles()) {
+                row.createCell(column++).setCellValue(Latency.toMillisDouble(value));
+            }
+            row.createCell(column++).setCellValue(Latency.toMillisDouble(window.minLatency()));
+            row.createCell(column).setCellValue(Latency.toMillisDouble(window.maxLatency()));
         }
     }
 
-    private static void addRow(XSSFRow row, RequestKey key, RequestStats stat) {
-        row.createCell(0, CellType.STRING).setCellValue(key.kind());
-        row.createCell(1, CellType.NUMERIC).setCellValue(stat.getCount());
-        row.createCell(2, CellType.NUMERIC).setCellValue(stat.getTotalTime().doubleValue());
-        row.createCell(3, CellType.NUMERIC).setCellValue(stat.getAverageTime().doubleValue());
-        row.createCell(4, CellType.NUMERIC).setCellValue(stat.getVariance().doubleValue());
-        row.createCell(5, CellType.NUMERIC).setCellValue(stat.getPercentile90().doubleValue());
-        row.createCell(6, CellType.NUMERIC).setCellValue(stat.getPercentile95().doubleValue());
-        row.createCell(7, CellType.NUMERIC).setCellValue(stat.getPercentile99().doubleValue());
-        row.createCell(8, CellType.NUMERIC).setCellValue(stat.getMin().doubleValue());
-        row.createCell(9, CellType.NUMERIC).setCellValue(stat.getMax().doubleValue());
-        row.createCell(10, CellType.NUMERIC).setCellValue(stat.getRPS());
+    private void addRow(Row row, String label, StatsSummary stat) {
+        var column = 0;
+        row.createCell(column++, CellType.STRING).setCellValue(label);
+        row.createCell(column++, CellType.NUMERIC).setCellValue(stat.count());
+        row.createCell(column++, CellType.NUMERIC).setCellValue(stat.totalTime().doubleValue());
+        row.createCell(column++, CellType.NUMERIC).setCellValue(stat.averageTime().doubleValue());
+        row.createCell(column++, CellType.NUMERIC).setCellValue(stat.variance().doubleValue());
+        for (var value : stat.percentiles()) {
+            row.createCell(column++, CellType.NUMERIC).setCellValue(value.doubleValue());
+        }
+        row.createCell(column++, CellType.NUMERIC).setCellValue(stat.min().doubleValue());
+        row.createCell(column++, CellType.NUMERIC).setCellValue(stat.max().doubleValue());
+        row.createCell(column, CellType.NUMERIC).setCellValue(stat.rps());
     }
 
-    private static String[] createHeaders(XSSFSheet sheet, CellStyle headerStyle) {
+    private String[] createHeaders(Sheet sheet, CellStyle headerStyle, String labelHeader) {
         var headerRow = sheet.createRow(0);
-        var headers = new String[]{
-                "Kind",
-                "Total Requests",
-                "Total Time (ms)",
-                "Avg Time (ms)",
-                "Variance (ms)",
-                "90% (ms)",
-                "95% (ms)",
-                "99% (ms)",
-                "Min (ms)",
-                "Max (ms)",
-                "RPS"
-        };
+        var headerList = new ArrayList<String>();
+        headerList.add(labelHeader);
+        headerList.add("Total Requests");
+        headerList.add("Total Time (ms)");
+        headerList.add("Avg Time (ms)");
+        headerList.add("Variance (ms)");
+        for (var percentile : percentiles) {
+            headerList.add(ConsoleReportPrinter.formatPercentile(percentile) + "% (ms)");
+        }
+        headerList.add("Min (ms)");
+        headerList.add("Max (ms)");
+        headerList.add("RPS");
+        var headers = headerList.toArray(String[]::new);
         for (var i = 0; i < headers.length; i++) {
             var cell = headerRow.createCell(i);
             cell.setCellValue(headers[i]);
@@ -127,18 +281,50 @@ public class ExcelWriter {
         return style;
     }
 
-    public void write(
-            Map<RequestKey, RequestStats> stats,
-            Map<Long, Integer> rpsStats,
-            String filename
-    ) throws IOException {
+    /**
+     * Write report, workbook is rendered from precomputed values only.
+     *
+     * @param snapshot report data computed with the same percentiles, endpoint sheet is not added
+     *                 if there are no endpoints, time windows sheet is not added if windows are not collected,
+     *                 sheet is added per node
+     * @param filename report file
+     * @throws IOException on file writing error
+     */
+    public void write(ReportSnapshot snapshot, String filename) throws IOException {
+        if (isStreaming()) {
+            var workbook = new SXSSFWorkbook(rowWindow);
+            try (workbook) {
+                write(snapshot, filename, workbook);
+            } finally {
+                workbook.dispose();
+            }
+            return;
+        }
         try (var workbook = new XSSFWorkbook()) {
-            addRequestStatisticsSheet(stats, workbook);
-            addRPSSheet(rpsStats, workbook);
+            write(snapshot, filename, workbook);
+        }
+    }
 
-            try (var fileOut = new FileOutputStream(filename)) {
-                workbook.write(fileOut);
-            }
+    private void write(ReportSnapshot snapshot, String filename, Workbook workbook) throws IOException {
+        var titles = new HashSet<String>();
+        titles.add("endpoint statistics");
+        titles.add("rps report");
+        titles.add("time windows");
+        addRequestStatisticsSheet(snapshot.getStats(), workbook, titles);
+        var endpointStats = snapshot.getEndpointStats();
+        if (!endpointStats.isEmpty()) {
+            addSheet(new ArrayList<>(endpointStats.entrySet()), workbook, "Endpoint Statistics", "Endpoint");
+        }
+        if (snapshot.getTimeline() != null) {
+            addRPSSheet(snapshot.getTimeline(), workbook);
+        }
+        if (snapshot.getTimeWindows() != null) {
+            addTimeWindowsSheet(snapshot.getTimeWindows(), workbook);
+        }
+        addNodeSheets(snapshot.getNodeStats(), workbook, titles);
+
+        try (var fileOut = new FileOutputStream(filename)) {
+            workbook.write(fileOut);
         }
     }
 }
@@ -0,0 +1,47 @@
+package com.github.sibmaks.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Input stream over a file range, uses positional reads so the channel can be shared between threads.
+ */
+final class FileRangeInputStream extends InputStream {
+    private final FileChannel channel;
+    private final long end;
+    private long position;
+
+    /**
+     * @param channel file channel, it is not closed with the stream
+     * @param start   range start, inclusive
+     * @param end     range end, exclusive
+     */
+    FileRangeInputStream(FileChannel channel, long start, long end) {
+        this.channel = channel;
+        this.position = start;
+        this.end = end;
+    }
+
+    @Override
+    public int read() throws IOException {
+        var buffer = new byte[1];
+        var read = read(buffer, 0, 1);
+        return read < 0 ? -1 : buffer[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (position >= end) {
+            return -1;
+        }
+        var toRead = (int) Math.min(len, end - position);
+        var read = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+        if (read < 0) {
+            return -1;
+        }
+        position += read;
+        return read;
+    }
+}
@@ -0,0 +1,417 @@
+package com.github.sibmaks.service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Block decoder of multi-member gzip files.
+ * <p>
+ * File is split into fixed ranges, every block decodes members starting inside its range.
+ * Member boundaries are not stored in gzip, so the first member of a range is found by scanning for a header,
+ * candidate is accepted only if it inflates and matches CRC and size from the member trailer.
+ * Single-member files are detected up front by {@link #multiMember(Path)} and read sequentially,
+ * a later member exceeding block size limit switches reading to sequential as well.
+ */
+final class GzipBlockDecoder implements BlockDecoder {
+    private static final long RANGE_SIZE = 4 << 20;
+    private static final int MAX_BLOCK_SIZE = 64 << 20;
+    private static final int READ_BUFFER_SIZE = 64 << 10;
+    private static final int STREAM_BUFFER_SIZE = 64 << 10;
+    private static final long INVALID = -1;
+    private static final long TOO_LARGE = -2;
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int FRESERVED = 0xE0;
+
+    private final Path file;
+    private final long size;
+
+    GzipBlockDecoder(Path file) throws IOException {
+        this.file = file;
+        this.size = Files.size(file);
+    }
+
+    /**
+     * Check that the first member ends within the first range and is followed by another member,
+     * only the first range is inflated at most.
+     *
+     * @param file gzip file
+     * @return block decoder or null if file should be read sequentially
+     * @throws IOException on file reading error
+     */
+    static GzipBlockDecoder multiMember(Path file) throws IOException {
+        var inflater = new Inflater(true);
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var input = new Input(channel, channel.size());
+            var position = skipHeader(input, 0);
+            if (position < 0) {
+                return null;
+            }
+            var discarded = new byte[READ_BUFFER_SIZE];
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    var available = input.load(position);
+                    if (available <= 0 || position >= RANGE_SIZE) {
+                        return null;
+                    }
+                    inflater.setInput(input.array(), input.offset(position), available);
+                    position += available;
+                }
+                if (inflater.needsDictionary()) {
+                    return null;
+                }
+                inflater.inflate(discarded);
+            }
+            // skip CRC and size of the member trailer
+            var next = position - inflater.getRemaining() + 8;
+            if (input.get(next) != 0x1F || input.get(next + 1) != 0x8B) {
+                return null;
+            }
+            return new GzipBlockDecoder(file);
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Open sequential gzip stream, concatenated members are read as a single stream.
+     *
+     * @param file     gzip file
+     * @param position position of a member header
+     * @return decompressed data stream
+     * @throws IOException on file reading error
+     */
+    static InputStream open(Path file, long position) throws IOException {
+        var input = Files.newInputStream(file);
+        try {
+            input.skipNBytes(position);
+            return new GZIPInputStream(new BufferedInputStream(input, STREAM_BUFFER_SIZE), STREAM_BUFFER_SIZE);
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int blocks() {
+        return (int) ((size + RANGE_SIZE - 1) / RANGE_SIZE);
+    }
+
+    @Override
+    public long blockEnd(int block) {
+        return Math.min(size, (block + 1) * RANGE_SIZE);
+    }
+
+    @Override
+    public long end() {
+        return size;
+    }
+
+    /**
+     * Open sequential stream, bytes after the last member which do not start with a header are ignored
+     * as {@link GZIPInputStream} does.
+     */
+    @Override
+    public InputStream open(long position) throws IOException {
+        if (position > 0) {
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                var input = new Input(channel, size);
+                if (input.get(position) != 0x1F || input.get(position + 1) != 0x8B) {
+                    return InputStream.nullInputStream();
+                }
+            }
+        }
+        return open(file, position);
+    }
+
+    @Override
+    public DecodedBlock decode(int block) throws IOException {
+        var rangeStart = block * RANGE_SIZE;
+        var rangeEnd = blockEnd(block);
+        var inflater = new Inflater(true);
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var input = new Input(channel, size);
+            var output = new Output();
+            var crc = new CRC32();
+            var first = INVALID;
+            var position = rangeStart;
+            while (first < 0) {
+                var candidate = findHeader(input, position, rangeEnd);
+                if (candidate < 0) {
+                    return DecodedBlock.EMPTY;
+                }
+                var end = decodeMember(input, candidate, inflater, crc, output);
+                if (end == TOO_LARGE) {
+                    return null;
+                }
+                if (end == INVALID) {
+                    position = candidate + 1;
+                    continue;
+                }
+                first = candidate;
+                position = end;
+            }
+            while (position < rangeEnd) {
+                var end = decodeMember(input, position, inflater, crc, output);
+                if (end == TOO_LARGE) {
+                    return null;
+                }
+                if (end == INVALID) {
+                    break;
+                }
+                position = end;
+            }
+            return new DecodedBlock(first, position, output.toByteArray());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static long findHeader(Input input, long from, long to) throws IOException {
+        for (var position = from; position < to; position++) {
+            if (input.get(position) == 0x1F
+                    && input.get(position + 1) == 0x8B
+                    && input.get(position + 2) == Deflater.DEFLATED
+                    && (input.get(position + 3) & FRESERVED) == 0) {
+                return position;
+            }
+        }
+        return INVALID;
+    }
+
+    /**
+     * Decode member and append its data to output, output is not changed if member is invalid.
+     *
+     * @return member end, {@link #INVALID} or {@link #TOO_LARGE}
+     */
+    private static long decodeMember(Input input,
+                                     long start,
+                                     Inflater inflater,
+                                     CRC32 crc,
+                                     Output output) throws IOException {
+        var position = skipHeader(input, start);
+        if (position < 0) {
+            return INVALID;
+        }
+
+        var mark = output.size();
+        inflater.reset();
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    var available = input.load(position);
+                    if (available <= 0) {
+                        output.truncate(mark);
+                        return INVALID;
+                    }
+                    inflater.setInput(input.array(), input.offset(position), available);
+                    position += available;
+                }
+                if (inflater.needsDictionary()) {
+                    output.truncate(mark);
+                    return INVALID;
+                }
+                if (!output.ensureFree()) {
+                    output.truncate(mark);
+                    return TOO_LARGE;
+                }
+                output.advance(inflater.inflate(output.array(), output.size(), output.free()));
+            }
+        } catch (DataFormatException e) {
+            output.truncate(mark);
+            return INVALID;
+        }
+        position -= inflater.getRemaining();
+
+        var expectedCrc = input.getIntLE(position);
+        var expectedSize = input.getIntLE(position + 4);
+        crc.reset();
+        crc.update(output.array(), mark, output.size() - mark);
+        if (expectedCrc != crc.getValue() || expectedSize != output.size() - mark) {
+            output.truncate(mark);
+            return INVALID;
+        }
+        return position + 8;
+    }
+
+    /**
+     * @return position of deflate data after member header or {@link #INVALID}
+     */
+    private static long skipHeader(Input input, long start) throws IOException {
+        if (input.get(start) != 0x1F || input.get(start + 1) != 0x8B || input.get(start + 2) != Deflater.DEFLATED) {
+            return INVALID;
+        }
+        var flags = input.get(start + 3);
+        if (flags < 0 || (flags & FRESERVED) != 0 || input.get(start + 9) < 0) {
+            return INVALID;
+        }
+        var position = start + 10;
+        if ((flags & FEXTRA) != 0) {
+            var low = input.get(position);
+            var high = input.get(position + 1);
+            if (low < 0 || high < 0) {
+                return INVALID;
+            }
+            position += 2 + (low | high << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            position = skipZeroTerminated(input, position);
+        }
+        if ((flags & FCOMMENT) != 0 && position >= 0) {
+            position = skipZeroTerminated(input, position);
+        }
+        if (position < 0) {
+            return INVALID;
+        }
+        if ((flags & FHCRC) != 0) {
+            position += 2;
+        }
+        return position;
+    }
+
+    private static long skipZeroTerminated(Input input, long position) throws IOException {
+        while (true) {
+            var b = input.get(position++);
+            if (b < 0) {
+                return INVALID;
+            }
+            if (b == 0) {
+                return position;
+            }
+        }
+    }
+
+    /**
+     * Buffered positional reader of the compressed file.
+     */
+    private static final class Input {
+        private final FileChannel channel;
+        private final long size;
+        private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private long bufferStart;
+
+        private Input(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+            this.buffer.limit(0);
+        }
+
+        /**
+         * @return unsigned byte at position or -1 at the end of file
+         */
+        int get(long position) throws IOException {
+            if (load(position) <= 0) {
+                return -1;
+            }
+            return buffer.get(offset(position)) & 0xFF;
+        }
+
+        /**
+         * @return unsigned little-endian int at position or -1 at the end of file
+         */
+        long getIntLE(long position) throws IOException {
+            var value = 0L;
+            for (var i = 0; i < 4; i++) {
+                var b = get(position + i);
+                if (b < 0) {
+                    return -1;
+                }
+                value |= (long) b << (8 * i);
+            }
+            return value;
+        }
+
+        /**
+         * Make position available in buffer.
+         *
+         * @return amount of buffered bytes starting from position
+         */
+        int load(long position) throws IOException {
+            if (position >= size || position < 0) {
+                return 0;
+            }
+            if (position < bufferStart || position >= bufferStart + buffer.limit()) {
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                buffer.flip();
+                bufferStart = position;
+            }
+            return (int) (bufferStart + buffer.limit() - position);
+        }
+
+        byte[] array() {
+            return buffer.array();
+        }
+
+        int offset(long position) {
+            return (int) (position - bufferStart);
+        }
+    }
+
+    /**
+     * Growable decompressed data buffer limited by {@link #MAX_BLOCK_SIZE}.
+     */
+    private static final class Output {
+        private byte[] data = new byte[READ_BUFFER_SIZE];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        byte[] array() {
+            return data;
+        }
+
+        int free() {
+            return data.length - size;
+        }
+
+        void advance(int written) {
+            size += written;
+        }
+
+        void truncate(int size) {
+            this.size = size;
+        }
+
+        /**
+         * @return false if buffer can not grow anymore
+         */
+        boolean ensureFree() {
+            if (free() > 0) {
+                return true;
+            }
+            if (data.length >= MAX_BLOCK_SIZE) {
+                return false;
+            }
+            data = Arrays.copyOf(data, Math.min(MAX_BLOCK_SIZE, data.length * 2));
+            return true;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.sibmaks.service;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Deterministic sampler of log lines, skipped lines are not matched against request pattern.
+ * <p>
+ * Line is accepted when the mixed hash of its content is below the rate threshold, so the same lines are
+ * sampled regardless of parser, amount of threads or position of the line in the file. Both paths hash
+ * UTF-8 bytes of the line, so byte and string parsers sample the same lines of a UTF-8 log.
+ */
+public final class LineSampler {
+    /**
+     * Sampler accepting every line.
+     */
+    public static final LineSampler ALL = new LineSampler(1.0);
+    private static final double HASH_RANGE = 0x1p53;
+
+    private final double rate;
+    private final long threshold;
+
+    private LineSampler(double rate) {
+        this.rate = rate;
+        this.threshold = (long) (rate * HASH_RANGE);
+    }
+
+    /**
+     * @param rate fraction of accepted lines, in range (0, 1]
+     * @return line sampler
+     */
+    public static LineSampler of(double rate) {
+        if (!(rate > 0 && rate <= 1)) {
+            throw new IllegalArgumentException("Sample rate should be in range (0, 1], got: " + rate);
+        }
+        return rate == 1 ? ALL : new LineSampler(rate);
+    }
+
+    /**
+     * @return fraction of accepted lines
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * @return true if every line is accepted
+     */
+    public boolean isAll() {
+        return this == ALL;
+    }
+
+    /**
+     * @param line log line without terminator
+     * @return true if line is sampled
+     */
+    public boolean accept(String line) {
+        return isAll() || acceptHash(utf8Hash(line));
+    }
+
+    /**
+     * @param buffer line source
+     * @param start  line start, inclusive
+     * @param end    line end without terminator, exclusive
+     * @return true if line is sampled
+     */
+    public boolean accept(ByteBuffer buffer, int start, int end) {
+        if (isAll()) {
+            return true;
+        }
+        var hash = 0;
+        for (var i = start; i < end; i++) {
+            hash = 31 * hash + (buffer.get(i) & 0xFF);
+        }
+        return acceptHash(hash);
+    }
+
+    /**
+     * Polynomial hash of UTF-8 encoding of the line computed without encoding it,
+     * unpaired surrogates are hashed as {@code '?'} as {@link String#getBytes} replaces them.
+     */
+    static int utf8Hash(String line) {
+        var hash = 0;
+        var length = line.length();
+        for (var i = 0; i < length; i++) {
+            int c = line.charAt(i);
+            if (c < 0x80) {
+                hash = 31 * hash + c;
+            } else if (c < 0x800) {
+                hash = 31 * hash + (0xC0 | c >> 6);
+                hash = 31 * hash + (0x80 | c & 0x3F);
+            } else if (!Character.isSurrogate((char) c)) {
+                hash = 31 * hash + (0xE0 | c >> 12);
+                hash = 31 * hash + (0x80 | c >> 6 & 0x3F);
+                hash = 31 * hash + (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate((char) c) && i + 1 < length
+                    && Character.isLowSurrogate(line.charAt(i + 1))) {
+                var codePoint = Character.toCodePoint((char) c, line.charAt(++i));
+                hash = 31 * hash + (0xF0 | codePoint >> 18);
+                hash = 31 * hash + (0x80 | codePoint >> 12 & 0x3F);
+                hash = 31 * hash + (0x80 | codePoint >> 6 & 0x3F);
+                hash = 31 * hash + (0x80 | codePoint & 0x3F);
+            } else {
+                hash = 31 * hash + '?';
+            }
+        }
+        return hash;
+    }
+
+    private boolean acceptHash(int hash) {
+        return mix(hash) >>> 11 < threshold;
+    }
+
+    /**
+     * Finalization step of MurmurHash3, spreads line hash over all bits.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return value ^ (value >>> 33);
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.bus.EventPublisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+/**
+ * Follows a growing log file: polls file size, parses only complete lines appended after the byte offset checkpoint
+ * and periodically calls refresh callback. Thread sleeps between polls, so it does not use CPU while file is idle.
+ */
+public class LogFollower {
+    private static final Logger log = LoggerFactory.getLogger(LogFollower.class);
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    private final EventPublisher eventPublisher;
+    private final Duration pollInterval;
+    private final Duration idleTimeout;
+    private final ParseOptions options;
+
+    /**
+     * @param eventPublisher request publisher
+     * @param pollInterval   delay between file size checks when no new lines are appended
+     * @param idleTimeout    stop following if no lines are appended during this time, null to follow until interrupted
+     * @param options        parsing options
+     */
+    public LogFollower(EventPublisher eventPublisher,
+                       Duration pollInterval,
+                       Duration idleTimeout,
+                       ParseOptions options) {
+        this.eventPublisher = eventPublisher;
+        this.pollInterval = pollInterval;
+        this.idleTimeout = idleTimeout;
+        this.options = options;
+    }
+
+    /**
+     * Follow log file until interrupted, idle timeout expired, last request is read or file is truncated.
+     *
+     * @param fileName         log file
+     * @param lastRequestIndex amount of request to read, negative for all requests
+     * @param refreshInterval  interval of refresh callback calls
+     * @param refresh          refresh callback, called on the following thread
+     * @throws IOException on file reading error
+     */
+    public void follow(String fileName,
+                       int lastRequestIndex,
+                       Duration refreshInterval,
+                       Runnable refresh) throws IOException {
+        var lastIndex = lastRequestIndex < 0 ? Integer.MAX_VALUE : lastRequestIndex;
+        var checkpoint = 0L;
+        var nextIndex = 1;
+        var lastRefresh = System.nanoTime();
+        var lastAppend = lastRefresh;
+        try (var channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            while (nextIndex <= lastIndex) {
+                var size = channel.size();
+                if (size < checkpoint) {
+                    // lines of the rewritten file can not be told apart from already counted ones
+                    log.error("File {} was truncated from {} to {} bytes, stop following", fileName, checkpoint, size);
+                    break;
+                }
+                var end = findLastLineEnd(channel, checkpoint, size);
+                var now = System.nanoTime();
+                var appended = end > checkpoint;
+                if (appended) {
+                    nextIndex = MappedLogParser.parse(channel, checkpoint, end, nextIndex, lastIndex, options, eventPublisher);
+                    checkpoint = end;
+                    lastAppend = now;
+                } else if (idleTimeout != null && now - lastAppend >= idleTimeout.toNanos()) {
+                    log.info("No new lines in {} during {}, stop following", fileName, idleTimeout);
+                    break;
+                }
+                if (now - lastRefresh >= refreshInterval.toNanos()) {
+                    refresh.run();
+                    lastRefresh = now;
+                }
+                if (!appended && !sleep()) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean sleep() {
+        try {
+            Thread.sleep(pollInterval.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Find position after the last {@code \n} in the range, lines without terminator may still be written.
+     *
+     * @return position after the last complete line or range start if there is no complete line
+     */
+    private static long findLastLineEnd(FileChannel channel, long start, long end) throws IOException {
+        var buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        var blockEnd = end;
+        while (blockEnd > start) {
+            var blockStart = Math.max(start, blockEnd - SCAN_BUFFER_SIZE);
+            buffer.clear();
+            buffer.limit((int) (blockEnd - blockStart));
+            var read = 0;
+            while (buffer.hasRemaining()) {
+                var n = channel.read(buffer, blockStart + read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            for (var i = read - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return blockStart + i + 1;
+                }
+            }
+            blockEnd = blockStart;
+        }
+        return start;
+    }
+}
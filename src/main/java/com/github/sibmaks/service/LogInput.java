@@ -0,0 +1,44 @@
+package com.github.sibmaks.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Opens log file as a decompressed byte stream.
+ */
+public final class LogInput {
+
+    private LogInput() {
+    }
+
+    /**
+     * Open log file, compressed files are decompressed on the fly.
+     * <p>
+     * Multi-member gzip and seekable zstd files are decompressed on several threads if allowed,
+     * other compressed files are decompressed sequentially.
+     *
+     * @param file    log file
+     * @param threads amount of decompressing threads
+     * @return decompressed data stream
+     * @throws IOException on file reading error
+     */
+    public static InputStream open(Path file, int threads) throws IOException {
+        return switch (Compression.detect(file)) {
+            case NONE -> Files.newInputStream(file);
+            case GZIP -> {
+                var decoder = threads > 1 ? GzipBlockDecoder.multiMember(file) : null;
+                yield decoder != null
+                        ? new ParallelBlockInputStream(decoder, threads)
+                        : GzipBlockDecoder.open(file, 0);
+            }
+            case ZSTD -> {
+                var decoder = threads > 1 ? ZstdBlockDecoder.seekable(file) : null;
+                yield decoder != null
+                        ? new ParallelBlockInputStream(decoder, threads)
+                        : ZstdBlockDecoder.open(file, 0);
+            }
+        };
+    }
+}
@@ -1,66 +1,186 @@
 package com.github.sibmaks.service;
 
 import com.github.sibmaks.bus.EventPublisher;
+import com.github.sibmaks.bus.Topic;
 import com.github.sibmaks.dto.Request;
 import com.github.sibmaks.dto.RequestKey;
-import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.dto.TimeRange;
+import com.github.sibmaks.metrics.ParseMetrics;
+import com.github.sibmaks.stats.Latency;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.regex.Pattern;
 
 public class LogParser {
     public static final String RQ_TOPIC = "request";
+    public static final Topic<Request> REQUEST_TOPIC = new Topic<>(RQ_TOPIC, Request.class);
     private static final Pattern LOG_LINE_PATTERN = Pattern.compile(
             "^\\[(\\d+)]\\[(GET|POST|PUT|DELETE|HEAD|OPTIONS|PATCH)].*?at (\\d+[.,]\\d+)ms.*?(http://\\S+)$"
     );
     private final EventPublisher eventPublisher;
+    private final RequestClassifier classifier;
+    private final ParseMetrics metrics;
+    private final TimeRange range;
+    private final LineSampler sampler;
 
-
-    public LogParser(EventPublisher eventPublisher) {
+    /**
+     * @param eventPublisher request publisher
+     * @param options        parsing options, lines are skipped by sampler before matching
+     */
+    public LogParser(EventPublisher eventPublisher, ParseOptions options) {
         this.eventPublisher = eventPublisher;
+        this.classifier = options.classifier();
+        this.metrics = options.metrics();
+        this.range = options.range();
+        this.sampler = options.sampler();
+    }
+
+    /**
+     * Check if line is a request log line.
+     *
+     * @param line log line
+     * @return true if line describes a request
+     */
+    static boolean isRequestLine(String line) {
+        return LOG_LINE_PATTERN.matcher(line).find();
+    }
+
+    /**
+     * Check if line is a request log line with timestamp in range.
+     *
+     * @param line  log line
+     * @param range accepted request timestamps
+     * @return true if line describes a request of the range
+     */
+    static boolean isRequestLine(String line, TimeRange range) {
+        if (range.isAll()) {
+            return isRequestLine(line);
+        }
+        var timestamp = parseTimestamp(line);
+        return timestamp >= 0 && range.contains(timestamp);
     }
 
-    private static boolean isStaticURI(String uri) {
-        return uri.contains("/img/") || uri.contains("/cmsstatic/") || uri.contains("/js/");
+    /**
+     * Parse timestamp of request log line.
+     *
+     * @param line log line
+     * @return request timestamp in milliseconds or -1 if line does not describe a request
+     */
+    static long parseTimestamp(String line) {
+        var matcher = LOG_LINE_PATTERN.matcher(line);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    /**
+     * Parse request log line.
+     *
+     * @param line         log line
+     * @param requestIndex index assigned to request
+     * @param classifier   request classifier
+     * @return parsed request or null if line does not describe a request
+     */
+    static Request parseRequest(String line, int requestIndex, RequestClassifier classifier) {
+        return parseRequest(line, requestIndex, classifier, TimeRange.ALL);
+    }
+
+    /**
+     * Parse request log line.
+     *
+     * @param line         log line
+     * @param requestIndex index assigned to request
+     * @param classifier   request classifier
+     * @param range        accepted request timestamps
+     * @return parsed request or null if line does not describe a request of the range
+     */
+    static Request parseRequest(String line, int requestIndex, RequestClassifier classifier, TimeRange range) {
+        var matcher = LOG_LINE_PATTERN.matcher(line);
+        if (!matcher.find()) {
+            return null;
+        }
+        var timestamp = Long.parseLong(matcher.group(1));
+        if (!range.contains(timestamp)) {
+            return null;
+        }
+        var method = matcher.group(2);
+        var time = Latency.fromMillis(new BigDecimal(matcher.group(3).replace(',', '.')));
+        var uri = matcher.group(4);
+
+        var requestKind = classifier.getKind(classifier.classify(uri));
+        var key = new RequestKey(
+                method,
+                requestKind
+        );
+        return new Request(
+                requestIndex,
+                key,
+                time,
+                timestamp,
+                uri
+        );
     }
 
     public void parse(String fileName, int lastRequestIndex) throws IOException {
+        parse(LogInput.open(Path.of(fileName), 1), lastRequestIndex);
+    }
+
+    /**
+     * Parse part of uncompressed log file.
+     *
+     * @param fileName         log file
+     * @param start            part start, should be a line start
+     * @param end              part end, should be a line start, clamped to file size
+     * @param lastRequestIndex amount of request to read, negative for all requests
+     * @throws IOException on file reading error
+     */
+    public void parse(String fileName, long start, long end, int lastRequestIndex) throws IOException {
+        try (var channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            parse(new FileRangeInputStream(channel, start, Math.min(end, channel.size())), lastRequestIndex);
+        }
+    }
+
+    /**
+     * Parse log stream, stream is closed after parsing.
+     *
+     * @param input            decompressed log stream
+     * @param lastRequestIndex amount of request to read, negative for all requests
+     * @throws IOException on stream reading error
+     */
+    public void parse(InputStream input, int lastRequestIndex) throws IOException {
         if (lastRequestIndex < 0) {
             lastRequestIndex = Integer.MAX_VALUE;
         }
-        try (var reader = new BufferedReader(new FileReader(fileName))) {
+        var counter = metrics.counter();
+        var stream = metrics.isEnabled() ? new CountingInputStream(input, counter) : input;
+        try (var reader = new BufferedReader(new InputStreamReader(stream, Charset.defaultCharset()))) {
             String line;
             var requestIndex = 1;
             while ((line = reader.readLine()) != null) {
-                var matcher = LOG_LINE_PATTERN.matcher(line);
-                if (!matcher.find()) {
+                counter.line(0);
+                if (!sampler.accept(line)) {
+                    continue;
+                }
+                var rq = parseRequest(line, requestIndex, classifier, range);
+                if (rq == null) {
                     continue;
                 }
-                var timestamp = Long.parseLong(matcher.group(1));
-                var method = matcher.group(2);
-                var time = new BigDecimal(matcher.group(3).replace(',', '.'));
-                var uri = matcher.group(4);
-
-                var requestKind = isStaticURI(uri) ? RequestKind.STATIC : RequestKind.DYNAMIC;
-                var key = new RequestKey(
-                        method,
-                        requestKind
-                );
-                var rq = new Request(
-                        requestIndex,
-                        key,
-                        time,
-                        timestamp
-                );
 
+                counter.matched();
                 eventPublisher.publish(RQ_TOPIC, rq);
                 if (lastRequestIndex <= requestIndex++) {
                     break;
                 }
             }
+        } finally {
+            counter.flush();
         }
+        eventPublisher.flush();
     }
 }
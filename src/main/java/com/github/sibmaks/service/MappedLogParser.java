@@ -0,0 +1,188 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.bus.EventPublisher;
+import com.github.sibmaks.metrics.ParseMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.github.sibmaks.service.LogParser.RQ_TOPIC;
+
+/**
+ * Log parser which reads memory-mapped file windows and parses raw line bytes with {@link RequestLineParser}.
+ */
+public class MappedLogParser {
+    private static final int WINDOW_SIZE = 64 << 20;
+
+    private final EventPublisher eventPublisher;
+    private final ParseOptions options;
+
+    /**
+     * @param eventPublisher request publisher
+     * @param options        parsing options
+     */
+    public MappedLogParser(EventPublisher eventPublisher, ParseOptions options) {
+        this.eventPublisher = eventPublisher;
+        this.options = options;
+    }
+
+    public void parse(String fileName, int lastRequestIndex) throws IOException {
+        parse(fileName, 0, Long.MAX_VALUE, lastRequestIndex);
+    }
+
+    /**
+     * Parse part of log file.
+     *
+     * @param fileName         log file
+     * @param start            part start, should be a line start
+     * @param end              part end, should be a line start, clamped to file size
+     * @param lastRequestIndex amount of request to read, negative for all requests
+     * @throws IOException on file reading error
+     */
+    public void parse(String fileName, long start, long end, int lastRequestIndex) throws IOException {
+        var lastIndex = lastRequestIndex < 0 ? Integer.MAX_VALUE : lastRequestIndex;
+        try (var channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            parse(channel, start, Math.min(end, channel.size()), 1, lastIndex, options, eventPublisher);
+        }
+    }
+
+    /**
+     * Parse file range, publish requests and flush publisher.
+     *
+     * @param channel    file channel
+     * @param start      range start, should be a line start
+     * @param end        range end, should be a line start or file end
+     * @param firstIndex index of the first request in the range
+     * @param lastIndex  index of the last published request
+     * @param options    parsing options
+     * @param publisher  request publisher
+     * @return index of the next request
+     * @throws IOException on file mapping error
+     */
+    static int parse(FileChannel channel,
+                     long start,
+                     long end,
+                     int firstIndex,
+                     int lastIndex,
+                     ParseOptions options,
+                     EventPublisher publisher) throws IOException {
+        var parser = new RequestLineParser(options);
+        var sampler = options.sampler();
+        var counter = options.metrics().counter();
+        var requestIndex = new int[]{firstIndex};
+        forEachLine(channel, start, end, counter, (buffer, lineStart, lineEnd) -> {
+            if (!sampler.accept(buffer, lineStart, lineEnd) || !parser.parse(buffer, lineStart, lineEnd)) {
+                return true;
+            }
+            counter.matched();
+            var index = requestIndex[0]++;
+            publisher.publish(RQ_TOPIC, parser.toRequest(index));
+            return index < lastIndex;
+        });
+        counter.flush();
+        publisher.flush();
+        return requestIndex[0];
+    }
+
+    /**
+     * Count request lines in file range.
+     *
+     * @param channel    file channel
+     * @param start      range start, should be a line start
+     * @param end        range end, should be a line start or file end
+     * @param options    parsing options, metrics are not counted
+     * @return amount of request lines
+     * @throws IOException on file mapping error
+     */
+    static int count(FileChannel channel,
+                     long start,
+                     long end,
+                     ParseOptions options) throws IOException {
+        var parser = new RequestLineParser(options);
+        var sampler = options.sampler();
+        var count = new int[1];
+        forEachLine(channel, start, end, ParseMetrics.disabled().counter(), (buffer, lineStart, lineEnd) -> {
+            if (sampler.accept(buffer, lineStart, lineEnd) && parser.parse(buffer, lineStart, lineEnd)) {
+                count[0]++;
+            }
+            return true;
+        });
+        return count[0];
+    }
+
+    /**
+     * Iterate over lines of the file range, lines are split by {@code \n}, {@code \r} or {@code \r\n}
+     * as {@link java.io.BufferedReader#readLine()} does. Visited lines are counted with their terminators.
+     * {@code \r} at the end of a window is carried to the next one, so split {@code \r\n} stays a single terminator.
+     */
+    private static void forEachLine(FileChannel channel,
+                                    long start,
+                                    long end,
+                                    ParseMetrics.Counter counter,
+                                    LineVisitor visitor) throws IOException {
+        var position = start;
+        var windowSize = WINDOW_SIZE;
+        var pendingCarriageReturn = false;
+        while (position < end) {
+            var length = (int) Math.min(windowSize, end - position);
+            var lastWindow = position + length == end;
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            var lineStart = 0;
+            if (pendingCarriageReturn && buffer.get(0) == '\n') {
+                // terminator of the line visited in the previous window
+                counter.bytes(1);
+                lineStart = 1;
+            }
+            pendingCarriageReturn = false;
+            for (var i = lineStart; i < length; i++) {
+                var b = buffer.get(i);
+                if (b != '\n' && b != '\r') {
+                    continue;
+                }
+                var proceed = visitor.visit(buffer, lineStart, i);
+                if (b == '\r' && i + 1 < length && buffer.get(i + 1) == '\n') {
+                    i++;
+                } else if (b == '\r' && i + 1 == length) {
+                    pendingCarriageReturn = true;
+                }
+                counter.line(i + 1 - lineStart);
+                if (!proceed) {
+                    return;
+                }
+                lineStart = i + 1;
+            }
+            if (lastWindow) {
+                if (lineStart < length) {
+                    visitor.visit(buffer, lineStart, length);
+                    counter.line(length - lineStart);
+                }
+                return;
+            }
+            if (lineStart == 0) {
+                if (windowSize == Integer.MAX_VALUE) {
+                    throw new IOException("Line at offset %d is too long".formatted(position));
+                }
+                windowSize = (int) Math.min(Integer.MAX_VALUE, windowSize * 2L);
+                continue;
+            }
+            position += lineStart;
+            windowSize = WINDOW_SIZE;
+        }
+    }
+
+    @FunctionalInterface
+    private interface LineVisitor {
+        /**
+         * Visit line.
+         *
+         * @param buffer    line source
+         * @param lineStart line start, inclusive
+         * @param lineEnd   line end without terminator, exclusive
+         * @return false to stop iteration
+         */
+        boolean visit(ByteBuffer buffer, int lineStart, int lineEnd);
+    }
+}
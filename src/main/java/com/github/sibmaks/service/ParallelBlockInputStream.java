@@ -0,0 +1,131 @@
+package com.github.sibmaks.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Input stream which decompresses blocks ahead on a worker pool and returns them in file order.
+ * <p>
+ * If decoded block does not start where the previous one ended, or block can not be decoded independently,
+ * the rest of the file is read with sequential decompressing stream.
+ */
+final class ParallelBlockInputStream extends InputStream {
+    private static final int BLOCKS_PER_THREAD = 2;
+
+    private final BlockDecoder decoder;
+    private final ExecutorService executor;
+    private final ArrayDeque<Future<BlockDecoder.DecodedBlock>> pending = new ArrayDeque<>();
+    private final int prefetch;
+    private int nextBlock;
+    private int pendingBlock;
+    private long expected;
+    private byte[] current = new byte[0];
+    private int currentPosition;
+    private InputStream fallback;
+
+    /**
+     * @param decoder block decoder
+     * @param threads amount of decompressing threads
+     */
+    ParallelBlockInputStream(BlockDecoder decoder, int threads) {
+        this.decoder = decoder;
+        this.prefetch = threads * BLOCKS_PER_THREAD;
+        this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @Override
+    public int read() throws IOException {
+        var buffer = new byte[1];
+        var read = read(buffer, 0, 1);
+        return read < 0 ? -1 : buffer[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            if (fallback != null) {
+                return fallback.read(b, off, len);
+            }
+            if (currentPosition < current.length) {
+                var read = Math.min(len, current.length - currentPosition);
+                System.arraycopy(current, currentPosition, b, off, read);
+                currentPosition += read;
+                return read;
+            }
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+    }
+
+    private boolean nextBlock() throws IOException {
+        while (pending.size() < prefetch && nextBlock < decoder.blocks()) {
+            var block = nextBlock++;
+            pending.add(executor.submit(() -> decoder.decode(block)));
+        }
+        var future = pending.poll();
+        if (future == null) {
+            if (expected < decoder.end()) {
+                switchToFallback();
+                return true;
+            }
+            return false;
+        }
+        var blockEnd = decoder.blockEnd(pendingBlock++);
+        var block = await(future);
+        if (block != null && block.start() == expected) {
+            current = block.data();
+            currentPosition = 0;
+            expected = block.end();
+            return true;
+        }
+        if (block != null && block.start() < 0 && expected >= blockEnd) {
+            return true;
+        }
+        switchToFallback();
+        return true;
+    }
+
+    private void switchToFallback() throws IOException {
+        executor.shutdownNow();
+        pending.clear();
+        current = new byte[0];
+        currentPosition = 0;
+        fallback = decoder.open(expected);
+    }
+
+    private static BlockDecoder.DecodedBlock await(Future<BlockDecoder.DecodedBlock> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Decompression interrupted", e);
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        pending.clear();
+        if (fallback != null) {
+            fallback.close();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.bus.EventPublisher;
+import com.github.sibmaks.dto.TimeRange;
+import com.github.sibmaks.metrics.ParseMetrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static com.github.sibmaks.service.LogParser.RQ_TOPIC;
+
+/**
+ * Log parser which splits file into newline aligned chunks and parses them on a worker pool.
+ * <p>
+ * Request indexes are assigned in two phases: requests of every chunk are counted first,
+ * then chunk is parsed with index following the requests of all previous chunks.
+ * Counting pass matches every line once more, so it is skipped if neither last request index
+ * nor {@link ParseOptions#indexes()} needs file-wide indexes, requests of every chunk are numbered from 1 then.
+ * Each chunk is published to own publisher, so subscribers do not need to be thread-safe.
+ */
+public class ParallelLogParser {
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    private final int threads;
+    private final boolean mapped;
+    private final ParseOptions options;
+    private final RequestClassifier classifier;
+    private final ParseMetrics metrics;
+    private final TimeRange range;
+    private final LineSampler sampler;
+
+    /**
+     * @param threads amount of worker threads
+     * @param mapped  parse memory-mapped chunks with byte level parser instead of regex
+     * @param options parsing options, lines are counted while chunks are parsed
+     */
+    public ParallelLogParser(int threads, boolean mapped, ParseOptions options) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads amount should be positive, got: " + threads);
+        }
+        this.threads = threads;
+        this.mapped = mapped;
+        this.options = options;
+        this.classifier = options.classifier();
+        this.metrics = options.metrics();
+        this.range = options.range();
+        this.sampler = options.sampler();
+    }
+
+    /**
+     * Parse log file.
+     *
+     * @param fileName         log file
+     * @param lastRequestIndex amount of request to read, negative for all requests
+     * @param publishers       chunk publisher factory, called sequentially in file order once per parsed chunk
+     * @throws IOException on file reading error
+     */
+    public void parse(String fileName,
+                      int lastRequestIndex,
+                      Supplier<? extends EventPublisher> publishers) throws IOException {
+        parse(fileName, 0, Long.MAX_VALUE, lastRequestIndex, publishers);
+    }
+
+    /**
+     * Parse part of log file.
+     *
+     * @param fileName         log file
+     * @param start            part start, should be a line start
+     * @param end              part end, should be a line start, clamped to file size
+     * @param lastRequestIndex amount of request to read, negative for all requests
+     * @param publishers       chunk publisher factory, called sequentially in file order once per parsed chunk
+     * @throws IOException on file reading error
+     */
+    public void parse(String fileName,
+                      long start,
+                      long end,
+                      int lastRequestIndex,
+                      Supplier<? extends EventPublisher> publishers) throws IOException {
+        var lastIndex = lastRequestIndex < 0 ? Integer.MAX_VALUE : lastRequestIndex;
+        try (var channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            var chunks = split(channel, start, Math.min(end, channel.size()), threads * CHUNKS_PER_THREAD);
+            var executor = Executors.newFixedThreadPool(threads);
+            try {
+                var indexed = options.indexes() || lastRequestIndex >= 0;
+                var counts = new ArrayList<Future<Integer>>(chunks.size());
+                if (indexed) {
+                    for (var chunk : chunks) {
+                        counts.add(executor.submit(() -> countRequests(channel, chunk)));
+                    }
+                }
+
+                var tasks = new ArrayList<Future<?>>(chunks.size());
+                var firstIndex = 1;
+                for (var i = 0; i < chunks.size() && firstIndex <= lastIndex; i++) {
+                    var chunk = chunks.get(i);
+                    var chunkFirstIndex = indexed ? firstIndex : 1;
+                    var publisher = publishers.get();
+                    tasks.add(executor.submit(() -> {
+                        parseChunk(channel, chunk, chunkFirstIndex, lastIndex, publisher);
+                        return null;
+                    }));
+                    if (indexed) {
+                        firstIndex += await(counts.get(i));
+                    }
+                }
+                for (var task : tasks) {
+                    await(task);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private int countRequests(FileChannel channel, Chunk chunk) throws IOException {
+        if (mapped) {
+            return MappedLogParser.count(channel, chunk.start(), chunk.end(), options);
+        }
+        var count = 0;
+        try (var reader = openChunk(channel, chunk, null)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (sampler.accept(line) && LogParser.isRequestLine(line, range)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void parseChunk(FileChannel channel,
+                            Chunk chunk,
+                            int firstIndex,
+                            int lastIndex,
+                            EventPublisher publisher) throws IOException {
+        if (mapped) {
+            MappedLogParser.parse(channel, chunk.start(), chunk.end(), firstIndex, lastIndex, options, publisher);
+            return;
+        }
+        var counter = metrics.counter();
+        try (var reader = openChunk(channel, chunk, counter)) {
+            String line;
+            var requestIndex = firstIndex;
+            while ((line = reader.readLine()) != null) {
+                counter.line(0);
+                if (!sampler.accept(line)) {
+                    continue;
+                }
+                var rq = LogParser.parseRequest(line, requestIndex, classifier, range);
+                if (rq == null) {
+                    continue;
+                }
+
+                counter.matched();
+                publisher.publish(RQ_TOPIC, rq);
+                if (lastIndex <= requestIndex++) {
+                    break;
+                }
+            }
+        } finally {
+            counter.flush();
+        }
+        publisher.flush();
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Parsing interrupted", e);
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @param counter counter of read bytes, null to skip counting
+     */
+    private static BufferedReader openChunk(FileChannel channel, Chunk chunk, ParseMetrics.Counter counter) {
+        InputStream stream = new FileRangeInputStream(channel, chunk.start(), chunk.end());
+        if (counter != null) {
+            stream = new CountingInputStream(stream, counter);
+        }
+        return new BufferedReader(new InputStreamReader(stream, Charset.defaultCharset()));
+    }
+
+    private static List<Chunk> split(FileChannel channel, long start, long size, int chunksAmount) throws IOException {
+        var chunkSize = Math.max(MIN_CHUNK_SIZE, (size - start) / chunksAmount + 1);
+        var buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        var chunks = new ArrayList<Chunk>();
+        while (start < size) {
+            var end = findLineStart(channel, Math.min(size, start + chunkSize), size, buffer);
+            chunks.add(new Chunk(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Find the first line start at or after passed position.
+     */
+    static long findLineStart(FileChannel channel, long position, long size, ByteBuffer buffer) throws IOException {
+        var offset = position - 1;
+        while (offset < size) {
+            buffer.clear();
+            var read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (var i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    private record Chunk(long start, long end) {
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.dto.TimeRange;
+import com.github.sibmaks.metrics.ParseMetrics;
+
+/**
+ * Options shared by request log parsers.
+ *
+ * @param classifier request classifier
+ * @param metrics    read lines counters
+ * @param range      parsed request timestamps, other requests are skipped and not indexed
+ * @param sampler    parsed lines, other lines are skipped before parsing and not indexed
+ * @param uris       publish requests with URI, otherwise URI may be left null and is not decoded,
+ *                   needed for endpoint statistics and request cache
+ * @param indexes    number requests over the whole parsed file, otherwise {@link ParallelLogParser} numbers requests
+ *                   of every chunk from 1 and skips counting pass, needed for step statistics
+ */
+public record ParseOptions(RequestClassifier classifier,
+                           ParseMetrics metrics,
+                           TimeRange range,
+                           LineSampler sampler,
+                           boolean uris,
+                           boolean indexes) {
+
+    /**
+     * @param classifier request classifier
+     * @return options parsing every request line with URI and file-wide index, without metrics
+     */
+    public static ParseOptions of(RequestClassifier classifier) {
+        return new ParseOptions(classifier, ParseMetrics.disabled(), TimeRange.ALL, LineSampler.ALL, true, true);
+    }
+
+    /**
+     * @return options parsing every request line with URI, file-wide index and default classifier, without metrics
+     */
+    public static ParseOptions defaults() {
+        return of(RequestClassifier.defaults());
+    }
+}
@@ -0,0 +1,361 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.bus.EventPublisher;
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.metrics.ParseMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+import static com.github.sibmaks.service.LogParser.RQ_TOPIC;
+
+/**
+ * Columnar binary cache of parsed requests.
+ * <p>
+ * File layout, all numbers are little-endian:
+ * <pre>
+ * int magic, int version, long source size, long source modification time, long source hash, long requests,
+ * long uris, int methods, methods as (short length, UTF-8 bytes), padding to 8 bytes,
+ * long[requests] timestamps, long[requests] latencies, int[requests] uri ids, byte[requests] method ids,
+ * padding to 8 bytes, long[uris + 1] uri offsets, UTF-8 bytes of uris
+ * </pre>
+ * Request with row {@code i} has index {@code i + 1}. Columns and the URI dictionary are memory-mapped on replay,
+ * URIs are decoded on demand through a small cache of recent URI ids, so replay heap does not grow with the amount
+ * of distinct URIs. Request classes are not stored, URIs are classified on replay, so the cache stays valid
+ * when classification rules change.
+ */
+public final class RequestCache {
+    static final int MAGIC = 0x43515247;
+    static final int VERSION = 3;
+    static final int HEADER_SIZE = 52;
+    static final int ROW_SIZE = 2 * Long.BYTES + Integer.BYTES + 1;
+    private static final int HASH_BLOCK_SIZE = 64 << 10;
+    private static final int HASH_BLOCKS = 16;
+    private static final int URI_CACHE_SIZE = 1 << 12;
+    private static final int WINDOW_ROWS = 1 << 23;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int MIN_CHUNK_ROWS = 1 << 16;
+
+    private final Path file;
+    private final long requests;
+    private final long dataStart;
+    private final long uris;
+    private final RequestClassifier classifier;
+    private final RequestKey[][] keys;
+
+    private RequestCache(Path file,
+                         long requests,
+                         long dataStart,
+                         long uris,
+                         String[] methods,
+                         RequestClassifier classifier) {
+        this.file = file;
+        this.requests = requests;
+        this.dataStart = dataStart;
+        this.uris = uris;
+        this.classifier = classifier;
+        var kinds = classifier.getKinds();
+        this.keys = new RequestKey[methods.length][kinds.size()];
+        for (var method = 0; method < methods.length; method++) {
+            for (var kind = 0; kind < kinds.size(); kind++) {
+                keys[method][kind] = new RequestKey(methods[method], kinds.get(kind));
+            }
+        }
+    }
+
+    /**
+     * Identity of the cached log file.
+     *
+     * @param size     file size
+     * @param modified file modification time in milliseconds
+     * @param hash     CRC32C of sampled file blocks
+     */
+    public record Key(long size, long modified, long hash) {
+
+        /**
+         * Compute key of the log file. Only {@value #HASH_BLOCKS} blocks of 64 KB are hashed: the head, the tail
+         * and blocks at evenly spaced offsets between them, so the key costs the same for any file size.
+         * Size and modification time catch appends and rewrites, sampled blocks catch copies of other logs
+         * with the same size and time.
+         *
+         * @param file log file
+         * @return file key
+         * @throws IOException on file reading error
+         */
+        public static Key of(Path file) throws IOException {
+            var modified = Files.getLastModifiedTime(file).toMillis();
+            var crc = new CRC32C();
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                var size = channel.size();
+                var block = ByteBuffer.allocate(HASH_BLOCK_SIZE);
+                var blocks = size <= (long) HASH_BLOCK_SIZE * HASH_BLOCKS ? (size + HASH_BLOCK_SIZE - 1) / HASH_BLOCK_SIZE : HASH_BLOCKS;
+                for (var i = 0L; i < blocks; i++) {
+                    var position = blocks < HASH_BLOCKS ? i * HASH_BLOCK_SIZE : i * (size - HASH_BLOCK_SIZE) / (HASH_BLOCKS - 1);
+                    block.clear().limit((int) Math.min(HASH_BLOCK_SIZE, size - position));
+                    while (block.hasRemaining()) {
+                        if (channel.read(block, position + block.position()) < 0) {
+                            break;
+                        }
+                    }
+                    crc.update(block.flip());
+                }
+                return new Key(size, modified, crc.getValue());
+            }
+        }
+    }
+
+    /**
+     * Open cache file.
+     *
+     * @param file       cache file
+     * @param key        expected key of the cached log file
+     * @param classifier classifier of replayed requests
+     * @return cache or null if file does not exist, is corrupted or was built for another log content
+     * @throws IOException on file reading error
+     */
+    public static RequestCache open(Path file, Key key, RequestClassifier classifier) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var size = channel.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+            var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, 1 << 16))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            var cachedKey = new Key(header.getLong(), header.getLong(), header.getLong());
+            if (!cachedKey.equals(key)) {
+                return null;
+            }
+            var requests = header.getLong();
+            var uris = header.getLong();
+            var methods = new String[header.getInt()];
+            for (var i = 0; i < methods.length; i++) {
+                var bytes = new byte[header.getShort()];
+                header.get(bytes);
+                methods[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            var dataStart = align(header.position());
+            if (requests < 0 || uris < 0 || uris >= Integer.MAX_VALUE) {
+                return null;
+            }
+            var dictionaryStart = align(dataStart + requests * ROW_SIZE);
+            var bytesStart = dictionaryStart + (uris + 1) * Long.BYTES;
+            if (size < bytesStart) {
+                return null;
+            }
+            var uriBytes = map(channel, bytesStart - Long.BYTES, Long.BYTES).getLong();
+            if (size != bytesStart + uriBytes) {
+                return null;
+            }
+            return new RequestCache(file, requests, dataStart, uris, methods, classifier);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    static long align(long position) {
+        return (position + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    /**
+     * @return amount of cached requests
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Publish cached requests.
+     *
+     * @param lastRequestIndex amount of request to publish, negative for all requests
+     * @param threads          amount of threads, cached rows are split into chunks if greater than 1
+     * @param publishers       chunk publisher factory, called sequentially in cache order once per chunk
+     * @throws IOException on file reading error
+     */
+    public void replay(int lastRequestIndex,
+                       int threads,
+                       Supplier<? extends EventPublisher> publishers) throws IOException {
+        replay(lastRequestIndex, threads, publishers, ParseMetrics.disabled());
+    }
+
+    /**
+     * Publish cached requests, every replayed row is counted as a read request line.
+     *
+     * @param lastRequestIndex amount of request to publish, negative for all requests
+     * @param threads          amount of threads, cached rows are split into chunks if greater than 1
+     * @param publishers       chunk publisher factory, called sequentially in cache order once per chunk
+     * @param metrics          read lines counters
+     * @throws IOException on file reading error
+     */
+    public void replay(int lastRequestIndex,
+                       int threads,
+                       Supplier<? extends EventPublisher> publishers,
+                       ParseMetrics metrics) throws IOException {
+        var rows = lastRequestIndex < 0 ? requests : Math.min(requests, lastRequestIndex);
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var uriDictionary = new UriDictionary(channel, align(dataStart + requests * ROW_SIZE), uris);
+            if (threads <= 1) {
+                replay(channel, 0, rows, uriDictionary, metrics, publishers.get());
+                return;
+            }
+            var chunkRows = Math.max(MIN_CHUNK_ROWS, rows / ((long) threads * CHUNKS_PER_THREAD) + 1);
+            var executor = Executors.newFixedThreadPool(threads);
+            try {
+                var tasks = new ArrayList<Future<?>>();
+                for (var start = 0L; start < rows; start += chunkRows) {
+                    var chunkStart = start;
+                    var chunkEnd = Math.min(rows, start + chunkRows);
+                    var publisher = publishers.get();
+                    tasks.add(executor.submit(() -> {
+                        replay(channel, chunkStart, chunkEnd, uriDictionary, metrics, publisher);
+                        return null;
+                    }));
+                }
+                for (var task : tasks) {
+                    await(task);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private void replay(FileChannel channel,
+                        long start,
+                        long end,
+                        UriDictionary uriDictionary,
+                        ParseMetrics metrics,
+                        EventPublisher publisher) throws IOException {
+        var counter = metrics.counter();
+        // direct-mapped cache of decoded and classified URIs by id
+        var cachedIds = new int[URI_CACHE_SIZE];
+        var cachedUris = new String[URI_CACHE_SIZE];
+        var cachedKinds = new int[URI_CACHE_SIZE];
+        Arrays.fill(cachedIds, -1);
+        var uriIdsStart = dataStart + requests * 2 * Long.BYTES;
+        var methodsStart = uriIdsStart + requests * Integer.BYTES;
+        for (var windowStart = start; windowStart < end; windowStart += WINDOW_ROWS) {
+            var rows = (int) Math.min(WINDOW_ROWS, end - windowStart);
+            var timestamps = map(channel, dataStart + windowStart * Long.BYTES, (long) rows * Long.BYTES);
+            var latencies = map(channel, dataStart + (requests + windowStart) * Long.BYTES, (long) rows * Long.BYTES);
+            var uriIds = map(channel, uriIdsStart + windowStart * Integer.BYTES, (long) rows * Integer.BYTES);
+            var methods = map(channel, methodsStart + windowStart, rows);
+            for (var row = 0; row < rows; row++) {
+                var uriId = uriIds.getInt(row * Integer.BYTES);
+                var slot = uriId & (URI_CACHE_SIZE - 1);
+                if (cachedIds[slot] != uriId) {
+                    var uri = uriDictionary.get(uriId);
+                    cachedIds[slot] = uriId;
+                    cachedUris[slot] = uri;
+                    cachedKinds[slot] = classifier.classify(uri);
+                }
+                var key = keys[methods.get(row)][cachedKinds[slot]];
+                var index = (int) (windowStart + row + 1);
+                var request = new Request(
+                        index,
+                        key,
+                        latencies.getLong(row * Long.BYTES),
+                        timestamps.getLong(row * Long.BYTES),
+                        cachedUris[slot]
+                );
+                publisher.publish(RQ_TOPIC, request);
+                counter.line(ROW_SIZE);
+                counter.matched();
+            }
+        }
+        counter.flush();
+        publisher.flush();
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Cache replay interrupted", e);
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * URI dictionary of the cache file, offsets and URI bytes are mapped by segments, so neither is limited
+     * by the 2 GB size of a single mapping. Thread-safe.
+     */
+    private static final class UriDictionary {
+        private static final int SEGMENT_SHIFT = 30;
+        private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+        private final ByteBuffer[] offsets;
+        private final ByteBuffer[] bytes;
+
+        private UriDictionary(FileChannel channel, long start, long uris) throws IOException {
+            var bytesStart = start + (uris + 1) * Long.BYTES;
+            this.offsets = mapSegments(channel, start, bytesStart - start);
+            this.bytes = mapSegments(channel, bytesStart, channel.size() - bytesStart);
+        }
+
+        private static ByteBuffer[] mapSegments(FileChannel channel, long start, long length) throws IOException {
+            var segments = new ByteBuffer[(int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+            for (var i = 0; i < segments.length; i++) {
+                var position = i * SEGMENT_SIZE;
+                segments[i] = map(channel, start + position, Math.min(SEGMENT_SIZE, length - position));
+            }
+            return segments;
+        }
+
+        private long offset(long id) {
+            // segment size is a multiple of offset size, so an offset never crosses segments
+            var position = id * Long.BYTES;
+            return offsets[(int) (position >>> SEGMENT_SHIFT)].getLong((int) (position & (SEGMENT_SIZE - 1)));
+        }
+
+        /**
+         * @param id URI id
+         * @return decoded URI
+         */
+        private String get(int id) {
+            var start = offset(id);
+            var value = new byte[Math.toIntExact(offset(id + 1L) - start)];
+            for (var copied = 0; copied < value.length; ) {
+                var position = start + copied;
+                var segment = bytes[(int) (position >>> SEGMENT_SHIFT)];
+                var index = (int) (position & (SEGMENT_SIZE - 1));
+                var length = Math.min(value.length - copied, segment.capacity() - index);
+                segment.get(index, value, copied, length);
+                copied += length;
+            }
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.bus.EventPublisher;
+import com.github.sibmaks.dto.Request;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writer of {@link RequestCache} file.
+ * <p>
+ * Requests are published to segments, every segment writes columns to own temporary files,
+ * so segments can be filled concurrently. New URIs are appended to dictionary files as they come, only ids of
+ * recent URIs are kept in heap: when there are too many of them they are dropped, and a URI seen again gets
+ * a new id. On commit segments and the dictionary are concatenated and cache file is atomically replaced.
+ */
+public final class RequestCacheWriter implements AutoCloseable {
+    private static final int COLUMNS = 4;
+    private static final int BUFFER_SIZE = 64 << 10;
+    private static final int MAX_METHODS = Byte.MAX_VALUE;
+    private static final int MAX_SEGMENT_URI_IDS = 1 << 16;
+    private static final int MAX_URI_IDS = 1 << 20;
+
+    private final Path file;
+    private final RequestCache.Key key;
+    private final Path directory;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<String, Integer> methodIds = new HashMap<>();
+    private final List<String> methods = new ArrayList<>();
+    private final Map<String, Integer> uriIds = new HashMap<>();
+    private final FileChannel uriOffsets;
+    private final FileChannel uriBytes;
+    private final ByteBuffer uriOffsetBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer uriByteBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private int uris;
+    private long uriBytesSize;
+
+    /**
+     * @param file cache file
+     * @param key  key of the cached log file
+     * @throws IOException on temporary directory creation error
+     */
+    public RequestCacheWriter(Path file, RequestCache.Key key) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.key = key;
+        this.directory = Files.createTempDirectory(this.file.getParent(), ".request-cache");
+        this.uriOffsets = FileChannel.open(directory.resolve("uri-offsets"), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.uriBytes = FileChannel.open(directory.resolve("uri-bytes"), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Create segment publisher, segments are stored in creation order.
+     *
+     * @return request publisher
+     */
+    public synchronized EventPublisher segment() {
+        var segment = new Segment(segments.size());
+        segments.add(segment);
+        return segment;
+    }
+
+    private synchronized int methodId(String method) {
+        var id = methodIds.get(method);
+        if (id != null) {
+            return id;
+        }
+        if (methods.size() >= MAX_METHODS) {
+            throw new IllegalStateException("Too many request methods for request cache");
+        }
+        methods.add(method);
+        methodIds.put(method, methods.size() - 1);
+        return methods.size() - 1;
+    }
+
+    private synchronized int uriId(String uri) {
+        var id = uriIds.get(uri);
+        if (id != null) {
+            return id;
+        }
+        if (uris == Integer.MAX_VALUE - 1) {
+            throw new IllegalStateException("Too many request URIs for request cache");
+        }
+        if (uriIds.size() >= MAX_URI_IDS) {
+            uriIds.clear();
+        }
+        try {
+            var bytes = uri.getBytes(StandardCharsets.UTF_8);
+            if (uriByteBuffer.remaining() < bytes.length) {
+                writeFlipped(uriBytes, uriByteBuffer);
+            }
+            if (bytes.length > uriByteBuffer.capacity()) {
+                write(uriBytes, ByteBuffer.wrap(bytes));
+            } else {
+                uriByteBuffer.put(bytes);
+            }
+            uriBytesSize += bytes.length;
+            if (uriOffsetBuffer.remaining() < Long.BYTES) {
+                writeFlipped(uriOffsets, uriOffsetBuffer);
+            }
+            uriOffsetBuffer.putLong(uriBytesSize);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not write request cache URI dictionary", e);
+        }
+        uriIds.put(uri, uris);
+        return uris++;
+    }
+
+    /**
+     * Write cache file, segments should be flushed.
+     *
+     * @throws IOException on file writing error
+     */
+    public synchronized void commit() throws IOException {
+        var requests = 0L;
+        for (var segment : segments) {
+            requests += segment.requests;
+        }
+        var methodNames = methods.stream()
+                .map(it -> it.getBytes(StandardCharsets.UTF_8))
+                .toList();
+        var headerSize = RequestCache.HEADER_SIZE;
+        for (var name : methodNames) {
+            headerSize += Short.BYTES + name.length;
+        }
+        var header = ByteBuffer.allocate((int) RequestCache.align(headerSize)).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(RequestCache.MAGIC)
+                .putInt(RequestCache.VERSION)
+                .putLong(key.size())
+                .putLong(key.modified())
+                .putLong(key.hash())
+                .putLong(requests)
+                .putLong(uris)
+                .putInt(methodNames.size());
+        for (var name : methodNames) {
+            header.putShort((short) name.length).put(name);
+        }
+        header.clear();
+
+        var temp = directory.resolve("cache");
+        try (var output = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            write(output, header);
+            for (var column = 0; column < COLUMNS; column++) {
+                for (var segment : segments) {
+                    var columnFile = segment.columnFiles[column];
+                    try (var input = FileChannel.open(columnFile, StandardOpenOption.READ)) {
+                        var size = input.size();
+                        for (var position = 0L; position < size; ) {
+                            position += input.transferTo(position, size - position, output);
+                        }
+                    }
+                }
+            }
+            writeUris(output);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeUris(FileChannel output) throws IOException {
+        writeFlipped(uriOffsets, uriOffsetBuffer);
+        writeFlipped(uriBytes, uriByteBuffer);
+        var padding = (int) (RequestCache.align(output.position()) - output.position());
+        write(output, ByteBuffer.allocate(padding + Long.BYTES));
+        for (var name : new String[]{"uri-offsets", "uri-bytes"}) {
+            try (var input = FileChannel.open(directory.resolve(name), StandardOpenOption.READ)) {
+                var size = input.size();
+                for (var position = 0L; position < size; ) {
+                    position += input.transferTo(position, size - position, output);
+                }
+            }
+        }
+    }
+
+    private static void writeFlipped(FileChannel output, ByteBuffer buffer) throws IOException {
+        write(output, buffer.flip());
+        buffer.clear();
+    }
+
+    private static void write(FileChannel output, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+    }
+
+    /**
+     * Delete temporary files.
+     *
+     * @throws IOException on file deletion error
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (var segment : segments) {
+            segment.close();
+        }
+        uriOffsets.close();
+        uriBytes.close();
+        try (var files = Files.list(directory)) {
+            for (var path : files.toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * Segment publisher, not thread-safe.
+     */
+    private final class Segment implements EventPublisher {
+        private final Path[] columnFiles = new Path[COLUMNS];
+        private final FileChannel[] channels = new FileChannel[COLUMNS];
+        private final ByteBuffer timestamps = allocate();
+        private final ByteBuffer latencies = allocate();
+        private final ByteBuffer uriColumn = allocate();
+        private final ByteBuffer methodColumn = allocate();
+        private final ByteBuffer[] buffers = {timestamps, latencies, uriColumn, methodColumn};
+        private final Map<String, Byte> segmentMethodIds = new HashMap<>();
+        private final Map<String, Integer> segmentUriIds = new HashMap<>();
+        private long requests;
+
+        private Segment(int index) {
+            try {
+                for (var column = 0; column < COLUMNS; column++) {
+                    columnFiles[column] = directory.resolve("segment-%d-%d".formatted(index, column));
+                    channels[column] = FileChannel.open(columnFiles[column], StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Can not create request cache segment", e);
+            }
+        }
+
+        private static ByteBuffer allocate() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        public void publish(String topic, Object event) {
+            if (!(event instanceof Request request)) {
+                return;
+            }
+            if (timestamps.remaining() < Long.BYTES) {
+                flush();
+            }
+            var methodId = segmentMethodIds.computeIfAbsent(request.key().kind(), it -> (byte) methodId(it));
+            if (segmentUriIds.size() >= MAX_SEGMENT_URI_IDS) {
+                segmentUriIds.clear();
+            }
+            var uri = request.uri() == null ? "" : request.uri();
+            var uriId = segmentUriIds.computeIfAbsent(uri, RequestCacheWriter.this::uriId);
+            timestamps.putLong(request.timestamp());
+            latencies.putLong(request.time());
+            uriColumn.putInt(uriId);
+            methodColumn.put(methodId);
+            requests++;
+        }
+
+        @Override
+        public void flush() {
+            try {
+                for (var column = 0; column < COLUMNS; column++) {
+                    var buffer = buffers[column];
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channels[column].write(buffer);
+                    }
+                    buffer.clear();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Can not write request cache segment", e);
+            }
+        }
+
+        private void close() throws IOException {
+            for (var channel : channels) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.dto.RequestKind;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Assigns requests to named classes by URI path rules.
+ * <p>
+ * Rule file contains one rule per line in {@code <class> <match> <value>} format, where match is one of
+ * {@code prefix}, {@code suffix}, {@code contains} or {@code exact}. The value is compared with the URI path,
+ * scheme, authority, query string and fragment are dropped. {@code scope uri} line compares values with the whole
+ * URI instead, {@code scope path} restores the default. The first matching rule in file order wins,
+ * requests matched by no rule get the class set by {@code default <class>} line, {@value #DEFAULT_CLASS} if absent.
+ * Empty lines and lines starting with {@code #} are ignored.
+ * <pre>
+ * STATIC prefix /img/
+ * STATIC suffix .css
+ * API    prefix /api/
+ * default DYNAMIC
+ * </pre>
+ * All rules are compiled into a single Aho-Corasick automaton over path bytes, path start and end are fed as extra
+ * symbols to anchor prefix and suffix rules, so a path is classified in one pass whatever the amount of rules.
+ * Classifier is immutable and thread-safe.
+ */
+public final class RequestClassifier {
+    public static final String DEFAULT_CLASS = "DYNAMIC";
+    private static final int BEGIN = 256;
+    private static final int END = 257;
+    private static final int NO_RULE = Integer.MAX_VALUE;
+
+    private final List<RequestKind> kinds;
+    private final boolean wholeUri;
+    private final int defaultKind;
+    private final int[] ruleKinds;
+    private final int[] symbols;
+    private final int alphabet;
+    private final int[] transitions;
+    private final int[] matchedRules;
+
+    private RequestClassifier(List<Rule> rules, String defaultClass, boolean wholeUri) {
+        this.wholeUri = wholeUri;
+        var kindIds = new LinkedHashMap<String, Integer>();
+        this.ruleKinds = new int[rules.size()];
+        for (var i = 0; i < rules.size(); i++) {
+            ruleKinds[i] = kindId(kindIds, rules.get(i).className());
+        }
+        this.defaultKind = kindId(kindIds, defaultClass);
+        this.kinds = kindIds.keySet().stream()
+                .map(RequestKind::new)
+                .toList();
+
+        var patterns = new int[rules.size()][];
+        for (var i = 0; i < patterns.length; i++) {
+            patterns[i] = rules.get(i).symbols();
+        }
+        // symbols absent in rules share class 0, so the transition table has a column per distinct rule symbol only
+        this.symbols = new int[END + 1];
+        var alphabet = 1;
+        for (var pattern : patterns) {
+            for (var symbol : pattern) {
+                if (symbols[symbol] == 0) {
+                    symbols[symbol] = alphabet++;
+                }
+            }
+        }
+        this.alphabet = alphabet;
+
+        var trie = new Trie(alphabet);
+        for (var i = 0; i < patterns.length; i++) {
+            var state = 0;
+            for (var symbol : patterns[i]) {
+                state = trie.child(state, symbols[symbol]);
+            }
+            trie.matchedRules[state] = Math.min(trie.matchedRules[state], i);
+        }
+        this.transitions = trie.transitions;
+        this.matchedRules = trie.matchedRules;
+        link(trie.size);
+    }
+
+    private static int kindId(Map<String, Integer> kindIds, String className) {
+        return kindIds.computeIfAbsent(className, it -> kindIds.size());
+    }
+
+    /**
+     * Replace missing trie transitions with failure transitions, so automaton never backtracks,
+     * and propagate matched rules along failure links.
+     */
+    private void link(int states) {
+        var failures = new int[states];
+        var queue = new ArrayDeque<Integer>();
+        for (var symbol = 0; symbol < alphabet; symbol++) {
+            var next = transitions[symbol];
+            if (next < 0) {
+                transitions[symbol] = 0;
+            } else {
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            matchedRules[state] = Math.min(matchedRules[state], matchedRules[failures[state]]);
+            for (var symbol = 0; symbol < alphabet; symbol++) {
+                var next = transitions[state * alphabet + symbol];
+                var fallback = transitions[failures[state] * alphabet + symbol];
+                if (next < 0) {
+                    transitions[state * alphabet + symbol] = fallback;
+                } else {
+                    failures[next] = fallback;
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Classifier with built-in rules: URIs containing {@code /img/}, {@code /cmsstatic/} or {@code /js/}
+     * anywhere, query string included, are STATIC, other URIs are DYNAMIC.
+     *
+     * @return default classifier
+     */
+    public static RequestClassifier defaults() {
+        return parse(List.of(
+                "scope uri",
+                "STATIC contains /img/",
+                "STATIC contains /cmsstatic/",
+                "STATIC contains /js/"
+        ));
+    }
+
+    /**
+     * Read rule file.
+     *
+     * @param file rule file in UTF-8
+     * @return compiled classifier
+     * @throws IOException on file reading error
+     */
+    public static RequestClassifier load(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Compile rules.
+     *
+     * @param lines rule lines
+     * @return compiled classifier
+     */
+    public static RequestClassifier parse(List<String> lines) {
+        var rules = new ArrayList<Rule>();
+        var defaultClass = DEFAULT_CLASS;
+        var wholeUri = false;
+        for (var line : lines) {
+            var trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            var parts = trimmed.split("\\s+", 3);
+            if (parts.length == 2 && "default".equals(parts[0])) {
+                defaultClass = checkClassName(parts[1], line);
+                continue;
+            }
+            if (parts.length == 2 && "scope".equals(parts[0])) {
+                wholeUri = switch (parts[1].toLowerCase(Locale.ROOT)) {
+                    case "uri" -> true;
+                    case "path" -> false;
+                    default -> throw new IllegalArgumentException("Unknown classification scope '" + parts[1] + "', expected uri or path: " + line);
+                };
+                continue;
+            }
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Classification rule should be in '<class> <match> <value>' format, got: " + line);
+            }
+            var match = switch (parts[1].toLowerCase(Locale.ROOT)) {
+                case "prefix" -> Match.PREFIX;
+                case "suffix" -> Match.SUFFIX;
+                case "contains" -> Match.CONTAINS;
+                case "exact" -> Match.EXACT;
+                default -> throw new IllegalArgumentException("Unknown classification match '" + parts[1] + "', expected prefix, suffix, contains or exact: " + line);
+            };
+            rules.add(new Rule(checkClassName(parts[0], line), match, parts[2].getBytes(StandardCharsets.UTF_8)));
+        }
+        return new RequestClassifier(rules, defaultClass, wholeUri);
+    }
+
+    private static String checkClassName(String className, String line) {
+        if (RequestKind.ALL.name().equals(className)) {
+            throw new IllegalArgumentException("Class name " + className + " is reserved: " + line);
+        }
+        return className;
+    }
+
+    /**
+     * @return configured classes in order of the first rule, default class is the last unless it has own rules
+     */
+    public List<RequestKind> getKinds() {
+        return kinds;
+    }
+
+    /**
+     * @param id class id returned by classify methods
+     * @return request class
+     */
+    public RequestKind getKind(int id) {
+        return kinds.get(id);
+    }
+
+    /**
+     * Classify URI.
+     *
+     * @param uri request URI
+     * @return class id
+     */
+    public int classify(String uri) {
+        var bytes = uri.getBytes(StandardCharsets.UTF_8);
+        return classify(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * Classify UTF-8 encoded URI.
+     *
+     * @param buffer URI source
+     * @param start  URI start, inclusive
+     * @param end    URI end, exclusive
+     * @return class id
+     */
+    public int classify(ByteBuffer buffer, int start, int end) {
+        var state = transitions[symbols[BEGIN]];
+        var rule = matchedRules[state];
+        var pathStart = wholeUri ? start : findPath(buffer, start, end);
+        if (pathStart < 0) {
+            // URI without path is classified as root path
+            state = transitions[state * alphabet + symbols['/']];
+            rule = Math.min(rule, matchedRules[state]);
+        } else {
+            for (var i = pathStart; i < end; i++) {
+                var b = buffer.get(i);
+                if (!wholeUri && (b == '?' || b == '#')) {
+                    break;
+                }
+                state = transitions[state * alphabet + symbols[b & 0xFF]];
+                rule = Math.min(rule, matchedRules[state]);
+            }
+        }
+        state = transitions[state * alphabet + symbols[END]];
+        rule = Math.min(rule, matchedRules[state]);
+        return rule == NO_RULE ? defaultKind : ruleKinds[rule];
+    }
+
+    /**
+     * @return path start or -1 if URI has authority only
+     */
+    private static int findPath(ByteBuffer buffer, int start, int end) {
+        for (var i = start; i < end; i++) {
+            var b = buffer.get(i);
+            if (b == '/') {
+                var schemeEnd = i > start && buffer.get(i - 1) == ':' && i + 1 < end && buffer.get(i + 1) == '/';
+                if (!schemeEnd) {
+                    return start;
+                }
+                for (var j = i + 2; j < end; j++) {
+                    var c = buffer.get(j);
+                    if (c == '/') {
+                        return j;
+                    }
+                    if (c == '?' || c == '#') {
+                        return -1;
+                    }
+                }
+                return -1;
+            }
+            if (b == '?' || b == '#') {
+                return start;
+            }
+        }
+        return start;
+    }
+
+    private enum Match {
+        PREFIX,
+        SUFFIX,
+        CONTAINS,
+        EXACT
+    }
+
+    private record Rule(String className, Match match, byte[] value) {
+
+        /**
+         * @return automaton input matched by the rule, anchored rules are wrapped into path start and end symbols
+         */
+        private int[] symbols() {
+            var anchoredStart = match == Match.PREFIX || match == Match.EXACT;
+            var anchoredEnd = match == Match.SUFFIX || match == Match.EXACT;
+            var result = new int[value.length + (anchoredStart ? 1 : 0) + (anchoredEnd ? 1 : 0)];
+            var position = 0;
+            if (anchoredStart) {
+                result[position++] = BEGIN;
+            }
+            for (var b : value) {
+                result[position++] = b & 0xFF;
+            }
+            if (anchoredEnd) {
+                result[position] = END;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Growable trie with dense transition rows, missing transitions are -1.
+     */
+    private static final class Trie {
+        private final int alphabet;
+        private int[] transitions;
+        private int[] matchedRules;
+        private int size = 1;
+
+        private Trie(int alphabet) {
+            this.alphabet = alphabet;
+            this.transitions = new int[alphabet * 16];
+            this.matchedRules = new int[16];
+            Arrays.fill(transitions, -1);
+            Arrays.fill(matchedRules, NO_RULE);
+        }
+
+        private int child(int state, int symbol) {
+            var index = state * alphabet + symbol;
+            if (transitions[index] < 0) {
+                if (size == matchedRules.length) {
+                    var capacity = size * 2;
+                    transitions = Arrays.copyOf(transitions, capacity * alphabet);
+                    Arrays.fill(transitions, size * alphabet, transitions.length, -1);
+                    matchedRules = Arrays.copyOf(matchedRules, capacity);
+                    Arrays.fill(matchedRules, size, capacity, NO_RULE);
+                }
+                transitions[index] = size++;
+            }
+            return transitions[index];
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.TimeRange;
+import com.github.sibmaks.stats.Latency;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Regex-free request line parser working on raw bytes.
+ * <p>
+ * Accepts exactly the lines accepted by {@link LogParser} pattern, fields are decoded in place
+ * without intermediate strings. Input is expected in UTF-8 or another ASCII compatible encoding.
+ * Parser is stateful and not thread-safe: parsed fields are kept until the next line is parsed.
+ * URI is decoded only when request is built and URIs are requested by parse options.
+ */
+final class RequestLineParser {
+    private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "PATCH"};
+    private static final byte[][] METHOD_BYTES = new byte[METHODS.length][];
+    private static final byte[] URI_PREFIX = "http://".getBytes(StandardCharsets.US_ASCII);
+    private static final long MAX_FRACTION_UNITS = Latency.UNITS_PER_MILLI;
+    private static final int URI_CACHE_SIZE = 1024;
+
+    static {
+        for (var i = 0; i < METHODS.length; i++) {
+            METHOD_BYTES[i] = METHODS[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final RequestClassifier classifier;
+    private final TimeRange range;
+    private final boolean uris;
+    private final RequestKey[][] keys;
+    private final byte[][] cachedUriBytes = new byte[URI_CACHE_SIZE][];
+    private final String[] cachedUris = new String[URI_CACHE_SIZE];
+    private long timestamp;
+    private long time;
+    private RequestKey key;
+    private ByteBuffer buffer;
+    private int uriStart;
+    private int uriEnd;
+
+    /**
+     * @param options parse options, request lines out of time range are rejected right after the timestamp
+     */
+    RequestLineParser(ParseOptions options) {
+        this.classifier = options.classifier();
+        this.range = options.range();
+        this.uris = options.uris();
+        var kinds = classifier.getKinds();
+        this.keys = new RequestKey[METHODS.length][kinds.size()];
+        for (var method = 0; method < METHODS.length; method++) {
+            for (var kind = 0; kind < kinds.size(); kind++) {
+                keys[method][kind] = new RequestKey(METHODS[method], kinds.get(kind));
+            }
+        }
+    }
+
+    /**
+     * Parse line bytes.
+     *
+     * @param buffer line source
+     * @param start  line start, inclusive
+     * @param end    line end without line terminator, exclusive
+     * @return true if line describes a request
+     */
+    boolean parse(ByteBuffer buffer, int start, int end) {
+        // ^\[(\d+)]
+        if (start >= end || buffer.get(start) != '[') {
+            return false;
+        }
+        var timestampEnd = skipDigits(buffer, start + 1, end);
+        if (timestampEnd == start + 1 || timestampEnd + 2 > end
+                || buffer.get(timestampEnd) != ']' || buffer.get(timestampEnd + 1) != '[') {
+            return false;
+        }
+        if (!range.isAll() && !range.contains(parseTimestamp(buffer, start + 1, timestampEnd))) {
+            return false;
+        }
+        // ^\[(GET|POST|PUT|DELETE|HEAD|OPTIONS|PATCH)]
+        var methodStart = timestampEnd + 2;
+        var method = matchMethod(buffer, methodStart, end);
+        if (method < 0) {
+            return false;
+        }
+        // .*?at (\d+[.,]\d+)ms
+        var position = methodStart + METHOD_BYTES[method].length + 1;
+        var timeStart = -1;
+        var timeEnd = -1;
+        for (; position + 3 <= end; position++) {
+            if (lineTerminatorLength(buffer, position, end) > 0) {
+                return false;
+            }
+            if (buffer.get(position) == 'a' && buffer.get(position + 1) == 't' && buffer.get(position + 2) == ' ') {
+                timeEnd = matchTime(buffer, position + 3, end);
+                if (timeEnd > 0) {
+                    timeStart = position + 3;
+                    break;
+                }
+            }
+        }
+        if (timeStart < 0) {
+            return false;
+        }
+        // .*?(http://\S+)$
+        var uriStart = findUri(buffer, timeEnd + 2, end);
+        if (uriStart < 0) {
+            return false;
+        }
+        this.timestamp = parseTimestamp(buffer, start + 1, timestampEnd);
+        this.time = parseTime(buffer, timeStart, timeEnd);
+        this.key = keys[method][classifier.classify(buffer, uriStart, end)];
+        this.buffer = buffer;
+        this.uriStart = uriStart;
+        this.uriEnd = end;
+        return true;
+    }
+
+    /**
+     * Build request of the last parsed line, line buffer should not be changed since parsing.
+     *
+     * @param requestIndex index assigned to request
+     * @return parsed request, URI is null if it is not requested by parse options
+     */
+    Request toRequest(int requestIndex) {
+        var uri = uris ? decodeUri(buffer, uriStart, uriEnd) : null;
+        return new Request(requestIndex, key, time, timestamp, uri);
+    }
+
+    /**
+     * Decode URI, strings of recently seen URIs are reused, so repeated URIs are not allocated again.
+     */
+    private String decodeUri(ByteBuffer buffer, int start, int end) {
+        var hash = 0;
+        for (var i = start; i < end; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        var slot = (hash ^ hash >>> 16) & (URI_CACHE_SIZE - 1);
+        var cached = cachedUriBytes[slot];
+        if (cached != null && cached.length == end - start && startsWith(buffer, start, cached)) {
+            return cachedUris[slot];
+        }
+        var bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        var decoded = new String(bytes, StandardCharsets.UTF_8);
+        cachedUriBytes[slot] = bytes;
+        cachedUris[slot] = decoded;
+        return decoded;
+    }
+
+    private static int skipDigits(ByteBuffer buffer, int position, int end) {
+        while (position < end && isDigit(buffer.get(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    /**
+     * Length of line terminator not matched by regex dot at passed position: U+0085, U+2028 or U+2029 in UTF-8.
+     */
+    private static int lineTerminatorLength(ByteBuffer buffer, int position, int end) {
+        var b = buffer.get(position);
+        if (b == (byte) 0xC2 && position + 1 < end && buffer.get(position + 1) == (byte) 0x85) {
+            return 2;
+        }
+        if (b == (byte) 0xE2 && position + 2 < end && buffer.get(position + 1) == (byte) 0x80) {
+            var last = buffer.get(position + 2);
+            if (last == (byte) 0xA8 || last == (byte) 0xA9) {
+                return 3;
+            }
+        }
+        return 0;
+    }
+
+    private static int matchMethod(ByteBuffer buffer, int position, int end) {
+        for (var i = 0; i < METHOD_BYTES.length; i++) {
+            var method = METHOD_BYTES[i];
+            var methodEnd = position + method.length;
+            if (methodEnd < end && startsWith(buffer, position, method) && buffer.get(methodEnd) == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int position, byte[] prefix) {
+        for (var i = 0; i < prefix.length; i++) {
+            if (buffer.get(position + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Match {@code \d+[.,]\d+ms}.
+     *
+     * @return position of {@code ms} suffix or -1
+     */
+    private static int matchTime(ByteBuffer buffer, int position, int end) {
+        var integerEnd = skipDigits(buffer, position, end);
+        if (integerEnd == position || integerEnd >= end) {
+            return -1;
+        }
+        var separator = buffer.get(integerEnd);
+        if (separator != '.' && separator != ',') {
+            return -1;
+        }
+        var fractionEnd = skipDigits(buffer, integerEnd + 1, end);
+        if (fractionEnd == integerEnd + 1 || fractionEnd + 2 > end
+                || buffer.get(fractionEnd) != 'm' || buffer.get(fractionEnd + 1) != 's') {
+            return -1;
+        }
+        return fractionEnd;
+    }
+
+    /**
+     * Find the first {@code http://} followed by non-whitespace bytes up to the line end,
+     * the gap before it should not contain line terminators.
+     *
+     * @return uri start or -1
+     */
+    private static int findUri(ByteBuffer buffer, int position, int end) {
+        var lastWhitespace = end - 1;
+        while (lastWhitespace >= position && !isWhitespace(buffer.get(lastWhitespace))) {
+            lastWhitespace--;
+        }
+        for (; position + URI_PREFIX.length < end; position++) {
+            if (position > lastWhitespace && startsWith(buffer, position, URI_PREFIX)) {
+                return position;
+            }
+            if (lineTerminatorLength(buffer, position, end) > 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static long parseTimestamp(ByteBuffer buffer, int start, int end) {
+        var value = 0L;
+        for (var i = start; i < end; i++) {
+            var digit = buffer.get(i) - '0';
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("Timestamp is out of range");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Decode {@code \d+[.,]\d+} milliseconds into fixed-point latency, extra fraction digits are rounded half up
+     * as {@link Latency#fromMillis} does.
+     */
+    private static long parseTime(ByteBuffer buffer, int start, int end) {
+        var position = start;
+        var millis = 0L;
+        byte b;
+        while (isDigit(b = buffer.get(position))) {
+            millis = Math.addExact(Math.multiplyExact(millis, 10), b - '0');
+            position++;
+        }
+        position++;
+        var fraction = 0L;
+        var scale = MAX_FRACTION_UNITS;
+        for (; position < end && scale > 1; position++) {
+            scale /= 10;
+            fraction += (buffer.get(position) - '0') * scale;
+        }
+        if (position < end && buffer.get(position) >= '5') {
+            fraction++;
+        }
+        return Math.addExact(Math.multiplyExact(millis, Latency.UNITS_PER_MILLI), fraction);
+    }
+}
@@ -0,0 +1,223 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.dto.TimeRange;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Sparse index of an uncompressed log file ordered by request timestamp: byte offset of a line start
+ * every {@code step} bytes with the timestamp of the first request at or after it.
+ * <p>
+ * Index is built by reading only a few lines after every step boundary and is saved next to the log,
+ * it is rebuilt when log size, modification time or step change. Time range is mapped to a byte span
+ * by binary search over the entries. One extra step is included on both sides of the span,
+ * so requests written slightly out of timestamp order are still found.
+ * <p>
+ * File layout, numbers are big-endian:
+ * <pre>
+ * int magic, int version, long log size, long log modification time, long step, int entries,
+ * entries as (long timestamp, long offset)
+ * </pre>
+ */
+public final class TimeIndex {
+    /**
+     * Suffix of index file name, index is stored next to the log.
+     */
+    public static final String SUFFIX = ".tidx";
+    static final int MAGIC = 0x54494458;
+    static final int VERSION = 1;
+    private static final int SCAN_BUFFER_SIZE = 8192;
+    private static final int BUFFER_SIZE = 64 << 10;
+
+    private final long size;
+    private final long[] timestamps;
+    private final long[] offsets;
+
+    private TimeIndex(long size, long[] timestamps, long[] offsets) {
+        this.size = size;
+        this.timestamps = timestamps;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Read saved index of the log or build and save a new one.
+     * Index is still used if it can not be saved.
+     *
+     * @param log  uncompressed log file
+     * @param step distance between indexed offsets in bytes
+     * @return log index
+     * @throws IOException on log reading error
+     */
+    public static TimeIndex load(Path log, long step) throws IOException {
+        if (step <= 0) {
+            throw new IllegalArgumentException("Time index step should be positive, got: " + step);
+        }
+        var size = Files.size(log);
+        var modified = Files.getLastModifiedTime(log).toMillis();
+        var file = Path.of(log + SUFFIX);
+        var index = read(file, size, modified, step);
+        if (index != null) {
+            return index;
+        }
+        index = build(log, size, step);
+        try {
+            index.write(file, modified, step);
+        } catch (IOException e) {
+            // index is rebuilt on the next run
+        }
+        return index;
+    }
+
+    private static TimeIndex read(Path file, long size, long modified, long step) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION
+                    || input.readLong() != size || input.readLong() != modified || input.readLong() != step) {
+                return null;
+            }
+            var entries = input.readInt();
+            if (entries < 0 || entries > size / step + 1) {
+                return null;
+            }
+            var timestamps = new long[entries];
+            var offsets = new long[entries];
+            for (var i = 0; i < entries; i++) {
+                timestamps[i] = input.readLong();
+                offsets[i] = input.readLong();
+            }
+            return new TimeIndex(size, timestamps, offsets);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private void write(Path file, long modified, long step) throws IOException {
+        var temp = Files.createTempFile(file.toAbsolutePath().getParent(), ".time-index", ".tmp");
+        try {
+            try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLong(size);
+                output.writeLong(modified);
+                output.writeLong(step);
+                output.writeInt(offsets.length);
+                for (var i = 0; i < offsets.length; i++) {
+                    output.writeLong(timestamps[i]);
+                    output.writeLong(offsets[i]);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static TimeIndex build(Path log, long size, long step) throws IOException {
+        var entries = (int) Math.min(Integer.MAX_VALUE - 8, size / step + 1);
+        var timestamps = new long[entries];
+        var offsets = new long[entries];
+        var count = 0;
+        try (var channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            var buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+            var previous = -1L;
+            for (var position = 0L; position < size && count < entries; position += step) {
+                var lineStart = position == 0 ? 0 : ParallelLogParser.findLineStart(channel, position, size, buffer);
+                if (lineStart <= previous || lineStart >= size) {
+                    continue;
+                }
+                var timestamp = firstTimestamp(channel, lineStart, Math.min(size, position + step));
+                if (timestamp < 0) {
+                    continue;
+                }
+                timestamps[count] = timestamp;
+                offsets[count] = lineStart;
+                previous = lineStart;
+                count++;
+            }
+        }
+        return new TimeIndex(size, Arrays.copyOf(timestamps, count), Arrays.copyOf(offsets, count));
+    }
+
+    /**
+     * Find timestamp of the first request line starting in the range, the last line is cut at range end,
+     * but its timestamp is still read.
+     *
+     * @return request timestamp or -1 if range has no request lines
+     */
+    private static long firstTimestamp(FileChannel channel, long start, long end) throws IOException {
+        var input = new FileRangeInputStream(channel, start, end);
+        var reader = new BufferedReader(new InputStreamReader(input, Charset.defaultCharset()), SCAN_BUFFER_SIZE);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            var timestamp = LogParser.parseTimestamp(line);
+            if (timestamp >= 0) {
+                return timestamp;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find byte span of the log containing requests of the time range.
+     *
+     * @param range time range
+     * @return span of line aligned offsets
+     */
+    public Span find(TimeRange range) {
+        var first = lowerBound(range.from()) - 2;
+        var last = lowerBound(range.to()) + 1;
+        var start = first < 0 ? 0 : offsets[first];
+        var end = last >= offsets.length ? size : offsets[last];
+        return new Span(start, end);
+    }
+
+    /**
+     * @return index of the first entry with timestamp at or after passed one
+     */
+    private int lowerBound(long timestamp) {
+        var low = 0;
+        var high = timestamps.length;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return amount of index entries
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Byte span of the log.
+     *
+     * @param start span start, line start, inclusive
+     * @param end   span end, line start or log size, exclusive
+     */
+    public record Span(long start, long end) {
+    }
+}
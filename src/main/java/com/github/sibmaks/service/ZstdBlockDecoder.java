@@ -0,0 +1,175 @@
+package com.github.sibmaks.service;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Block decoder of zstd files in seekable format: frame sizes are read from the seek table
+ * stored in a trailing skippable frame, consecutive frames are grouped into blocks.
+ */
+final class ZstdBlockDecoder implements BlockDecoder {
+    private static final int SEEKABLE_MAGIC = 0x8F92EAB1;
+    private static final int SEEK_TABLE_MAGIC = 0x184D2A5E;
+    private static final int FOOTER_SIZE = 9;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int CHECKSUM_FLAG = 0x80;
+    private static final int RESERVED_DESCRIPTOR_BITS = 0x7C;
+    private static final long RANGE_SIZE = 4 << 20;
+    private static final long MAX_BLOCK_SIZE = 64 << 20;
+    private static final int STREAM_BUFFER_SIZE = 64 << 10;
+
+    private final Path file;
+    private final long[] offsets;
+    private final long[] decompressedSizes;
+
+    private ZstdBlockDecoder(Path file, long[] offsets, long[] decompressedSizes) {
+        this.file = file;
+        this.offsets = offsets;
+        this.decompressedSizes = decompressedSizes;
+    }
+
+    /**
+     * Read seek table of the file.
+     *
+     * @param file zstd file
+     * @return block decoder or null if file has no seek table
+     * @throws IOException on file reading error
+     */
+    static ZstdBlockDecoder seekable(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var size = channel.size();
+            if (size < FRAME_HEADER_SIZE + FOOTER_SIZE) {
+                return null;
+            }
+            var footer = read(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+            var frames = footer.getInt(0) & 0xFFFFFFFFL;
+            var descriptor = footer.get(4);
+            if (footer.getInt(5) != SEEKABLE_MAGIC || (descriptor & RESERVED_DESCRIPTOR_BITS) != 0) {
+                return null;
+            }
+            var entrySize = (descriptor & CHECKSUM_FLAG) != 0 ? 12 : 8;
+            var tableSize = frames * entrySize + FOOTER_SIZE;
+            var dataEnd = size - tableSize - FRAME_HEADER_SIZE;
+            if (dataEnd < 0 || tableSize > Integer.MAX_VALUE) {
+                return null;
+            }
+            var header = read(channel, dataEnd, FRAME_HEADER_SIZE);
+            if (header.getInt(0) != SEEK_TABLE_MAGIC || (header.getInt(4) & 0xFFFFFFFFL) != tableSize) {
+                return null;
+            }
+            var entries = read(channel, dataEnd + FRAME_HEADER_SIZE, (int) (tableSize - FOOTER_SIZE));
+
+            var offsets = new ArrayList<Long>();
+            var decompressedSizes = new ArrayList<Long>();
+            offsets.add(0L);
+            var position = 0L;
+            var blockStart = 0L;
+            var blockSize = 0L;
+            for (var i = 0; i < frames; i++) {
+                var compressed = entries.getInt(i * entrySize) & 0xFFFFFFFFL;
+                var decompressed = entries.getInt(i * entrySize + 4) & 0xFFFFFFFFL;
+                if (blockSize > 0 && (position - blockStart >= RANGE_SIZE || blockSize + decompressed > MAX_BLOCK_SIZE)) {
+                    offsets.add(position);
+                    decompressedSizes.add(blockSize);
+                    blockStart = position;
+                    blockSize = 0;
+                }
+                position += compressed;
+                blockSize += decompressed;
+            }
+            if (position != dataEnd) {
+                return null;
+            }
+            if (position > blockStart) {
+                offsets.add(position);
+                decompressedSizes.add(blockSize);
+            }
+            return new ZstdBlockDecoder(
+                    file,
+                    offsets.stream().mapToLong(Long::longValue).toArray(),
+                    decompressedSizes.stream().mapToLong(Long::longValue).toArray()
+            );
+        }
+    }
+
+    /**
+     * Open sequential zstd stream, concatenated and skippable frames are handled by the stream.
+     *
+     * @param file     zstd file
+     * @param position position of a frame
+     * @return decompressed data stream
+     * @throws IOException on file reading error
+     */
+    static InputStream open(Path file, long position) throws IOException {
+        var input = Files.newInputStream(file);
+        try {
+            input.skipNBytes(position);
+            return new ZstdInputStream(new BufferedInputStream(input, STREAM_BUFFER_SIZE));
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        var buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file " + channel);
+            }
+        }
+        return buffer;
+    }
+
+    @Override
+    public int blocks() {
+        return decompressedSizes.length;
+    }
+
+    @Override
+    public long blockEnd(int block) {
+        return offsets[block + 1];
+    }
+
+    @Override
+    public long end() {
+        return offsets[offsets.length - 1];
+    }
+
+    @Override
+    public InputStream open(long position) throws IOException {
+        return open(file, position);
+    }
+
+    @Override
+    public DecodedBlock decode(int block) throws IOException {
+        var start = offsets[block];
+        var end = offsets[block + 1];
+        if (decompressedSizes[block] > MAX_BLOCK_SIZE || end - start > MAX_BLOCK_SIZE) {
+            return null;
+        }
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var compressed = read(channel, start, (int) (end - start)).array();
+            var data = new byte[(int) decompressedSizes[block]];
+            var result = Zstd.decompressByteArray(data, 0, data.length, compressed, 0, compressed.length);
+            if (Zstd.isError(result)) {
+                throw new IOException("Can not decompress zstd frames at %d: %s".formatted(start, Zstd.getErrorName(result)));
+            }
+            if (result != data.length) {
+                throw new IOException("Decompressed size of zstd frames at %d does not match seek table".formatted(start));
+            }
+            return new DecodedBlock(start, end, data);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.sibmaks.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Recorder which answers queries with the delegate and keeps a sketch of the same values,
+ * used to build latency histogram corrected for coordinated omission.
+ * <p>
+ * Fixed rate load generator does not send requests queued behind a stalled one, so their latencies are missing.
+ * Corrected histogram adds them back as synthetic values, see {@link SketchLatencyRecorder#corrected(long)}.
+ */
+public class CoordinatedOmissionRecorder implements LatencyRecorder {
+    static final byte CORRECTED_TAG = 'C';
+
+    private final LatencyRecorder delegate;
+    private final SketchLatencyRecorder histogram;
+
+    /**
+     * @param delegate recorder answering queries
+     * @param accuracy relative error bound of corrected histogram
+     */
+    public CoordinatedOmissionRecorder(LatencyRecorder delegate, double accuracy) {
+        this.delegate = delegate;
+        this.histogram = new SketchLatencyRecorder(accuracy);
+    }
+
+    @Override
+    public void record(long value) {
+        delegate.record(value);
+        histogram.record(value);
+    }
+
+    @Override
+    public long getCount() {
+        return delegate.getCount();
+    }
+
+    @Override
+    public long getSampleSize() {
+        return delegate.getSampleSize();
+    }
+
+    @Override
+    public long getValueAtRank(long rank) {
+        return delegate.getValueAtRank(rank);
+    }
+
+    @Override
+    public long countAtOrBelow(long value) {
+        return delegate.countAtOrBelow(value);
+    }
+
+    @Override
+    public long getEquivalentValue(long value) {
+        return delegate.getEquivalentValue(value);
+    }
+
+    @Override
+    public void prepareQueries() {
+        delegate.prepareQueries();
+    }
+
+    /**
+     * Build histogram of recorded values with back-filled missing values.
+     *
+     * @param expectedInterval expected interval between requests in fixed-point units
+     * @return corrected histogram
+     */
+    public SketchLatencyRecorder getCorrected(long expectedInterval) {
+        return histogram.corrected(expectedInterval);
+    }
+
+    @Override
+    public void merge(LatencyRecorder other) {
+        if (!(other instanceof CoordinatedOmissionRecorder corrected)) {
+            throw new IllegalArgumentException("Can't merge %s into coordinated omission recorder"
+                    .formatted(other.getClass().getSimpleName()));
+        }
+        delegate.merge(corrected.delegate);
+        histogram.merge(corrected.histogram);
+    }
+
+    @Override
+    public void write(DataOutput output) throws IOException {
+        output.writeByte(CORRECTED_TAG);
+        delegate.write(output);
+        histogram.write(output);
+    }
+
+    @Override
+    public void read(DataInput input) throws IOException {
+        LatencyRecorder.readTag(input, CORRECTED_TAG);
+        delegate.read(input);
+        histogram.read(input);
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.sibmaks.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Recorder which keeps every sample, percentiles are exact.
+ */
+public class ExactLatencyRecorder implements LatencyRecorder {
+    static final byte EXACT_TAG = 'E';
+
+    private final LongSamples values = new LongSamples();
+
+    @Override
+    public void record(long value) {
+        values.add(value);
+    }
+
+    @Override
+    public long getCount() {
+        return values.size();
+    }
+
+    @Override
+    public long getValueAtRank(long rank) {
+        return values.getSorted((int) rank);
+    }
+
+    @Override
+    public long countAtOrBelow(long value) {
+        return values.countAtOrBelow(value);
+    }
+
+    @Override
+    public long getEquivalentValue(long value) {
+        return value;
+    }
+
+    @Override
+    public void prepareQueries() {
+        values.sort();
+    }
+
+    @Override
+    public void merge(LatencyRecorder other) {
+        if (!(other instanceof ExactLatencyRecorder exact)) {
+            throw new IllegalArgumentException("Can't merge %s into exact recorder".formatted(other.getClass().getSimpleName()));
+        }
+        var otherValues = exact.values;
+        for (var i = 0; i < otherValues.size(); i++) {
+            values.add(otherValues.get(i));
+        }
+    }
+
+    @Override
+    public void write(DataOutput output) throws IOException {
+        output.writeByte(EXACT_TAG);
+        output.writeLong(values.size());
+        for (var i = 0; i < values.size(); i++) {
+            output.writeLong(values.get(i));
+        }
+    }
+
+    @Override
+    public void read(DataInput input) throws IOException {
+        LatencyRecorder.readTag(input, EXACT_TAG);
+        var size = input.readLong();
+        for (var i = 0L; i < size; i++) {
+            values.add(input.readLong());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.sibmaks.stats;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point latency representation: latencies are kept as {@code long} nanoseconds,
+ * i.e. milliseconds with 6 fractional digits.
+ */
+public final class Latency {
+    /**
+     * Amount of fractional millisecond digits kept in the fixed-point value.
+     */
+    public static final int SCALE = 6;
+    /**
+     * Scale of {@link BigDecimal} values returned by report getters.
+     */
+    public static final int REPORT_SCALE = 12;
+    /**
+     * Amount of fixed-point units in one millisecond.
+     */
+    public static final long UNITS_PER_MILLI = 1_000_000L;
+
+    private Latency() {
+    }
+
+    public static long fromMillis(BigDecimal millis) {
+        return millis.movePointRight(SCALE)
+                .setScale(0, RoundingMode.HALF_UP)
+                .longValueExact();
+    }
+
+    public static BigDecimal toMillis(long value) {
+        return BigDecimal.valueOf(value, SCALE)
+                .setScale(REPORT_SCALE, RoundingMode.UNNECESSARY);
+    }
+
+    public static double toMillisDouble(long value) {
+        return (double) value / UNITS_PER_MILLI;
+    }
+}
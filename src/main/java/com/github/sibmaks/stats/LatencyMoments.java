@@ -0,0 +1,146 @@
+package com.github.sibmaks.stats;
+
+/**
+ * Streaming latency moments: count, sum, sum of squared deviations from the mean, min and max.
+ * <p>
+ * Sum is exact, mean is derived from it. Squared deviations are accumulated with Welford's update and
+ * combined with Chan's formula on merge, the sum of their increments is compensated by Kahan summation,
+ * so variance keeps its accuracy on billions of values. Values are fixed-point, see {@link Latency}.
+ */
+public final class LatencyMoments {
+    private long count;
+    private long total;
+    private double m2;
+    private double m2Compensation;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public LatencyMoments() {
+    }
+
+    private LatencyMoments(LatencyMoments other) {
+        this.count = other.count;
+        this.total = other.total;
+        this.m2 = other.m2;
+        this.m2Compensation = other.m2Compensation;
+        this.min = other.min;
+        this.max = other.max;
+    }
+
+    /**
+     * Restore moments written by another accumulator.
+     *
+     * @param count count of values
+     * @param total sum of values
+     * @param m2    sum of squared deviations from the mean
+     * @param min   min value, {@link Long#MAX_VALUE} if there are no values
+     * @param max   max value, {@link Long#MIN_VALUE} if there are no values
+     * @return restored moments
+     */
+    public static LatencyMoments of(long count, long total, double m2, long min, long max) {
+        var moments = new LatencyMoments();
+        moments.count = count;
+        moments.total = total;
+        moments.m2 = m2;
+        moments.min = min;
+        moments.max = max;
+        return moments;
+    }
+
+    public void add(long value) {
+        var oldMean = getMean();
+        count++;
+        total += value;
+        addM2((value - oldMean) * (value - getMean()));
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Add values of other moments.
+     *
+     * @param other other moments, not changed
+     * @return this moments
+     */
+    public LatencyMoments merge(LatencyMoments other) {
+        if (other.count == 0) {
+            return this;
+        }
+        if (count == 0) {
+            count = other.count;
+            total = other.total;
+            m2 = other.m2;
+            m2Compensation = other.m2Compensation;
+            min = other.min;
+            max = other.max;
+            return this;
+        }
+        var delta = other.getMean() - getMean();
+        var n = (double) count + other.count;
+        addM2(other.m2);
+        addM2(-other.m2Compensation);
+        addM2(delta * delta * ((double) count * other.count / n));
+        count += other.count;
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    private void addM2(double value) {
+        var compensated = value - m2Compensation;
+        var sum = m2 + compensated;
+        m2Compensation = (sum - m2) - compensated;
+        m2 = sum;
+    }
+
+    /**
+     * @return independent copy of moments
+     */
+    public LatencyMoments copy() {
+        return new LatencyMoments(this);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return mean value, 0 if there are no values
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * @return sum of squared deviations from the mean
+     */
+    public double getM2() {
+        return m2;
+    }
+
+    /**
+     * @return population variance in squared fixed-point units, 0 if there are no values
+     */
+    public double getVariance() {
+        return count == 0 ? 0 : Math.max(0, m2 / count);
+    }
+
+    /**
+     * @return min value, {@link Long#MAX_VALUE} if there are no values
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * @return max value, {@link Long#MIN_VALUE} if there are no values
+     */
+    public long getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.sibmaks.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Storage of recorded latencies used to answer percentile queries.
+ * Latencies are fixed-point values, see {@link Latency}.
+ */
+public interface LatencyRecorder {
+
+    void record(long value);
+
+    long getCount();
+
+    /**
+     * @return amount of kept values answering queries, less than {@link #getCount()} if recorder keeps a sample
+     */
+    default long getSampleSize() {
+        return getCount();
+    }
+
+    /**
+     * Get value with passed rank in ascending order.
+     *
+     * @param rank zero based rank, less than {@link #getCount()}
+     * @return recorded value or its equivalent
+     */
+    long getValueAtRank(long rank);
+
+    /**
+     * Count recorded values less or equal to passed one.
+     *
+     * @param value upper bound, inclusive
+     * @return amount of values
+     */
+    long countAtOrBelow(long value);
+
+    /**
+     * Map value to the value reported for it by {@link #getValueAtRank(long)}.
+     *
+     * @param value recorded value
+     * @return equivalent value
+     */
+    long getEquivalentValue(long value);
+
+    /**
+     * Finish work deferred to queries, e.g. sorting of samples, so the following queries do not modify recorder
+     * and can be run concurrently until the next recorded value.
+     */
+    default void prepareQueries() {
+    }
+
+    /**
+     * Add all values recorded by other recorder of the same type and configuration.
+     *
+     * @param other other recorder
+     */
+    void merge(LatencyRecorder other);
+
+    /**
+     * Write recorded values, written values are added to another recorder by {@link #read(DataInput)}.
+     *
+     * @param output target output
+     * @throws IOException on writing error
+     */
+    void write(DataOutput output) throws IOException;
+
+    /**
+     * Add values written by a recorder of the same type and configuration.
+     *
+     * @param input source input
+     * @throws IOException on reading error or if values were written by recorder of another type or configuration
+     */
+    void read(DataInput input) throws IOException;
+
+    /**
+     * Read tag of written recorder type and check it.
+     *
+     * @param input    source input
+     * @param expected tag of the reading recorder type
+     * @throws IOException on reading error or if values were written by recorder of another type
+     */
+    static void readTag(DataInput input, byte expected) throws IOException {
+        var tag = input.readByte();
+        if (tag != expected) {
+            throw new IOException("Latencies were written by %s recorder, expected %s one"
+                    .formatted(getTypeName(tag), getTypeName(expected)));
+        }
+    }
+
+    private static String getTypeName(byte tag) {
+        return switch (tag) {
+            case ExactLatencyRecorder.EXACT_TAG -> "exact";
+            case SketchLatencyRecorder.SKETCH_TAG -> "sketch";
+            case ReservoirLatencyRecorder.RESERVOIR_TAG -> "reservoir";
+            case CoordinatedOmissionRecorder.CORRECTED_TAG -> "coordinated omission";
+            default -> "unknown";
+        };
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.github.sibmaks.stats;
+
+import java.util.Arrays;
+
+/**
+ * Growable primitive {@code long} array used as a sample storage.
+ */
+public class LongSamples {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] values;
+    private int size;
+    private boolean sorted = true;
+
+    public LongSamples() {
+        this.values = new long[DEFAULT_CAPACITY];
+    }
+
+    private LongSamples(long[] values, int size, boolean sorted) {
+        this.values = values;
+        this.size = size;
+        this.sorted = sorted;
+    }
+
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(DEFAULT_CAPACITY, values.length + (values.length >> 1)));
+        }
+        if (sorted && size > 0 && values[size - 1] > value) {
+            sorted = false;
+        }
+        values[size++] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return values[index];
+    }
+
+    /**
+     * Sort samples in place, order of insertion is not preserved.
+     */
+    public void sort() {
+        if (!sorted) {
+            Arrays.sort(values, 0, size);
+            sorted = true;
+        }
+    }
+
+    /**
+     * Get value with passed rank in ascending order, samples are sorted on demand.
+     *
+     * @param index zero based rank
+     * @return sample value
+     */
+    public long getSorted(int index) {
+        sort();
+        return get(index);
+    }
+
+    /**
+     * Count samples less or equal to passed value, samples are sorted on demand.
+     *
+     * @param value upper bound, inclusive
+     * @return amount of samples
+     */
+    public int countAtOrBelow(long value) {
+        sort();
+        var low = 0;
+        var high = size;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (values[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public LongSamples copy() {
+        return new LongSamples(Arrays.copyOf(values, Math.max(size, DEFAULT_CAPACITY)), size, sorted);
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.sibmaks.stats;
+
+/**
+ * Strategy used to store latencies for percentile queries.
+ */
+public enum PercentileEngine {
+    /**
+     * Keep every sample, percentiles are exact.
+     */
+    EXACT {
+        @Override
+        public LatencyRecorder createRecorder(double accuracy) {
+            return new ExactLatencyRecorder();
+        }
+    },
+    /**
+     * Keep bounded logarithmic histogram, percentiles have relative error bound.
+     */
+    SKETCH {
+        @Override
+        public LatencyRecorder createRecorder(double accuracy) {
+            return new SketchLatencyRecorder(accuracy);
+        }
+    };
+
+    /**
+     * Create new empty recorder.
+     *
+     * @param accuracy relative error bound, used by approximate engines only
+     * @return latency recorder
+     */
+    public abstract LatencyRecorder createRecorder(double accuracy);
+}
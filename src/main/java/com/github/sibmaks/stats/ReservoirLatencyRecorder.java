@@ -0,0 +1,192 @@
+package com.github.sibmaks.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Recorder which keeps a uniform random sample of bounded size, percentiles are estimated from the sample.
+ * <p>
+ * Values are sampled with reservoir algorithm R driven by a fixed seed, so the same input gives the same sample.
+ * Ranks and counts are scaled from the sample to all recorded values. Merged sample is drawn from both samples
+ * as if from all values recorded by both reservoirs, so every recorded value is kept with the same probability.
+ */
+public class ReservoirLatencyRecorder implements LatencyRecorder {
+    static final byte RESERVOIR_TAG = 'R';
+    private static final long SEED = 0x5DEECE66DL;
+
+    private final int capacity;
+    private final SplittableRandom random = new SplittableRandom(SEED);
+    private long[] values = new long[0];
+    private int size;
+    private long count;
+    private boolean sorted = true;
+
+    /**
+     * @param capacity max amount of kept values
+     */
+    public ReservoirLatencyRecorder(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Reservoir size should be positive, got: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void record(long value) {
+        count++;
+        if (size < capacity) {
+            add(value);
+            return;
+        }
+        var index = random.nextLong(count);
+        if (index < capacity) {
+            values[(int) index] = value;
+            sorted = false;
+        }
+    }
+
+    private void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.min(capacity, Math.max(16, size + (size >> 1))));
+        }
+        if (sorted && size > 0 && values[size - 1] > value) {
+            sorted = false;
+        }
+        values[size++] = value;
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public long getSampleSize() {
+        return size;
+    }
+
+    @Override
+    public long getValueAtRank(long rank) {
+        prepareQueries();
+        return values[(int) Math.min(size - 1, rank * size / count)];
+    }
+
+    @Override
+    public long countAtOrBelow(long value) {
+        prepareQueries();
+        var low = 0;
+        var high = size;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (values[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return size == 0 ? 0 : Math.round((double) low * count / size);
+    }
+
+    @Override
+    public long getEquivalentValue(long value) {
+        return value;
+    }
+
+    @Override
+    public void prepareQueries() {
+        if (!sorted) {
+            Arrays.sort(values, 0, size);
+            sorted = true;
+        }
+    }
+
+    @Override
+    public void merge(LatencyRecorder other) {
+        if (!(other instanceof ReservoirLatencyRecorder reservoir)) {
+            throw new IllegalArgumentException("Can't merge %s into reservoir recorder".formatted(other.getClass().getSimpleName()));
+        }
+        merge(reservoir.values, reservoir.size, reservoir.count);
+    }
+
+    /**
+     * Merge sample of other reservoir by drawing values without replacement: the next value comes from a reservoir
+     * with probability proportional to amount of its recorded values not drawn yet, and it is a random not drawn
+     * value of its sample.
+     */
+    private void merge(long[] otherValues, int otherSize, long otherCount) {
+        if (otherCount == 0) {
+            return;
+        }
+        if (count == size && otherCount == otherSize && size + otherSize <= capacity) {
+            for (var i = 0; i < otherSize; i++) {
+                add(otherValues[i]);
+            }
+            count += otherCount;
+            return;
+        }
+        var own = Arrays.copyOf(values, size);
+        var other = Arrays.copyOf(otherValues, otherSize);
+        var ownSize = size;
+        var ownLeft = count;
+        var otherLeft = otherCount;
+        var kept = (int) Math.min(capacity, count + otherCount);
+        var result = new long[kept];
+        for (var i = 0; i < kept; i++) {
+            if (random.nextLong(ownLeft + otherLeft) < ownLeft) {
+                result[i] = draw(own, ownSize--);
+                ownLeft--;
+            } else {
+                result[i] = draw(other, otherSize--);
+                otherLeft--;
+            }
+        }
+        values = result;
+        size = kept;
+        count += otherCount;
+        sorted = false;
+    }
+
+    /**
+     * Remove random value from the first {@code size} values, the last of them takes its place.
+     */
+    private long draw(long[] sample, int size) {
+        var index = random.nextInt(size);
+        var value = sample[index];
+        sample[index] = sample[size - 1];
+        return value;
+    }
+
+    @Override
+    public void write(DataOutput output) throws IOException {
+        output.writeByte(RESERVOIR_TAG);
+        output.writeInt(capacity);
+        output.writeLong(count);
+        output.writeInt(size);
+        for (var i = 0; i < size; i++) {
+            output.writeLong(values[i]);
+        }
+    }
+
+    @Override
+    public void read(DataInput input) throws IOException {
+        LatencyRecorder.readTag(input, RESERVOIR_TAG);
+        var writtenCapacity = input.readInt();
+        if (writtenCapacity != capacity) {
+            throw new IOException("Latencies were written by reservoir of size %d, expected %d"
+                    .formatted(writtenCapacity, capacity));
+        }
+        var writtenCount = input.readLong();
+        var writtenSize = input.readInt();
+        if (writtenSize < 0 || writtenSize > capacity || writtenSize > writtenCount) {
+            throw new IOException("Invalid reservoir size: " + writtenSize);
+        }
+        var writtenValues = new long[writtenSize];
+        for (var i = 0; i < writtenSize; i++) {
+            writtenValues[i] = input.readLong();
+        }
+        merge(writtenValues, writtenSize, writtenCount);
+    }
+}
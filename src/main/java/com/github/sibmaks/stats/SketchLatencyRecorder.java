@@ -0,0 +1,256 @@
+package com.github.sibmaks.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Mergeable quantile sketch with relative error guarantee.
+ * <p>
+ * Values are counted in logarithmic buckets {@code (gamma^(i-1), gamma^i]}, where
+ * {@code gamma = (1 + accuracy) / (1 - accuracy)}, and every value of a bucket is reported as the same
+ * representative, which differs from the real value by at most {@code accuracy}.
+ * Memory depends only on the ratio between max and min recorded values, not on the amount of values.
+ */
+public class SketchLatencyRecorder implements LatencyRecorder {
+    static final byte SKETCH_TAG = 'S';
+    private static final int INITIAL_BUCKETS = 64;
+
+    private final double accuracy;
+    private final double gamma;
+    private final double logGamma;
+
+    private long[] counts;
+    private int offset;
+    private long zeroCount;
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    /**
+     * @param accuracy relative error bound, in range {@code (0, 1)}
+     */
+    public SketchLatencyRecorder(double accuracy) {
+        if (!(accuracy > 0 && accuracy < 1)) {
+            throw new IllegalArgumentException("Sketch accuracy should be in range (0, 1), got: " + accuracy);
+        }
+        this.accuracy = accuracy;
+        this.gamma = (1 + accuracy) / (1 - accuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    private int index(long value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    private long representative(int index) {
+        return Math.round(2 * Math.pow(gamma, index) / (gamma + 1));
+    }
+
+    private void ensureCapacity(int index) {
+        if (counts == null) {
+            counts = new long[INITIAL_BUCKETS];
+            offset = index - INITIAL_BUCKETS / 2;
+            return;
+        }
+        if (index >= offset && index < offset + counts.length) {
+            return;
+        }
+        var newOffset = Math.min(offset, index);
+        var newEnd = Math.max(offset + counts.length, index + 1);
+        var newLength = newEnd - newOffset;
+        newLength = Math.max(newLength, counts.length + (counts.length >> 1));
+        if (index < offset) {
+            newOffset = newEnd - newLength;
+        }
+        var newCounts = new long[newLength];
+        System.arraycopy(counts, 0, newCounts, offset - newOffset, counts.length);
+        counts = newCounts;
+        offset = newOffset;
+    }
+
+    @Override
+    public void record(long value) {
+        add(value, 1);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    private void add(long value, long amount) {
+        if (value < 1) {
+            zeroCount += amount;
+        } else {
+            var index = index(value);
+            ensureCapacity(index);
+            counts[index - offset] += amount;
+        }
+        count += amount;
+    }
+
+    /**
+     * Copy sketch with values back-filled for coordinated omission: every recorded value {@code v} adds synthetic
+     * values {@code v - k * expectedInterval} while they are at least {@code expectedInterval}, as if requests
+     * queued behind a stall were sent on schedule. Values of a bucket are back-filled from its representative
+     * with one update per filled bucket, so cost does not depend on amount of synthetic values.
+     *
+     * @param expectedInterval expected interval between requests in fixed-point units
+     * @return corrected sketch
+     */
+    public SketchLatencyRecorder corrected(long expectedInterval) {
+        if (expectedInterval <= 0) {
+            throw new IllegalArgumentException("Expected interval should be positive, got: " + expectedInterval);
+        }
+        var result = new SketchLatencyRecorder(accuracy);
+        result.merge(this);
+        if (counts != null) {
+            for (var i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    result.addMissing(clamp(representative(i + offset)), expectedInterval, counts[i]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add {@code amount} times every value {@code value - k * interval} at least {@code interval}, k > 0.
+     */
+    private void addMissing(long value, long interval, long amount) {
+        var top = value - interval;
+        if (top < interval) {
+            return;
+        }
+        var remaining = (top - interval) / interval + 1;
+        min = Math.min(min, top - (remaining - 1) * interval);
+        max = Math.max(max, top);
+        while (remaining > 0) {
+            var bucket = index(top);
+            // bucket holds values above gamma^(bucket - 1), rounding is fixed by checking neighbour values
+            var lowerBound = (long) Math.pow(gamma, bucket - 1);
+            var values = Math.max(1, Math.min(remaining, (top - lowerBound - 1) / interval + 1));
+            while (values > 1 && index(top - (values - 1) * interval) != bucket) {
+                values--;
+            }
+            while (values < remaining && index(top - values * interval) == bucket) {
+                values++;
+            }
+            add(top, values * amount);
+            top -= values * interval;
+            remaining -= values;
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public long getValueAtRank(long rank) {
+        if (rank < zeroCount) {
+            return clamp(0);
+        }
+        var seen = zeroCount;
+        for (var i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                return clamp(representative(i + offset));
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public long countAtOrBelow(long value) {
+        if (value < 1) {
+            return value < 0 ? 0 : zeroCount;
+        }
+        var result = zeroCount;
+        if (counts == null) {
+            return result;
+        }
+        var last = Math.min(index(value) - offset, counts.length - 1);
+        for (var i = 0; i <= last; i++) {
+            result += counts[i];
+        }
+        return result;
+    }
+
+    @Override
+    public long getEquivalentValue(long value) {
+        if (value < 1) {
+            return 0;
+        }
+        return representative(index(value));
+    }
+
+    private long clamp(long value) {
+        if (count == 0) {
+            return value;
+        }
+        return Math.max(min, Math.min(max, value));
+    }
+
+    @Override
+    public void merge(LatencyRecorder other) {
+        if (!(other instanceof SketchLatencyRecorder sketch) || sketch.accuracy != accuracy) {
+            throw new IllegalArgumentException("Can't merge %s into sketch recorder with accuracy %s"
+                    .formatted(other.getClass().getSimpleName(), accuracy));
+        }
+        if (sketch.count == 0) {
+            return;
+        }
+        zeroCount += sketch.zeroCount;
+        count += sketch.zeroCount;
+        if (sketch.counts != null) {
+            ensureCapacity(sketch.offset);
+            ensureCapacity(sketch.offset + sketch.counts.length - 1);
+            for (var i = 0; i < sketch.counts.length; i++) {
+                counts[sketch.offset + i - offset] += sketch.counts[i];
+                count += sketch.counts[i];
+            }
+        }
+        min = Math.min(min, sketch.min);
+        max = Math.max(max, sketch.max);
+    }
+
+    @Override
+    public void write(DataOutput output) throws IOException {
+        output.writeByte(SKETCH_TAG);
+        output.writeDouble(accuracy);
+        output.writeLong(zeroCount);
+        output.writeLong(min);
+        output.writeLong(max);
+        output.writeInt(offset);
+        var buckets = counts == null ? 0 : counts.length;
+        output.writeInt(buckets);
+        for (var i = 0; i < buckets; i++) {
+            output.writeLong(counts[i]);
+        }
+    }
+
+    @Override
+    public void read(DataInput input) throws IOException {
+        LatencyRecorder.readTag(input, SKETCH_TAG);
+        var writtenAccuracy = input.readDouble();
+        if (writtenAccuracy != accuracy) {
+            throw new IOException("Latencies were written by sketch with accuracy %s, expected %s"
+                    .formatted(writtenAccuracy, accuracy));
+        }
+        var written = new SketchLatencyRecorder(accuracy);
+        written.zeroCount = input.readLong();
+        written.count = written.zeroCount;
+        written.min = input.readLong();
+        written.max = input.readLong();
+        written.offset = input.readInt();
+        var buckets = input.readInt();
+        if (buckets > 0) {
+            written.counts = new long[buckets];
+            for (var i = 0; i < buckets; i++) {
+                written.counts[i] = input.readLong();
+                written.count += written.counts[i];
+            }
+        }
+        merge(written);
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.sibmaks.stats;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Immutable run of ascending latencies spilled to a file and memory-mapped for reading.
+ * Run is mapped by segments, so it is not limited by the 2 GB size of a single mapping.
+ * Reading methods are thread-safe.
+ */
+final class SortedRun {
+    private static final int SEGMENT_SHIFT = 27;
+    private static final long SEGMENT_VALUES = 1L << SEGMENT_SHIFT;
+
+    private final Path file;
+    private final long size;
+    private final LongBuffer[] segments;
+    private volatile boolean shared;
+
+    private SortedRun(Path file, long size, LongBuffer[] segments) {
+        this.file = file;
+        this.size = size;
+        this.segments = segments;
+    }
+
+    /**
+     * Map run file written in little-endian order.
+     *
+     * @param file run file
+     * @param size amount of values in file
+     * @return mapped run
+     * @throws IOException on mapping error
+     */
+    static SortedRun map(Path file, long size) throws IOException {
+        var segments = new LongBuffer[(int) ((size + SEGMENT_VALUES - 1) >>> SEGMENT_SHIFT)];
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (var i = 0; i < segments.length; i++) {
+                var start = i * SEGMENT_VALUES;
+                var values = Math.min(SEGMENT_VALUES, size - start);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start * Long.BYTES, values * Long.BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN)
+                        .asLongBuffer();
+            }
+        }
+        return new SortedRun(file, size, segments);
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    long size() {
+        return size;
+    }
+
+    long get(long index) {
+        return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & (SEGMENT_VALUES - 1)));
+    }
+
+    /**
+     * Count values less or equal to passed one by binary search.
+     *
+     * @param value upper bound, inclusive
+     * @return amount of values
+     */
+    long countAtOrBelow(long value) {
+        var low = 0L;
+        var high = size;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (get(mid) <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Mark run as referenced by several recorders, shared run file is kept until its store is closed.
+     */
+    void share() {
+        shared = true;
+    }
+
+    boolean isShared() {
+        return shared;
+    }
+}
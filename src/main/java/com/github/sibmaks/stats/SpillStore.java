@@ -0,0 +1,253 @@
+package com.github.sibmaks.stats;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared memory budget and temporary file storage of {@link SpillingLatencyRecorder}s.
+ * <p>
+ * Recorders reserve heap for their buffers from the budget and never take more than it holds. Every recorder
+ * may grow its buffer up to a floor: equal share of the budget among registered recorders, but at least a few MB.
+ * Recorder which can not grow its buffer writes it as a sorted run. Small part of the budget is kept for first buffers
+ * of new recorders. Run files are created in own temporary directory, which is removed on close.
+ * Store is thread-safe.
+ */
+public final class SpillStore implements AutoCloseable {
+    private static final int BUFFER_SIZE = 64 << 10;
+    private static final long MIN_FLOOR_BYTES = 4L << 20;
+    private static final int HEADROOM_SHIFT = 4;
+
+    private final Path parent;
+    private final long budget;
+    private final long headroom;
+    private final AtomicLong available;
+    private final AtomicInteger recorders = new AtomicInteger();
+    private Path directory;
+    private int runs;
+
+    /**
+     * @param parent      directory of temporary run files
+     * @param budgetBytes heap budget of all recorder buffers in bytes
+     */
+    public SpillStore(Path parent, long budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("Spill budget should be positive, got: " + budgetBytes);
+        }
+        this.parent = parent;
+        this.budget = budgetBytes;
+        this.headroom = budgetBytes >> HEADROOM_SHIFT;
+        this.available = new AtomicLong(budgetBytes);
+    }
+
+    /**
+     * Count a new recorder sharing the budget.
+     */
+    void register() {
+        recorders.incrementAndGet();
+    }
+
+    /**
+     * Buffer size a recorder may grow to: equal share of the budget among registered recorders,
+     * but at least a few MB and at most the budget without headroom of first buffers.
+     *
+     * @return amount of values
+     */
+    long floor() {
+        var share = Math.max(budget / Math.max(1, recorders.get()), MIN_FLOOR_BYTES);
+        return Math.max(1, Math.min(share, budget - headroom) / Long.BYTES);
+    }
+
+    /**
+     * Reserve heap for grown buffer, headroom of first buffers is not reserved.
+     *
+     * @param values amount of values
+     * @return true if budget has enough heap left
+     */
+    boolean reserve(long values) {
+        return reserve(values, headroom);
+    }
+
+    /**
+     * Reserve heap for the first buffer of a recorder, which has nothing to spill yet.
+     *
+     * @param values amount of values
+     * @return true if budget has enough heap left
+     */
+    boolean reserveFirst(long values) {
+        return reserve(values, 0);
+    }
+
+    private boolean reserve(long values, long keep) {
+        var bytes = values * Long.BYTES;
+        while (true) {
+            var left = available.get();
+            if (left - bytes < keep) {
+                return false;
+            }
+            if (available.compareAndSet(left, left - bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Return heap of released buffer to the budget.
+     *
+     * @param values amount of values
+     */
+    void release(long values) {
+        available.addAndGet(values * Long.BYTES);
+    }
+
+    /**
+     * Write sorted values as a run.
+     *
+     * @param values ascending values
+     * @param size   amount of values to write
+     * @return mapped run
+     */
+    SortedRun spill(long[] values, int size) {
+        try {
+            var file = newRunFile();
+            try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                var buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                for (var i = 0; i < size; i++) {
+                    if (!buffer.hasRemaining()) {
+                        flush(channel, buffer);
+                    }
+                    buffer.putLong(values[i]);
+                }
+                flush(channel, buffer);
+            }
+            return SortedRun.map(file, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not spill latencies", e);
+        }
+    }
+
+    /**
+     * Merge runs into a single run with k-way merge over a binary heap of run indexes ordered by head values,
+     * source runs are not modified.
+     *
+     * @param sources runs to merge
+     * @return mapped merged run
+     */
+    SortedRun merge(List<SortedRun> sources) {
+        var runs = sources.toArray(SortedRun[]::new);
+        var positions = new long[runs.length];
+        var heads = new long[runs.length];
+        var heap = new int[runs.length];
+        var heapSize = 0;
+        var size = 0L;
+        for (var i = 0; i < runs.length; i++) {
+            size += runs[i].size();
+            if (runs[i].size() > 0) {
+                heads[i] = runs[i].get(0);
+                heap[heapSize++] = i;
+            }
+        }
+        for (var i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(heap, heapSize, heads, i);
+        }
+        try {
+            var file = newRunFile();
+            try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                var buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                while (heapSize > 0) {
+                    var run = heap[0];
+                    if (!buffer.hasRemaining()) {
+                        flush(channel, buffer);
+                    }
+                    buffer.putLong(heads[run]);
+                    var next = ++positions[run];
+                    if (next < runs[run].size()) {
+                        heads[run] = runs[run].get(next);
+                    } else {
+                        heap[0] = heap[--heapSize];
+                    }
+                    siftDown(heap, heapSize, heads, 0);
+                }
+                flush(channel, buffer);
+            }
+            return SortedRun.map(file, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not merge spilled latencies", e);
+        }
+    }
+
+    /**
+     * Move run index down the heap until its head value is not greater than head values of its children.
+     */
+    private static void siftDown(int[] heap, int heapSize, long[] heads, int index) {
+        var run = heap[index];
+        while (true) {
+            var child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heads[heap[child + 1]] < heads[heap[child]]) {
+                child++;
+            }
+            if (heads[heap[child]] >= heads[run]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = run;
+    }
+
+    /**
+     * Delete run file which is not used anymore, mapping is released by garbage collector.
+     */
+    void delete(SortedRun run) {
+        try {
+            Files.deleteIfExists(run.getFile());
+        } catch (IOException e) {
+            // file is deleted on close
+        }
+    }
+
+    private synchronized Path newRunFile() throws IOException {
+        if (directory == null) {
+            directory = Files.createTempDirectory(parent, "latency-spill");
+        }
+        return Files.createFile(directory.resolve("run-%d.bin".formatted(runs++)));
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Delete temporary files.
+     *
+     * @throws IOException on file deletion error
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (directory == null) {
+            return;
+        }
+        try (var files = Files.list(directory)) {
+            for (var path : files.toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+        Files.deleteIfExists(directory);
+        directory = null;
+    }
+}
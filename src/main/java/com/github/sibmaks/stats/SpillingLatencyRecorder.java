@@ -0,0 +1,251 @@
+package com.github.sibmaks.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Recorder which keeps every sample like {@link ExactLatencyRecorder}, but holds only a bounded buffer in heap.
+ * <p>
+ * Buffer grows up to the {@link SpillStore} floor while the budget allows, then it is sorted and spilled as
+ * a memory-mapped run and reused. Buffer over the floor, left from the time fewer recorders shared the budget,
+ * is shrunk after a spill, so its heap goes to other recorders.
+ * Runs are merged by size tiers: runs of the same tier are merged by k-way merge into a run of a higher tier,
+ * so every value is rewritten a logarithmic number of times and the number of runs stays logarithmic.
+ * Percentiles stay exact:
+ * value of a rank is found by binary search over the value range, counting values of every run and of the buffer
+ * by binary search, so only a few pages of every run are read per query.
+ * Values are written in exact recorder format, so aggregate files are interchangeable between both recorders.
+ */
+public class SpillingLatencyRecorder implements LatencyRecorder {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 28;
+    private static final int TIER_BITS = 3;
+    private static final int TIER_RUNS = 1 << TIER_BITS;
+    private static final int TIERS = Long.SIZE / TIER_BITS + 1;
+
+    private final SpillStore store;
+    private final List<SortedRun> runs = new ArrayList<>();
+    private long[] buffer = new long[0];
+    private int size;
+    private boolean sorted = true;
+    private long spilled;
+
+    /**
+     * @param store heap budget and run storage, the whole buffer is reserved from the budget
+     */
+    public SpillingLatencyRecorder(SpillStore store) {
+        this.store = store;
+        store.register();
+    }
+
+    @Override
+    public void record(long value) {
+        if (size == buffer.length && !grow()) {
+            spill();
+        }
+        if (sorted && size > 0 && buffer[size - 1] > value) {
+            sorted = false;
+        }
+        buffer[size++] = value;
+    }
+
+    private boolean grow() {
+        var capacity = buffer.length;
+        var floor = floor();
+        if (capacity >= floor) {
+            return false;
+        }
+        var newCapacity = Math.min(floor, Math.max(INITIAL_CAPACITY, capacity + (capacity >> 1)));
+        if (capacity == 0) {
+            if (!store.reserveFirst(newCapacity)) {
+                throw new IllegalStateException("Spill budget is exhausted by buffers of other recorders");
+            }
+        } else if (!store.reserve(newCapacity - capacity)) {
+            return false;
+        }
+        buffer = Arrays.copyOf(buffer, newCapacity);
+        return true;
+    }
+
+    private int floor() {
+        return (int) Math.min(MAX_CAPACITY, store.floor());
+    }
+
+    private void spill() {
+        writeRun();
+        var floor = floor();
+        if (buffer.length > floor) {
+            store.release(buffer.length - floor);
+            buffer = new long[floor];
+        }
+        mergeTiers();
+    }
+
+    private void writeRun() {
+        sortBuffer();
+        runs.add(store.spill(buffer, size));
+        spilled += size;
+        size = 0;
+    }
+
+    /**
+     * Merge runs of the lowest tier holding {@link #TIER_RUNS} runs, until no tier holds that many.
+     */
+    private void mergeTiers() {
+        while (true) {
+            var counts = new int[TIERS];
+            var full = -1;
+            for (var run : runs) {
+                var tier = tier(run);
+                if (++counts[tier] == TIER_RUNS && (full < 0 || tier < full)) {
+                    full = tier;
+                }
+            }
+            if (full < 0) {
+                return;
+            }
+            var sources = new ArrayList<SortedRun>();
+            for (var it = runs.iterator(); it.hasNext(); ) {
+                var run = it.next();
+                if (tier(run) == full) {
+                    sources.add(run);
+                    it.remove();
+                }
+            }
+            runs.add(store.merge(sources));
+            for (var run : sources) {
+                if (!run.isShared()) {
+                    store.delete(run);
+                }
+            }
+        }
+    }
+
+    private static int tier(SortedRun run) {
+        return (Long.SIZE - 1 - Long.numberOfLeadingZeros(Math.max(1, run.size()))) / TIER_BITS;
+    }
+
+    private void sortBuffer() {
+        if (!sorted) {
+            Arrays.sort(buffer, 0, size);
+            sorted = true;
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return spilled + size;
+    }
+
+    @Override
+    public long getValueAtRank(long rank) {
+        sortBuffer();
+        if (runs.isEmpty()) {
+            return buffer[(int) rank];
+        }
+        var low = Long.MAX_VALUE;
+        var high = Long.MIN_VALUE;
+        for (var run : runs) {
+            low = Math.min(low, run.get(0));
+            high = Math.max(high, run.get(run.size() - 1));
+        }
+        if (size > 0) {
+            low = Math.min(low, buffer[0]);
+            high = Math.max(high, buffer[size - 1]);
+        }
+        while (low < high) {
+            var mid = low + (high - low) / 2;
+            if (countAtOrBelow(mid) > rank) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public long countAtOrBelow(long value) {
+        sortBuffer();
+        var count = 0L;
+        for (var run : runs) {
+            count += run.countAtOrBelow(value);
+        }
+        var low = 0;
+        var high = size;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (buffer[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return count + low;
+    }
+
+    @Override
+    public long getEquivalentValue(long value) {
+        return value;
+    }
+
+    @Override
+    public void prepareQueries() {
+        sortBuffer();
+    }
+
+    /**
+     * Merge runs of other recorder. Buffered values of other recorder are spilled as its run first
+     * and its buffer is returned to the budget, so merged parts do not hold heap of the budget.
+     *
+     * @param other recorder to merge
+     */
+    @Override
+    public void merge(LatencyRecorder other) {
+        if (!(other instanceof SpillingLatencyRecorder spilling)) {
+            throw new IllegalArgumentException("Can't merge %s into spilling recorder".formatted(other.getClass().getSimpleName()));
+        }
+        spilling.handOver();
+        for (var run : spilling.runs) {
+            run.share();
+            runs.add(run);
+            spilled += run.size();
+        }
+        mergeTiers();
+    }
+
+    private void handOver() {
+        if (size > 0) {
+            writeRun();
+        }
+        store.release(buffer.length);
+        buffer = new long[0];
+    }
+
+    @Override
+    public void write(DataOutput output) throws IOException {
+        output.writeByte(ExactLatencyRecorder.EXACT_TAG);
+        output.writeLong(getCount());
+        for (var run : runs) {
+            for (var i = 0L; i < run.size(); i++) {
+                output.writeLong(run.get(i));
+            }
+        }
+        for (var i = 0; i < size; i++) {
+            output.writeLong(buffer[i]);
+        }
+    }
+
+    @Override
+    public void read(DataInput input) throws IOException {
+        LatencyRecorder.readTag(input, ExactLatencyRecorder.EXACT_TAG);
+        var count = input.readLong();
+        for (var i = 0L; i < count; i++) {
+            record(input.readLong());
+        }
+    }
+}
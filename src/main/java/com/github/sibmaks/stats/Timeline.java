@@ -0,0 +1,272 @@
+package com.github.sibmaks.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Request throughput timeline with fixed bucket resolution.
+ * <p>
+ * Buckets are stored in primitive arrays indexed by offset from the first bucket,
+ * every bucket holds request count and latency sum, min and max in fixed-point units of {@link Latency}.
+ * Buckets between the first and the last recorded ones are kept even if they are empty.
+ * Span is limited by {@link #MAX_BUCKETS}: requests which would extend it further, e.g. with broken timestamps
+ * far from the rest of the log, are skipped and counted, so the span is anchored by the first recorded requests.
+ */
+public final class Timeline {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_BUCKETS = 1 << 24;
+
+    private final long resolution;
+    private long firstBucket;
+    private int size;
+    private long skipped;
+    private long[] counts = new long[0];
+    private long[] totalLatencies = new long[0];
+    private long[] minLatencies = new long[0];
+    private long[] maxLatencies = new long[0];
+
+    /**
+     * @param resolution bucket duration in milliseconds
+     */
+    public Timeline(long resolution) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("Timeline resolution should be positive, got: " + resolution);
+        }
+        this.resolution = resolution;
+    }
+
+    /**
+     * Record request.
+     *
+     * @param timestamp request timestamp in milliseconds
+     * @param latency   request latency in fixed-point units
+     */
+    public void record(long timestamp, long latency) {
+        var slot = slot(Math.floorDiv(timestamp, resolution));
+        if (slot < 0) {
+            skipped++;
+            return;
+        }
+        counts[slot]++;
+        totalLatencies[slot] += latency;
+        minLatencies[slot] = Math.min(minLatencies[slot], latency);
+        maxLatencies[slot] = Math.max(maxLatencies[slot], latency);
+    }
+
+    /**
+     * Add buckets of other timeline.
+     *
+     * @param other timeline with the same resolution
+     */
+    public void merge(Timeline other) {
+        if (other.resolution != resolution) {
+            throw new IllegalArgumentException("Can not merge timelines with different resolution");
+        }
+        skipped += other.skipped;
+        if (other.size == 0) {
+            return;
+        }
+        // extend to the whole span at once, buckets out of the span limit are skipped one by one
+        slot(other.firstBucket);
+        slot(other.firstBucket + other.size - 1);
+        for (var i = 0; i < other.size; i++) {
+            if (other.counts[i] == 0) {
+                continue;
+            }
+            var slot = slot(other.firstBucket + i);
+            if (slot < 0) {
+                skipped += other.counts[i];
+                continue;
+            }
+            counts[slot] += other.counts[i];
+            totalLatencies[slot] += other.totalLatencies[i];
+            minLatencies[slot] = Math.min(minLatencies[slot], other.minLatencies[i]);
+            maxLatencies[slot] = Math.max(maxLatencies[slot], other.maxLatencies[i]);
+        }
+    }
+
+    /**
+     * Write timeline buckets.
+     *
+     * @param output target output
+     * @throws IOException on writing error
+     */
+    public void write(DataOutput output) throws IOException {
+        output.writeLong(resolution);
+        output.writeLong(firstBucket);
+        output.writeInt(size);
+        for (var i = 0; i < size; i++) {
+            output.writeLong(counts[i]);
+            output.writeLong(totalLatencies[i]);
+            output.writeLong(minLatencies[i]);
+            output.writeLong(maxLatencies[i]);
+        }
+    }
+
+    /**
+     * Read timeline written by {@link #write(DataOutput)}.
+     *
+     * @param input source input
+     * @return read timeline
+     * @throws IOException on reading error
+     */
+    public static Timeline read(DataInput input) throws IOException {
+        var resolution = input.readLong();
+        if (resolution <= 0) {
+            throw new IOException("Invalid timeline resolution: " + resolution);
+        }
+        var timeline = new Timeline(resolution);
+        var firstBucket = input.readLong();
+        var size = input.readInt();
+        if (size < 0 || size > MAX_BUCKETS) {
+            throw new IOException("Invalid timeline size: " + size);
+        }
+        if (size > 0 && (timeline.slot(firstBucket) < 0 || timeline.slot(firstBucket + size - 1) < 0)) {
+            throw new IOException("Invalid timeline first bucket: " + firstBucket);
+        }
+        for (var i = 0; i < size; i++) {
+            timeline.counts[i] = input.readLong();
+            timeline.totalLatencies[i] = input.readLong();
+            timeline.minLatencies[i] = input.readLong();
+            timeline.maxLatencies[i] = input.readLong();
+        }
+        return timeline;
+    }
+
+    /**
+     * Get array slot of the bucket, arrays are extended to contain it.
+     *
+     * @return slot or -1 if span would exceed {@link #MAX_BUCKETS}
+     */
+    private int slot(long bucket) {
+        if (size == 0) {
+            ensureCapacity(INITIAL_CAPACITY, 0);
+            firstBucket = bucket;
+            size = 1;
+            return 0;
+        }
+        if (bucket < firstBucket) {
+            var shift = distance(bucket, firstBucket);
+            if (shift > MAX_BUCKETS - size) {
+                return -1;
+            }
+            ensureCapacity((int) (size + shift), (int) shift);
+            firstBucket = bucket;
+            size += (int) shift;
+            return 0;
+        }
+        var offset = distance(firstBucket, bucket);
+        if (offset >= size) {
+            if (offset >= MAX_BUCKETS) {
+                return -1;
+            }
+            ensureCapacity((int) (offset + 1), 0);
+            size = (int) (offset + 1);
+        }
+        return (int) offset;
+    }
+
+    /**
+     * @return {@code to - from} for {@code from <= to}, saturated to {@link Long#MAX_VALUE} on overflow
+     */
+    private static long distance(long from, long to) {
+        var distance = to - from;
+        return distance < 0 ? Long.MAX_VALUE : distance;
+    }
+
+    /**
+     * Ensure arrays can hold required amount of buckets and move existing buckets by shift slots.
+     */
+    private void ensureCapacity(int required, int shift) {
+        if (required <= counts.length && shift == 0) {
+            return;
+        }
+        var capacity = counts.length;
+        if (required > capacity) {
+            capacity = Math.max(required, Math.max(INITIAL_CAPACITY, (int) Math.min(MAX_BUCKETS, capacity * 2L)));
+        }
+        counts = resize(counts, capacity, shift, 0);
+        totalLatencies = resize(totalLatencies, capacity, shift, 0);
+        minLatencies = resize(minLatencies, capacity, shift, Long.MAX_VALUE);
+        maxLatencies = resize(maxLatencies, capacity, shift, Long.MIN_VALUE);
+    }
+
+    private long[] resize(long[] array, int capacity, int shift, long empty) {
+        var resized = new long[capacity];
+        System.arraycopy(array, 0, resized, shift, size);
+        Arrays.fill(resized, 0, shift, empty);
+        Arrays.fill(resized, shift + size, capacity, empty);
+        return resized;
+    }
+
+    /**
+     * @return bucket duration in milliseconds
+     */
+    public long getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @return amount of requests skipped as their buckets are out of the span limit
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return amount of buckets from the first to the last recorded one
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param bucket bucket offset
+     * @return bucket start timestamp in milliseconds
+     */
+    public long getStart(int bucket) {
+        return (firstBucket + bucket) * resolution;
+    }
+
+    public long getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    /**
+     * @param bucket bucket offset
+     * @return requests per second in the bucket
+     */
+    public double getRate(int bucket) {
+        return counts[bucket] * 1000.0 / resolution;
+    }
+
+    public long getTotalLatency(int bucket) {
+        return totalLatencies[bucket];
+    }
+
+    /**
+     * @param bucket bucket offset
+     * @return average latency in fixed-point units, 0 for empty bucket
+     */
+    public long getAverageLatency(int bucket) {
+        return counts[bucket] == 0 ? 0 : totalLatencies[bucket] / counts[bucket];
+    }
+
+    /**
+     * @param bucket bucket offset
+     * @return min latency in fixed-point units, 0 for empty bucket
+     */
+    public long getMinLatency(int bucket) {
+        return counts[bucket] == 0 ? 0 : minLatencies[bucket];
+    }
+
+    /**
+     * @param bucket bucket offset
+     * @return max latency in fixed-point units, 0 for empty bucket
+     */
+    public long getMaxLatency(int bucket) {
+        return counts[bucket] == 0 ? 0 : maxLatencies[bucket];
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.sibmaks;
+
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.report.ReportSnapshot;
+import com.github.sibmaks.report.SummaryFile;
+import com.github.sibmaks.stats.Latency;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CompareCommandTest {
+    private static final double[] PERCENTILES = {50, 90, 99};
+    private static final RequestKey ALL = new RequestKey("ALL", RequestKind.ALL);
+
+    @Test
+    void exitCodeReportsRegressions(@TempDir Path directory) throws IOException {
+        var baseline = write(directory.resolve("baseline.summary"), 1.0, 1);
+        var same = write(directory.resolve("same.summary"), 1.0, 1);
+        var slower = write(directory.resolve("slower.summary"), 1.1, 1);
+        var sparser = write(directory.resolve("sparser.summary"), 1.0, 2);
+
+        assertEquals(CompareCommand.OK, execute(baseline, same));
+        assertEquals(CompareCommand.REGRESSED, execute(baseline, slower));
+        assertEquals(CompareCommand.OK, execute(baseline, slower, "-at", "15", "-pt", "15"));
+        assertEquals(CompareCommand.OK, execute(baseline, slower, "-at", "-1", "-pt", "-1"));
+        assertEquals(CompareCommand.OK, execute(baseline, sparser));
+        assertEquals(CompareCommand.REGRESSED, execute(baseline, sparser, "-rt", "10"));
+        assertEquals(CompareCommand.OK, execute(slower, baseline));
+    }
+
+    @Test
+    void unreadableSummaryFails(@TempDir Path directory) throws IOException {
+        var baseline = write(directory.resolve("baseline.summary"), 1.0, 1);
+        var log = directory.resolve("requests.log");
+        Files.writeString(log, "[1][GET] Request completed at 1.000ms url http://localhost/\n");
+
+        assertEquals(CompareCommand.FAILED, execute(baseline, directory.resolve("missing.summary")));
+        assertEquals(CompareCommand.FAILED, execute(log, baseline));
+    }
+
+    @Test
+    void unexpectedErrorIsNotReportedAsRegression(@TempDir Path directory) throws IOException {
+        var baseline = write(directory.resolve("baseline.summary"), 1.0, 1);
+        var corrupted = directory.resolve("corrupted.summary");
+        var bytes = Files.readAllBytes(baseline);
+        // negative amount of percentiles after magic and version
+        Arrays.fill(bytes, 8, 12, (byte) 0xFF);
+        Files.write(corrupted, bytes);
+
+        var args = new String[]{"compare", baseline.toString(), corrupted.toString()};
+        assertEquals(CompareCommand.FAILED, Application.commandLine().execute(args));
+        assertEquals(CompareCommand.OK, Application.commandLine().execute("compare", baseline.toString(), baseline.toString()));
+    }
+
+    private static int execute(Path baseline, Path candidate, String... options) {
+        var args = new String[options.length + 2];
+        args[0] = baseline.toString();
+        args[1] = candidate.toString();
+        System.arraycopy(options, 0, args, 2, options.length);
+        return new CommandLine(new CompareCommand()).execute(args);
+    }
+
+    /**
+     * Write summary of a run with latencies scaled by factor and requests spread over interval multiplied by spread.
+     */
+    private static Path write(Path file, double factor, int spread) throws IOException {
+        var stats = new RequestStats();
+        for (var i = 1; i <= 1_000; i++) {
+            var latency = Math.round(i * factor * Latency.UNITS_PER_MILLI);
+            stats.addRequest(new Request(i, ALL, latency, 1_700_000_000_000L + (long) i * spread, "/"));
+        }
+        SummaryFile.write(file, ReportSnapshot.of(Map.of(ALL, stats), PERCENTILES));
+        return file;
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.sibmaks;
+
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.service.EndpointNormalizer;
+import com.github.sibmaks.stats.ExactLatencyRecorder;
+import com.github.sibmaks.stats.Latency;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EndpointStatsTest {
+    private static final EndpointNormalizer NORMALIZER = new EndpointNormalizer(List.of());
+
+    private static Request request(String method, String uri) {
+        return new Request(0, new RequestKey(method, RequestKind.ALL), Latency.UNITS_PER_MILLI, 0, uri);
+    }
+
+    private static EndpointStats endpointStats(int limit) {
+        return new EndpointStats(NORMALIZER, ExactLatencyRecorder::new, limit);
+    }
+
+    @Test
+    void groupsRequestsByMethodAndTemplate() {
+        var stats = endpointStats(10);
+        stats.addRequest(request("GET", "http://h/api/items/1"));
+        stats.addRequest(request("GET", "http://h/api/items/2?x=1"));
+        stats.addRequest(request("POST", "http://h/api/items/3"));
+        stats.addRequest(request("GET", "http://h/api/items/1"));
+
+        var result = stats.getStats();
+        assertEquals(List.of("GET /api/items/{id}", "POST /api/items/{id}"), List.copyOf(result.keySet()));
+        assertEquals(3, result.get("GET /api/items/{id}").getCount());
+        assertEquals(1, result.get("POST /api/items/{id}").getCount());
+    }
+
+    @Test
+    void keepsMostRequestedEndpointsWithinLimit() {
+        var stats = endpointStats(3);
+        var total = 0L;
+        // endpoint i is requested i times, far more endpoints than tracked ones
+        for (var i = 1; i <= 10_000; i++) {
+            var uri = "http://h/e" + i;
+            var times = i > 9_990 ? 50 : 1;
+            for (var k = 0; k < times; k++) {
+                stats.addRequest(request("GET", uri));
+                total++;
+            }
+        }
+
+        var result = stats.getStats();
+        assertEquals(4, result.size());
+        assertEquals(EndpointStats.OTHER, List.copyOf(result.keySet()).get(3));
+        var reported = 0L;
+        for (var entry : result.entrySet()) {
+            if (!entry.getKey().equals(EndpointStats.OTHER)) {
+                assertEquals(50, entry.getValue().getCount(), entry.getKey());
+            }
+            reported += entry.getValue().getCount();
+        }
+        assertEquals(total, reported, "evicted requests are kept in other statistic");
+    }
+
+    @Test
+    void mergesAndRoundTripsThroughStream() throws IOException {
+        var first = endpointStats(2);
+        var second = endpointStats(2);
+        for (var i = 0; i < 5; i++) {
+            first.addRequest(request("GET", "http://h/a/" + i));
+            second.addRequest(request("GET", "http://h/a/" + i));
+            second.addRequest(request("DELETE", "http://h/b"));
+        }
+        second.addRequest(request("PUT", "http://h/c"));
+        first.merge(second);
+
+        var bytes = new ByteArrayOutputStream();
+        try (var output = new DataOutputStream(bytes)) {
+            first.write(output);
+        }
+        var read = EndpointStats.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                ExactLatencyRecorder::new);
+
+        for (var result : List.of(first.getStats(), read.getStats())) {
+            assertEquals(List.of("GET /a/{id}", "DELETE /b", EndpointStats.OTHER), List.copyOf(result.keySet()));
+            assertEquals(10, result.get("GET /a/{id}").getCount());
+            assertEquals(5, result.get("DELETE /b").getCount());
+            assertEquals(1, result.get(EndpointStats.OTHER).getCount());
+        }
+    }
+
+    @Test
+    void rejectsNonPositiveLimit() {
+        assertThrows(IllegalArgumentException.class, () -> endpointStats(0));
+        assertTrue(endpointStats(1).getStats().isEmpty());
+    }
+}
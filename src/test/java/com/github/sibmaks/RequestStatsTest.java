@@ -0,0 +1,242 @@
+package com.github.sibmaks;
+
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.stats.Latency;
+import com.github.sibmaks.stats.SketchLatencyRecorder;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestStatsTest {
+    private static final RequestKey KEY = new RequestKey("GET", RequestKind.ALL);
+
+    private static Request request(int index, long millis) {
+        return new Request(index, KEY, millis * Latency.UNITS_PER_MILLI, 1_000L * index, "http://localhost/" + index);
+    }
+
+    private static Request request(int index, long latency, long timestamp) {
+        return new Request(index, KEY, latency, timestamp, "http://localhost/" + index);
+    }
+
+    private static RequestStats statsOf(int n) {
+        var stats = new RequestStats();
+        for (var i = 1; i <= n; i++) {
+            stats.addRequest(request(i, i));
+        }
+        return stats;
+    }
+
+    @Test
+    void percentileRankIsDoubleCeiling() {
+        assertEquals(8, RequestStats.getPercentileIndex(0.9, 10));
+        // 0.07 * 100 is 7.000000000000001 in double arithmetic
+        assertEquals(7, RequestStats.getPercentileIndex(0.07, 100));
+        assertEquals(94, RequestStats.getPercentileIndex(0.95, 100));
+        assertEquals(0, RequestStats.getPercentileIndex(0.0, 10));
+        assertEquals(9, RequestStats.getPercentileIndex(1.0, 10));
+    }
+
+    @Test
+    void percentilesKeepBaselineValues() {
+        var stats = statsOf(10);
+        assertEquals(0, new BigDecimal("9").compareTo(stats.getPercentile90()));
+        assertEquals(0, new BigDecimal("10").compareTo(stats.getPercentile95()));
+        assertEquals(0, new BigDecimal("10").compareTo(stats.getPercentile99()));
+
+        var hundred = statsOf(100);
+        assertEquals(0, new BigDecimal("90").compareTo(hundred.getPercentile90()));
+        assertEquals(0, new BigDecimal("95").compareTo(hundred.getPercentile95()));
+        assertEquals(0, new BigDecimal("99").compareTo(hundred.getPercentile99()));
+        assertEquals(0, new BigDecimal("8").compareTo(hundred.getPercentile(0.07)));
+    }
+
+    @Test
+    void fixedPointValuesMatchBigDecimalBaseline() {
+        var random = new Random(7);
+        for (var n : new int[]{0, 1, 2, 3, 10, 1_000, 20_000}) {
+            var stats = new RequestStats();
+            var baseline = new BaselineStats();
+            var timestamp = 1_700_000_000_000L;
+            for (var i = 1; i <= n; i++) {
+                var latency = random.nextInt(100) == 0
+                        ? random.nextLong(Latency.UNITS_PER_MILLI * 60_000)
+                        : random.nextLong(Latency.UNITS_PER_MILLI * 200);
+                timestamp += random.nextInt(5);
+                var request = request(i, latency, i == n ? timestamp + 1 : timestamp);
+                stats.addRequest(request);
+                baseline.add(request);
+            }
+            assertMatches(baseline, stats, "n=" + n);
+        }
+    }
+
+    @Test
+    void stepChainMatchesPrefixStatistics() {
+        var random = new Random(11);
+        var steps = new ArrayList<RequestStats>();
+        var prefix = new BaselineStats();
+        RequestStats previous = null;
+        var index = 0;
+        for (var step = 0; step < 6; step++) {
+            var stats = chain(previous);
+            var size = step == 2 ? 0 : 1 + random.nextInt(3_000);
+            for (var i = 0; i < size; i++) {
+                var request = request(++index, random.nextLong(Latency.UNITS_PER_MILLI * 500), 1_000L * index);
+                stats.addRequest(request);
+                prefix.add(request);
+            }
+            steps.add(stats);
+            previous = stats;
+            assertMatches(prefix, stats, "step " + step);
+        }
+        assertEquals(index, steps.get(steps.size() - 1).getCount());
+    }
+
+    private static RequestStats chain(RequestStats previous) {
+        var stats = new RequestStats();
+        if (previous != null) {
+            stats.setPrevious(previous);
+        }
+        return stats;
+    }
+
+    private static void assertMatches(BaselineStats expected, RequestStats actual, String message) {
+        assertEquals((long) expected.values.size(), actual.getCount(), message);
+        assertEquals(0, expected.totalTime.compareTo(actual.getTotalTime()), message + " total");
+        assertEquals(0, expected.getAverageTime().compareTo(actual.getAverageTime()), message + " average");
+        assertEquals(0, expected.getPercentile(0.90).compareTo(actual.getPercentile90()), message + " P90");
+        assertEquals(0, expected.getPercentile(0.95).compareTo(actual.getPercentile95()), message + " P95");
+        assertEquals(0, expected.getPercentile(0.99).compareTo(actual.getPercentile99()), message + " P99");
+        assertEquals(0, expected.getMin().compareTo(actual.getMin()), message + " min");
+        assertEquals(0, expected.getMax().compareTo(actual.getMax()), message + " max");
+        if (expected.maxTimestamp > expected.minTimestamp) {
+            assertEquals(expected.getRPS(), actual.getRPS(), message + " RPS");
+        }
+        var variance = expected.getVariance().doubleValue();
+        assertEquals(variance, actual.getVariance().doubleValue(), 1e-9 * Math.max(1, variance), message + " variance");
+    }
+
+    @Test
+    void cachedChainValuesFollowChangesAndRelinking() {
+        var first = new RequestStats();
+        var second = new RequestStats();
+        var third = new RequestStats();
+        for (var i = 1; i <= 90; i++) {
+            (i <= 30 ? first : i <= 60 ? second : third).addRequest(request(i, i));
+        }
+        second.setPrevious(first);
+        third.setPrevious(second);
+        third.prepareQueries();
+        assertEquals(0, statsOf(90).getPercentile90().compareTo(third.getPercentile90()));
+        assertEquals(0, statsOf(90).getPercentile90().compareTo(third.getPercentile90()), "cached");
+
+        third.addRequest(request(91, 91));
+        assertEquals(0, statsOf(91).getPercentile90().compareTo(third.getPercentile90()), "own request");
+
+        for (var i = 92; i <= 120; i++) {
+            second.addRequest(request(i, i));
+        }
+        second.setPrevious(first);
+        third.setPrevious(second);
+        assertEquals(0, statsOf(120).getPercentile90().compareTo(third.getPercentile90()), "relinked");
+        assertEquals(120, third.getSampleSize());
+    }
+
+    @Test
+    void cumulativeStatisticReportsChainValues() {
+        var first = new RequestStats();
+        var second = new RequestStats();
+        for (var i = 1; i <= 100; i++) {
+            (i <= 50 ? first : second).addRequest(request(i, 101 - i));
+        }
+        second.setPrevious(first);
+        var all = statsOf(100);
+        assertEquals(all.getCount(), second.getCount());
+        assertEquals(0, all.getTotalTime().compareTo(second.getTotalTime()));
+        for (var x : new double[]{0.1, 0.5, 0.9, 0.99, 0.999}) {
+            assertEquals(0, all.getPercentile(x).compareTo(second.getPercentile(x)), "P" + x);
+        }
+        assertEquals(all.getRPS(), second.getRPS());
+    }
+
+    @Test
+    void sketchPercentilesStayWithinAccuracy() {
+        var exact = statsOf(10_000);
+        var sketch = new RequestStats(new SketchLatencyRecorder(0.01));
+        for (var i = 1; i <= 10_000; i++) {
+            sketch.addRequest(request(i, i));
+        }
+        for (var x : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            var expected = exact.getPercentile(x).doubleValue();
+            assertEquals(expected, sketch.getPercentile(x).doubleValue(), expected * 0.01, "P" + x);
+        }
+    }
+
+    /**
+     * Statistic of the original implementation: exact BigDecimal latencies with scale 12.
+     */
+    private static final class BaselineStats {
+        private final List<BigDecimal> values = new ArrayList<>();
+        private BigDecimal totalTime = BigDecimal.ZERO;
+        private long minTimestamp = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+
+        void add(Request request) {
+            var time = new BigDecimal(request.time()).movePointLeft(Latency.SCALE).setScale(12, RoundingMode.HALF_UP);
+            totalTime = totalTime.add(time);
+            values.add(time);
+            minTimestamp = Math.min(minTimestamp, request.timestamp());
+            maxTimestamp = Math.max(maxTimestamp, request.timestamp());
+        }
+
+        BigDecimal getAverageTime() {
+            var n = values.size();
+            return n < 2 ? BigDecimal.ZERO : totalTime.divide(BigDecimal.valueOf(n), RoundingMode.HALF_DOWN);
+        }
+
+        BigDecimal getVariance() {
+            var n = values.size();
+            if (n < 2) {
+                return BigDecimal.ZERO;
+            }
+            var sumSq = BigDecimal.ZERO;
+            for (var x : values) {
+                sumSq = sumSq.add(x.pow(2));
+            }
+            var mean = totalTime.divide(BigDecimal.valueOf(n), RoundingMode.HALF_DOWN);
+            return sumSq.divide(BigDecimal.valueOf(n), RoundingMode.HALF_DOWN).subtract(mean.pow(2));
+        }
+
+        BigDecimal getPercentile(double x) {
+            var n = values.size();
+            if (n == 0) {
+                return BigDecimal.ZERO;
+            }
+            var sorted = new ArrayList<>(values);
+            Collections.sort(sorted);
+            return sorted.get(Math.min((int) Math.ceil(x * n) - 1, n - 1));
+        }
+
+        BigDecimal getMin() {
+            return values.stream().min(BigDecimal::compareTo).orElse(BigDecimal.ZERO);
+        }
+
+        BigDecimal getMax() {
+            return values.stream().max(BigDecimal::compareTo).orElse(BigDecimal.ZERO);
+        }
+
+        long getRPS() {
+            var n = values.size();
+            return n == 0 ? 0 : 1000L * n / (maxTimestamp - minTimestamp);
+        }
+    }
+}
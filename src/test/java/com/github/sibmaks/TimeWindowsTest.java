@@ -0,0 +1,135 @@
+package com.github.sibmaks;
+
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.stats.ExactLatencyRecorder;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Windows are checked against latencies of requests selected by timestamp and sorted.
+ */
+class TimeWindowsTest {
+    private static final RequestKey KEY = new RequestKey("GET", RequestKind.ALL);
+    private static final double[] FRACTIONS = {0.0, 0.5, 0.9, 0.99, 1.0};
+
+    @Test
+    void slidingWindowsMatchSortedRequests() {
+        var requests = requests(new Random(1), 20_000, -3_000, 60_000);
+        var windows = new TimeWindows(5_000, 1_000, ExactLatencyRecorder::new);
+        requests.forEach(windows::addRequest);
+
+        assertWindows(requests, windows.getWindows(FRACTIONS), 5_000);
+    }
+
+    @Test
+    void tumblingWindowsMatchSortedRequests() {
+        var requests = requests(new Random(2), 5_000, 0, 30_000);
+        var windows = new TimeWindows(7_000, 7_000, ExactLatencyRecorder::new);
+        requests.forEach(windows::addRequest);
+
+        var result = windows.getWindows(FRACTIONS);
+        assertWindows(requests, result, 7_000);
+        assertEquals(0, result.get(0).start());
+        var last = requests.stream().mapToLong(Request::timestamp).max().getAsLong();
+        assertEquals((last / 7_000 + 1) * 7_000, result.get(result.size() - 1).end());
+    }
+
+    @Test
+    void mergedAndReadWindowsMatchSequentialOnes() throws IOException {
+        var requests = requests(new Random(3), 10_000, 0, 40_000);
+        var sequential = new TimeWindows(4_000, 2_000, ExactLatencyRecorder::new);
+        var merged = new TimeWindows(4_000, 2_000, ExactLatencyRecorder::new);
+        // later part first, so merge has to extend slots to earlier time
+        var early = new TimeWindows(4_000, 2_000, ExactLatencyRecorder::new);
+        for (var rq : requests) {
+            sequential.addRequest(rq);
+            (rq.timestamp() < 15_000 ? early : merged).addRequest(rq);
+        }
+        merged.merge(early);
+
+        var bytes = new ByteArrayOutputStream();
+        try (var output = new DataOutputStream(bytes)) {
+            merged.write(output);
+        }
+        var read = TimeWindows.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                ExactLatencyRecorder::new);
+
+        var expected = sequential.getWindows(FRACTIONS);
+        for (var actual : List.of(merged.getWindows(FRACTIONS), read.getWindows(FRACTIONS))) {
+            assertEquals(expected.size(), actual.size());
+            for (var i = 0; i < expected.size(); i++) {
+                assertWindowEquals(expected.get(i), actual.get(i));
+            }
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> merged.merge(new TimeWindows(4_000, 1_000, ExactLatencyRecorder::new)));
+    }
+
+    @Test
+    void rejectsInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new TimeWindows(1_000, 0, ExactLatencyRecorder::new));
+        assertThrows(IllegalArgumentException.class, () -> new TimeWindows(500, 1_000, ExactLatencyRecorder::new));
+        assertThrows(IllegalArgumentException.class, () -> new TimeWindows(2_500, 1_000, ExactLatencyRecorder::new));
+    }
+
+    private static List<Request> requests(Random random, int count, long from, long to) {
+        var requests = new ArrayList<Request>(count);
+        for (var i = 0; i < count; i++) {
+            // idle periods leave empty slots between busy ones
+            var timestamp = random.nextLong(from, to);
+            if (Math.floorMod(timestamp / 3_000, 4) == 1) {
+                continue;
+            }
+            requests.add(new Request(i, KEY, 1 + random.nextLong(1_000_000_000L), timestamp, null));
+        }
+        return requests;
+    }
+
+    private static void assertWindows(List<Request> requests, List<TimeWindows.Window> windows, long length) {
+        for (var window : windows) {
+            var first = window.end() - length;
+            var latencies = requests.stream()
+                    .filter(it -> it.timestamp() >= first && it.timestamp() < window.end())
+                    .mapToLong(Request::time)
+                    .sorted()
+                    .toArray();
+            var name = "window ending at " + window.end();
+            assertEquals(latencies.length, window.count(), name);
+            assertEquals(Arrays.stream(latencies).sum(), window.totalLatency(), name);
+            if (latencies.length == 0) {
+                assertArrayEquals(new long[FRACTIONS.length], window.percentiles(), name);
+                continue;
+            }
+            assertEquals(latencies[0], window.minLatency(), name);
+            assertEquals(latencies[latencies.length - 1], window.maxLatency(), name);
+            var expected = new long[FRACTIONS.length];
+            for (var i = 0; i < FRACTIONS.length; i++) {
+                expected[i] = latencies[(int) RequestStats.getPercentileIndex(FRACTIONS[i], latencies.length)];
+            }
+            assertArrayEquals(expected, window.percentiles(), name);
+        }
+    }
+
+    private static void assertWindowEquals(TimeWindows.Window expected, TimeWindows.Window actual) {
+        assertEquals(expected.start(), actual.start());
+        assertEquals(expected.end(), actual.end());
+        assertEquals(expected.count(), actual.count());
+        assertEquals(expected.totalLatency(), actual.totalLatency());
+        assertArrayEquals(expected.percentiles(), actual.percentiles());
+    }
+}
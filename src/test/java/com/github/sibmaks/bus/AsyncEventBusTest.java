@@ -0,0 +1,93 @@
+package com.github.sibmaks.bus;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ring buffers are smaller than the published amount of events, so the publisher waits for consumers.
+ */
+class AsyncEventBusTest {
+    private static final Topic<Integer> NUMBERS = new Topic<>("numbers", Integer.class);
+    private static final int EVENTS = 50_000;
+
+    @Test
+    void closeDrainsEveryGroupInOrder() {
+        for (var wait : WaitStrategy.values()) {
+            var bus = new AsyncEventBus(100, 16, wait, wait);
+            var groups = new ArrayList<List<Integer>>();
+            for (var i = 0; i < 2; i++) {
+                var received = new ArrayList<Integer>();
+                bus.group().subscribe(NUMBERS, received::addAll);
+                groups.add(received);
+            }
+            for (var i = 0; i < EVENTS; i++) {
+                bus.publish(NUMBERS.name(), i);
+            }
+            bus.close();
+
+            for (var received : groups) {
+                assertEquals(EVENTS, received.size(), wait.name());
+                for (var i = 0; i < EVENTS; i++) {
+                    assertEquals(i, received.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    void closeRethrowsSubscriberFailures() {
+        var bus = new AsyncEventBus(64, 8, WaitStrategy.YIELD, WaitStrategy.PARK);
+        var first = new IllegalArgumentException("first");
+        var second = new IllegalStateException("second");
+        var healthy = new ArrayList<Integer>();
+        bus.group().subscribe(NUMBERS, batch -> {
+            if (batch.contains(1_000)) {
+                throw first;
+            }
+        });
+        bus.group().subscribe(NUMBERS, healthy::addAll);
+        bus.group().subscribe(NUMBERS, batch -> {
+            if (batch.contains(EVENTS - 1)) {
+                throw second;
+            }
+        });
+        for (var i = 0; i < EVENTS; i++) {
+            bus.publish(NUMBERS.name(), i);
+        }
+
+        var failure = assertThrows(IllegalStateException.class, bus::close);
+        assertSame(first, failure.getCause());
+        assertEquals(1, failure.getSuppressed().length);
+        assertSame(second, failure.getSuppressed()[0]);
+        assertEquals(EVENTS, healthy.size(), "failed groups do not block other groups");
+    }
+
+    @Test
+    void groupsAreCreatedBeforePublishing() {
+        var bus = new AsyncEventBus(8, 8, WaitStrategy.PARK, WaitStrategy.PARK);
+        var received = new ArrayList<Integer>();
+        bus.group().subscribe(NUMBERS, received::addAll);
+        bus.publish(NUMBERS.name(), 1);
+
+        assertThrows(IllegalStateException.class, bus::group);
+        bus.close();
+        assertEquals(List.of(1), received);
+    }
+
+    @Test
+    void closeWithoutEventsDoesNotFail() {
+        var bus = new AsyncEventBus(1, 1, WaitStrategy.BUSY_SPIN, WaitStrategy.BUSY_SPIN);
+        var received = new ArrayList<Integer>();
+        bus.group().subscribe(NUMBERS, received::addAll);
+
+        bus.close();
+        assertTrue(received.isEmpty());
+    }
+}
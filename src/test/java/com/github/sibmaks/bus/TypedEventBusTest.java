@@ -0,0 +1,83 @@
+package com.github.sibmaks.bus;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TypedEventBusTest {
+    private static final Topic<Integer> NUMBERS = new Topic<>("numbers", Integer.class);
+    private static final Topic<String> WORDS = new Topic<>("words", String.class);
+
+    @Test
+    void tailBatchIsDeliveredOnFlush() {
+        var bus = new TypedEventBus(4);
+        var first = new ArrayList<Integer>();
+        var second = new ArrayList<Integer>();
+        bus.subscribe(NUMBERS, first::addAll);
+        bus.subscribe(NUMBERS, second::addAll);
+        for (var i = 0; i < 10; i++) {
+            bus.publish(NUMBERS.name(), i);
+        }
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7), first);
+
+        bus.flush();
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), first);
+        assertEquals(first, second);
+
+        bus.flush();
+        assertEquals(10, first.size(), "flushed events are not delivered again");
+    }
+
+    @Test
+    void batchedDeliveryMatchesUnbatchedBus() {
+        for (var batchSize : new int[]{1, 3, 256}) {
+            var random = new Random(batchSize);
+            var bus = new TypedEventBus(batchSize);
+            var reference = new InMemoryEventBus();
+            var numbers = new ArrayList<Integer>();
+            var words = new ArrayList<String>();
+            var expectedNumbers = new ArrayList<Object>();
+            var expectedWords = new ArrayList<Object>();
+            bus.subscribe(NUMBERS, numbers::addAll);
+            bus.subscribe(WORDS, words::addAll);
+            reference.subscribe(NUMBERS.name(), expectedNumbers::add);
+            reference.subscribe(WORDS.name(), expectedWords::add);
+            var wordChannel = bus.channel(WORDS);
+            for (var i = 0; i < 10_000; i++) {
+                switch (random.nextInt(3)) {
+                    case 0 -> {
+                        bus.publish(NUMBERS.name(), i);
+                        reference.publish(NUMBERS.name(), i);
+                    }
+                    case 1 -> {
+                        wordChannel.publish("w" + i);
+                        reference.publish(WORDS.name(), "w" + i);
+                    }
+                    default -> {
+                        bus.publish("unknown", i);
+                        reference.publish("unknown", i);
+                    }
+                }
+            }
+            bus.flush();
+            assertEquals(expectedNumbers, new ArrayList<Object>(numbers), "batch size " + batchSize);
+            assertEquals(expectedWords, new ArrayList<Object>(words), "batch size " + batchSize);
+        }
+    }
+
+    @Test
+    void topicTypeConflictIsRejected() {
+        var bus = new TypedEventBus(8);
+        bus.subscribe(NUMBERS, batch -> {
+        });
+
+        assertThrows(IllegalArgumentException.class, () -> bus.channel(new Topic<>(NUMBERS.name(), String.class)));
+        assertThrows(ClassCastException.class, () -> bus.publish(NUMBERS.name(), "not a number"));
+        assertThrows(IllegalArgumentException.class, () -> new TypedEventBus(0));
+    }
+}
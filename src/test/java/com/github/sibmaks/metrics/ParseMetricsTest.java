@@ -0,0 +1,142 @@
+package com.github.sibmaks.metrics;
+
+import com.github.sibmaks.bus.EventPublisher;
+import com.github.sibmaks.dto.TimeRange;
+import com.github.sibmaks.service.LineSampler;
+import com.github.sibmaks.service.LogParser;
+import com.github.sibmaks.service.MappedLogParser;
+import com.github.sibmaks.service.ParallelLogParser;
+import com.github.sibmaks.service.ParseOptions;
+import com.github.sibmaks.service.RequestClassifier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Counters of every parser are compared with lines, request lines and bytes of the log content.
+ */
+class ParseMetricsTest {
+    private static final EventPublisher NOOP = (topic, event) -> {
+    };
+
+    @Test
+    void parsersCountEveryLineAndByte(@TempDir Path directory) throws IOException {
+        var log = directory.resolve("requests.log");
+        var content = content(new Random(1), 40_000);
+        Files.write(log, content);
+        var lines = lines(content);
+        var requests = requests(log);
+
+        var sequential = new ParseMetrics();
+        new LogParser(NOOP, options(sequential)).parse(log.toString(), -1);
+        assertCounts(lines, requests, content.length, sequential, "sequential");
+
+        var stream = new ParseMetrics();
+        new LogParser(NOOP, options(stream)).parse(new ByteArrayInputStream(content), -1);
+        assertCounts(lines, requests, content.length, stream, "stream");
+
+        var mapped = new ParseMetrics();
+        new MappedLogParser(NOOP, options(mapped)).parse(log.toString(), -1);
+        assertCounts(lines, requests, content.length, mapped, "mapped");
+
+        for (var mappedChunks : new boolean[]{false, true}) {
+            var parallel = new ParseMetrics();
+            new ParallelLogParser(3, mappedChunks, options(parallel)).parse(log.toString(), -1, () -> NOOP);
+            assertCounts(lines, requests, content.length, parallel, "parallel mapped=" + mappedChunks);
+        }
+    }
+
+    @Test
+    void mappedParserKeepsCrLfSplitByWindow(@TempDir Path directory) throws IOException {
+        var window = 64 << 20;
+        var request = "[1700000000000][GET] Request completed at 1.000ms url http://localhost/last\n"
+                .getBytes(StandardCharsets.US_ASCII);
+        var content = new byte[window + 1 + request.length];
+        Arrays.fill(content, 0, window, (byte) 'x');
+        for (var i = 63; i < window; i += 64) {
+            content[i] = '\n';
+        }
+        // the first mapped window ends with \r of \r\n
+        content[window - 1] = '\r';
+        content[window] = '\n';
+        System.arraycopy(request, 0, content, window + 1, request.length);
+        var log = directory.resolve("requests.log");
+        Files.write(log, content);
+
+        var mapped = new ParseMetrics();
+        new MappedLogParser(NOOP, options(mapped)).parse(log.toString(), -1);
+        assertCounts(lines(content), 1, content.length, mapped, "mapped");
+    }
+
+    @Test
+    void disabledMetricsCountNothing(@TempDir Path directory) throws IOException {
+        var log = directory.resolve("requests.log");
+        Files.write(log, content(new Random(2), 1_000));
+        var metrics = ParseMetrics.disabled();
+
+        new LogParser(NOOP, options(metrics)).parse(log.toString(), -1);
+        assertEquals(0, metrics.getLinesRead());
+        assertEquals(0, metrics.getLinesMatched());
+        assertEquals(0, metrics.getBytesRead());
+    }
+
+    private static ParseOptions options(ParseMetrics metrics) {
+        return new ParseOptions(RequestClassifier.defaults(), metrics, TimeRange.ALL, LineSampler.ALL, true, true);
+    }
+
+    private static void assertCounts(long lines, long requests, long bytes, ParseMetrics metrics, String message) {
+        assertEquals(lines, metrics.getLinesRead(), message + " lines");
+        assertEquals(requests, metrics.getLinesMatched(), message + " matched");
+        assertEquals(lines - requests, metrics.getLinesSkipped(), message + " skipped");
+        assertEquals(bytes, metrics.getBytesRead(), message + " bytes");
+    }
+
+    private static long requests(Path log) throws IOException {
+        var requests = new AtomicLong();
+        new LogParser((topic, event) -> requests.incrementAndGet(), ParseOptions.defaults()).parse(log.toString(), -1);
+        return requests.get();
+    }
+
+    /**
+     * @return amount of lines, the last line may have no terminator
+     */
+    private static long lines(byte[] content) {
+        var lines = 0L;
+        for (var b : content) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+        return content.length > 0 && content[content.length - 1] != '\n' ? lines + 1 : lines;
+    }
+
+    /**
+     * Request lines mixed with other lines, some lines end with {@code \r\n}, the last line has no terminator.
+     */
+    private static byte[] content(Random random, int count) {
+        var lines = new StringBuilder();
+        for (var i = 0; i < count; i++) {
+            var terminator = random.nextInt(10) == 0 ? "\r\n" : "\n";
+            lines.append("[%d][GET] Request completed at %d.%03dms url http://localhost/api/%d%s"
+                    .formatted(1_700_000_000_000L + i, random.nextInt(1000), random.nextInt(1000), i, terminator));
+            switch (random.nextInt(20)) {
+                case 0 -> lines.append("Warm up finished\n");
+                case 1 -> lines.append("\n");
+                default -> {
+                }
+            }
+        }
+        lines.append("[1700000000000][GET] Request completed at 1.000ms url http://localhost/last");
+        return lines.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.sibmaks.report;
+
+import com.github.sibmaks.RequestStats;
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.stats.CoordinatedOmissionRecorder;
+import com.github.sibmaks.stats.ExactLatencyRecorder;
+import com.github.sibmaks.stats.Latency;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CorrectedPercentilesTest {
+    private static final RequestKey KEY = new RequestKey("GET", RequestKind.ALL);
+    private static final double[] FRACTIONS = {0.5, 0.99};
+    private static final int REQUESTS = 100;
+
+    /**
+     * Every node sends a request each 20 ms, 45 ms latency hides one request sent on schedule.
+     */
+    private static RequestStats node(long offsetMillis) {
+        var stats = new RequestStats(new CoordinatedOmissionRecorder(new ExactLatencyRecorder(), 0.01));
+        for (var i = 0; i < REQUESTS; i++) {
+            stats.addRequest(new Request(i, KEY, 45 * Latency.UNITS_PER_MILLI, offsetMillis + 20L * i, null));
+        }
+        return stats;
+    }
+
+    @Test
+    void derivesIntervalForEveryNode() {
+        var first = node(0);
+        var second = node(10);
+        var merged = new RequestStats(new CoordinatedOmissionRecorder(new ExactLatencyRecorder(), 0.01));
+        merged.merge(first);
+        merged.merge(second);
+
+        var corrected = CorrectedPercentiles.of(merged, List.of(first, second), FRACTIONS, 0);
+        assertEquals(0, new BigDecimal("20").compareTo(corrected.expectedInterval()));
+        assertEquals(2 * REQUESTS, corrected.synthetic());
+
+        // merged stream looks twice as frequent, so it would back-fill three requests per request
+        var mergedOnly = CorrectedPercentiles.of(merged, FRACTIONS, 0);
+        assertEquals(0, new BigDecimal("10").compareTo(mergedOnly.expectedInterval()));
+        assertEquals(6 * REQUESTS, mergedOnly.synthetic());
+    }
+
+    @Test
+    void usesPassedInterval() {
+        var first = node(0);
+        var second = node(10);
+        var merged = new RequestStats(new CoordinatedOmissionRecorder(new ExactLatencyRecorder(), 0.01));
+        merged.merge(first);
+        merged.merge(second);
+
+        var corrected = CorrectedPercentiles.of(merged, List.of(first, second), FRACTIONS, 40 * Latency.UNITS_PER_MILLI);
+        assertEquals(0, new BigDecimal("40").compareTo(corrected.expectedInterval()));
+        assertEquals(0, corrected.synthetic());
+        assertEquals(45, corrected.percentiles().get(1).doubleValue(), 45 * 0.01);
+    }
+
+    @Test
+    void requiresCorrectionHistogram() {
+        var stats = new RequestStats();
+        stats.addRequest(new Request(0, KEY, Latency.UNITS_PER_MILLI, 0, null));
+        stats.addRequest(new Request(1, KEY, Latency.UNITS_PER_MILLI, 10, null));
+        assertNull(CorrectedPercentiles.of(stats, FRACTIONS, 0));
+    }
+}
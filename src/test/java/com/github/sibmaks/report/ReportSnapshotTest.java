@@ -0,0 +1,120 @@
+package com.github.sibmaks.report;
+
+import com.github.sibmaks.RequestStats;
+import com.github.sibmaks.TimeWindows;
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.stats.ExactLatencyRecorder;
+import com.github.sibmaks.stats.Latency;
+import com.github.sibmaks.stats.SketchLatencyRecorder;
+import com.github.sibmaks.stats.Timeline;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Snapshot computed on a pool is compared with values queried sequentially from the same statistics.
+ */
+class ReportSnapshotTest {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final RequestKey ALL = new RequestKey("ALL", RequestKind.ALL);
+    private static final RequestKey STATIC = new RequestKey("STATIC", new RequestKind("STATIC"));
+
+    @Test
+    void snapshotMatchesSequentialGetters() throws InterruptedException {
+        var random = new Random(1);
+        var all = new RequestStats();
+        var staticStats = new RequestStats(new SketchLatencyRecorder(0.01));
+        var endpoint = new RequestStats();
+        var timeline = new Timeline(1_000);
+        var windows = new TimeWindows(10_000, 5_000, ExactLatencyRecorder::new);
+        for (var i = 1; i <= 20_000; i++) {
+            var request = new Request(i, STATIC, random.nextLong(Latency.UNITS_PER_MILLI * 500), 1_700_000_000_000L + i * 7L, "/" + i);
+            all.addRequest(request);
+            if (i % 3 == 0) {
+                staticStats.addRequest(request);
+            }
+            if (i % 5 == 0) {
+                endpoint.addRequest(request);
+            }
+            timeline.record(request.timestamp(), request.time());
+            windows.addRequest(request);
+        }
+        var stats = new LinkedHashMap<RequestKey, RequestStats>();
+        stats.put(ALL, all);
+        stats.put(STATIC, staticStats);
+        var endpoints = Map.of("/orders", endpoint, "/all", all);
+        var nodes = Map.<String, Map<RequestKey, RequestStats>>of("node", Map.of(ALL, all));
+
+        var executor = Executors.newFixedThreadPool(4);
+        ReportSnapshot snapshot;
+        try {
+            snapshot = ReportSnapshot.compute(stats, endpoints, nodes, timeline, windows, PERCENTILES, executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        var fractions = StatsSummary.toFractions(PERCENTILES);
+        assertEquals(stats.keySet(), snapshot.getStats().keySet());
+        stats.forEach((key, value) -> assertMatches(value, fractions, snapshot.getStats().get(key), key.kind()));
+        endpoints.forEach((key, value) -> assertMatches(value, fractions, snapshot.getEndpointStats().get(key), key));
+        assertMatches(all, fractions, snapshot.getNodeTotals().get("node"), "node");
+        assertSame(snapshot.getStats().get(ALL), snapshot.getEndpointStats().get("/all"), "shared statistic is summarized once");
+
+        var expectedWindows = windows.getWindows(fractions);
+        assertEquals(expectedWindows.size(), snapshot.getTimeWindows().size());
+        for (var i = 0; i < expectedWindows.size(); i++) {
+            var expected = expectedWindows.get(i);
+            var actual = snapshot.getTimeWindows().get(i);
+            assertEquals(expected.start(), actual.start());
+            assertEquals(expected.count(), actual.count());
+            assertEquals(expected.totalLatency(), actual.totalLatency());
+            assertArrayEquals(expected.percentiles(), actual.percentiles(), "window " + i);
+        }
+
+        var size = timeline.size();
+        timeline.record(1_700_001_000_000L, 1);
+        assertEquals(size, snapshot.getTimeline().size(), "snapshot keeps timeline copy");
+        for (var i = 0; i < size; i++) {
+            assertEquals(timeline.getCount(i), snapshot.getTimeline().getCount(i));
+        }
+    }
+
+    @Test
+    void sequentialSnapshotHasRequestStatisticsOnly() {
+        var stats = new RequestStats();
+        for (var i = 1; i <= 100; i++) {
+            stats.addRequest(new Request(i, ALL, i * Latency.UNITS_PER_MILLI, 1_000L * i, "/"));
+        }
+
+        var snapshot = ReportSnapshot.of(Map.of(ALL, stats), PERCENTILES);
+        assertMatches(stats, StatsSummary.toFractions(PERCENTILES), snapshot.getStats().get(ALL), "ALL");
+        assertEquals(0, snapshot.getEndpointStats().size());
+        assertEquals(0, snapshot.getNodeStats().size());
+        assertNull(snapshot.getTimeline());
+        assertNull(snapshot.getTimeWindows());
+    }
+
+    private static void assertMatches(RequestStats expected, double[] fractions, StatsSummary actual, String message) {
+        assertEquals(expected.getCount(), actual.count(), message);
+        assertEquals(expected.getTotalTime(), actual.totalTime(), message);
+        assertEquals(expected.getAverageTime(), actual.averageTime(), message);
+        assertEquals(expected.getVariance(), actual.variance(), message);
+        assertEquals(expected.getMin(), actual.min(), message);
+        assertEquals(expected.getMax(), actual.max(), message);
+        assertEquals(expected.getRPS(), actual.rps(), message);
+        assertEquals(fractions.length, actual.percentiles().size(), message);
+        for (var i = 0; i < fractions.length; i++) {
+            assertEquals(expected.getPercentile(fractions[i]), actual.percentiles().get(i), message + " P" + PERCENTILES[i]);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.sibmaks.report;
+
+import com.github.sibmaks.RequestStats;
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.stats.Latency;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunComparisonTest {
+    private static final double[] PERCENTILES = {50, 90, 99.9};
+    private static final RequestKey ALL = new RequestKey("ALL", RequestKind.ALL);
+    private static final RequestKey STATIC = new RequestKey("STATIC", new RequestKind("STATIC"));
+    private static final RunComparison.Thresholds THRESHOLDS = new RunComparison.Thresholds(5, 5, -1, -1);
+
+    @Test
+    void writtenSummaryIsReadBack(@TempDir Path directory) throws IOException {
+        var random = new Random(1);
+        var all = new RequestStats();
+        var staticStats = new RequestStats();
+        for (var i = 1; i <= 10_000; i++) {
+            var request = new Request(i, ALL, random.nextLong(Latency.UNITS_PER_MILLI * 300), 1_700_000_000_000L + i * 3L, "/");
+            all.addRequest(request);
+            if (i % 4 == 0) {
+                staticStats.addRequest(request);
+            }
+        }
+        var stats = new LinkedHashMap<RequestKey, RequestStats>();
+        stats.put(ALL, all);
+        stats.put(STATIC, staticStats);
+        var snapshot = ReportSnapshot.of(stats, PERCENTILES);
+        var file = directory.resolve("run.summary");
+
+        SummaryFile.write(file, snapshot);
+        var read = SummaryFile.read(file);
+
+        assertArrayEquals(PERCENTILES, read.getPercentiles());
+        assertEquals(List.copyOf(snapshot.getStats().keySet()), List.copyOf(read.getStats().keySet()));
+        for (var entry : snapshot.getStats().entrySet()) {
+            var expected = entry.getValue();
+            var actual = read.getStats().get(entry.getKey());
+            var message = entry.getKey().kind();
+            assertEquals(expected.count(), actual.count(), message);
+            assertEquals(expected.totalTime().doubleValue(), actual.totalTime().doubleValue(), message);
+            assertEquals(expected.averageTime().doubleValue(), actual.averageTime().doubleValue(), message);
+            assertEquals(expected.variance().doubleValue(), actual.variance().doubleValue(), message);
+            for (var i = 0; i < PERCENTILES.length; i++) {
+                assertEquals(expected.percentiles().get(i).doubleValue(), actual.percentiles().get(i).doubleValue(), message);
+            }
+            assertEquals(expected.min().doubleValue(), actual.min().doubleValue(), message);
+            assertEquals(expected.max().doubleValue(), actual.max().doubleValue(), message);
+            assertEquals(expected.rps(), actual.rps(), message);
+        }
+        assertTrue(RunComparison.compare(snapshot, read, new RunComparison.Thresholds(0, 0, 0, 0)).stream()
+                .noneMatch(RunComparison.Delta::regression), "summary compares equal to its run");
+    }
+
+    @Test
+    void otherFilesAreRejected(@TempDir Path directory) throws IOException {
+        var file = directory.resolve("run.summary");
+        SummaryFile.write(file, snapshot(Map.of(ALL, summary(100, 10, 20, 50, 1000))));
+        var content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 1));
+        assertThrows(IOException.class, () -> SummaryFile.read(file));
+
+        var log = directory.resolve("requests.log");
+        Files.writeString(log, "[1][GET] Request completed at 1.000ms url http://localhost/\n");
+        assertThrows(IOException.class, () -> SummaryFile.read(log));
+        assertThrows(IOException.class, () -> SummaryFile.read(directory.resolve("missing.summary")));
+    }
+
+    @Test
+    void changesAboveThresholdsAreRegressions() {
+        var baseline = snapshot(Map.of(ALL, summary(100, 10, 20, 50, 1000)));
+
+        assertRegressions(baseline, summary(100, 10.4, 20.9, 500, 10), THRESHOLDS);
+        assertRegressions(baseline, summary(100, 10.6, 20, 50, 1000), THRESHOLDS, "Avg Time");
+        assertRegressions(baseline, summary(100, 10, 21.2, 50, 1000), THRESHOLDS, "P50", "P90", "P99.9");
+        assertRegressions(baseline, summary(100, 9, 10, 50.6, 1000), new RunComparison.Thresholds(-1, -1, 1, -1), "Max");
+        assertRegressions(baseline, summary(100, 10, 20, 50, 959), new RunComparison.Thresholds(-1, -1, -1, 4), "RPS");
+        assertRegressions(baseline, summary(100, 10, 20, 50, 961), new RunComparison.Thresholds(-1, -1, -1, 4));
+        assertRegressions(baseline, summary(100, 1, 1, 1, 100_000), new RunComparison.Thresholds(0, 0, 0, 0));
+    }
+
+    @Test
+    void zeroBaselineGrowsInfinitely() {
+        var baseline = snapshot(Map.of(ALL, summary(100, 0, 0, 0, 1000)));
+        var deltas = RunComparison.compare(baseline, snapshot(Map.of(ALL, summary(100, 1, 0, 0, 1000))), THRESHOLDS);
+        assertEquals("Avg Time", deltas.get(0).metric());
+        assertTrue(deltas.get(0).regression());
+        assertEquals(Double.POSITIVE_INFINITY, deltas.get(0).getChange());
+        assertEquals(0.0, deltas.get(1).getChange());
+    }
+
+    @Test
+    void missingKeysAreRegressions() {
+        var baseline = new LinkedHashMap<RequestKey, StatsSummary>();
+        baseline.put(ALL, summary(100, 10, 20, 50, 1000));
+        baseline.put(STATIC, summary(40, 5, 8, 10, 400));
+        var candidate = Map.of(ALL, summary(100, 10, 20, 50, 1000));
+
+        var deltas = RunComparison.compare(snapshot(baseline), snapshot(candidate), THRESHOLDS);
+        var missing = deltas.get(deltas.size() - 1);
+        assertEquals(STATIC, missing.key());
+        assertEquals("Total", missing.metric());
+        assertEquals(40.0, missing.baseline());
+        assertEquals(0.0, missing.candidate());
+        assertTrue(RunComparison.hasRegressions(deltas));
+
+        var reversed = RunComparison.compare(snapshot(candidate), snapshot(baseline), THRESHOLDS);
+        assertTrue(reversed.stream().allMatch(it -> it.key().equals(ALL)), "candidate only keys are skipped");
+        assertFalse(RunComparison.hasRegressions(reversed));
+    }
+
+    @Test
+    void missingPercentilesAreRegressions() {
+        var baseline = snapshot(Map.of(ALL, summary(100, 10, 20, 50, 1000)));
+        var value = BigDecimal.valueOf(20);
+        var candidate = new ReportSnapshot(new double[]{50, 99}, Map.of(ALL, new StatsSummary(100, BigDecimal.valueOf(1000),
+                BigDecimal.TEN, BigDecimal.ONE, List.of(value, value), BigDecimal.ZERO, BigDecimal.valueOf(50), 1000)),
+                Map.of(), Map.of(), null, null, Map.of(), Map.of());
+
+        var deltas = RunComparison.compare(baseline, candidate, THRESHOLDS);
+        var regressed = deltas.stream().filter(RunComparison.Delta::regression).toList();
+        assertEquals(List.of("P90", "P99.9"), regressed.stream().map(RunComparison.Delta::metric).toList());
+        for (var delta : regressed) {
+            assertEquals(20.0, delta.baseline());
+            assertTrue(Double.isNaN(delta.candidate()));
+            assertTrue(Double.isNaN(delta.getChange()));
+        }
+
+        var wider = new ReportSnapshot(new double[]{50, 90, 95, 99.9}, Map.of(ALL, new StatsSummary(100, BigDecimal.valueOf(1000),
+                BigDecimal.TEN, BigDecimal.ONE, List.of(value, value, value, value), BigDecimal.ZERO, BigDecimal.valueOf(50), 1000)),
+                Map.of(), Map.of(), null, null, Map.of(), Map.of());
+        var compared = RunComparison.compare(baseline, wider, THRESHOLDS);
+        assertEquals(List.of("Avg Time", "P50", "P90", "P99.9", "Max", "RPS"), compared.stream().map(RunComparison.Delta::metric).toList(),
+                "candidate only percentiles are skipped");
+        assertFalse(RunComparison.hasRegressions(compared));
+    }
+
+    private static void assertRegressions(ReportSnapshot baseline,
+                                          StatsSummary candidate,
+                                          RunComparison.Thresholds thresholds,
+                                          String... metrics) {
+        var deltas = RunComparison.compare(baseline, snapshot(Map.of(ALL, candidate)), thresholds);
+        var regressed = deltas.stream()
+                .filter(RunComparison.Delta::regression)
+                .map(RunComparison.Delta::metric)
+                .toList();
+        assertEquals(List.of(metrics), regressed);
+        assertEquals(metrics.length > 0, RunComparison.hasRegressions(deltas));
+    }
+
+    /**
+     * Summary with every percentile of {@link #PERCENTILES} equal to the given value.
+     */
+    private static StatsSummary summary(long count, double average, double percentile, double max, long rps) {
+        var value = BigDecimal.valueOf(percentile);
+        return new StatsSummary(count, BigDecimal.valueOf(average * count), BigDecimal.valueOf(average), BigDecimal.ONE,
+                List.of(value, value, value), BigDecimal.ZERO, BigDecimal.valueOf(max), rps);
+    }
+
+    private static ReportSnapshot snapshot(Map<RequestKey, StatsSummary> stats) {
+        return new ReportSnapshot(PERCENTILES, stats, Map.of(), Map.of(), null, null, Map.of(), Map.of());
+    }
+}
@@ -0,0 +1,162 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.RequestStats;
+import com.github.sibmaks.RequestStatsCollector;
+import com.github.sibmaks.bus.TypedEventBus;
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.stats.Latency;
+import com.github.sibmaks.stats.LatencyRecorder;
+import com.github.sibmaks.stats.PercentileEngine;
+import com.github.sibmaks.stats.Timeline;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AggregateFileTest {
+    private static final RequestKind STATIC = new RequestKind("STATIC");
+    private static final RequestKind DYNAMIC = new RequestKind("DYNAMIC");
+    private static final EndpointNormalizer NORMALIZER = new EndpointNormalizer(List.of());
+    private static final double[] FRACTIONS = {0.5, 0.9, 0.99, 0.999};
+
+    @Test
+    void writtenNodesAreReadBack(@TempDir Path directory) throws IOException {
+        for (var engine : PercentileEngine.values()) {
+            Supplier<LatencyRecorder> recorders = () -> engine.createRecorder(0.01);
+            var random = new Random(1);
+            var nodes = new LinkedHashMap<String, RequestStatsCollector>();
+            for (var node = 0; node < 3; node++) {
+                var bus = new TypedEventBus(16);
+                var collector = collector(bus, recorders);
+                publish(bus, requests(random, 5_000 * (node + 1)));
+                nodes.put("node-" + node, collector);
+            }
+            var file = directory.resolve(engine + ".aggregate");
+            AggregateFile.write(file, nodes);
+
+            assertTrue(AggregateFile.isAggregate(file));
+            var read = AggregateFile.read(file, recorders);
+            assertEquals(List.copyOf(nodes.keySet()), List.copyOf(read.keySet()));
+            for (var node : nodes.entrySet()) {
+                assertMatches(node.getValue(), read.get(node.getKey()), engine + " " + node.getKey());
+            }
+        }
+    }
+
+    @Test
+    void mergedNodesMatchSingleCollector(@TempDir Path directory) throws IOException {
+        for (var engine : PercentileEngine.values()) {
+            Supplier<LatencyRecorder> recorders = () -> engine.createRecorder(0.01);
+            var random = new Random(2);
+            var allBus = new TypedEventBus(16);
+            var all = collector(allBus, recorders);
+            var nodes = new LinkedHashMap<String, RequestStatsCollector>();
+            for (var node = 0; node < 3; node++) {
+                var requests = requests(random, 4_000);
+                var bus = new TypedEventBus(16);
+                nodes.put("node-" + node, collector(bus, recorders));
+                publish(bus, requests);
+                publish(allBus, requests);
+            }
+            var file = directory.resolve(engine + ".aggregate");
+            AggregateFile.write(file, nodes);
+
+            var merged = new RequestStatsCollector(null, recorders);
+            for (var node : AggregateFile.read(file, recorders).values()) {
+                merged.merge(node);
+            }
+            assertMatches(all, merged, engine.name());
+        }
+    }
+
+    @Test
+    void otherFilesAreRejected(@TempDir Path directory) throws IOException {
+        var log = directory.resolve("requests.log");
+        Files.writeString(log, "[1][GET] Request completed at 1.000ms url http://localhost/\n");
+        var empty = Files.createFile(directory.resolve("empty"));
+
+        assertFalse(AggregateFile.isAggregate(log));
+        assertFalse(AggregateFile.isAggregate(empty));
+        assertThrows(IOException.class, () -> AggregateFile.read(log, () -> PercentileEngine.EXACT.createRecorder(0.01)));
+    }
+
+    private static RequestStatsCollector collector(TypedEventBus bus, Supplier<LatencyRecorder> recorders) {
+        var collector = new RequestStatsCollector(() -> bus, recorders);
+        collector.collectTimeline(1_000);
+        collector.collectEndpoints(NORMALIZER, 20);
+        collector.collectAll();
+        collector.collectSpecificType("STATIC", STATIC);
+        collector.collectSteps("ALL_%d", RequestKind.ALL, 1_000, -1);
+        collector.collectSteps("DYNAMIC_%d", DYNAMIC, 1_000, -1);
+        return collector;
+    }
+
+    private static List<Request> requests(Random random, int count) {
+        var requests = new ArrayList<Request>(count);
+        var timestamp = 1_700_000_000_000L + random.nextInt(100_000);
+        for (var i = 1; i <= count; i++) {
+            var kind = random.nextInt(4) == 0 ? STATIC : DYNAMIC;
+            var uri = "http://localhost/%s/%d".formatted(kind == STATIC ? "img" : "api", random.nextInt(40));
+            timestamp += random.nextInt(20);
+            requests.add(new Request(i, new RequestKey("GET", kind), random.nextLong(Latency.UNITS_PER_MILLI * 300), timestamp, uri));
+        }
+        return requests;
+    }
+
+    private static void publish(TypedEventBus bus, List<Request> requests) {
+        for (var request : requests) {
+            bus.publish(LogParser.RQ_TOPIC, request);
+        }
+        bus.flush();
+    }
+
+    private static void assertMatches(RequestStatsCollector expected, RequestStatsCollector actual, String message) {
+        assertStatsMatch(expected.getStats(), actual.getStats(), message);
+        assertStatsMatch(expected.getEndpointStats(), actual.getEndpointStats(), message + " endpoints");
+        assertTimelineMatches(expected.getTimeline(), actual.getTimeline(), message);
+    }
+
+    private static <K> void assertStatsMatch(Map<K, RequestStats> expected, Map<K, RequestStats> actual, String message) {
+        assertEquals(expected.keySet(), actual.keySet(), message);
+        for (var entry : expected.entrySet()) {
+            var stats = actual.get(entry.getKey());
+            var key = message + " " + entry.getKey();
+            assertEquals(entry.getValue().getCount(), stats.getCount(), key);
+            assertEquals(entry.getValue().getTotalTime(), stats.getTotalTime(), key);
+            assertEquals(entry.getValue().getMin(), stats.getMin(), key);
+            assertEquals(entry.getValue().getMax(), stats.getMax(), key);
+            assertEquals(entry.getValue().getRPS(), stats.getRPS(), key);
+            assertEquals(entry.getValue().getVariance().doubleValue(), stats.getVariance().doubleValue(),
+                    1e-9 * Math.max(1, entry.getValue().getVariance().doubleValue()), key);
+            for (var fraction : FRACTIONS) {
+                assertEquals(entry.getValue().getPercentile(fraction), stats.getPercentile(fraction), key + " P" + fraction);
+            }
+        }
+    }
+
+    private static void assertTimelineMatches(Timeline expected, Timeline actual, String message) {
+        assertEquals(expected.size(), actual.size(), message + " timeline");
+        for (var i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getStart(i), actual.getStart(i), message);
+            assertEquals(expected.getCount(i), actual.getCount(i), message);
+            assertEquals(expected.getTotalLatency(i), actual.getTotalLatency(i), message);
+            assertEquals(expected.getMinLatency(i), actual.getMinLatency(i), message);
+            assertEquals(expected.getMaxLatency(i), actual.getMaxLatency(i), message);
+        }
+    }
+}
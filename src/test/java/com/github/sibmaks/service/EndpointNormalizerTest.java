@@ -0,0 +1,43 @@
+package com.github.sibmaks.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EndpointNormalizerTest {
+    private final EndpointNormalizer normalizer = new EndpointNormalizer(List.of());
+
+    @Test
+    void dropsSchemeAuthorityQueryAndFragment() {
+        assertEquals("/api/items", normalizer.normalize("http://localhost:8080/api/items?page=2"));
+        assertEquals("/api/items", normalizer.normalize("https://h/api/items#top"));
+        assertEquals("/", normalizer.normalize("http://localhost:8080"));
+        assertEquals("/", normalizer.normalize("http://localhost:8080/"));
+        assertEquals("/", normalizer.normalize(""));
+        assertEquals("/api/", normalizer.normalize("/api/"));
+        assertEquals("/api/items", normalizer.normalize("/api//items"));
+    }
+
+    @Test
+    void collapsesIdentifiers() {
+        assertEquals("/api/items/{id}", normalizer.normalize("http://h/api/items/959"));
+        assertEquals("/users/{uuid}/orders/{id}",
+                normalizer.normalize("http://h/users/123e4567-e89b-12d3-a456-426614174000/orders/7"));
+        assertEquals("/blobs/{hex}", normalizer.normalize("http://h/blobs/0123456789abcdefABCDEF"));
+        assertEquals("/blobs/cafe", normalizer.normalize("http://h/blobs/cafe"));
+        assertEquals("/v2/items", normalizer.normalize("http://h/v2/items"));
+    }
+
+    @Test
+    void appliesConfiguredRulesFirst() {
+        var configured = new EndpointNormalizer(List.of("v\\d+={version}", "[a-z]+-[a-z]+={slug}", "key=\\w+={param}"));
+        assertEquals("/{version}/posts/{slug}", configured.normalize("http://h/v2/posts/hello-world"));
+        // regex may contain "=", placeholder is after the last one
+        assertEquals("/items/{param}", configured.normalize("http://h/items/key=42"));
+        assertThrows(IllegalArgumentException.class, () -> new EndpointNormalizer(List.of("=placeholder")));
+        assertThrows(IllegalArgumentException.class, () -> new EndpointNormalizer(List.of("no-placeholder")));
+    }
+}
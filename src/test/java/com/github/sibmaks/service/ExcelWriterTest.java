@@ -0,0 +1,108 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.RequestStats;
+import com.github.sibmaks.TimeWindows;
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKey;
+import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.report.ReportSnapshot;
+import com.github.sibmaks.stats.ExactLatencyRecorder;
+import com.github.sibmaks.stats.Latency;
+import com.github.sibmaks.stats.Timeline;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Streaming export keeps fewer rows in memory than every sheet has, cells are compared with in-memory export.
+ */
+class ExcelWriterTest {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final RequestKey ALL = new RequestKey("ALL", RequestKind.ALL);
+    private static final RequestKey STATIC = new RequestKey("STATIC", new RequestKind("STATIC"));
+
+    @Test
+    void streamingWorkbookMatchesInMemoryWorkbook(@TempDir Path directory) throws IOException, InterruptedException {
+        var snapshot = snapshot(new Random(1));
+        var inMemory = directory.resolve("in-memory.xlsx");
+        var streaming = directory.resolve("streaming.xlsx");
+        new ExcelWriter(PERCENTILES).write(snapshot, inMemory.toString());
+        new ExcelWriter(PERCENTILES, 10).write(snapshot, streaming.toString());
+
+        try (var expected = read(inMemory); var actual = read(streaming)) {
+            assertEquals(expected.getNumberOfSheets(), actual.getNumberOfSheets());
+            for (var i = 0; i < expected.getNumberOfSheets(); i++) {
+                var expectedSheet = expected.getSheetAt(i);
+                var actualSheet = actual.getSheetAt(i);
+                var sheet = expectedSheet.getSheetName();
+                assertEquals(sheet, actualSheet.getSheetName());
+                assertEquals(expectedSheet.getLastRowNum(), actualSheet.getLastRowNum(), sheet);
+                for (var r = 0; r <= expectedSheet.getLastRowNum(); r++) {
+                    var expectedRow = expectedSheet.getRow(r);
+                    var actualRow = actualSheet.getRow(r);
+                    assertEquals(expectedRow.getLastCellNum(), actualRow.getLastCellNum(), sheet + " row " + r);
+                    for (var c = 0; c < expectedRow.getLastCellNum(); c++) {
+                        var expectedCell = expectedRow.getCell(c);
+                        var actualCell = actualRow.getCell(c);
+                        var cell = sheet + " row " + r + " cell " + c;
+                        assertEquals(expectedCell.getCellType(), actualCell.getCellType(), cell);
+                        if (expectedCell.getCellType() == CellType.NUMERIC) {
+                            assertEquals(expectedCell.getNumericCellValue(), actualCell.getNumericCellValue(), cell);
+                        } else {
+                            assertEquals(expectedCell.getStringCellValue(), actualCell.getStringCellValue(), cell);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static Workbook read(Path file) throws IOException {
+        try (var in = Files.newInputStream(file)) {
+            return new XSSFWorkbook(in);
+        }
+    }
+
+    private static ReportSnapshot snapshot(Random random) throws InterruptedException {
+        var all = new RequestStats();
+        var staticStats = new RequestStats();
+        var endpoints = new LinkedHashMap<String, RequestStats>();
+        var timeline = new Timeline(1_000);
+        var windows = new TimeWindows(10_000, 5_000, ExactLatencyRecorder::new);
+        for (var i = 1; i <= 5_000; i++) {
+            var endpoint = "/api/orders/" + random.nextInt(30);
+            var request = new Request(i, STATIC, random.nextLong(Latency.UNITS_PER_MILLI * 500),
+                    1_700_000_000_000L + i * 20L, endpoint);
+            all.addRequest(request);
+            if (i % 3 == 0) {
+                staticStats.addRequest(request);
+            }
+            endpoints.computeIfAbsent(endpoint, it -> new RequestStats()).addRequest(request);
+            timeline.record(request.timestamp(), request.time());
+            windows.addRequest(request);
+        }
+        var stats = new LinkedHashMap<RequestKey, RequestStats>();
+        stats.put(ALL, all);
+        stats.put(STATIC, staticStats);
+        var nodes = Map.<String, Map<RequestKey, RequestStats>>of("node", Map.of(ALL, all));
+
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            return ReportSnapshot.compute(stats, endpoints, nodes, timeline, windows, PERCENTILES, executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.sibmaks.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GzipBlockDecoderTest {
+    private static final int MEMBERS = 160;
+    private static final int MEMBER_SIZE = 64 << 10;
+
+    @Test
+    void blocksConcatenateToSequentialStream(@TempDir Path directory) throws IOException {
+        var file = directory.resolve("members.log.gz");
+        var data = writeMembers(file, new Random(3));
+
+        var decoder = new GzipBlockDecoder(file);
+        assertTrue(decoder.blocks() > 1, "file should span several blocks");
+        var decoded = new ByteArrayOutputStream();
+        var expected = 0L;
+        for (var i = 0; i < decoder.blocks(); i++) {
+            var block = decoder.decode(i);
+            assertTrue(block != null, "block " + i + " is decoded");
+            if (block.start() < 0) {
+                continue;
+            }
+            assertEquals(expected, block.start(), "block " + i + " starts where the previous one ended");
+            assertTrue(block.end() >= decoder.blockEnd(i), "block " + i + " decodes members starting in its range");
+            decoded.write(block.data());
+            expected = block.end();
+        }
+        assertEquals(decoder.end(), expected);
+        assertArrayEquals(data, decoded.toByteArray());
+        assertArrayEquals(data, readAll(GzipBlockDecoder.open(file, 0)));
+    }
+
+    @Test
+    void parallelStreamMatchesSequentialStream(@TempDir Path directory) throws IOException {
+        var file = directory.resolve("members.log.gz");
+        var data = writeMembers(file, new Random(5));
+        Files.write(file, new byte[]{0x1F, 0x00, 0x55}, StandardOpenOption.APPEND);
+
+        assertArrayEquals(data, readAll(new ParallelBlockInputStream(new GzipBlockDecoder(file), 3)));
+    }
+
+    @Test
+    void singleMemberIsReadSequentially(@TempDir Path directory) throws IOException {
+        var file = directory.resolve("single.log.gz");
+        var data = randomBytes(new Random(9), 6 << 20);
+        try (var output = new GZIPOutputStream(Files.newOutputStream(file))) {
+            output.write(data);
+        }
+
+        assertArrayEquals(data, readAll(new ParallelBlockInputStream(new GzipBlockDecoder(file), 2)));
+    }
+
+    @Test
+    void onlyMultiMemberFileIsDecodedInBlocks(@TempDir Path directory) throws IOException {
+        var members = directory.resolve("members.log.gz");
+        writeMembers(members, new Random(7));
+        assertNotNull(GzipBlockDecoder.multiMember(members));
+
+        var large = directory.resolve("large.log.gz");
+        try (var output = new GZIPOutputStream(Files.newOutputStream(large))) {
+            output.write(randomBytes(new Random(11), 6 << 20));
+        }
+        assertNull(GzipBlockDecoder.multiMember(large), "member spans the first range");
+
+        var small = directory.resolve("small.log.gz");
+        try (var output = new GZIPOutputStream(Files.newOutputStream(small))) {
+            output.write(randomBytes(new Random(13), 1 << 20));
+        }
+        assertNull(GzipBlockDecoder.multiMember(small), "single member");
+        Files.write(small, new byte[]{0x1F, 0x00, 0x55}, StandardOpenOption.APPEND);
+        assertNull(GzipBlockDecoder.multiMember(small), "trailing garbage is not a member");
+        assertArrayEquals(readAll(GzipBlockDecoder.open(small, 0)), readAll(LogInput.open(small, 4)));
+    }
+
+    /**
+     * Write incompressible members, so the file spans several decoder ranges.
+     *
+     * @return decompressed file data
+     */
+    private static byte[] writeMembers(Path file, Random random) throws IOException {
+        var data = new ByteArrayOutputStream();
+        try (var output = Files.newOutputStream(file)) {
+            for (var i = 0; i < MEMBERS; i++) {
+                var member = randomBytes(random, MEMBER_SIZE - random.nextInt(1024));
+                var compressed = new ByteArrayOutputStream();
+                try (var gzip = new GZIPOutputStream(compressed)) {
+                    gzip.write(member);
+                }
+                compressed.writeTo(output);
+                data.write(member);
+            }
+        }
+        return data.toByteArray();
+    }
+
+    private static byte[] randomBytes(Random random, int size) {
+        var bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        try (input) {
+            return input.readAllBytes();
+        }
+    }
+}
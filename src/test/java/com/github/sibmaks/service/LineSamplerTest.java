@@ -0,0 +1,92 @@
+package com.github.sibmaks.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LineSamplerTest {
+    private static final int LINES = 200_000;
+
+    @Test
+    void acceptsRateOfLines() {
+        var sampler = LineSampler.of(0.1);
+        var accepted = 0;
+        for (var i = 0; i < LINES; i++) {
+            if (sampler.accept(line(i))) {
+                accepted++;
+            }
+        }
+        assertEquals(0.1, (double) accepted / LINES, 0.005);
+    }
+
+    @Test
+    void byteAndStringLinesAreSampledEqually() {
+        var sampler = LineSampler.of(0.3);
+        var buffer = ByteBuffer.allocate(256);
+        for (var i = 0; i < 10_000; i++) {
+            var line = line(i);
+            var bytes = line.getBytes(StandardCharsets.US_ASCII);
+            // line is placed after a prefix, so only the passed range is hashed
+            buffer.clear();
+            buffer.put("garbage\n".getBytes(StandardCharsets.US_ASCII)).put(bytes).put((byte) '\n');
+            assertEquals(sampler.accept(line), sampler.accept(buffer, 8, 8 + bytes.length), line);
+            assertEquals(sampler.accept(line), LineSampler.of(0.3).accept(line), "sampling is deterministic");
+        }
+    }
+
+    @Test
+    void nonAsciiLinesAreSampledByUtf8Bytes() {
+        var sampler = LineSampler.of(0.3);
+        var random = new Random(7);
+        var alphabet = "aZ/?=%\u00E9\u20AC\u0436\uD83D\uDE00\uD83D\uDC4D";
+        var buffer = ByteBuffer.allocate(1024);
+        for (var i = 0; i < 10_000; i++) {
+            var builder = new StringBuilder(line(i)).append(' ');
+            for (var j = random.nextInt(20); j > 0; j--) {
+                builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            var line = builder.toString();
+            var bytes = line.getBytes(StandardCharsets.UTF_8);
+            var expected = 0;
+            for (var b : bytes) {
+                expected = 31 * expected + (b & 0xFF);
+            }
+            assertEquals(expected, LineSampler.utf8Hash(line), line);
+            buffer.clear();
+            buffer.put(bytes);
+            assertEquals(sampler.accept(line), sampler.accept(buffer, 0, bytes.length), line);
+        }
+    }
+
+    @Test
+    void samplesSubsetOfHigherRate() {
+        var low = LineSampler.of(0.05);
+        var high = LineSampler.of(0.5);
+        for (var i = 0; i < 10_000; i++) {
+            var line = line(i);
+            assertTrue(!low.accept(line) || high.accept(line), line);
+        }
+    }
+
+    @Test
+    void validatesRate() {
+        assertTrue(LineSampler.of(1.0).isAll());
+        assertFalse(LineSampler.of(0.5).isAll());
+        assertEquals(0.5, LineSampler.of(0.5).getRate());
+        assertThrows(IllegalArgumentException.class, () -> LineSampler.of(0));
+        assertThrows(IllegalArgumentException.class, () -> LineSampler.of(1.5));
+        assertThrows(IllegalArgumentException.class, () -> LineSampler.of(Double.NaN));
+    }
+
+    private static String line(int index) {
+        return "[%d][GET] Request completed at %d.%03dms url http://localhost:8080/api/items/%d"
+                .formatted(1712345678000L + index, index % 997, index % 1000, index);
+    }
+}
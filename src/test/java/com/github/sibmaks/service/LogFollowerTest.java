@@ -0,0 +1,134 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.bus.EventPublisher;
+import com.github.sibmaks.dto.Request;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Log is written by the refresh callback, which is called on every poll, so appends are interleaved
+ * with reads deterministically.
+ */
+class LogFollowerTest {
+    private static final Duration POLL = Duration.ofMillis(1);
+    private static final Duration IDLE = Duration.ofMillis(300);
+
+    @Test
+    void appendedLinesAreParsedOnce(@TempDir Path directory) throws IOException {
+        var log = directory.resolve("requests.log");
+        var content = lines(new Random(1), 0, 5_000);
+        var random = new Random(2);
+        var pieces = new ArrayDeque<byte[]>();
+        for (var position = 0; position < content.length; ) {
+            // pieces end in the middle of lines, so the follower sees incomplete lines
+            var end = Math.min(content.length, position + 1 + random.nextInt(20_000));
+            pieces.add(Arrays.copyOfRange(content, position, end));
+            position = end;
+        }
+        Files.write(log, pieces.poll());
+
+        var requests = follow(log, -1, () -> append(log, pieces));
+
+        assertEquals(0, pieces.size());
+        assertEquals(sequential(log, -1), requests);
+    }
+
+    @Test
+    void followingStopsAtLastRequest(@TempDir Path directory) throws IOException {
+        var log = directory.resolve("requests.log");
+        var content = lines(new Random(3), 0, 1_000);
+        var pieces = new ArrayDeque<byte[]>();
+        for (var position = 0; position < content.length; position += 4_096) {
+            pieces.add(Arrays.copyOfRange(content, position, Math.min(content.length, position + 4_096)));
+        }
+        Files.write(log, pieces.poll());
+
+        var requests = follow(log, 700, () -> append(log, pieces));
+
+        assertEquals(700, requests.size());
+        assertEquals(sequential(log, 700), requests);
+    }
+
+    @Test
+    void truncatedLogStopsFollowing(@TempDir Path directory) throws IOException {
+        var log = directory.resolve("requests.log");
+        var before = lines(new Random(4), 0, 300);
+        var after = lines(new Random(5), 300, 500);
+        Files.write(log, before);
+        var truncated = new boolean[1];
+
+        var requests = follow(log, -1, () -> {
+            if (!truncated[0]) {
+                truncated[0] = true;
+                write(log, after, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+        });
+
+        assertTrue(truncated[0]);
+        assertEquals(parse(directory.resolve("before.log"), before), requests);
+    }
+
+    private static List<Request> follow(Path log, int lastIndex, Runnable refresh) throws IOException {
+        var requests = new ArrayList<Request>();
+        EventPublisher publisher = (topic, event) -> requests.add((Request) event);
+        new LogFollower(publisher, POLL, IDLE, ParseOptions.defaults())
+                .follow(log.toString(), lastIndex, Duration.ZERO, refresh);
+        return requests;
+    }
+
+    private static List<Request> sequential(Path log, int lastIndex) throws IOException {
+        var requests = new ArrayList<Request>();
+        new LogParser((topic, event) -> requests.add((Request) event), ParseOptions.defaults())
+                .parse(log.toString(), lastIndex);
+        return requests;
+    }
+
+    private static List<Request> parse(Path file, byte[] content) throws IOException {
+        Files.write(file, content);
+        return sequential(file, -1);
+    }
+
+    private static void append(Path log, Queue<byte[]> pieces) {
+        var piece = pieces.poll();
+        if (piece != null) {
+            write(log, piece, StandardOpenOption.APPEND);
+        }
+    }
+
+    private static void write(Path log, byte[] content, StandardOpenOption option) {
+        try {
+            Files.write(log, content, StandardOpenOption.WRITE, option);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] lines(Random random, int from, int to) {
+        var lines = new StringBuilder();
+        for (var i = from; i < to; i++) {
+            lines.append("[%d][GET] Request completed at %d.%03dms url http://localhost/api/%d\n"
+                    .formatted(1_700_000_000_000L + i * 10L, random.nextInt(1000), random.nextInt(1000), i));
+            if (random.nextInt(10) == 0) {
+                lines.append("Warm up finished\n");
+            }
+        }
+        return lines.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
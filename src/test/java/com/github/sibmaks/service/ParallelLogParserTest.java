@@ -0,0 +1,154 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.RequestStatsCollector;
+import com.github.sibmaks.bus.EventPublisher;
+import com.github.sibmaks.bus.TypedEventBus;
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.RequestKind;
+import com.github.sibmaks.dto.TimeRange;
+import com.github.sibmaks.metrics.ParseMetrics;
+import com.github.sibmaks.stats.ExactLatencyRecorder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Log is larger than several minimal chunks, so parallel parsers split it into many chunks.
+ */
+class ParallelLogParserTest {
+    private static final int LINES = 60_000;
+    private static final int STEP = 7_000;
+    private static final RequestKind STATIC = new RequestKind("STATIC");
+
+    @Test
+    void requestsMatchSequentialParser(@TempDir Path directory) throws IOException {
+        var log = writeLog(directory.resolve("requests.log"), new Random(1));
+        assertTrue(Files.size(log) > 4 << 20, "log should span several chunks");
+        var total = sequential(log, -1).size();
+        for (var lastIndex : new int[]{-1, 1, total / 2 + 3, total, total + 5}) {
+            var expected = sequential(log, lastIndex);
+            assertEquals(lastIndex < 0 ? total : Math.min(lastIndex, total), expected.size());
+            for (var threads : new int[]{1, 2, 4}) {
+                for (var mapped : new boolean[]{false, true}) {
+                    var actual = parallel(log, threads, mapped, lastIndex);
+                    assertEquals(expected, actual, "threads=%d mapped=%s to=%d".formatted(threads, mapped, lastIndex));
+                }
+            }
+        }
+    }
+
+    @Test
+    void stepStatisticsMatchSequentialParser(@TempDir Path directory) throws IOException {
+        var log = writeLog(directory.resolve("requests.log"), new Random(2));
+        var total = sequential(log, -1).size();
+        for (var lastIndex : new int[]{-1, total / 3}) {
+            var bus = new TypedEventBus(64);
+            var expected = collector(bus, lastIndex);
+            new LogParser(bus, ParseOptions.defaults()).parse(log.toString(), lastIndex);
+            bus.flush();
+            for (var mapped : new boolean[]{false, true}) {
+                var actual = collector(new TypedEventBus(64), lastIndex);
+                var chunks = new ArrayList<RequestStatsCollector>();
+                new ParallelLogParser(4, mapped, ParseOptions.defaults()).parse(log.toString(), lastIndex, () -> {
+                    var chunkBus = new TypedEventBus(64);
+                    chunks.add(collector(chunkBus, lastIndex));
+                    return chunkBus;
+                });
+                chunks.forEach(actual::merge);
+
+                var expectedStats = expected.getStats();
+                var actualStats = actual.getStats();
+                assertEquals(expectedStats.keySet(), actualStats.keySet(), "to=" + lastIndex);
+                for (var entry : expectedStats.entrySet()) {
+                    var stats = actualStats.get(entry.getKey());
+                    var message = "%s mapped=%s to=%d".formatted(entry.getKey(), mapped, lastIndex);
+                    assertEquals(entry.getValue().getCount(), stats.getCount(), message);
+                    assertEquals(entry.getValue().getTotalTime(), stats.getTotalTime(), message);
+                    assertEquals(entry.getValue().getPercentile99(), stats.getPercentile99(), message);
+                    assertEquals(entry.getValue().getMax(), stats.getMax(), message);
+                }
+            }
+        }
+    }
+
+    @Test
+    void chunkIndexedRequestsMatchSequentialParser(@TempDir Path directory) throws IOException {
+        var log = writeLog(directory.resolve("requests.log"), new Random(3));
+        var options = new ParseOptions(RequestClassifier.defaults(), ParseMetrics.disabled(), TimeRange.ALL, LineSampler.ALL, true, false);
+        var expected = withoutIndex(sequential(log, -1));
+        for (var mapped : new boolean[]{false, true}) {
+            var chunks = new ArrayList<List<Request>>();
+            new ParallelLogParser(3, mapped, options).parse(log.toString(), -1, () -> publisher(chunks));
+            var actual = new ArrayList<Request>();
+            chunks.forEach(actual::addAll);
+            assertTrue(actual.stream().filter(it -> it.requestIndex() == 1).count() > 1, "chunks are numbered from 1");
+            assertEquals(expected, withoutIndex(actual), "mapped=" + mapped);
+        }
+    }
+
+    private static RequestStatsCollector collector(TypedEventBus bus, int lastIndex) {
+        var collector = new RequestStatsCollector(() -> bus, ExactLatencyRecorder::new);
+        collector.collectAll();
+        collector.collectSpecificType("STATIC", STATIC);
+        collector.collectSteps("ALL_%d", RequestKind.ALL, STEP, lastIndex);
+        collector.collectSteps("STATIC_%d", STATIC, STEP, lastIndex);
+        return collector;
+    }
+
+    private static List<Request> sequential(Path log, int lastIndex) throws IOException {
+        var requests = new ArrayList<List<Request>>();
+        new LogParser(publisher(requests), ParseOptions.defaults()).parse(log.toString(), lastIndex);
+        return requests.get(0);
+    }
+
+    private static List<Request> parallel(Path log, int threads, boolean mapped, int lastIndex) throws IOException {
+        var chunks = new ArrayList<List<Request>>();
+        new ParallelLogParser(threads, mapped, ParseOptions.defaults()).parse(log.toString(), lastIndex, () -> publisher(chunks));
+        var requests = new ArrayList<Request>();
+        chunks.forEach(requests::addAll);
+        return requests;
+    }
+
+    /**
+     * Create publisher collecting requests into a new list, lists are added in creation order.
+     */
+    private static EventPublisher publisher(List<List<Request>> lists) {
+        var requests = new ArrayList<Request>();
+        lists.add(requests);
+        return (topic, event) -> requests.add((Request) event);
+    }
+
+    private static List<Request> withoutIndex(List<Request> requests) {
+        return requests.stream()
+                .map(it -> new Request(0, it.key(), it.time(), it.timestamp(), it.uri()))
+                .sorted(Comparator.comparingLong(Request::timestamp))
+                .toList();
+    }
+
+    private static Path writeLog(Path log, Random random) throws IOException {
+        var lines = new StringBuilder();
+        for (var i = 0; i < LINES; i++) {
+            var method = random.nextInt(5) == 0 ? "POST" : "GET";
+            var path = random.nextInt(4) == 0 ? "/img/logo-%d.png" : "/api/orders/%d";
+            lines.append("[%d][%s] Request completed at %d.%03dms url http://localhost%s\n".formatted(
+                    1_700_000_000_000L + i * 10L, method, random.nextInt(2_000), random.nextInt(1000),
+                    path.formatted(random.nextInt(1000))));
+            if (random.nextInt(20) == 0) {
+                lines.append("Warm up finished, waiting for the next iteration of the load profile\n");
+            }
+        }
+        Files.writeString(log, lines, StandardCharsets.US_ASCII);
+        return log;
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.bus.EventPublisher;
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.TimeRange;
+import com.github.sibmaks.metrics.ParseMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Cache holds more rows than a replay chunk, so multithreaded replay splits it into several chunks.
+ */
+class RequestCacheTest {
+    private static final int LINES = 150_000;
+
+    @Test
+    void replayMatchesTextParser(@TempDir Path directory) throws IOException {
+        var log = writeLog(directory.resolve("requests.log"), new Random(1));
+        var cacheFile = directory.resolve("requests.log.cache");
+        var key = RequestCache.Key.of(log);
+        try (var writer = new RequestCacheWriter(cacheFile, key)) {
+            new ParallelLogParser(3, false, cacheOptions()).parse(log.toString(), -1, writer::segment);
+            writer.commit();
+        }
+
+        var cache = RequestCache.open(cacheFile, key, RequestClassifier.defaults());
+        assertNotNull(cache);
+        var total = sequential(log, -1).size();
+        assertEquals(total, cache.getRequests());
+        for (var lastIndex : new int[]{-1, 1, total / 2, total + 5}) {
+            var expected = sequential(log, lastIndex);
+            for (var threads : new int[]{1, 2}) {
+                var chunks = new ArrayList<List<Request>>();
+                cache.replay(lastIndex, threads, () -> publisher(chunks));
+                var actual = new ArrayList<Request>();
+                chunks.forEach(actual::addAll);
+                assertEquals(expected, actual, "threads=%d to=%d".formatted(threads, lastIndex));
+            }
+        }
+    }
+
+    @Test
+    void replayClassifiesWithCurrentRules(@TempDir Path directory) throws IOException {
+        var log = writeLog(directory.resolve("requests.log"), new Random(2));
+        var cacheFile = directory.resolve("requests.log.cache");
+        var key = RequestCache.Key.of(log);
+        try (var writer = new RequestCacheWriter(cacheFile, key)) {
+            new LogParser(writer.segment(), cacheOptions()).parse(log.toString(), -1);
+            writer.commit();
+        }
+        var classifier = RequestClassifier.parse(List.of(
+                "IMAGES suffix .png",
+                "ORDERS prefix /api/orders/1"
+        ));
+
+        var chunks = new ArrayList<List<Request>>();
+        RequestCache.open(cacheFile, key, classifier).replay(-1, 1, () -> publisher(chunks));
+
+        var expected = new ArrayList<Request>();
+        new LogParser((topic, event) -> expected.add((Request) event), ParseOptions.of(classifier))
+                .parse(log.toString(), -1);
+        assertEquals(expected, chunks.get(0));
+    }
+
+    @Test
+    void cacheOfOtherContentIsNotOpened(@TempDir Path directory) throws IOException {
+        var log = writeLog(directory.resolve("requests.log"), new Random(3));
+        var cacheFile = directory.resolve("requests.log.cache");
+        var key = RequestCache.Key.of(log);
+        try (var writer = new RequestCacheWriter(cacheFile, key)) {
+            new LogParser(writer.segment(), cacheOptions()).parse(log.toString(), -1);
+            writer.commit();
+        }
+        assertNotNull(RequestCache.open(cacheFile, RequestCache.Key.of(log), RequestClassifier.defaults()));
+
+        Files.writeString(log, "[1][GET] Request completed at 1.000ms url http://localhost/\n", StandardOpenOption.APPEND);
+        assertNull(RequestCache.open(cacheFile, RequestCache.Key.of(log), RequestClassifier.defaults()));
+
+        var content = Files.readAllBytes(cacheFile);
+        Files.write(cacheFile, Arrays.copyOf(content, content.length - 1));
+        assertNull(RequestCache.open(cacheFile, key, RequestClassifier.defaults()));
+        assertNull(RequestCache.open(directory.resolve("missing.cache"), key, RequestClassifier.defaults()));
+    }
+
+    @Test
+    void keyHashesSampledBlocks(@TempDir Path directory) throws IOException {
+        var log = directory.resolve("requests.log");
+        var content = new byte[4 << 20];
+        new Random(4).nextBytes(content);
+        Files.write(log, content);
+        var modified = Files.getLastModifiedTime(log);
+        var key = RequestCache.Key.of(log);
+        assertEquals(key, RequestCache.Key.of(log));
+
+        // head, tail, the sixth of sixteen evenly spaced blocks and a byte between sampled blocks
+        var block = 64 << 10;
+        var sampled = 5L * (content.length - block) / 15 + 10;
+        for (var position : new long[]{0, content.length - 1, sampled, block + 10}) {
+            var changed = content.clone();
+            changed[(int) position] ^= 1;
+            Files.write(log, changed);
+            Files.setLastModifiedTime(log, modified);
+            var changedKey = RequestCache.Key.of(log);
+            assertEquals(key.size(), changedKey.size());
+            assertEquals(key.modified(), changedKey.modified());
+            assertEquals(position == block + 10, key.equals(changedKey), "byte " + position);
+        }
+    }
+
+    private static ParseOptions cacheOptions() {
+        return new ParseOptions(RequestClassifier.defaults(), ParseMetrics.disabled(), TimeRange.ALL, LineSampler.ALL, true, false);
+    }
+
+    private static List<Request> sequential(Path log, int lastIndex) throws IOException {
+        var requests = new ArrayList<Request>();
+        new LogParser((topic, event) -> requests.add((Request) event), ParseOptions.defaults())
+                .parse(log.toString(), lastIndex);
+        return requests;
+    }
+
+    /**
+     * Create publisher collecting requests into a new list, lists are added in creation order.
+     */
+    private static EventPublisher publisher(List<List<Request>> lists) {
+        var requests = new ArrayList<Request>();
+        lists.add(requests);
+        return (topic, event) -> requests.add((Request) event);
+    }
+
+    private static Path writeLog(Path log, Random random) throws IOException {
+        var lines = new StringBuilder();
+        for (var i = 0; i < LINES; i++) {
+            var method = random.nextInt(5) == 0 ? "POST" : "GET";
+            var path = random.nextInt(4) == 0 ? "/img/logo-%d.png" : "/api/orders/%d";
+            lines.append("[%d][%s] Request completed at %d.%03dms url http://localhost%s\n".formatted(
+                    1_700_000_000_000L + i * 10L, method, random.nextInt(2_000), random.nextInt(1000),
+                    path.formatted(random.nextInt(5_000))));
+            if (random.nextInt(20) == 0) {
+                lines.append("Warm up finished\n");
+            }
+        }
+        Files.writeString(log, lines, StandardCharsets.US_ASCII);
+        return log;
+    }
+}
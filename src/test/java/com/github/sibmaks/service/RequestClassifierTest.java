@@ -0,0 +1,156 @@
+package com.github.sibmaks.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Automaton is checked against rules applied one by one in file order.
+ */
+class RequestClassifierTest {
+    private static final String[] MATCHES = {"prefix", "suffix", "contains", "exact"};
+    private static final String ALPHABET = "/ab.";
+
+    @Test
+    void classifiesByDefaultRules() {
+        var classifier = RequestClassifier.defaults();
+        assertEquals("STATIC", kind(classifier, "http://localhost:8080/cmsstatic/x.css"));
+        assertEquals("STATIC", kind(classifier, "http://h/shop/img/a.png?size=2"));
+        assertEquals("DYNAMIC", kind(classifier, "http://h/api/items/1"));
+        assertEquals("STATIC", kind(classifier, "http://h/page?next=/img/a"));
+        assertEquals("STATIC", kind(classifier, "http://h/api#/js/"));
+        assertEquals("STATIC", kind(classifier, "http://img/"));
+    }
+
+    @Test
+    void defaultsMatchBaselineContains() {
+        var classifier = RequestClassifier.defaults();
+        var parts = new String[]{"/", "/img/", "/js/", "/cmsstatic/", "img", "js/", "/cms", "static/", "?", "#", "=", "a", "http://h"};
+        var random = new Random(23);
+        for (var i = 0; i < 20_000; i++) {
+            var uri = new StringBuilder();
+            var length = random.nextInt(6);
+            for (var k = 0; k < length; k++) {
+                uri.append(parts[random.nextInt(parts.length)]);
+            }
+            var expected = isStaticURI(uri.toString()) ? "STATIC" : "DYNAMIC";
+            assertEquals(expected, kind(classifier, uri.toString()), uri.toString());
+        }
+    }
+
+    @Test
+    void matchesWholeUriInUriScope() {
+        var classifier = RequestClassifier.parse(List.of(
+                "scope uri",
+                "HOST prefix http://static.",
+                "QUERY contains ?debug",
+                "ROOT exact /"
+        ));
+        assertEquals("HOST", kind(classifier, "http://static.h/a"));
+        assertEquals("QUERY", kind(classifier, "http://h/a?debug=1"));
+        assertEquals("ROOT", kind(classifier, "/"));
+        assertEquals("DYNAMIC", kind(classifier, "http://h/"));
+    }
+
+    @Test
+    void anchorsRulesToPath() {
+        var classifier = RequestClassifier.parse(List.of(
+                "# comment",
+                "",
+                "ROOT exact /",
+                "API prefix /api/",
+                "CSS  suffix .css",
+                "default OTHER"
+        ));
+        assertEquals("ROOT", kind(classifier, "http://h"));
+        assertEquals("ROOT", kind(classifier, "http://h/?q=1"));
+        assertEquals("API", kind(classifier, "http://h/api/x.css"));
+        assertEquals("CSS", kind(classifier, "http://h/v1/api/x.css#top"));
+        assertEquals("OTHER", kind(classifier, "http://h/v1/api/"));
+        assertEquals("OTHER", kind(classifier, "http://h/x.css.map"));
+        assertEquals(List.of("ROOT", "API", "CSS", "OTHER"),
+                classifier.getKinds().stream().map(it -> it.name()).toList());
+    }
+
+    @Test
+    void matchesRulesAppliedInOrder() {
+        var random = new Random(17);
+        for (var round = 0; round < 200; round++) {
+            var lines = new ArrayList<String>();
+            var rules = new ArrayList<String[]>();
+            var ruleCount = 1 + random.nextInt(12);
+            for (var i = 0; i < ruleCount; i++) {
+                var rule = new String[]{"C" + random.nextInt(5), MATCHES[random.nextInt(MATCHES.length)], word(random, 1, 4)};
+                rules.add(rule);
+                lines.add(String.join(" ", rule));
+            }
+            var classifier = RequestClassifier.parse(lines);
+            for (var i = 0; i < 200; i++) {
+                var path = random.nextBoolean() ? "/" + word(random, 0, 8) : word(random, 1, 8);
+                var uri = random.nextBoolean() ? "http://host" + (path.startsWith("/") ? path : "/" + path) : path;
+                if (random.nextInt(4) == 0) {
+                    uri += "?" + word(random, 0, 4);
+                }
+                assertEquals(expectedKind(rules, uri), kind(classifier, uri), lines + " " + uri);
+            }
+        }
+    }
+
+    @Test
+    void rejectsInvalidRules() {
+        assertThrows(IllegalArgumentException.class, () -> RequestClassifier.parse(List.of("STATIC /img/")));
+        assertThrows(IllegalArgumentException.class, () -> RequestClassifier.parse(List.of("STATIC like /img/")));
+        assertThrows(IllegalArgumentException.class, () -> RequestClassifier.parse(List.of("ALL prefix /")));
+        assertThrows(IllegalArgumentException.class, () -> RequestClassifier.parse(List.of("default ALL")));
+        assertThrows(IllegalArgumentException.class, () -> RequestClassifier.parse(List.of("scope query")));
+    }
+
+    /**
+     * Classification of the parser before configurable rules.
+     */
+    private static boolean isStaticURI(String uri) {
+        return uri.contains("/img/") || uri.contains("/cmsstatic/") || uri.contains("/js/");
+    }
+
+    private static String expectedKind(List<String[]> rules, String uri) {
+        var path = uri.startsWith("http://host") ? uri.substring("http://host".length()) : uri;
+        var query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        if (path.isEmpty()) {
+            path = "/";
+        }
+        for (var rule : rules) {
+            var value = rule[2];
+            var matched = switch (rule[1]) {
+                case "prefix" -> path.startsWith(value);
+                case "suffix" -> path.endsWith(value);
+                case "contains" -> path.contains(value);
+                default -> path.equals(value);
+            };
+            if (matched) {
+                return rule[0];
+            }
+        }
+        return RequestClassifier.DEFAULT_CLASS;
+    }
+
+    private static String word(Random random, int minLength, int maxLength) {
+        var length = minLength + random.nextInt(maxLength - minLength + 1);
+        var word = new StringBuilder(length);
+        for (var i = 0; i < length; i++) {
+            word.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return word.toString();
+    }
+
+    private static String kind(RequestClassifier classifier, String uri) {
+        return classifier.getKind(classifier.classify(uri)).name();
+    }
+}
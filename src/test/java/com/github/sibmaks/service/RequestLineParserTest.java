@@ -0,0 +1,189 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.dto.Request;
+import com.github.sibmaks.dto.TimeRange;
+import com.github.sibmaks.metrics.ParseMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Byte level parser is checked against regex parser of {@link LogParser}.
+ */
+class RequestLineParserTest {
+    private static final RequestClassifier CLASSIFIER = RequestClassifier.defaults();
+
+    private static final String[] TIMESTAMPS = {"[1712345678003]", "[0]", "[]", "[17x]", "1712345678003]", "[1712345678003"};
+    private static final String[] METHODS = {"[GET]", "[POST]", "[PATCH]", "[OPTIONS]", "[get]", "[GETX]", "[]", "GET"};
+    private static final String[] GAPS = {
+            " Request completed at ", " at ", "at ", " ", "", "\t", " x at at ",
+            " \u0085 at ", " \u2028 at ", " at\u2029", "\u2029", " at \u2028"
+    };
+    private static final String[] TIMES = {
+            "86.855ms", "621,595ms", "1.5ms", "12ms", ".5ms", "1.ms", "0.0000005ms", "0.0000004ms",
+            "3.14159265358979ms", "7.5 ms", "99,9999995ms", "1..5ms"
+    };
+    private static final String[] URI_GAPS = {" url ", " ", "", " \u0085 ", "\u2028 ", " \u2029", " at 1.5ms ", "\t"};
+    private static final String[] URIS = {
+            "http://localhost:8080/cmsstatic/x.css", "http://h/img/a.png", "http://h/api/items/1", "http://h/js/app.js",
+            "http://", "https://h/x", "http://h/a b", "http://h/\u2028x", "http://h/x\u0085", "http://h/\u2029",
+            "http://h/api?q=\u00e9", "xhttp://h/js/a", "http://http://h/img/"
+    };
+    private static final String[] ENDINGS = {"", "", "", " ", "\t", "\u2028", "\u0085", "x"};
+
+    @Test
+    void acceptsExampleLines() {
+        assertSameRequest("[1712345678003][GET] Request completed at 86.855ms url http://localhost:8080/cmsstatic/x.css");
+        assertSameRequest("[1712345678019][GET] Request completed at 621,595ms url http://localhost:8080/js/app.js");
+        assertSameRequest("[1712345678046][PUT] Request completed at 822.557ms url http://localhost:8080/api/items/959");
+        assertSameRequest("[1712345678046][DELETE]at 1.9999995ms http://h/api");
+    }
+
+    @Test
+    void matchesLineTerminatorsInsideLazySegments() {
+        assertSameRequest("[1][GET] \u0085 at 1.5ms url http://h/api");
+        assertSameRequest("[1][GET] \u2028 at 1.5ms url http://h/api");
+        assertSameRequest("[1][GET] \u2029 at 1.5ms url http://h/api");
+        assertSameRequest("[1][GET] at 1.5ms \u0085 http://h/api");
+        assertSameRequest("[1][GET] at 1.5ms \u2028 http://h/api");
+        assertSameRequest("[1][GET] at 1.5ms url http://h/api\u2028");
+        assertSameRequest("[1][GET] at 1.5ms url http://h/a\u2029pi");
+    }
+
+    @Test
+    void rejectsTrailingWhitespaceAfterUri() {
+        assertSameRequest("[1][GET] at 1.5ms url http://h/api ");
+        assertSameRequest("[1][GET] at 1.5ms url http://h/api\t");
+        assertSameRequest("[1][GET] at 1.5ms url http://h/api x");
+    }
+
+    @Test
+    void matchesRandomLines() {
+        var random = new Random(42);
+        var lines = 50_000;
+        var accepted = 0;
+        for (var i = 0; i < lines; i++) {
+            if (assertSameRequest(randomLine(random))) {
+                accepted++;
+            }
+        }
+        assertTrue(accepted > 500 && accepted < lines - 500, "accepted lines: " + accepted);
+    }
+
+    @Test
+    void matchesTimeRange() {
+        var range = new TimeRange(100, 200);
+        var options = new ParseOptions(CLASSIFIER, ParseMetrics.disabled(), range, LineSampler.ALL, true, true);
+        for (var timestamp : new long[]{99, 100, 150, 199, 200}) {
+            var line = "[%d][GET] at 1.5ms url http://h/api".formatted(timestamp);
+            var parser = new RequestLineParser(options);
+            var expected = LogParser.parseRequest(line, 1, CLASSIFIER, range);
+            assertEquals(expected != null, parse(parser, line), line);
+        }
+    }
+
+    @Test
+    void keepsUriOnlyWhenRequested() {
+        var line = "[1][GET] at 1.5ms url http://h/api";
+        var options = new ParseOptions(CLASSIFIER, ParseMetrics.disabled(), TimeRange.ALL, LineSampler.ALL, false, true);
+        var parser = new RequestLineParser(options);
+        assertTrue(parse(parser, line));
+        var request = parser.toRequest(1);
+        assertNull(request.uri());
+        assertEquals(LogParser.parseRequest(line, 1, CLASSIFIER).key(), request.key());
+    }
+
+    @Test
+    void mappedParserSplitsLinesAsReader(@TempDir Path directory) throws IOException {
+        var content = "[1][GET] at 1.5ms url http://h/api\r"
+                + "[2][POST] at 2,25ms url http://h/img/a.png\r\n"
+                + "garbage\r\r\n"
+                + "[3][PUT] at 3.125ms url http://h/js/a.js \n"
+                + "[4][PUT] at 4.0ms url http://h/api/4\n\n"
+                + "[5][HEAD] at 5.5ms url http://h/api/5";
+        var file = directory.resolve("requests.log");
+        Files.writeString(file, content, StandardCharsets.US_ASCII);
+
+        var expected = new ArrayList<Request>();
+        new LogParser((topic, event) -> expected.add((Request) event), ParseOptions.defaults())
+                .parse(new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII)), -1);
+        var actual = new ArrayList<Request>();
+        new MappedLogParser((topic, event) -> actual.add((Request) event), ParseOptions.defaults()).parse(file.toString(), -1);
+
+        assertEquals(4, expected.size());
+        assertEquals(expected, actual);
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertEquals(expected.size(), MappedLogParser.count(channel, 0, channel.size(), ParseOptions.defaults()));
+        }
+    }
+
+    private static String randomLine(Random random) {
+        var line = new StringBuilder()
+                .append(pick(random, TIMESTAMPS))
+                .append(pick(random, METHODS))
+                .append(pick(random, GAPS))
+                .append(pick(random, TIMES));
+        if (random.nextInt(4) == 0) {
+            line.append(pick(random, GAPS)).append(pick(random, TIMES));
+        }
+        return line.append(pick(random, URI_GAPS))
+                .append(pick(random, URIS))
+                .append(pick(random, ENDINGS))
+                .toString();
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * @return true if line is accepted
+     */
+    private static boolean assertSameRequest(String line) {
+        var expected = LogParser.parseRequest(line, 1, CLASSIFIER);
+        var parser = new RequestLineParser(ParseOptions.defaults());
+        var accepted = parse(parser, line);
+        if (expected == null) {
+            assertFalse(accepted, "accepted: " + escape(line));
+            return false;
+        }
+        assertTrue(accepted, "rejected: " + escape(line));
+        var actual = parser.toRequest(1);
+        assertNotNull(actual);
+        assertEquals(expected.timestamp(), actual.timestamp(), escape(line));
+        assertEquals(expected.key().kind(), actual.key().kind(), escape(line));
+        assertEquals(expected.key().requestKind(), actual.key().requestKind(), escape(line));
+        assertEquals(expected.time(), actual.time(), escape(line));
+        assertEquals(expected.uri(), actual.uri(), escape(line));
+        return true;
+    }
+
+    private static boolean parse(RequestLineParser parser, String line) {
+        var bytes = line.getBytes(StandardCharsets.UTF_8);
+        return parser.parse(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    private static String escape(String line) {
+        var escaped = new StringBuilder();
+        for (var c : line.toCharArray()) {
+            escaped.append(c < 0x20 || c > 0x7E ? "\\u%04x".formatted((int) c) : String.valueOf(c));
+        }
+        return escaped.toString();
+    }
+}
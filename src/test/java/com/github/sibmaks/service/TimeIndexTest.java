@@ -0,0 +1,113 @@
+package com.github.sibmaks.service;
+
+import com.github.sibmaks.dto.TimeRange;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeIndexTest {
+    private static final long STEP = 4096;
+    private static final int LINES = 20_000;
+    private static final long TIME_STEP = 10;
+    private static final int JITTER = 50;
+
+    @Test
+    void spanContainsEveryRequestOfRange(@TempDir Path directory) throws IOException {
+        var log = directory.resolve("requests.log");
+        writeLines(log, 0, LINES, new Random(1));
+        var content = Files.readAllBytes(log);
+
+        var index = TimeIndex.load(log, STEP);
+        assertTrue(index.size() > 100, "entries: " + index.size());
+        var random = new Random(2);
+        for (var i = 0; i < 200; i++) {
+            var from = random.nextLong(-1_000, LINES * TIME_STEP + 1_000);
+            var range = new TimeRange(from, from + random.nextLong(1, 20_000));
+            assertSpanMatches(content, index.find(range), range);
+        }
+        assertSpanMatches(content, index.find(TimeRange.ALL), TimeRange.ALL);
+        var after = new TimeRange(LINES * TIME_STEP + 1_000, Long.MAX_VALUE);
+        assertSpanMatches(content, index.find(after), after);
+    }
+
+    @Test
+    void spanIsSmallerThanLog(@TempDir Path directory) throws IOException {
+        var log = directory.resolve("requests.log");
+        writeLines(log, 0, LINES, new Random(3));
+
+        var span = TimeIndex.load(log, STEP).find(new TimeRange(100_000, 101_000));
+        assertTrue(span.end() - span.start() <= 6 * STEP, "span: " + span);
+    }
+
+    @Test
+    void savedIndexIsReusedAndRebuiltOnChange(@TempDir Path directory) throws IOException {
+        var log = directory.resolve("requests.log");
+        writeLines(log, 0, LINES, new Random(4));
+
+        var built = TimeIndex.load(log, STEP);
+        assertTrue(Files.isRegularFile(Path.of(log + TimeIndex.SUFFIX)));
+        var read = TimeIndex.load(log, STEP);
+        assertEquals(built.size(), read.size());
+        var range = new TimeRange(50_000, 60_000);
+        assertEquals(built.find(range), read.find(range));
+
+        writeLines(log, LINES, LINES * 2, new Random(5));
+        var rebuilt = TimeIndex.load(log, STEP);
+        assertTrue(rebuilt.size() > built.size(), "entries: " + rebuilt.size());
+        var appended = new TimeRange(LINES * TIME_STEP + 10_000, LINES * TIME_STEP + 20_000);
+        assertSpanMatches(Files.readAllBytes(log), rebuilt.find(appended), appended);
+    }
+
+    @Test
+    void rejectsNonPositiveStep(@TempDir Path directory) throws IOException {
+        var log = directory.resolve("requests.log");
+        Files.writeString(log, "");
+
+        assertThrows(IllegalArgumentException.class, () -> TimeIndex.load(log, 0));
+    }
+
+    /**
+     * Append request lines in timestamp order with small jitter, with some non-request lines between them.
+     */
+    private static void writeLines(Path log, int from, int to, Random random) throws IOException {
+        var lines = new StringBuilder();
+        for (var i = from; i < to; i++) {
+            var timestamp = i * TIME_STEP + random.nextInt(-JITTER, JITTER + 1);
+            lines.append("[%d][GET] Request completed at %d.%03dms url http://localhost/api/%d\n"
+                    .formatted(timestamp, random.nextInt(1000), random.nextInt(1000), i));
+            if (random.nextInt(50) == 0) {
+                lines.append("Warm up finished\n");
+            }
+        }
+        Files.writeString(log, lines, StandardCharsets.US_ASCII, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void assertSpanMatches(byte[] content, TimeIndex.Span span, TimeRange range) {
+        assertTrue(span.start() == 0 || content[(int) span.start() - 1] == '\n', "span starts at line: " + span);
+        assertTrue(span.end() == content.length || content[(int) span.end() - 1] == '\n', "span ends at line: " + span);
+        var expected = count(content, 0, content.length, range);
+        var actual = count(content, (int) span.start(), (int) span.end(), range);
+        assertEquals(expected, actual, "requests of " + range);
+    }
+
+    private static int count(byte[] content, int start, int end, TimeRange range) {
+        var lines = new String(content, start, end - start, StandardCharsets.US_ASCII).split("\n");
+        var count = 0;
+        for (var line : lines) {
+            if (LogParser.parseRequest(line, 1, RequestClassifier.defaults(), range) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
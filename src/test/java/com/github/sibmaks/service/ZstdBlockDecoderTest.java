@@ -0,0 +1,123 @@
+package com.github.sibmaks.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Files are built of frames with raw blocks, so the expected data is known without a compressor.
+ */
+class ZstdBlockDecoderTest {
+    private static final int FRAME_MAGIC = 0xFD2FB528;
+    private static final int SKIPPABLE_MAGIC = 0x184D2A5E;
+    private static final int SEEKABLE_MAGIC = 0x8F92EAB1;
+    private static final int FRAMES = 80;
+    private static final int FRAME_SIZE = 100_000;
+
+    @Test
+    void blocksConcatenateToSequentialStream(@TempDir Path directory) throws IOException {
+        var file = directory.resolve("frames.log.zst");
+        var data = writeSeekable(file, new Random(3));
+
+        var decoder = ZstdBlockDecoder.seekable(file);
+        assertNotNull(decoder);
+        assertTrue(decoder.blocks() > 1, "file should span several blocks");
+        var decoded = new ByteArrayOutputStream();
+        var expected = 0L;
+        for (var i = 0; i < decoder.blocks(); i++) {
+            var block = decoder.decode(i);
+            assertNotNull(block);
+            assertEquals(expected, block.start(), "block " + i + " starts where the previous one ended");
+            assertEquals(decoder.blockEnd(i), block.end());
+            decoded.write(block.data());
+            expected = block.end();
+        }
+        assertEquals(decoder.end(), expected);
+        assertArrayEquals(data, decoded.toByteArray());
+        assertArrayEquals(data, readAll(ZstdBlockDecoder.open(file, 0)));
+        assertArrayEquals(data, readAll(new ParallelBlockInputStream(decoder, 3)));
+    }
+
+    @Test
+    void fileWithoutSeekTableIsNotSeekable(@TempDir Path directory) throws IOException {
+        var file = directory.resolve("plain.log.zst");
+        var output = new ByteArrayOutputStream();
+        output.write(frame(new byte[]{'a', '\n'}));
+        output.write(frame(new byte[]{'b', '\n'}));
+        Files.write(file, output.toByteArray());
+
+        assertNull(ZstdBlockDecoder.seekable(file));
+        assertArrayEquals(new byte[]{'a', '\n', 'b', '\n'}, readAll(ZstdBlockDecoder.open(file, 0)));
+    }
+
+    /**
+     * @return decompressed file data
+     */
+    private static byte[] writeSeekable(Path file, Random random) throws IOException {
+        var data = new ByteArrayOutputStream();
+        var output = new ByteArrayOutputStream();
+        var table = ByteBuffer.allocate(FRAMES * 8).order(ByteOrder.LITTLE_ENDIAN);
+        for (var i = 0; i < FRAMES; i++) {
+            var content = new byte[FRAME_SIZE - random.nextInt(1000)];
+            random.nextBytes(content);
+            var frame = frame(content);
+            output.write(frame);
+            data.write(content);
+            table.putInt(frame.length).putInt(content.length);
+        }
+        var footer = ByteBuffer.allocate(8 + table.capacity() + 9).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(SKIPPABLE_MAGIC)
+                .putInt(table.capacity() + 9)
+                .put(table.array())
+                .putInt(FRAMES)
+                .put((byte) 0)
+                .putInt(SEEKABLE_MAGIC);
+        output.write(footer.array());
+        Files.write(file, output.toByteArray());
+        return data.toByteArray();
+    }
+
+    /**
+     * Build single segment frame with content size and raw blocks of at most half of the content.
+     */
+    private static byte[] frame(byte[] content) {
+        var half = (content.length + 1) / 2;
+        var frame = ByteBuffer.allocate(9 + 6 + content.length).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(FRAME_MAGIC)
+                .put((byte) 0xA0)
+                .putInt(content.length);
+        var position = 0;
+        while (position < content.length || position == 0) {
+            var size = Math.min(half, content.length - position);
+            var last = position + size == content.length;
+            var header = size << 3 | (last ? 1 : 0);
+            frame.put((byte) header).put((byte) (header >>> 8)).put((byte) (header >>> 16));
+            frame.put(content, position, size);
+            position += size;
+            if (last) {
+                break;
+            }
+        }
+        return frame.array();
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        try (input) {
+            return input.readAllBytes();
+        }
+    }
+}
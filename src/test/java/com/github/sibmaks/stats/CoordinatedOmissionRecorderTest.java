@@ -0,0 +1,104 @@
+package com.github.sibmaks.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoordinatedOmissionRecorderTest {
+    private static final double ACCURACY = 0.01;
+    private static final long INTERVAL = 10 * Latency.UNITS_PER_MILLI;
+
+    @Test
+    void delegateAnswersQueries() {
+        var recorder = new CoordinatedOmissionRecorder(new ExactLatencyRecorder(), ACCURACY);
+        for (var i = 1; i <= 1_000; i++) {
+            recorder.record(i * 1_000L + 1);
+        }
+        recorder.prepareQueries();
+        assertEquals(1_000, recorder.getCount());
+        assertEquals(1_000, recorder.getSampleSize());
+        assertEquals(500_001, recorder.getValueAtRank(499));
+        assertEquals(500, recorder.countAtOrBelow(500_001));
+        assertEquals(500_001, recorder.getEquivalentValue(500_001));
+    }
+
+    @Test
+    void correctedHistogramBackFillsMissingRequests() {
+        var recorder = new CoordinatedOmissionRecorder(new ExactLatencyRecorder(), ACCURACY);
+        var expectedSynthetic = 0L;
+        for (var k = 0; k < 30; k++) {
+            // half an interval away from its multiples, so sketch rounding does not change amount of values
+            var value = k * INTERVAL + INTERVAL / 2;
+            recorder.record(value);
+            expectedSynthetic += Math.max(0, k - 1);
+        }
+
+        var corrected = recorder.getCorrected(INTERVAL);
+        corrected.prepareQueries();
+        assertEquals(30 + expectedSynthetic, corrected.getCount());
+        assertEquals(30, recorder.getCount(), "recorded values are not changed");
+        var max = 29 * INTERVAL + INTERVAL / 2;
+        assertEquals(max, corrected.getValueAtRank(corrected.getCount() - 1), max * ACCURACY);
+        assertThrows(IllegalArgumentException.class, () -> recorder.getCorrected(0));
+    }
+
+    @Test
+    void valuesBelowTwoIntervalsAreNotBackFilled() {
+        var recorder = new CoordinatedOmissionRecorder(new ExactLatencyRecorder(), ACCURACY);
+        for (var i = 0; i < 100; i++) {
+            recorder.record(INTERVAL + INTERVAL / 2);
+        }
+        assertEquals(100, recorder.getCorrected(INTERVAL).getCount());
+    }
+
+    @Test
+    void roundTripsThroughStream() throws IOException {
+        var recorder = new CoordinatedOmissionRecorder(new ExactLatencyRecorder(), ACCURACY);
+        for (var i = 1; i <= 100; i++) {
+            recorder.record(i * INTERVAL);
+        }
+        var read = new CoordinatedOmissionRecorder(new ExactLatencyRecorder(), ACCURACY);
+        read.read(input(write(recorder)));
+        recorder.prepareQueries();
+        read.prepareQueries();
+        assertEquals(recorder.getCount(), read.getCount());
+        assertEquals(recorder.getValueAtRank(89), read.getValueAtRank(89));
+        assertEquals(recorder.getCorrected(INTERVAL).getCount(), read.getCorrected(INTERVAL).getCount());
+
+        var error = assertThrows(IOException.class, () -> read.read(input(write(new ExactLatencyRecorder()))));
+        assertEquals("Latencies were written by exact recorder, expected coordinated omission one", error.getMessage());
+    }
+
+    @Test
+    void mergesOnlySameRecorder() {
+        var recorder = new CoordinatedOmissionRecorder(new ExactLatencyRecorder(), ACCURACY);
+        var other = new CoordinatedOmissionRecorder(new ExactLatencyRecorder(), ACCURACY);
+        recorder.record(3 * INTERVAL);
+        other.record(4 * INTERVAL);
+        recorder.merge(other);
+        assertEquals(2, recorder.getCount());
+        assertTrue(recorder.getCorrected(INTERVAL).getCount() > 2);
+
+        assertThrows(IllegalArgumentException.class, () -> recorder.merge(new ExactLatencyRecorder()));
+    }
+
+    private static byte[] write(LatencyRecorder recorder) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var output = new DataOutputStream(bytes)) {
+            recorder.write(output);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+}
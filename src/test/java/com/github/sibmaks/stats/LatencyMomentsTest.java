@@ -0,0 +1,102 @@
+package com.github.sibmaks.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LatencyMomentsTest {
+    private static final int VALUES = 1_000_000;
+    // values far from zero with small spread, sum of squares loses the variance in double arithmetic
+    private static final long BASE = 1_000_000L * Latency.UNITS_PER_MILLI;
+    private static final double RELATIVE_ERROR = 1e-9;
+
+    @Test
+    void varianceMatchesExactComputation() {
+        var values = values(new Random(1));
+        var moments = new LatencyMoments();
+        for (var value : values) {
+            moments.add(value);
+        }
+
+        var expected = exactVariance(values);
+        assertEquals(expected, moments.getVariance(), expected * RELATIVE_ERROR);
+        assertEquals(VALUES, moments.getCount());
+        assertEquals(Arrays.stream(values).sum(), moments.getTotal());
+        assertEquals(Arrays.stream(values).min().getAsLong(), moments.getMin());
+        assertEquals(Arrays.stream(values).max().getAsLong(), moments.getMax());
+    }
+
+    @Test
+    void mergedPartsMatchSequentialMoments() {
+        var values = values(new Random(2));
+        var sequential = new LatencyMoments();
+        var merged = new LatencyMoments();
+        var random = new Random(3);
+        var part = new LatencyMoments();
+        for (var value : values) {
+            sequential.add(value);
+            part.add(value);
+            if (random.nextInt(10_000) == 0) {
+                merged.merge(part);
+                part = new LatencyMoments();
+            }
+        }
+        merged.merge(part).merge(new LatencyMoments());
+
+        assertEquals(sequential.getCount(), merged.getCount());
+        assertEquals(sequential.getTotal(), merged.getTotal());
+        assertEquals(sequential.getMin(), merged.getMin());
+        assertEquals(sequential.getMax(), merged.getMax());
+        var expected = exactVariance(values);
+        assertEquals(expected, merged.getVariance(), expected * RELATIVE_ERROR);
+    }
+
+    @Test
+    void restoredAndCopiedMomentsAreIndependent() {
+        var moments = new LatencyMoments();
+        assertEquals(0, moments.getVariance());
+        assertEquals(0, moments.getMean());
+        moments.add(2);
+        moments.add(4);
+        moments.add(9);
+
+        var copy = moments.copy();
+        copy.add(100);
+        assertEquals(3, moments.getCount());
+        assertEquals(5, moments.getMean(), 0);
+        assertEquals(26.0 / 3, moments.getVariance(), 1e-12);
+
+        var restored = LatencyMoments.of(moments.getCount(), moments.getTotal(), moments.getM2(),
+                moments.getMin(), moments.getMax());
+        restored.merge(LatencyMoments.of(1, 100, 0, 100, 100));
+        assertEquals(copy.getVariance(), restored.getVariance(), copy.getVariance() * 1e-12);
+        assertEquals(100, restored.getMax());
+    }
+
+    private static long[] values(Random random) {
+        var values = new long[VALUES];
+        for (var i = 0; i < values.length; i++) {
+            values[i] = BASE + random.nextLong(Latency.UNITS_PER_MILLI);
+        }
+        return values;
+    }
+
+    private static double exactVariance(long[] values) {
+        var sum = BigInteger.ZERO;
+        var squares = BigInteger.ZERO;
+        for (var value : values) {
+            var big = BigInteger.valueOf(value);
+            sum = sum.add(big);
+            squares = squares.add(big.multiply(big));
+        }
+        var n = BigInteger.valueOf(values.length);
+        var numerator = squares.multiply(n).subtract(sum.multiply(sum));
+        return new BigDecimal(numerator).divide(new BigDecimal(n.multiply(n)), MathContext.DECIMAL64).doubleValue();
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.sibmaks.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReservoirLatencyRecorderTest {
+    private static final int CAPACITY = 10_000;
+    private static final int VALUES = 1_000_000;
+
+    @Test
+    void keepsEveryValueBelowCapacity() {
+        var reservoir = new ReservoirLatencyRecorder(CAPACITY);
+        for (var i = CAPACITY; i > 0; i--) {
+            reservoir.record(i);
+        }
+        assertEquals(CAPACITY, reservoir.getSampleSize());
+        for (var rank = 0; rank < CAPACITY; rank += 101) {
+            assertEquals(rank + 1, reservoir.getValueAtRank(rank));
+        }
+        assertEquals(500, reservoir.countAtOrBelow(500));
+    }
+
+    @Test
+    void estimatesRanksOfUniformValues() {
+        var reservoir = new ReservoirLatencyRecorder(CAPACITY);
+        for (var i = 0; i < VALUES; i++) {
+            // values in shuffled order, rank of value v is v
+            reservoir.record((i * 7_919L) % VALUES);
+        }
+        assertUniformRanks(reservoir);
+    }
+
+    @Test
+    void mergedReservoirsEstimateRanksOfAllValues() {
+        var merged = new ReservoirLatencyRecorder(CAPACITY);
+        // parts of different size, so their values have different weights
+        var bounds = new int[]{0, VALUES / 10, VALUES / 2, VALUES};
+        for (var part = 0; part + 1 < bounds.length; part++) {
+            var reservoir = new ReservoirLatencyRecorder(CAPACITY);
+            for (var i = bounds[part]; i < bounds[part + 1]; i++) {
+                reservoir.record(i);
+            }
+            merged.merge(reservoir);
+        }
+        assertUniformRanks(merged);
+        assertThrows(IllegalArgumentException.class, () -> merged.merge(new ExactLatencyRecorder()));
+    }
+
+    @Test
+    void roundTripsThroughStream() throws IOException {
+        var reservoir = new ReservoirLatencyRecorder(CAPACITY);
+        for (var i = 0; i < VALUES; i++) {
+            reservoir.record(i);
+        }
+        var read = new ReservoirLatencyRecorder(CAPACITY);
+        read.read(input(write(reservoir)));
+        assertEquals(reservoir.getCount(), read.getCount());
+        assertEquals(reservoir.getSampleSize(), read.getSampleSize());
+        assertEquals(reservoir.getValueAtRank(VALUES / 2), read.getValueAtRank(VALUES / 2));
+
+        var error = assertThrows(IOException.class, () -> new ReservoirLatencyRecorder(10).read(input(write(reservoir))));
+        assertEquals("Latencies were written by reservoir of size 10000, expected 10", error.getMessage());
+    }
+
+    private static void assertUniformRanks(ReservoirLatencyRecorder reservoir) {
+        reservoir.prepareQueries();
+        assertEquals(VALUES, reservoir.getCount());
+        assertEquals(CAPACITY, reservoir.getSampleSize());
+        for (var fraction : new double[]{0.1, 0.5, 0.9, 0.99}) {
+            var rank = (long) (fraction * VALUES);
+            // standard error of a quantile of 10k sample is below 0.5% of ranks
+            assertEquals(rank, reservoir.getValueAtRank(rank), VALUES * 0.02, "rank " + rank);
+            assertEquals(rank, reservoir.countAtOrBelow(rank), VALUES * 0.02, "value " + rank);
+        }
+    }
+
+    private static byte[] write(LatencyRecorder recorder) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var output = new DataOutputStream(bytes)) {
+            recorder.write(output);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,175 @@
+package com.github.sibmaks.stats;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpillingLatencyRecorderTest {
+    private static final int VALUES = 200_000;
+    private static final long BUDGET_VALUES = 1_000;
+
+    @Test
+    void ranksMatchExactRecorderAcrossSpills(@TempDir Path directory) throws IOException {
+        try (var store = new SpillStore(directory, BUDGET_VALUES * Long.BYTES)) {
+            var spilling = new SpillingLatencyRecorder(store);
+            var exact = new ExactLatencyRecorder();
+            var random = new Random(7);
+            for (var i = 0; i < VALUES; i++) {
+                // few distinct values, so equal values are spread over many runs
+                var value = random.nextInt(10_000);
+                spilling.record(value);
+                exact.record(value);
+            }
+            assertRanksEqual(exact, spilling);
+            try (var files = Files.list(directory)) {
+                var runDirectory = files.toList();
+                assertEquals(1, runDirectory.size(), "run directory is created");
+                try (var runs = Files.list(runDirectory.get(0))) {
+                    // runs of 1k, 8k and 64k values, fewer than eight in every tier
+                    assertTrue(runs.count() <= 3 * 7, "runs are merged by tiers");
+                }
+            }
+        }
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count(), "run files are deleted on close");
+        }
+    }
+
+    @Test
+    void mergedRecordersMatchExactRecorder(@TempDir Path directory) throws IOException {
+        try (var store = new SpillStore(directory, BUDGET_VALUES * Long.BYTES)) {
+            var exact = new ExactLatencyRecorder();
+            var merged = new SpillingLatencyRecorder(store);
+            var random = new Random(11);
+            for (var part = 0; part < 4; part++) {
+                var spilling = new SpillingLatencyRecorder(store);
+                for (var i = 0; i < VALUES / 4; i++) {
+                    var value = random.nextLong(1L << 40);
+                    spilling.record(value);
+                    exact.record(value);
+                }
+                merged.merge(spilling);
+            }
+            assertRanksEqual(exact, merged);
+        }
+    }
+
+    @Test
+    void writesExactRecorderFormat(@TempDir Path directory) throws IOException {
+        try (var store = new SpillStore(directory, BUDGET_VALUES * Long.BYTES)) {
+            var spilling = new SpillingLatencyRecorder(store);
+            for (var i = VALUES; i > 0; i--) {
+                spilling.record(i);
+            }
+            var exact = new ExactLatencyRecorder();
+            exact.read(input(write(spilling)));
+            assertRanksEqual(exact, spilling);
+
+            var read = new SpillingLatencyRecorder(store);
+            read.read(input(write(exact)));
+            assertRanksEqual(exact, read);
+
+            var error = assertThrows(IOException.class, () -> exact.read(input(write(new SketchLatencyRecorder(0.01)))));
+            assertEquals("Latencies were written by sketch recorder, expected exact one", error.getMessage());
+        }
+    }
+
+    @Test
+    void buffersStayWithinBudget(@TempDir Path directory) throws IOException {
+        try (var store = new SpillStore(directory, BUDGET_VALUES * Long.BYTES)) {
+            var first = new SpillingLatencyRecorder(store);
+            for (var i = 0; i < BUDGET_VALUES * 3; i++) {
+                first.record(i);
+            }
+            // budget is held by the first buffer, later recorders get first buffers from the headroom
+            var later = List.of(new SpillingLatencyRecorder(store), new SpillingLatencyRecorder(store));
+            for (var i = 0; i < BUDGET_VALUES * 3; i++) {
+                for (var recorder : later) {
+                    recorder.record(i);
+                }
+            }
+            assertTrue(store.reserveFirst(0), "budget is not overdrawn");
+            assertFalse(store.reserveFirst(BUDGET_VALUES / 20), "headroom is taken by later buffers");
+
+            // merged recorders return their buffers
+            first.merge(later.get(0));
+            first.merge(later.get(1));
+            assertEquals(BUDGET_VALUES * 9, first.getCount());
+            assertTrue(store.reserveFirst(BUDGET_VALUES / 20));
+        }
+    }
+
+    @Test
+    void floorIsShareOfBudgetButAtLeastFewMegabytes(@TempDir Path directory) throws IOException {
+        try (var store = new SpillStore(directory, 64L << 20)) {
+            new SpillingLatencyRecorder(store);
+            assertEquals((60L << 20) / Long.BYTES, store.floor(), "single recorder takes the budget without headroom");
+            for (var i = 1; i < 8; i++) {
+                new SpillingLatencyRecorder(store);
+            }
+            assertEquals((8L << 20) / Long.BYTES, store.floor());
+            for (var i = 8; i < 64; i++) {
+                new SpillingLatencyRecorder(store);
+            }
+            assertEquals((4L << 20) / Long.BYTES, store.floor());
+        }
+    }
+
+    @Test
+    void mergesRunsInOrder(@TempDir Path directory) throws IOException {
+        try (var store = new SpillStore(directory, Long.BYTES)) {
+            var runs = List.of(
+                    store.spill(new long[]{1, 4, 4, 9}, 4),
+                    store.spill(new long[0], 0),
+                    store.spill(new long[]{2, 3, 4, 10, 11}, 5),
+                    store.spill(new long[]{0}, 1)
+            );
+            var merged = store.merge(runs);
+            var expected = new long[]{0, 1, 2, 3, 4, 4, 4, 9, 10, 11};
+            assertEquals(expected.length, merged.size());
+            for (var i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], merged.get(i));
+            }
+            assertEquals(7, merged.countAtOrBelow(4));
+        }
+    }
+
+    private static void assertRanksEqual(LatencyRecorder expected, LatencyRecorder actual) {
+        expected.prepareQueries();
+        actual.prepareQueries();
+        assertEquals(expected.getCount(), actual.getCount());
+        var count = expected.getCount();
+        for (var rank = 0L; rank < count; rank += 997) {
+            assertEquals(expected.getValueAtRank(rank), actual.getValueAtRank(rank), "rank " + rank);
+        }
+        assertEquals(expected.getValueAtRank(count - 1), actual.getValueAtRank(count - 1));
+        var probe = expected.getValueAtRank(count / 2);
+        assertEquals(expected.countAtOrBelow(probe), actual.countAtOrBelow(probe));
+    }
+
+    private static byte[] write(LatencyRecorder recorder) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var output = new DataOutputStream(bytes)) {
+            recorder.write(output);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+}
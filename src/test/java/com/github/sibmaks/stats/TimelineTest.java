@@ -0,0 +1,141 @@
+package com.github.sibmaks.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TimelineTest {
+    private static final long RESOLUTION = 1_000;
+
+    @Test
+    void bucketsGrowInBothDirections() {
+        var random = new Random(1);
+        var timeline = new Timeline(RESOLUTION);
+        var expected = new Buckets();
+        // timestamps drift back and forth, so buckets are added before the first and after the last one
+        var timestamp = 5_000_000L;
+        for (var i = 0; i < 50_000; i++) {
+            timestamp += random.nextLong(-3_000, 3_000);
+            var latency = random.nextLong(Latency.UNITS_PER_MILLI * 1_000);
+            timeline.record(timestamp, latency);
+            expected.record(timestamp, latency);
+        }
+        timeline.record(-1, 5);
+        expected.record(-1, 5);
+        timeline.record(-1_000_000, 7);
+        expected.record(-1_000_000, 7);
+
+        assertMatches(expected, timeline);
+    }
+
+    @Test
+    void outlierTimestampsAreSkipped() {
+        var timeline = new Timeline(1);
+        timeline.record(1_700_000_000_000L, 5);
+        timeline.record(1_700_000_000_010L, 7);
+        timeline.record(0, 1);
+        timeline.record(Long.MAX_VALUE, 1);
+        assertEquals(11, timeline.size());
+        assertEquals(2, timeline.getSkipped());
+        assertEquals(1, timeline.getCount(10));
+
+        var other = new Timeline(1);
+        other.record(1_700_000_000_005L, 3);
+        other.record(1, 3);
+        other.record(Long.MIN_VALUE, 3);
+        timeline.merge(other);
+        assertEquals(11, timeline.size());
+        assertEquals(4, timeline.getSkipped());
+        assertEquals(1, timeline.getCount(5));
+    }
+
+    @Test
+    void mergedTimelineMatchesSingleTimeline() {
+        var random = new Random(2);
+        var timelines = new Timeline[]{new Timeline(RESOLUTION), new Timeline(RESOLUTION), new Timeline(RESOLUTION)};
+        var expected = new Buckets();
+        for (var i = 0; i < timelines.length; i++) {
+            var start = random.nextLong(0, 1_000_000);
+            for (var j = 0; j < 10_000; j++) {
+                var timestamp = start + random.nextLong(0, 200_000 * (i + 1));
+                var latency = random.nextLong(Latency.UNITS_PER_MILLI * 100);
+                timelines[i].record(timestamp, latency);
+                expected.record(timestamp, latency);
+            }
+        }
+
+        var merged = new Timeline(RESOLUTION);
+        merged.merge(new Timeline(RESOLUTION));
+        for (var timeline : timelines) {
+            merged.merge(timeline);
+        }
+        assertMatches(expected, merged);
+        assertThrows(IllegalArgumentException.class, () -> merged.merge(new Timeline(RESOLUTION * 2)));
+    }
+
+    @Test
+    void writtenTimelineIsReadBack() throws IOException {
+        var random = new Random(3);
+        var timeline = new Timeline(RESOLUTION);
+        var expected = new Buckets();
+        for (var i = 0; i < 5_000; i++) {
+            var timestamp = random.nextLong(0, 3_600_000);
+            var latency = random.nextLong(Latency.UNITS_PER_MILLI * 100);
+            timeline.record(timestamp, latency);
+            expected.record(timestamp, latency);
+        }
+        var bytes = new ByteArrayOutputStream();
+        timeline.write(new DataOutputStream(bytes));
+
+        var read = Timeline.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(RESOLUTION, read.getResolution());
+        assertMatches(expected, read);
+    }
+
+    private static void assertMatches(Buckets expected, Timeline actual) {
+        var first = expected.buckets.firstKey();
+        assertEquals(expected.buckets.lastKey() - first + 1, actual.size());
+        for (var i = 0; i < actual.size(); i++) {
+            var bucket = first + i;
+            assertEquals(bucket * RESOLUTION, actual.getStart(i));
+            var values = expected.buckets.get(bucket);
+            if (values == null) {
+                assertEquals(0, actual.getCount(i), "empty bucket " + bucket);
+                assertEquals(0, actual.getMinLatency(i));
+                assertEquals(0, actual.getMaxLatency(i));
+                continue;
+            }
+            assertEquals(values[0], actual.getCount(i), "bucket " + bucket);
+            assertEquals(values[1], actual.getTotalLatency(i));
+            assertEquals(values[2], actual.getMinLatency(i));
+            assertEquals(values[3], actual.getMaxLatency(i));
+            assertEquals(values[1] / values[0], actual.getAverageLatency(i));
+            assertEquals(values[0] * 1000.0 / RESOLUTION, actual.getRate(i), 1e-9);
+        }
+    }
+
+    /**
+     * Count, latency sum, min and max by bucket.
+     */
+    private static final class Buckets {
+        private final TreeMap<Long, long[]> buckets = new TreeMap<>();
+
+        void record(long timestamp, long latency) {
+            var values = buckets.computeIfAbsent(Math.floorDiv(timestamp, RESOLUTION),
+                    it -> new long[]{0, 0, Long.MAX_VALUE, Long.MIN_VALUE});
+            values[0]++;
+            values[1] += latency;
+            values[2] = Math.min(values[2], latency);
+            values[3] = Math.max(values[3], latency);
+        }
+    }
+}